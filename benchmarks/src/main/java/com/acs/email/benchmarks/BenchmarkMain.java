@@ -0,0 +1,36 @@
+package com.acs.email.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * ベンチマークの起動クラス
+ *
+ * JMH のコマンドライン引数（ベンチマーク名の正規表現、-f / -wi / -i など）をそのまま受け付け、
+ * 常に GC プロファイラとスレッド数のプロファイラを有効にして実行する。結果には1操作あたりの割り当て量
+ * （gc.alloc.rate.norm, B/op）とスレッド数（threads.live / threads.peak）が出力される。
+ *
+ * 使用法: java -jar target/benchmarks.jar [JMH のオプション] [ベンチマーク名の正規表現]
+ */
+public final class BenchmarkMain {
+
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        ChainedOptionsBuilder options = new OptionsBuilder()
+            .parent(commandLine)
+            .addProfiler(GCProfiler.class)
+            .addProfiler(ThreadCountProfiler.class);
+        if (commandLine.getIncludes().isEmpty()) {
+            options.include("com\\.acs\\.email\\.benchmarks\\..*");
+        }
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,74 @@
+package com.acs.email.benchmarks;
+
+import com.acs.email.App;
+import com.acs.email.EmailJob;
+import com.azure.communication.email.models.EmailMessage;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 1通分のメッセージ組み立てのベンチマーク
+ *
+ * - html: App / AsyncApp の HTML 本文の組み立て（文字列連結）
+ * - appMessage: App.sendEmail と同じ手順での EmailMessage の構築
+ * - jobMessage: BatchSender と同じ手順（JSONL の解析 → EmailMessage）での構築
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EmailMessageBenchmark {
+
+    private static final String SENDER = "DoNotReply@example.azurecomm.net";
+
+    @Param({"64", "2048"})
+    public int bodyLength;
+
+    private String recipient;
+    private String subject;
+    private String body;
+    private String jobLine;
+
+    @Setup
+    public void setUp() throws IOException {
+        recipient = "user@example.com";
+        subject = "ACS Email Test";
+        body = Payloads.text(bodyLength);
+        jobLine = Payloads.job(1, subject, body).toJson();
+    }
+
+    @Benchmark
+    public String html() {
+        return App.toHtmlBody(subject, body);
+    }
+
+    @Benchmark
+    public EmailMessage appMessage() {
+        return new EmailMessage()
+            .setSenderAddress(SENDER)
+            .setToRecipients(recipient)
+            .setSubject(subject)
+            .setBodyPlainText(body)
+            .setBodyHtml(App.toHtmlBody(subject, body));
+    }
+
+    @Benchmark
+    public EmailMessage jobMessage() throws IOException {
+        return EmailJob.fromJson(jobLine).toEmailMessage(SENDER);
+    }
+}
@@ -0,0 +1,69 @@
+package com.acs.email.benchmarks;
+
+import com.acs.email.EmailJob;
+import com.azure.communication.email.models.EmailMessage;
+import com.azure.core.util.BinaryData;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JSON のシリアライズ・解析のベンチマーク
+ *
+ * - requestPayload: azure-core の既定の JSON シリアライザで EmailMessage をバイト列にする（送信リクエスト本文に相当）
+ * - jobToJson / jobFromJson: JSONL ジョブ1行の書き出しと解析（azure-json）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PayloadSerializationBenchmark {
+
+    private static final String SENDER = "DoNotReply@example.azurecomm.net";
+
+    @Param({"1", "50"})
+    public int recipients;
+
+    @Param({"64", "2048"})
+    public int bodyLength;
+
+    private EmailJob job;
+    private String jobLine;
+    private EmailMessage message;
+
+    @Setup
+    public void setUp() throws IOException {
+        job = Payloads.job(recipients, "ACS Email Test", Payloads.text(bodyLength));
+        jobLine = job.toJson();
+        message = job.toEmailMessage(SENDER);
+    }
+
+    @Benchmark
+    public byte[] requestPayload() {
+        return BinaryData.fromObject(message).toBytes();
+    }
+
+    @Benchmark
+    public String jobToJson() throws IOException {
+        return job.toJson();
+    }
+
+    @Benchmark
+    public EmailJob jobFromJson() throws IOException {
+        return EmailJob.fromJson(jobLine);
+    }
+}
@@ -0,0 +1,45 @@
+package com.acs.email.benchmarks;
+
+import com.acs.email.EmailJob;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * ベンチマーク用のテストデータ
+ */
+final class Payloads {
+
+    private Payloads() {
+    }
+
+    /**
+     * 指定した長さの本文（日本語と ASCII の混在）
+     */
+    static String text(int length) {
+        String unit = "これはテストメールです。This is a test email. ";
+        StringBuilder builder = new StringBuilder(length);
+        while (builder.length() < length) {
+            builder.append(unit);
+        }
+        builder.setLength(length);
+        return builder.toString();
+    }
+
+    /**
+     * user0@example.com 〜 user{count-1}@example.com
+     */
+    static List<String> addresses(int count) {
+        List<String> addresses = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            addresses.add("user" + i + "@example.com");
+        }
+        return addresses;
+    }
+
+    static EmailJob job(int recipients, String subject, String body) {
+        return new EmailJob(addresses(recipients), Collections.emptyList(), Collections.emptyList(), subject, body,
+            "<p>" + body + "</p>");
+    }
+}
@@ -0,0 +1,77 @@
+package com.acs.email.benchmarks;
+
+import com.acs.email.EmailJob;
+import com.azure.communication.email.models.EmailAddress;
+import com.azure.communication.email.models.EmailMessage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 宛先リストの構築のベンチマーク
+ *
+ * - varargs: setToRecipients(String...)（SDK 内部で EmailAddress に変換される）
+ * - addressList: EmailAddress のリストを自前で組み立てて setToRecipients(List) に渡す
+ * - job: EmailJob.toEmailMessage（BatchSender の経路、to と bcc の両方）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecipientListBenchmark {
+
+    private static final String SENDER = "DoNotReply@example.azurecomm.net";
+
+    @Param({"1", "10", "50"})
+    public int recipients;
+
+    private String[] addressArray;
+    private List<String> addresses;
+    private EmailJob job;
+
+    @Setup
+    public void setUp() {
+        addresses = Payloads.addresses(recipients);
+        addressArray = addresses.toArray(new String[0]);
+        job = new EmailJob(addresses, Collections.emptyList(), addresses, "subject", "body", null);
+    }
+
+    @Benchmark
+    public EmailMessage varargs() {
+        return new EmailMessage()
+            .setSenderAddress(SENDER)
+            .setToRecipients(addressArray);
+    }
+
+    @Benchmark
+    public EmailMessage addressList() {
+        List<EmailAddress> list = new ArrayList<>(addresses.size());
+        for (String address : addresses) {
+            list.add(new EmailAddress(address));
+        }
+        return new EmailMessage()
+            .setSenderAddress(SENDER)
+            .setToRecipients(list);
+    }
+
+    @Benchmark
+    public EmailMessage job() {
+        return job.toEmailMessage(SENDER);
+    }
+}
@@ -0,0 +1,75 @@
+package com.acs.email.benchmarks;
+
+import com.acs.email.EmailTemplate;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 宛先ごとの本文の描画のベンチマーク
+ *
+ * - concat: 文字列連結で組み立てる（エスケープなし、従来の App.toHtmlBody と同じ方法）
+ * - compiled: コンパイル済みの EmailTemplate で描画する（HTML エスケープあり、スレッドごとのバッファを再利用）
+ * - compileAndRender: 毎回キャッシュから取得して描画する（JSONL の各行にテンプレートが書かれている場合）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TemplateRenderBenchmark {
+
+    private static final String SOURCE =
+        "<html><body><h1>{{name}} 様</h1><p>ご注文番号 {{order}} を承りました。</p><p>{{body}}</p></body></html>";
+
+    @Param({"64", "2048"})
+    public int bodyLength;
+
+    private String name;
+    private String order;
+    private String body;
+    private Map<String, String> variables;
+    private EmailTemplate template;
+
+    @Setup
+    public void setUp() {
+        name = "山田 太郎";
+        order = "A-000123";
+        body = Payloads.text(bodyLength);
+        variables = new HashMap<>();
+        variables.put("name", name);
+        variables.put("order", order);
+        variables.put("body", body);
+        template = EmailTemplate.html(SOURCE);
+    }
+
+    @Benchmark
+    public String concat() {
+        return "<html><body><h1>" + name + " 様</h1><p>ご注文番号 " + order + " を承りました。</p><p>" + body
+            + "</p></body></html>";
+    }
+
+    @Benchmark
+    public String compiled() {
+        return template.render(variables);
+    }
+
+    @Benchmark
+    public String compileAndRender() {
+        return EmailTemplate.html(SOURCE).render(variables);
+    }
+}
@@ -0,0 +1,46 @@
+package com.acs.email.benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.profile.InternalProfiler;
+import org.openjdk.jmh.results.AggregationPolicy;
+import org.openjdk.jmh.results.IterationResult;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.ScalarResult;
+
+/**
+ * イテレーションごとのスレッド数を結果に追加するプロファイラ
+ *
+ * - threads.live: イテレーション終了時点のスレッド数
+ * - threads.peak: イテレーション中の最大スレッド数
+ *
+ * JMH のワーカースレッド（@Threads の数）も含まれる。HTTP クライアントの実装（イベントループ・ディスパッチャー・
+ * セレクター）ごとの差を比べるためのもので、CPU 時間だけを測るベンチマークでは値は変わらない。
+ */
+public class ThreadCountProfiler implements InternalProfiler {
+
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    @Override
+    public String getDescription() {
+        return "Live and peak JVM thread count per iteration";
+    }
+
+    @Override
+    public void beforeIteration(BenchmarkParams benchmarkParams, IterationParams iterationParams) {
+        threads.resetPeakThreadCount();
+    }
+
+    @Override
+    public Collection<? extends Result> afterIteration(BenchmarkParams benchmarkParams,
+                                                       IterationParams iterationParams, IterationResult result) {
+        return Arrays.asList(
+            new ScalarResult("threads.live", threads.getThreadCount(), "threads", AggregationPolicy.MAX),
+            new ScalarResult("threads.peak", threads.getPeakThreadCount(), "threads", AggregationPolicy.MAX));
+    }
+}
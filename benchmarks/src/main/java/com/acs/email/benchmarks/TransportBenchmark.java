@@ -0,0 +1,141 @@
+package com.acs.email.benchmarks;
+
+import com.acs.email.EmailOperationStatus;
+import com.acs.email.EmailOperationStatusClient;
+import com.acs.email.HttpTransport;
+import com.acs.email.MockAcsServer;
+import com.azure.communication.email.EmailAsyncClient;
+import com.azure.communication.email.EmailClientBuilder;
+import com.azure.communication.email.models.EmailMessage;
+import com.azure.communication.email.models.EmailSendResult;
+import com.azure.core.http.HttpClient;
+import com.azure.core.http.okhttp.OkHttpAsyncHttpClientBuilder;
+import com.azure.core.http.policy.FixedDelay;
+import com.azure.core.http.policy.RetryPolicy;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * HTTP クライアントの実装（netty / okhttp / jdk）ごとの送信・ステータス取得のベンチマーク
+ *
+ * 1操作 = 送信（beginSend の最初の応答 = 受付）+ その operationId のステータス取得1回。
+ * 全ての実装で同じ最大接続数・HTTP/1.1・タイムアウトにそろえ、ローカルの MockAcsServer に対して実行する。
+ * - Throughput: 1秒あたりの操作数
+ * - SampleTime: 1操作のレイテンシの分布（p0.99 / p0.999 がテールレイテンシ）
+ * - gc.alloc.rate / gc.alloc.rate.norm: 割り当て量（BenchmarkMain の GC プロファイラ）
+ * - threads.live / threads.peak: スレッド数（ThreadCountProfiler）
+ *
+ * 既定ではモックを同じ JVM で起動するため、割り当て量にはモックの分も含まれる（全ての実装で同じ量）。
+ * クライアントだけを測る場合は別プロセスでモックを起動し、接続文字列を
+ * -jvmArgsAppend -Dtransport.connectionString=... で渡す。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(32)
+@Fork(1)
+public class TransportBenchmark {
+
+    private static final String SENDER = "DoNotReply@example.azurecomm.net";
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    @Param({"netty", "okhttp", "jdk"})
+    public String transport;
+
+    @Param({"64"})
+    public int maxConnections;
+
+    private MockAcsServer server;
+    private EmailAsyncClient emailAsyncClient;
+    private EmailOperationStatusClient statusClient;
+    private EmailMessage message;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        String connectionString = System.getProperty("transport.connectionString");
+        if (connectionString == null) {
+            server = new MockAcsServer(0, new MockAcsServer.Settings());
+            server.start();
+            connectionString = server.connectionString();
+        }
+        HttpClient httpClient = createHttpClient();
+        // 実装の差だけを測るため、SDK の再試行は無効にする
+        emailAsyncClient = new EmailClientBuilder()
+            .connectionString(connectionString)
+            .httpClient(httpClient)
+            .retryPolicy(new RetryPolicy(new FixedDelay(0, Duration.ZERO)))
+            .buildAsyncClient();
+        statusClient = EmailOperationStatusClient.fromConnectionString(connectionString, httpClient);
+        message = new EmailMessage()
+            .setSenderAddress(SENDER)
+            .setToRecipients("user@example.com")
+            .setSubject("ACS Email Test")
+            .setBodyPlainText(Payloads.text(512));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    private HttpClient createHttpClient() {
+        switch (transport) {
+            case "netty":
+                return HttpTransport.create(settings().implementation(HttpTransport.Implementation.NETTY));
+            case "jdk":
+                return HttpTransport.create(settings().implementation(HttpTransport.Implementation.JDK));
+            case "okhttp":
+                // OkHttp は既定で同じホストへの同時リクエストを5件に制限するため、最大接続数に合わせる
+                Dispatcher dispatcher = new Dispatcher();
+                dispatcher.setMaxRequests(maxConnections);
+                dispatcher.setMaxRequestsPerHost(maxConnections);
+                return new OkHttpAsyncHttpClientBuilder()
+                    .connectionPool(new ConnectionPool(maxConnections, 60, TimeUnit.SECONDS))
+                    .dispatcher(dispatcher)
+                    .connectionTimeout(Duration.ofSeconds(10))
+                    .readTimeout(Duration.ofSeconds(60))
+                    .writeTimeout(Duration.ofSeconds(60))
+                    .build();
+            default:
+                throw new IllegalArgumentException("transport は netty / okhttp / jdk を指定してください: " + transport);
+        }
+    }
+
+    /**
+     * モックは HTTP/1.1 のみ応答するため、全ての実装を HTTP/1.1 にそろえる
+     */
+    private HttpTransport.Settings settings() {
+        return new HttpTransport.Settings()
+            .maxConnections(maxConnections)
+            .http2(false);
+    }
+
+    @Benchmark
+    public EmailOperationStatus sendAndPoll() {
+        EmailSendResult accepted = emailAsyncClient.beginSend(message).next().block(TIMEOUT).getValue();
+        return statusClient.getStatus(accepted.getId()).block(TIMEOUT);
+    }
+}
@@ -0,0 +1,139 @@
+package com.acs.email;
+
+import com.azure.core.http.HttpPipelineCallContext;
+import com.azure.core.http.HttpPipelineNextPolicy;
+import com.azure.core.http.HttpPipelineNextSyncPolicy;
+import com.azure.core.http.HttpPipelinePosition;
+import com.azure.core.http.HttpRequest;
+import com.azure.core.http.HttpResponse;
+import com.azure.core.http.policy.HttpPipelinePolicy;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AdaptiveRetryStrategy に従って再試行するパイプラインポリシー
+ *
+ * SDK の RetryPolicy は Retry-After のヒントをそのまま待ち時間にするため、同じ時間窓で 429 を受け取った送信が
+ * 全て同じ時刻に再送する。本ポリシーは応答のヒント（RetryAfterHeaders）にもジッターを加え、
+ * リクエストごとに前回の待ち時間を保持して decorrelated jitter で次の待ち時間を決める
+ * （AdaptiveRetryStrategy.nextDelay）。再試行の可否とリトライバジェットは AdaptiveRetryStrategy が判定する。
+ *
+ * 署名・認証のポリシーより前に置く（再試行のたびに署名し直すため）。EmailClientBuilder.addPolicy で追加した場合も
+ * PER_CALL として SDK の認証ポリシーより前に入る。
+ */
+public final class AdaptiveRetryPolicy implements HttpPipelinePolicy {
+
+    private final AdaptiveRetryStrategy strategy;
+
+    public AdaptiveRetryPolicy(AdaptiveRetryStrategy strategy) {
+        this.strategy = strategy;
+    }
+
+    @Override
+    public Mono<HttpResponse> process(HttpPipelineCallContext context, HttpPipelineNextPolicy next) {
+        return attempt(context, next, context.getHttpRequest(), 0, Duration.ZERO);
+    }
+
+    private Mono<HttpResponse> attempt(HttpPipelineCallContext context, HttpPipelineNextPolicy next,
+                                       HttpRequest original, int tryCount, Duration previousDelay) {
+        context.setHttpRequest(original.copy());
+        return next.clone().process()
+            .map(Attempt::response)
+            .onErrorResume(error -> Mono.just(Attempt.error(error)))
+            .flatMap(result -> {
+                Duration delay = retryDelay(result, tryCount, previousDelay);
+                if (delay == null) {
+                    return result.error != null ? Mono.error(result.error) : Mono.just(result.response);
+                }
+                if (result.response != null) {
+                    result.response.close();
+                }
+                return attempt(context, next, original, tryCount + 1, delay).delaySubscription(delay);
+            });
+    }
+
+    @Override
+    public HttpResponse processSync(HttpPipelineCallContext context, HttpPipelineNextSyncPolicy next) {
+        HttpRequest original = context.getHttpRequest();
+        Duration previousDelay = Duration.ZERO;
+        for (int tryCount = 0; ; tryCount++) {
+            context.setHttpRequest(original.copy());
+            Attempt result;
+            try {
+                result = Attempt.response(next.clone().processSync());
+            } catch (RuntimeException e) {
+                result = Attempt.error(e);
+            }
+            Duration delay = retryDelay(result, tryCount, previousDelay);
+            if (delay == null) {
+                return result.returnOrThrow();
+            }
+            try {
+                TimeUnit.NANOSECONDS.sleep(delay.toNanos());
+            } catch (InterruptedException e) {
+                // 中断された場合は再試行せず、最後の結果を返す
+                Thread.currentThread().interrupt();
+                return result.returnOrThrow();
+            }
+            if (result.response != null) {
+                result.response.close();
+            }
+            previousDelay = delay;
+        }
+    }
+
+    /**
+     * 再試行する場合は待ち時間、しない場合は null
+     */
+    private Duration retryDelay(Attempt result, int tryCount, Duration previousDelay) {
+        if (tryCount >= strategy.getMaxRetries()) {
+            return null;
+        }
+        if (result.error != null) {
+            return strategy.shouldRetryException(result.error) ? strategy.nextDelay(null, previousDelay) : null;
+        }
+        if (!strategy.shouldRetry(result.response)) {
+            return null;
+        }
+        return strategy.nextDelay(RetryAfterHeaders.parse(result.response.getHeaders()), previousDelay);
+    }
+
+    @Override
+    public HttpPipelinePosition getPipelinePosition() {
+        return HttpPipelinePosition.PER_CALL;
+    }
+
+    /**
+     * 1回の試行の結果（応答または例外）
+     * 再送した試行のエラーが呼び出し元の試行の onErrorResume で再び処理されないよう、例外も値として扱う。
+     */
+    private static final class Attempt {
+        private final HttpResponse response;
+        private final Throwable error;
+
+        private Attempt(HttpResponse response, Throwable error) {
+            this.response = response;
+            this.error = error;
+        }
+
+        static Attempt response(HttpResponse response) {
+            return new Attempt(response, null);
+        }
+
+        static Attempt error(Throwable error) {
+            return new Attempt(null, error);
+        }
+
+        HttpResponse returnOrThrow() {
+            if (error instanceof RuntimeException) {
+                throw (RuntimeException) error;
+            }
+            if (error != null) {
+                throw new IllegalStateException(error);
+            }
+            return response;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.acs.email;
+
+import com.azure.core.http.HttpResponse;
+import com.azure.core.http.policy.RetryStrategy;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Retry-After を考慮した本番用リトライ戦略
+ *
+ * - 429 / 408 / 5xx をリトライ対象とする
+ * - 応答に x-ms-retry-after-ms / retry-after-ms / Retry-After があれば、ヒント + 0 〜 ヒントの半分の一様乱数だけ待つ。
+ *   ACS は 429 に必ずヒントを付けるため、ヒントどおりに待つと同じ時間窓で拒否された送信が同じ時刻に再送してしまう
+ * - ヒントが無い場合は decorrelated jitter（min(maxDelay, base 〜 前回の待ち時間 * 3 の一様乱数)）で待つ
+ * - RetryBudget で時間窓あたりのリトライ総数を制限し、過負荷時にリトライが負荷を増幅させないようにする
+ *
+ * 前回の待ち時間はリクエストごとに AdaptiveRetryPolicy が保持する（RetryStrategy.calculateRetryDelay には
+ * 前回の待ち時間も応答も渡されないため、パイプラインには toRetryPolicy のポリシーを使う）。
+ */
+public final class AdaptiveRetryStrategy implements RetryStrategy {
+
+    private static final int HTTP_STATUS_REQUEST_TIMEOUT = 408;
+    private static final int HTTP_STATUS_TOO_MANY_REQUESTS = 429;
+    private static final int HTTP_STATUS_INTERNAL_SERVER_ERROR = 500;
+    private static final int HTTP_STATUS_NOT_IMPLEMENTED = 501;
+    private static final int HTTP_STATUS_HTTP_VERSION_NOT_SUPPORTED = 505;
+
+    private static final int DEFAULT_MAX_RETRIES = 4;
+    private static final Duration DEFAULT_BASE_DELAY = Duration.ofMillis(500);
+    private static final Duration DEFAULT_MAX_DELAY = Duration.ofSeconds(60);
+    private static final int DEFAULT_RETRIES_PER_WINDOW = 20;
+    private static final Duration DEFAULT_BUDGET_WINDOW = Duration.ofMinutes(1);
+
+    private static final AdaptiveRetryStrategy DEFAULT = new AdaptiveRetryStrategy(
+        DEFAULT_MAX_RETRIES, DEFAULT_BASE_DELAY, DEFAULT_MAX_DELAY,
+        new RetryBudget(DEFAULT_RETRIES_PER_WINDOW, DEFAULT_BUDGET_WINDOW));
+
+    private final int maxRetries;
+    private final long baseDelayNanos;
+    private final long maxDelayNanos;
+    private final RetryBudget budget;
+
+    public AdaptiveRetryStrategy(int maxRetries, Duration baseDelay, Duration maxDelay, RetryBudget budget) {
+        if (maxRetries < 0) {
+            throw new IllegalArgumentException("maxRetries は0以上を指定してください: " + maxRetries);
+        }
+        this.maxRetries = maxRetries;
+        this.baseDelayNanos = baseDelay.toNanos();
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.budget = budget;
+    }
+
+    /**
+     * プロセス全体で共有するリトライ戦略を取得
+     * リトライバジェットは全クライアントで共有する必要があるため、通常はこのインスタンスを使う
+     */
+    public static AdaptiveRetryStrategy getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * 本戦略で再試行するパイプラインポリシーを生成する（ヒントへのジッターと decorrelated jitter を適用する）
+     */
+    public AdaptiveRetryPolicy toRetryPolicy() {
+        return new AdaptiveRetryPolicy(this);
+    }
+
+    @Override
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    @Override
+    public boolean shouldRetry(HttpResponse httpResponse) {
+        int code = httpResponse.getStatusCode();
+        boolean retryable = code == HTTP_STATUS_TOO_MANY_REQUESTS
+            || code == HTTP_STATUS_REQUEST_TIMEOUT
+            || (code >= HTTP_STATUS_INTERNAL_SERVER_ERROR
+                && code != HTTP_STATUS_NOT_IMPLEMENTED
+                && code != HTTP_STATUS_HTTP_VERSION_NOT_SUPPORTED);
+
+        if (!retryable || !budget.tryAcquire()) {
+            return false;
+        }
+        SenderMetrics.getDefault().retried();
+        return true;
+    }
+
+    @Override
+    public boolean shouldRetryException(Throwable throwable) {
+        Throwable cause = throwable;
+        while (cause != null) {
+            if (cause instanceof IOException || cause instanceof UncheckedIOException
+                || cause instanceof TimeoutException) {
+                if (!budget.tryAcquire()) {
+                    return false;
+                }
+                SenderMetrics.getDefault().retried();
+                return true;
+            }
+            cause = cause.getCause();
+        }
+        return false;
+    }
+
+    /**
+     * 次の再試行までの待ち時間
+     *
+     * @param hint 応答の待ち時間のヒント（RetryAfterHeaders.parse の結果。無ければ null）
+     * @param previousDelay 同じリクエストの前回の待ち時間（初回は Duration.ZERO）
+     */
+    public Duration nextDelay(Duration hint, Duration previousDelay) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (hint != null && !hint.isZero()) {
+            // ヒントより早くは再送しない。ジッターはヒントの半分まで
+            long hintNanos = hint.toNanos();
+            return Duration.ofNanos(hintNanos + random.nextLong(hintNanos / 2 + 1));
+        }
+        // decorrelated jitter: 上限を前回の待ち時間の 3 倍にし、base からその上限までの一様乱数で待つ
+        long previous = Math.max(previousDelay.toNanos(), baseDelayNanos);
+        long upper = previous > maxDelayNanos / 3 ? maxDelayNanos : previous * 3;
+        if (upper <= baseDelayNanos) {
+            return Duration.ofNanos(upper);
+        }
+        return Duration.ofNanos(random.nextLong(baseDelayNanos, upper + 1));
+    }
+
+    /**
+     * SDK の RetryPolicy に本戦略を渡した場合の待ち時間（前回の待ち時間が分からないため、試行回数から決める）
+     * パイプラインでは toRetryPolicy のポリシーを使い、nextDelay で待ち時間を決める。
+     */
+    @Override
+    public Duration calculateRetryDelay(int retryAttempts) {
+        // 上限を 3 倍ずつ広げ、base からその上限までの一様乱数で待つ
+        long upper = baseDelayNanos;
+        for (int i = 0; i < retryAttempts && upper < maxDelayNanos; i++) {
+            upper *= 3;
+        }
+        upper = Math.min(upper, maxDelayNanos);
+        if (upper <= baseDelayNanos) {
+            return Duration.ofNanos(upper);
+        }
+        return Duration.ofNanos(ThreadLocalRandom.current().nextLong(baseDelayNanos, upper + 1));
+    }
+
+    /**
+     * 現在の時間窓で残っているリトライ回数
+     */
+    public int remainingBudget() {
+        return budget.remaining();
+    }
+}
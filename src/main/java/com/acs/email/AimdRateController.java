@@ -0,0 +1,157 @@
+package com.acs.email;
+
+import com.azure.core.exception.HttpResponseException;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * AIMD（加算増加・乗算減少）で持続可能な送信レートを探るコントローラー
+ *
+ * - 成功: 1分ぶん成功し続けるとレートが additiveStep 通/分 だけ上がるよう、成功1件ごとに additiveStep / 現在レート を加える
+ * - 429: レートを decreaseFactor 倍に下げる。ただし直前の減少から holdTime 以内の 429 は、減少前に送った分の
+ *   応答とみなして無視する（1回の超過で何段も下げないため）
+ * - 学習したレート: 429 を受け取ったレートの移動平均を上限とみなし、AIMD の鋸歯状の平均
+ *   （上限 × (1 + decreaseFactor) / 2）を持続可能なレートとする。終了時点のレートは直前の 429 で下げた直後の
+ *   こともあるため使わない
+ *
+ * レートは [minRate, maxRate] に収める。スレッドセーフ（送信1件ごとの呼び出し頻度なので synchronized で十分）。
+ */
+public final class AimdRateController {
+
+    private static final int HTTP_STATUS_TOO_MANY_REQUESTS = 429;
+
+    public static final double DEFAULT_ADDITIVE_STEP = 1.0;
+    public static final double DEFAULT_DECREASE_FACTOR = 0.5;
+    public static final double DEFAULT_MIN_RATE = 1.0;
+    public static final double DEFAULT_MAX_RATE = 100_000.0;
+
+    // 429 を受け取ったレートの指数移動平均の重み（新しい値の割合）
+    private static final double THROTTLED_RATE_SMOOTHING = 0.3;
+
+    private final double additiveStep;
+    private final double decreaseFactor;
+    private final double minRate;
+    private final double maxRate;
+    private final long holdNanos;
+    private final LongSupplier clock;
+
+    private double ratePerMinute;
+    private double throttledRate = Double.NaN;
+    private double smoothedThrottledRate = Double.NaN;
+    private long lastDecreaseNanos;
+    private boolean decreased;
+    private long throttledCount;
+
+    public AimdRateController(double initialRatePerMinute) {
+        this(initialRatePerMinute, DEFAULT_ADDITIVE_STEP, DEFAULT_DECREASE_FACTOR,
+            DEFAULT_MIN_RATE, DEFAULT_MAX_RATE, Duration.ofSeconds(10), System::nanoTime);
+    }
+
+    AimdRateController(double initialRatePerMinute, double additiveStep, double decreaseFactor,
+                       double minRate, double maxRate, Duration holdTime, LongSupplier clock) {
+        if (additiveStep <= 0) {
+            throw new IllegalArgumentException("additiveStep は正の値を指定してください: " + additiveStep);
+        }
+        if (decreaseFactor <= 0 || decreaseFactor >= 1) {
+            throw new IllegalArgumentException("decreaseFactor は 0 より大きく 1 未満を指定してください: " + decreaseFactor);
+        }
+        if (minRate <= 0 || maxRate < minRate) {
+            throw new IllegalArgumentException("レートの範囲が不正です: " + minRate + " - " + maxRate);
+        }
+        this.additiveStep = additiveStep;
+        this.decreaseFactor = decreaseFactor;
+        this.minRate = minRate;
+        this.maxRate = maxRate;
+        this.holdNanos = holdTime.toNanos();
+        this.clock = clock;
+        this.ratePerMinute = clamp(initialRatePerMinute);
+    }
+
+    /**
+     * 送信が受け付けられた
+     */
+    public synchronized void onSuccess() {
+        ratePerMinute = clamp(ratePerMinute + additiveStep / ratePerMinute);
+    }
+
+    /**
+     * 429 を受け取った
+     *
+     * @return レートを下げた場合 true（保持時間内で無視した場合 false）
+     */
+    public synchronized boolean onThrottled() {
+        throttledCount++;
+        long now = clock.getAsLong();
+        if (decreased && now - lastDecreaseNanos < holdNanos) {
+            return false;
+        }
+        throttledRate = ratePerMinute;
+        smoothedThrottledRate = Double.isNaN(smoothedThrottledRate) ? ratePerMinute
+            : smoothedThrottledRate + THROTTLED_RATE_SMOOTHING * (ratePerMinute - smoothedThrottledRate);
+        ratePerMinute = clamp(ratePerMinute * decreaseFactor);
+        lastDecreaseNanos = now;
+        decreased = true;
+        return true;
+    }
+
+    /**
+     * 現在のレート（通/分）
+     */
+    public synchronized double getRatePerMinute() {
+        return ratePerMinute;
+    }
+
+    /**
+     * 現在のレートでの送信間隔
+     */
+    public synchronized Duration getInterval() {
+        return Duration.ofNanos((long) (TimeUnit.MINUTES.toNanos(1) / ratePerMinute));
+    }
+
+    /**
+     * 直近に 429 を受け取ったときのレート（通/分）。まだ受け取っていなければ NaN
+     */
+    public synchronized double getThrottledRate() {
+        return throttledRate;
+    }
+
+    /**
+     * 保存・次回の送信に使うレート（通/分）
+     * 429 を受け取っていれば、その時のレートの移動平均 × (1 + decreaseFactor) / 2。受け取っていなければ現在のレート
+     */
+    public synchronized double getLearnedRate() {
+        if (Double.isNaN(smoothedThrottledRate)) {
+            return ratePerMinute;
+        }
+        return clamp(smoothedThrottledRate * (1 + decreaseFactor) / 2);
+    }
+
+    public synchronized long getThrottledCount() {
+        return throttledCount;
+    }
+
+    /**
+     * 例外（原因を含む）が 429 Too Many Requests によるものか
+     */
+    public static boolean isThrottled(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof HttpResponseException) {
+                HttpResponseException exception = (HttpResponseException) cause;
+                return exception.getResponse() != null
+                    && exception.getResponse().getStatusCode() == HTTP_STATUS_TOO_MANY_REQUESTS;
+            }
+        }
+        return false;
+    }
+
+    private double clamp(double rate) {
+        return Math.max(minRate, Math.min(maxRate, rate));
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%.1f/min", ratePerMinute);
+    }
+}
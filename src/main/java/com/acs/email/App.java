@@ -1,15 +1,16 @@
 package com.acs.email;
 
 import com.azure.communication.email.EmailClient;
-import com.azure.communication.email.EmailClientBuilder;
 import com.azure.communication.email.models.EmailMessage;
 import com.azure.communication.email.models.EmailSendResult;
 import com.azure.communication.email.models.EmailSendStatus;
+import com.azure.core.models.ResponseError;
 import com.azure.core.util.polling.LongRunningOperationStatus;
 import com.azure.core.util.polling.PollResponse;
 import com.azure.core.util.polling.SyncPoller;
 
-import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Scanner;
 
 /**
@@ -29,6 +30,12 @@ public class App {
     private static final String CONNECTION_STRING = System.getenv("ACS_CONNECTION_STRING");
     private static final String SENDER_ADDRESS = System.getenv("ACS_SENDER_ADDRESS");
 
+    private static final EmailTemplate HTML_BODY_TEMPLATE =
+        EmailTemplate.html("<html><body><h1>{{subject}}</h1><p>{{body}}</p></body></html>");
+
+    // 送信枠の取得・受付・最初のポーリング・最終ステータスの各フェーズの所要時間
+    private static final SendLatencyRecorder LATENCY = new SendLatencyRecorder();
+
     public static void main(String[] args) {
         System.out.println("=================================================");
         System.out.println("ACS メール送信テストアプリケーション");
@@ -48,6 +55,9 @@ public class App {
             return;
         }
 
+        // 入力待ちの間にクライアントを事前生成しておく
+        EmailClientRegistry.getDefault().warmUp(CONNECTION_STRING, SENDER_ADDRESS);
+
         Scanner scanner = new Scanner(System.in);
 
         System.out.print("送信先メールアドレスを入力してください: ");
@@ -90,10 +100,9 @@ public class App {
         System.out.println("-------------------------------------------------\n");
 
         try {
-            // EmailClient を作成
-            EmailClient emailClient = new EmailClientBuilder()
-                .connectionString(CONNECTION_STRING)
-                .buildClient();
+            // 共有レジストリから EmailClient を取得（送信ごとに生成しない）
+            EmailClient emailClient = EmailClientRegistry.getDefault()
+                .getClient(CONNECTION_STRING, SENDER_ADDRESS);
 
             // EmailMessage を構築
             EmailMessage message = new EmailMessage()
@@ -101,40 +110,52 @@ public class App {
                 .setToRecipients(recipientAddress)
                 .setSubject(subject)
                 .setBodyPlainText(body)
-                .setBodyHtml("<html><body><h1>" + subject + "</h1><p>" + body + "</p></body></html>");
+                .setBodyHtml(toHtmlBody(subject, body));
 
-            System.out.println("メール送信リクエストを開始...\n");
+            // クォータを超えないよう送信枠を取得してから送信する
+            SendLatencyRecorder.Timer timer = LATENCY.startTimer();
+            SendRateLimiter.getDefault().acquire();
+            timer.markAcquired();
+
+            // Operation-Id を送信前に決めておく（SDK が再試行しても同じ操作として扱われる）
+            String operationId = OperationIdPolicy.newOperationId();
+            System.out.println("メール送信リクエストを開始...（Operation ID: " + operationId + "）\n");
 
             // 非同期送信操作を開始
-            SyncPoller<EmailSendResult, EmailSendResult> poller = emailClient.beginSend(message);
+            SyncPoller<EmailSendResult, EmailSendResult> poller =
+                emailClient.beginSend(message, OperationIdPolicy.context(operationId));
+            timer.markAccepted();
 
-            // ポーリングを開始して状態を監視
-            int pollCount = 0;
+            // 受付直後の状態を1回だけ取得する（operationId を得るため）
             PollResponse<EmailSendResult> pollResponse = poller.poll();
-            printPollResponse(pollResponse, pollCount);
-            while (pollResponse.getStatus() == LongRunningOperationStatus.IN_PROGRESS
-                   || pollResponse.getStatus() == LongRunningOperationStatus.NOT_STARTED) {
-                pollCount++;
-                printPollResponse(pollResponse, pollCount);
-
-                // 短い待機
-                try {
-                    Thread.sleep(500);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
-                }
-                pollResponse = poller.poll();
+            timer.markFirstPoll();
+            printPollResponse(pollResponse, 0);
+
+            EmailSendResult initialResult = pollResponse.getValue();
+            if (pollResponse.getStatus().isComplete() || initialResult == null) {
+                timer.markCompleted();
+                System.out.println("\n=================================================");
+                System.out.println("【最終結果】");
+                System.out.println("=================================================");
+                printPollResponse(pollResponse, -1);
+                printEmailSendResultDetails(initialResult);
+                printLatency();
+                return;
             }
 
-            // 最終結果を取得
-            PollResponse<EmailSendResult> finalResponse = poller.waitForCompletion(Duration.ofMinutes(2));
+            // 以降のポーリングは共有スケジューラに任せる（1通ごとにスレッドを sleep させない）
+            System.out.println("ポーリングをスケジューラに登録しました（指数バックオフ / Retry-After 準拠）\n");
+            EmailOperationStatus finalStatus = EmailPollScheduler.getDefault()
+                .track(EmailClientRegistry.getDefault().getStatusClient(CONNECTION_STRING), initialResult.getId())
+                .get();
+            timer.markCompleted();
 
             System.out.println("\n=================================================");
             System.out.println("【最終結果】");
             System.out.println("=================================================");
-            printPollResponse(finalResponse, -1);
-            printEmailSendResultDetails(finalResponse.getValue());
+            printOperationStatus(finalStatus);
+            printEmailSendResultDetails(finalStatus.getOperationId(), finalStatus.getStatus(), finalStatus.getError());
+            printLatency();
 
         } catch (Exception e) {
             System.err.println("\n【例外発生】");
@@ -145,6 +166,24 @@ public class App {
         }
     }
 
+    /**
+     * フェーズ別の所要時間を出力する
+     */
+    private static void printLatency() {
+        System.out.println("\n[フェーズ別の所要時間]");
+        LATENCY.printSummary(System.out);
+    }
+
+    /**
+     * 件名と本文から HTML 本文を組み立てる（件名・本文は HTML エスケープする）
+     */
+    public static String toHtmlBody(String subject, String body) {
+        Map<String, String> variables = new HashMap<>(4);
+        variables.put("subject", subject);
+        variables.put("body", body);
+        return HTML_BODY_TEMPLATE.render(variables);
+    }
+
     /**
      * PollResponse の内容を出力
      */
@@ -172,6 +211,21 @@ public class App {
         System.out.println();
     }
 
+    /**
+     * ステータス取得 API の応答内容を出力
+     */
+    private static void printOperationStatus(EmailOperationStatus operationStatus) {
+        System.out.println("  EmailSendResult.id: " + operationStatus.getOperationId());
+        System.out.println("  EmailSendResult.status: " + operationStatus.getStatus());
+
+        // エラー情報があれば出力
+        if (operationStatus.getError() != null) {
+            System.out.println("  EmailSendResult.error.code: " + operationStatus.getError().getCode());
+            System.out.println("  EmailSendResult.error.message: " + operationStatus.getError().getMessage());
+        }
+        System.out.println();
+    }
+
     /**
      * EmailSendResult の詳細を出力
      */
@@ -180,14 +234,19 @@ public class App {
             System.out.println("EmailSendResult: null");
             return;
         }
+        printEmailSendResultDetails(result.getId(), result.getStatus(), result.getError());
+    }
 
+    /**
+     * 送信結果（Operation ID / EmailSendStatus / エラー）の詳細を出力
+     */
+    private static void printEmailSendResultDetails(String operationId, EmailSendStatus status, ResponseError error) {
         System.out.println("\n【EmailSendResult 詳細】");
         System.out.println("-------------------------------------------------");
-        System.out.println("Operation ID: " + result.getId());
-        System.out.println("Status: " + result.getStatus());
+        System.out.println("Operation ID: " + operationId);
+        System.out.println("Status: " + status);
 
         // EmailSendStatus の説明を出力
-        EmailSendStatus status = result.getStatus();
         System.out.println("\n【EmailSendStatus の解説】");
         if (status == EmailSendStatus.NOT_STARTED) {
             System.out.println("  NOT_STARTED: 操作がまだ開始されていません");
@@ -205,11 +264,11 @@ public class App {
         }
 
         // エラー情報の詳細
-        if (result.getError() != null) {
+        if (error != null) {
             System.out.println("\n【エラー詳細】");
             System.out.println("-------------------------------------------------");
-            System.out.println("Error Code: " + result.getError().getCode());
-            System.out.println("Error Message: " + result.getError().getMessage());
+            System.out.println("Error Code: " + error.getCode());
+            System.out.println("Error Message: " + error.getMessage());
         }
 
         System.out.println("\n=================================================");
@@ -1,23 +1,20 @@
 package com.acs.email;
 
 import com.azure.communication.email.EmailAsyncClient;
-import com.azure.communication.email.EmailClientBuilder;
 import com.azure.communication.email.models.EmailMessage;
 import com.azure.communication.email.models.EmailSendResult;
 import com.azure.communication.email.models.EmailSendStatus;
-import com.azure.core.util.polling.LongRunningOperationStatus;
-import com.azure.core.util.polling.PollerFlux;
+import com.azure.core.util.polling.AsyncPollResponse;
+import reactor.core.publisher.Flux;
 
 import java.time.Duration;
 import java.util.Scanner;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * ACS メール送信コンソールアプリケーション（非同期版）
- * EmailAsyncClient と PollerFlux を使用した非同期メール送信
+ * EmailAsyncClient と PollerFlux を使用した非同期メール送信（EmailSendPipeline 経由）
  *
  * EmailSendStatus の値:
  * - NOT_STARTED: 現時点ではサービスから返されない
@@ -35,6 +32,9 @@ public class AsyncApp {
     // メインスレッドを待機させる時間
     private static final Duration MAIN_THREAD_WAIT_TIME = Duration.ofSeconds(60);
 
+    // コールバックからの出力は書き込みスレッドに任せる（ACS_LOG_FORMAT=json で JSON Lines）
+    private static final AsyncLog LOG = AsyncLog.getDefault();
+
     public static void main(String[] args) {
         System.out.println("=================================================");
         System.out.println("ACS メール送信テストアプリケーション（非同期版）");
@@ -54,6 +54,9 @@ public class AsyncApp {
             return;
         }
 
+        // 入力待ちの間にクライアントを事前生成しておく
+        EmailClientRegistry.getDefault().warmUp(CONNECTION_STRING, SENDER_ADDRESS);
+
         Scanner scanner = new Scanner(System.in);
 
         System.out.print("送信先メールアドレスを入力してください: ");
@@ -95,17 +98,10 @@ public class AsyncApp {
         System.out.println("件名: " + subject);
         System.out.println("-------------------------------------------------\n");
 
-        // 完了を待つためのラッチ
-        CountDownLatch latch = new CountDownLatch(1);
-
-        // ExecutorService でポーリングを別スレッドで実行
-        ExecutorService executorService = Executors.newSingleThreadExecutor();
-
         try {
-            // EmailAsyncClient を作成
-            EmailAsyncClient emailAsyncClient = new EmailClientBuilder()
-                .connectionString(CONNECTION_STRING)
-                .buildAsyncClient();
+            // 共有レジストリから EmailAsyncClient を取得（送信ごとに生成しない）
+            EmailAsyncClient emailAsyncClient = EmailClientRegistry.getDefault()
+                .getAsyncClient(CONNECTION_STRING, SENDER_ADDRESS);
 
             // EmailMessage を構築
             EmailMessage emailMessage = new EmailMessage()
@@ -113,139 +109,145 @@ public class AsyncApp {
                 .setToRecipients(recipientAddress)
                 .setSubject(subject)
                 .setBodyPlainText(body)
-                .setBodyHtml("<html><body><h1>" + subject + "</h1><p>" + body + "</p></body></html>");
+                .setBodyHtml(App.toHtmlBody(subject, body));
 
-            System.out.println("メール送信リクエストを開始（非同期）...\n");
+            // 送信パイプライン（送信枠の予約・タイムアウトはパイプライン内で行う）
+            SendLatencyRecorder latency = new SendLatencyRecorder();
+            EmailSendPipeline pipeline = new EmailSendPipeline(emailAsyncClient, SendRateLimiter.getDefault(),
+                1, MAIN_THREAD_WAIT_TIME, latency);
 
-            // 非同期送信操作を開始
-            PollerFlux<EmailSendResult, EmailSendResult> poller = emailAsyncClient.beginSend(emailMessage);
+            System.out.println("メール送信リクエストを開始（非同期）...\n");
 
             // ポーリング回数のカウンター
-            final int[] pollCount = {0};
-
-            executorService.submit(() -> {
-                // PollerFlux を購読して状態を監視
-                poller.subscribe(
-                    response -> {
-                        // 各ポーリング応答を処理
-                        pollCount[0]++;
-                        System.out.println("[ポーリング #" + pollCount[0] + "] (非同期)");
-                        System.out.println("  LongRunningOperationStatus: " + response.getStatus());
-
-                        EmailSendResult result = response.getValue();
-                        if (result != null) {
-                            System.out.println("  EmailSendResult.id: " + result.getId());
-                            System.out.println("  EmailSendResult.status: " + result.getStatus());
-
-                            // エラー情報があれば出力
-                            if (result.getError() != null) {
-                                System.out.println("  EmailSendResult.error.code: " + result.getError().getCode());
-                                System.out.println("  EmailSendResult.error.message: " + result.getError().getMessage());
-                            }
-                        }
-
-                        // 完了したかチェック
-                        if (response.getStatus() == LongRunningOperationStatus.SUCCESSFULLY_COMPLETED) {
-                            System.out.println("\n=================================================");
-                            System.out.println("【最終結果】成功");
-                            System.out.println("=================================================");
-                            printEmailSendResultDetails(result);
-                            latch.countDown();
-                        } else if (response.getStatus() == LongRunningOperationStatus.FAILED) {
-                            System.out.println("\n=================================================");
-                            System.out.println("【最終結果】失敗");
-                            System.out.println("=================================================");
-                            printEmailSendResultDetails(result);
-                            latch.countDown();
-                        } else {
-                            System.out.println("  （処理中...）\n");
-                        }
-                    },
-                    error -> {
-                        // エラー発生時の処理
-                        System.err.println("\n【エラー発生】");
-                        System.err.println("エラークラス: " + error.getClass().getName());
-                        System.err.println("メッセージ: " + error.getMessage());
-                        error.printStackTrace();
-                        latch.countDown();
-                    },
-                    () -> {
-                        // 完了時の処理
-                        System.out.println("\n非同期処理が完了しました。");
-                        latch.countDown();
-                    }
-                );
-            });
-
-            // メインスレッドを待機させる
-            System.out.println("メインスレッドは非同期処理の完了を待機中...\n");
-            boolean completed = latch.await(MAIN_THREAD_WAIT_TIME.toMillis(), TimeUnit.MILLISECONDS);
+            AtomicInteger pollCount = new AtomicInteger();
 
-            if (!completed) {
-                System.err.println("警告: タイムアウトしました（" + MAIN_THREAD_WAIT_TIME.toSeconds() + "秒）");
+            // メインスレッドはパイプラインの完了を待つ（スレッドやラッチを1通ごとに用意しない）
+            System.out.println("メインスレッドは非同期処理の完了を待機中...\n");
+            EmailSendOutcome outcome = pipeline.send(Flux.just(emailMessage),
+                    response -> printPollResponse(response, pollCount.incrementAndGet()))
+                .blockLast();
+
+            if (outcome == null) {
+                LOG.warn("no_outcome").text("警告: 送信結果がありません").emit();
+            } else if (outcome.getError() instanceof TimeoutException) {
+                LOG.warn("timeout").field("timeoutSeconds", MAIN_THREAD_WAIT_TIME.toSeconds())
+                    .text("警告: タイムアウトしました（" + MAIN_THREAD_WAIT_TIME.toSeconds() + "秒）").emit();
+            } else if (outcome.getError() != null) {
+                // エラー発生時の処理
+                Throwable error = outcome.getError();
+                LOG.error("send_error").field("errorClass", error.getClass().getName())
+                    .field("message", error.getMessage())
+                    .text("\n【エラー発生】\nエラークラス: " + error.getClass().getName()
+                        + "\nメッセージ: " + error.getMessage())
+                    .emit();
+                LOG.flush();
+                error.printStackTrace();
+            } else {
+                LOG.info("result").field("succeeded", outcome.isSucceeded())
+                    .text("\n=================================================\n"
+                        + (outcome.isSucceeded() ? "【最終結果】成功" : "【最終結果】失敗")
+                        + "\n=================================================")
+                    .emit();
+                printEmailSendResultDetails(outcome.getResult());
+                // フェーズ別の所要時間は直接出力するため、先に書き出しておく
+                LOG.flush();
+                System.out.println("\n[フェーズ別の所要時間]");
+                latency.printSummary(System.out);
+                System.out.println("\n非同期処理が完了しました。");
             }
 
         } catch (Exception e) {
+            LOG.flush();
             System.err.println("\n【例外発生】");
             System.err.println("例外クラス: " + e.getClass().getName());
             System.err.println("メッセージ: " + e.getMessage());
             System.err.println("\nスタックトレース:");
             e.printStackTrace();
         } finally {
-            executorService.shutdown();
-            try {
-                if (!executorService.awaitTermination(5, TimeUnit.SECONDS)) {
-                    executorService.shutdownNow();
-                }
-            } catch (InterruptedException e) {
-                executorService.shutdownNow();
-            }
+            LOG.flush();
             System.out.println("\nメインスレッド終了。");
         }
     }
 
+    /**
+     * 各ポーリング応答を出力（Reactor のスレッドから呼ばれるため、AsyncLog に1件にまとめて渡す）
+     */
+    private static void printPollResponse(AsyncPollResponse<EmailSendResult, EmailSendResult> response, int pollCount) {
+        AsyncLog.Entry entry = LOG.info("poll").field("pollCount", pollCount)
+            .field("operationStatus", response.getStatus());
+        StringBuilder text = new StringBuilder(256);
+        text.append("[ポーリング #").append(pollCount).append("] (非同期)\n");
+        text.append("  LongRunningOperationStatus: ").append(response.getStatus());
+
+        EmailSendResult result = response.getValue();
+        if (result != null) {
+            entry.field("operationId", result.getId()).field("status", result.getStatus());
+            text.append("\n  EmailSendResult.id: ").append(result.getId());
+            text.append("\n  EmailSendResult.status: ").append(result.getStatus());
+
+            // エラー情報があれば出力
+            if (result.getError() != null) {
+                entry.field("errorCode", result.getError().getCode())
+                    .field("errorMessage", result.getError().getMessage());
+                text.append("\n  EmailSendResult.error.code: ").append(result.getError().getCode());
+                text.append("\n  EmailSendResult.error.message: ").append(result.getError().getMessage());
+            }
+        }
+
+        if (!response.getStatus().isComplete()) {
+            text.append("\n  （処理中...）\n");
+        }
+        entry.text(text.toString()).emit();
+    }
+
     /**
      * EmailSendResult の詳細を出力
      */
     private static void printEmailSendResultDetails(EmailSendResult result) {
         if (result == null) {
-            System.out.println("EmailSendResult: null");
+            LOG.info("result_details").text("EmailSendResult: null").emit();
             return;
         }
 
-        System.out.println("\n【EmailSendResult 詳細】");
-        System.out.println("-------------------------------------------------");
-        System.out.println("Operation ID: " + result.getId());
-        System.out.println("Status: " + result.getStatus());
+        AsyncLog.Entry entry = LOG.info("result_details").field("operationId", result.getId())
+            .field("status", result.getStatus());
+        StringBuilder text = new StringBuilder(512);
+        text.append("\n【EmailSendResult 詳細】\n");
+        text.append("-------------------------------------------------\n");
+        text.append("Operation ID: ").append(result.getId()).append('\n');
+        text.append("Status: ").append(result.getStatus()).append('\n');
 
         // EmailSendStatus の説明を出力
         EmailSendStatus status = result.getStatus();
-        System.out.println("\n【EmailSendStatus の解説】");
+        text.append("\n【EmailSendStatus の解説】\n");
         if (status == EmailSendStatus.NOT_STARTED) {
-            System.out.println("  NOT_STARTED: 操作がまだ開始されていません");
-            System.out.println("  ※ 現時点ではサービスから返されないステータスです");
+            text.append("  NOT_STARTED: 操作がまだ開始されていません\n");
+            text.append("  ※ 現時点ではサービスから返されないステータスです\n");
         } else if (status == EmailSendStatus.RUNNING) {
-            System.out.println("  RUNNING (IN_PROGRESS): メール送信操作が進行中です");
+            text.append("  RUNNING (IN_PROGRESS): メール送信操作が進行中です\n");
         } else if (status == EmailSendStatus.SUCCEEDED) {
-            System.out.println("  SUCCEEDED (SUCCESSFULLY_COMPLETED): メール送信が成功しました");
-            System.out.println("  メールは配信のために送信されました。");
-            System.out.println("  詳細な配信ステータスは Azure Monitor または Event Grid で確認できます。");
+            text.append("  SUCCEEDED (SUCCESSFULLY_COMPLETED): メール送信が成功しました\n");
+            text.append("  メールは配信のために送信されました。\n");
+            text.append("  詳細な配信ステータスは Azure Monitor または Event Grid で確認できます。\n");
         } else if (status == EmailSendStatus.FAILED) {
-            System.out.println("  FAILED: メール送信が失敗しました");
+            text.append("  FAILED: メール送信が失敗しました\n");
         } else if (status == EmailSendStatus.CANCELED) {
-            System.out.println("  CANCELED: メール送信がキャンセルされました");
+            text.append("  CANCELED: メール送信がキャンセルされました\n");
         }
 
         // エラー情報の詳細
         if (result.getError() != null) {
-            System.out.println("\n【エラー詳細】");
-            System.out.println("-------------------------------------------------");
-            System.out.println("Error Code: " + result.getError().getCode());
-            System.out.println("Error Message: " + result.getError().getMessage());
+            entry.field("errorCode", result.getError().getCode())
+                .field("errorMessage", result.getError().getMessage());
+            text.append("\n【エラー詳細】\n");
+            text.append("-------------------------------------------------\n");
+            text.append("Error Code: ").append(result.getError().getCode()).append('\n');
+            text.append("Error Message: ").append(result.getError().getMessage()).append('\n');
         }
 
-        System.out.println("\n=================================================");
-        System.out.println("検証完了");
-        System.out.println("=================================================");
+        text.append("\n=================================================\n");
+        text.append("検証完了\n");
+        text.append("=================================================");
+        entry.text(text.toString()).emit();
     }
 }
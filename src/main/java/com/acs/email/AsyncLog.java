@@ -0,0 +1,347 @@
+package com.acs.email;
+
+import java.io.PrintStream;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 送信スレッドをブロックしないコンソール出力
+ *
+ * System.out.println は PrintStream のロックを取るため、多数の送信スレッド（Reactor のコールバック）から
+ * 出力すると全てのスレッドがロック待ちで直列化される。本クラスは出力内容を MpscRingBuffer に入れるだけで戻り、
+ * 書き込みスレッド1本がまとめて取り出して1回の書き込みで出力する。
+ * - TEXT: 人が読む形式（従来の出力と同じ文字列）。INFO は標準出力、WARN / ERROR は標準エラー出力に書く
+ * - JSON: 1行1件の JSON（JSON Lines）。全て標準出力に書く
+ * - バッファが満杯の場合、INFO は待たずに破棄して件数を数える（close 時に出力する）。WARN / ERROR は破棄せず、
+ *   呼び出し側のスレッドで直接書き込む（行ごとの送信エラーなど、失敗の唯一の記録になる出力を失わないため。
+ *   その場合はバッファに残っている先の出力より前に出ることがある）
+ *
+ * 形式は環境変数 ACS_LOG_FORMAT（text / json、既定は text）で選ぶ。
+ * 出力の整形も書き込みスレッドで行うため、呼び出し側は Entry に値を詰めるだけで済む。
+ *
+ * 使用例: log.info("poll").field("pollCount", 1).field("status", status).text("[ポーリング #1] ...").emit();
+ */
+public final class AsyncLog implements AutoCloseable {
+
+    /**
+     * 出力形式
+     */
+    public enum Format {
+        TEXT,
+        JSON
+    }
+
+    /**
+     * ログのレベル
+     */
+    public enum Level {
+        INFO,
+        WARN,
+        ERROR
+    }
+
+    private static final int DEFAULT_CAPACITY = 16384;
+    private static final int MAX_BATCH = 1024;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final Format format;
+    private final PrintStream out;
+    private final PrintStream err;
+    private final MpscRingBuffer<Entry> buffer;
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final Thread writer;
+    private final StringBuilder outBatch = new StringBuilder(8192);
+    private final StringBuilder errBatch = new StringBuilder(1024);
+
+    private volatile boolean writerParked;
+    private volatile boolean closed;
+
+    AsyncLog(Format format, PrintStream out, PrintStream err, int capacity) {
+        this.format = format;
+        this.out = out;
+        this.err = err;
+        this.buffer = new MpscRingBuffer<>(capacity);
+        this.writer = new Thread(this::run, "async-log-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * プロセス全体で共有するログを取得（JVM 終了時に残りを書き出す）
+     */
+    public static AsyncLog getDefault() {
+        return Holder.DEFAULT;
+    }
+
+    /**
+     * 環境変数 ACS_LOG_FORMAT から出力形式を読む
+     */
+    static Format formatFromEnvironment() {
+        String value = System.getenv("ACS_LOG_FORMAT");
+        if (value == null || value.trim().isEmpty()) {
+            return Format.TEXT;
+        }
+        try {
+            return Format.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("環境変数 ACS_LOG_FORMAT は text か json を指定してください: " + value, e);
+        }
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    public Entry info(String event) {
+        return new Entry(Level.INFO, event);
+    }
+
+    public Entry warn(String event) {
+        return new Entry(Level.WARN, event);
+    }
+
+    public Entry error(String event) {
+        return new Entry(Level.ERROR, event);
+    }
+
+    /**
+     * バッファが満杯で破棄した件数（INFO のみ）
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * 呼び出し時点までに追加された出力が書き出されるまで待つ（System.out への直接の出力と順序を揃える場合など）
+     */
+    public void flush() {
+        long target = buffer.offered();
+        while (written.get() < target && writer.isAlive()) {
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    /**
+     * 残りを書き出して書き込みスレッドを止める
+     */
+    @Override
+    public void close() {
+        flush();
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        long count = dropped.get();
+        if (count > 0) {
+            err.println("[ログ] 出力が追いつかなかったため " + count + " 件を破棄しました");
+        }
+    }
+
+    private void enqueue(Entry entry) {
+        if (closed || !buffer.offer(entry)) {
+            if (entry.level == Level.INFO) {
+                dropped.incrementAndGet();
+            } else {
+                writeDirectly(entry);
+            }
+            return;
+        }
+        if (writerParked) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    /**
+     * 呼び出し側のスレッドで1件を書き込む（PrintStream.print は1回の呼び出しの中では他の出力と混ざらない）
+     */
+    private void writeDirectly(Entry entry) {
+        StringBuilder line = new StringBuilder(256);
+        if (format == Format.JSON) {
+            entry.appendJson(line);
+            out.print(line);
+            out.flush();
+        } else {
+            entry.appendText(line);
+            err.print(line);
+            err.flush();
+        }
+    }
+
+    private void run() {
+        while (true) {
+            int count = drain();
+            if (count > 0) {
+                continue;
+            }
+            if (closed) {
+                return;
+            }
+            writerParked = true;
+            // park する前にもう一度確認する（書き込み側は writerParked を見てから unpark する）
+            if (buffer.size() == 0 && !closed) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+            writerParked = false;
+        }
+    }
+
+    /**
+     * 最大 MAX_BATCH 件を取り出し、標準出力・標準エラー出力それぞれ1回の書き込みで出力する
+     */
+    private int drain() {
+        int count = 0;
+        Entry entry;
+        while (count < MAX_BATCH && (entry = buffer.poll()) != null) {
+            if (format == Format.JSON) {
+                entry.appendJson(outBatch);
+            } else {
+                entry.appendText(entry.level == Level.INFO ? outBatch : errBatch);
+            }
+            count++;
+        }
+        if (count == 0) {
+            return 0;
+        }
+        if (outBatch.length() > 0) {
+            out.print(outBatch);
+            out.flush();
+            outBatch.setLength(0);
+        }
+        if (errBatch.length() > 0) {
+            err.print(errBatch);
+            err.flush();
+            errBatch.setLength(0);
+        }
+        written.addAndGet(count);
+        return count;
+    }
+
+    static void appendJsonString(StringBuilder out, String value) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+
+    /**
+     * 1件分の出力。emit するまでは呼び出し側のスレッドだけが触り、emit 後は書き込みスレッドだけが触る
+     */
+    public final class Entry {
+        private final Level level;
+        private final String event;
+        private final long timestampMillis = System.currentTimeMillis();
+        private Object[] fields = new Object[8];
+        private int fieldCount;
+        private String text;
+
+        Entry(Level level, String event) {
+            this.level = level;
+            this.event = event;
+        }
+
+        /**
+         * JSON 形式で出力する項目（値は文字列・数値・真偽値。それ以外は toString した文字列）
+         */
+        public Entry field(String name, Object value) {
+            if (fieldCount * 2 == fields.length) {
+                fields = Arrays.copyOf(fields, fields.length * 2);
+            }
+            fields[fieldCount * 2] = name;
+            fields[fieldCount * 2 + 1] = value;
+            fieldCount++;
+            return this;
+        }
+
+        /**
+         * TEXT 形式で出力する文字列（複数行可。末尾に改行を付けて出力する）
+         * 省略した場合は event と項目を "key=value" で並べる
+         */
+        public Entry text(String text) {
+            this.text = text;
+            return this;
+        }
+
+        /**
+         * 出力を依頼する（書き出しを待たずに戻る）
+         */
+        public void emit() {
+            enqueue(this);
+        }
+
+        void appendText(StringBuilder out) {
+            if (text != null) {
+                out.append(text).append('\n');
+                return;
+            }
+            out.append(event);
+            for (int i = 0; i < fieldCount; i++) {
+                out.append(' ').append(fields[i * 2]).append('=').append(fields[i * 2 + 1]);
+            }
+            out.append('\n');
+        }
+
+        void appendJson(StringBuilder out) {
+            out.append("{\"ts\":\"").append(Instant.ofEpochMilli(timestampMillis)).append("\",\"level\":\"")
+                .append(level).append("\",\"event\":");
+            appendJsonString(out, event);
+            for (int i = 0; i < fieldCount; i++) {
+                out.append(',');
+                appendJsonString(out, (String) fields[i * 2]);
+                out.append(':');
+                Object value = fields[i * 2 + 1];
+                if (value == null) {
+                    out.append("null");
+                } else if (value instanceof Double && !Double.isFinite((Double) value)) {
+                    appendJsonString(out, value.toString());
+                } else if (value instanceof Number || value instanceof Boolean) {
+                    out.append(value);
+                } else {
+                    appendJsonString(out, value.toString());
+                }
+            }
+            out.append("}\n");
+        }
+    }
+
+    private static final class Holder {
+        private static final AsyncLog DEFAULT = new AsyncLog(formatFromEnvironment(), System.out, System.err,
+            DEFAULT_CAPACITY);
+
+        static {
+            Runtime.getRuntime().addShutdownHook(new Thread(DEFAULT::close, "async-log-shutdown"));
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package com.acs.email;
+
+import com.azure.core.util.BinaryData;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 添付ファイルの内容のキャッシュ（内容の SHA-256 をキーにした、合計バイト数で上限を決める LRU）
+ *
+ * 請求書の一斉送信のように同じ PDF を多数の宛先に送る場合、ジョブごとに Files.readAllBytes で読むと
+ * 送信待ち・送信中のメッセージの数だけ同じ内容の byte[] がヒープに載る。本クラスは
+ * - ファイルを CHUNK_SIZE ずつ読みながら SHA-256 を計算し（読み込みとハッシュの計算は1回で済む）
+ * - 同じ内容（別のパス・別名のコピーを含む）は1つの BinaryData を全てのメッセージで共有する
+ * - パス・サイズ・更新日時が同じファイルは読み直さない（更新されたファイルは読み直す）
+ * - 合計が maxBytes を超えたら、最も長く使われていない内容から捨てる（上限より大きいファイルはキャッシュしない）
+ *
+ * Base64 への変換は SDK が送信のたびに行う（EmailAttachment は元のバイト列を受け取るため、変換済みの文字列は渡せない）。
+ * キャッシュするのは変換前の内容で、変換後の文字列はリクエストの送信が終われば捨てられる。
+ *
+ * スレッドセーフ。ファイルの読み込みはロックの外で行う（同じファイルを同時に読み始めた場合は両方が読むが、
+ * キャッシュに残るのは1つ）。
+ */
+public final class AttachmentCache {
+
+    /**
+     * 1ファイルの上限（ACS の1リクエストの上限。Base64 で約 4/3 倍になるため、実際に送れるのはこれより小さい）
+     */
+    public static final long MAX_ATTACHMENT_BYTES = 10L * 1024 * 1024;
+    public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int MAX_INDEXED_FILES = 10_000;
+
+    private final long maxBytes;
+    // 内容の SHA-256 → 内容（アクセス順。合計 totalBytes が maxBytes 以下）
+    private final LinkedHashMap<Digest, Content> contents = new LinkedHashMap<>(16, 0.75f, true);
+    // ファイル（パス・サイズ・更新日時）→ 内容の SHA-256（アクセス順。MAX_INDEXED_FILES 件まで）
+    private final LinkedHashMap<FileKey, Digest> files = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<FileKey, Digest> eldest) {
+            return size() > MAX_INDEXED_FILES;
+        }
+    };
+    private long totalBytes;
+    private long hits;
+    private long reads;
+
+    /**
+     * @param maxBytes キャッシュする内容の合計バイト数の上限
+     */
+    public AttachmentCache(long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("キャッシュの上限は0以上を指定してください: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * プロセス全体で共有するキャッシュを取得（上限は環境変数 ACS_ATTACHMENT_CACHE_MB、既定 256MB）
+     */
+    public static AttachmentCache getDefault() {
+        return Holder.DEFAULT;
+    }
+
+    /**
+     * 環境変数 ACS_ATTACHMENT_CACHE_MB から上限を読む
+     */
+    static long maxBytesFromEnvironment() {
+        String value = System.getenv("ACS_ATTACHMENT_CACHE_MB");
+        if (value == null || value.trim().isEmpty()) {
+            return DEFAULT_MAX_BYTES;
+        }
+        try {
+            return Long.parseLong(value.trim()) * 1024 * 1024;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("環境変数 ACS_ATTACHMENT_CACHE_MB が数値ではありません: " + value, e);
+        }
+    }
+
+    /**
+     * ファイルの内容を取得する（キャッシュに無ければ読み込んでキャッシュする）
+     *
+     * @throws IOException ファイルを読めない場合、または読み込み中にファイルが変更された場合
+     * @throws IllegalArgumentException ファイルが MAX_ATTACHMENT_BYTES より大きい場合
+     */
+    public BinaryData load(Path path) throws IOException {
+        Path normalized = path.toAbsolutePath().normalize();
+        BasicFileAttributes attributes = Files.readAttributes(normalized, BasicFileAttributes.class);
+        if (attributes.size() > MAX_ATTACHMENT_BYTES) {
+            throw new IllegalArgumentException("添付ファイルが " + (MAX_ATTACHMENT_BYTES / 1024 / 1024)
+                + "MB を超えています: " + path + " (" + attributes.size() + " バイト)");
+        }
+        FileKey key = new FileKey(normalized, attributes.size(), attributes.lastModifiedTime().toMillis());
+
+        synchronized (this) {
+            Digest digest = files.get(key);
+            Content content = digest == null ? null : contents.get(digest);
+            if (content != null) {
+                hits++;
+                return content.data;
+            }
+        }
+
+        Content read = read(normalized, attributes.size());
+        synchronized (this) {
+            reads++;
+            files.put(key, read.digest);
+            Content existing = contents.get(read.digest);
+            if (existing != null) {
+                // 同じ内容を既に保持している（別のパスのコピー、または同時に読み込んだ）
+                return existing.data;
+            }
+            if (read.size <= maxBytes) {
+                contents.put(read.digest, read);
+                totalBytes += read.size;
+                evict();
+            }
+            return read.data;
+        }
+    }
+
+    /**
+     * 合計が上限以下になるまで、最も長く使われていない内容から捨てる
+     */
+    private void evict() {
+        Iterator<Content> eldest = contents.values().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            totalBytes -= eldest.next().size;
+            eldest.remove();
+        }
+    }
+
+    /**
+     * ファイルを CHUNK_SIZE ずつ読みながら SHA-256 を計算する
+     */
+    private static Content read(Path path, long size) throws IOException {
+        MessageDigest sha256;
+        try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 を利用できません", e);
+        }
+        byte[] bytes = new byte[(int) size];
+        try (InputStream in = Files.newInputStream(path)) {
+            int offset = 0;
+            while (offset < bytes.length) {
+                int read = in.read(bytes, offset, Math.min(CHUNK_SIZE, bytes.length - offset));
+                if (read < 0) {
+                    throw new IOException("読み込み中にファイルが短くなりました: " + path);
+                }
+                sha256.update(bytes, offset, read);
+                offset += read;
+            }
+            if (in.read() >= 0) {
+                throw new IOException("読み込み中にファイルが長くなりました: " + path);
+            }
+        }
+        return new Content(new Digest(sha256.digest()), BinaryData.fromBytes(bytes), size);
+    }
+
+    /**
+     * キャッシュしている内容の合計バイト数
+     */
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * キャッシュしている内容の数
+     */
+    public synchronized int size() {
+        return contents.size();
+    }
+
+    /**
+     * キャッシュから返した回数
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * ファイルを読み込んだ回数
+     */
+    public synchronized long getReads() {
+        return reads;
+    }
+
+    /**
+     * 内容の SHA-256（Map のキー）
+     */
+    private static final class Digest {
+        private final byte[] value;
+        private final int hash;
+
+        Digest(byte[] value) {
+            this.value = value;
+            this.hash = Arrays.hashCode(value);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Digest && Arrays.equals(value, ((Digest) other).value);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class FileKey {
+        private final Path path;
+        private final long size;
+        private final long lastModifiedMillis;
+
+        FileKey(Path path, long size, long lastModifiedMillis) {
+            this.path = path;
+            this.size = size;
+            this.lastModifiedMillis = lastModifiedMillis;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof FileKey)) {
+                return false;
+            }
+            FileKey key = (FileKey) other;
+            return path.equals(key.path) && size == key.size && lastModifiedMillis == key.lastModifiedMillis;
+        }
+
+        @Override
+        public int hashCode() {
+            return (path.hashCode() * 31 + Long.hashCode(size)) * 31 + Long.hashCode(lastModifiedMillis);
+        }
+    }
+
+    private static final class Content {
+        private final Digest digest;
+        private final BinaryData data;
+        private final long size;
+
+        Content(Digest digest, BinaryData data, long size) {
+            this.digest = digest;
+            this.data = data;
+            this.size = size;
+        }
+    }
+
+    private static final class Holder {
+        private static final AttachmentCache DEFAULT = new AttachmentCache(maxBytesFromEnvironment());
+    }
+}
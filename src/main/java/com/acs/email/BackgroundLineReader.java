@@ -0,0 +1,98 @@
+package com.acs.email;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 別スレッドで行を読み、呼び出し側がタイムアウト付きで次の行を待てるようにするリーダー
+ *
+ * BufferedReader.readLine はパイプなどで入力が途切れると戻らないため、その間は呼び出し側が何もできない。
+ * 本クラスは読み込みスレッドが行を最大 capacity 行まで先読みし、呼び出し側は await で「次の行（または入力の終わり）が
+ * 届くか、タイムアウトするまで」待つ。RecipientCoalescer の linger を過ぎた束を、次の行を待たずに送信するために使う。
+ *
+ * await / readLine は1スレッドから呼ぶ。読み込みスレッドはデーモンスレッドで、close で止める。
+ */
+final class BackgroundLineReader implements Closeable {
+
+    private static final Line END = new Line(null, null);
+
+    private final BlockingQueue<Line> queue;
+    private final Thread thread;
+    // 呼び出し側のスレッドだけが参照する（await で受け取り、readLine で返すまで保持する）
+    private Line next;
+
+    BackgroundLineReader(BufferedReader reader, int capacity, String threadName) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.thread = new Thread(() -> readAll(reader), threadName);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void readAll(BufferedReader reader) {
+        try {
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    queue.put(new Line(line, null));
+                }
+                queue.put(END);
+            } catch (IOException e) {
+                queue.put(new Line(null, e));
+            }
+        } catch (InterruptedException e) {
+            // close された
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 次の行（または入力の終わり・読み込みエラー）が届くまで、最大 timeoutNanos 待つ
+     *
+     * @return 届いていれば true（readLine がブロックせずに戻る）、タイムアウトした場合は false
+     */
+    boolean await(long timeoutNanos) throws InterruptedException {
+        if (next == null) {
+            next = queue.poll(Math.max(0L, timeoutNanos), TimeUnit.NANOSECONDS);
+        }
+        return next != null;
+    }
+
+    /**
+     * 次の行を取得する（届くまで待つ）
+     *
+     * @return 次の行。入力の終わりなら null
+     * @throws IOException 読み込みスレッドで読み込みに失敗した場合
+     */
+    String readLine() throws IOException, InterruptedException {
+        if (next == null) {
+            next = queue.take();
+        }
+        Line line = next;
+        if (line != END) {
+            next = null;
+        }
+        if (line.error != null) {
+            throw line.error;
+        }
+        return line.text;
+    }
+
+    @Override
+    public void close() {
+        thread.interrupt();
+    }
+
+    private static final class Line {
+        private final String text;
+        private final IOException error;
+
+        Line(String text, IOException error) {
+            this.text = text;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,733 @@
+package com.acs.email;
+
+import com.azure.communication.email.EmailAsyncClient;
+import com.azure.communication.email.models.EmailMessage;
+import com.azure.communication.email.models.EmailSendResult;
+import com.azure.communication.email.models.EmailSendStatus;
+import com.azure.core.util.polling.AsyncPollResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * ACS メール一括送信アプリケーション
+ *
+ * JSONL ジョブファイルを1行ずつストリーミングで読み込み、EmailAsyncClient.beginSend で送信する。
+ * ファイル全体をメモリに載せず、同時送信数（未完了の送信数）を Semaphore で上限管理するため、
+ * 数百万行のファイルでもメモリ使用量は同時送信数に比例する分だけで済む。
+ *
+ * fire-and-forget モードでは受付（最初の応答）の時点で送信完了とみなし、operationId を受け付けたリソースの名前と
+ * 一緒に OperationStore に記録して次の送信に進む。最終ステータスは OperationReconciler で後からまとめて確定する。
+ *
+ * ジャーナル（OutboxJournal）を指定すると、各行の投入・受付・最終ステータスを記録する。
+ * 途中で落ちても同じジョブファイルとジャーナルで再実行すれば、受付済みの行は再送せずに続きから送信する。
+ * ジャーナルにはジョブファイルの名前・サイズ・SHA-256 も記録し、別の（編集した）ファイルでは再開しない。
+ *
+ * 重複排除インデックス（SentOperationIndex）を指定すると、各行に「ファイル名・行番号・内容」から決まる
+ * Operation-Id を付けて送信し、同じファイル・同じ行（行番号と内容が同じ）は実行をまたいで再送しない。
+ * ID はファイル名と行番号を含めて決まるため、別のファイルや行番号がずれた行は、内容が同じでも別の送信として扱う。
+ * ジャーナルまたはインデックスを指定した場合、Operation-Id は行ごとに決定的になるため、受付の記録前に落ちた行を
+ * 再送してもサービス側で同じ操作として扱われる。
+ *
+ * 複数の ACS リソース（EmailResourcePool）を設定すると、重みに従って各行の送信先リソースを振り分ける。
+ * 受付前に 429 / 503 で拒否された行は、別のリソースで1回だけ送り直す。
+ *
+ * --coalesce を指定すると、宛先が to の1件だけで件名・本文が同じ行を RecipientCoalescer で BCC にまとめ、
+ * 1リクエストで最大 49 件の宛先に送信する（レート制限はリクエスト数で数えるため、一斉送信の実効スループットが上がる）。
+ *
+ * 1通ごとに「送信枠の取得 → 受付 → 最初のポーリング → 最終ステータス」の各フェーズの所要時間を
+ * SendLatencyRecorder に記録し、進捗と一緒に区間の値を、サマリーで全体の分布を出力する。
+ *
+ * 使用法: java BatchSender <ジョブファイル.jsonl> [同時送信数] [--fire-and-forget <記録ディレクトリ>]
+ *         [--journal <ジャーナルディレクトリ>] [--dedup <インデックスファイル>] [--coalesce <表示用Toアドレス>]
+ */
+public class BatchSender {
+
+    private static final int DEFAULT_MAX_CONCURRENCY = 16;
+
+    // 進捗を出力する間隔（行数）
+    private static final long PROGRESS_INTERVAL = 1000;
+    // 束ねる場合に読み込みスレッドが先読みする行数
+    private static final int READ_AHEAD_LINES = 1024;
+
+    private final EmailResourcePool pool;
+    private final int maxConcurrency;
+    private final Semaphore inFlight;
+    private final OperationStore operationStore;
+    private final OutboxJournal journal;
+    private final SentOperationIndex sentIndex;
+    private final RecipientCoalescer coalescer;
+    private final SendLatencyRecorder latency = new SendLatencyRecorder();
+    private final SenderMetrics metrics = SenderMetrics.getDefault();
+    private final AsyncLog log = AsyncLog.getDefault();
+
+    private final AtomicLong submittedCount = new AtomicLong();
+    private final AtomicLong acceptedCount = new AtomicLong();
+    private final AtomicLong succeededCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong skippedCount = new AtomicLong();
+    private final AtomicLong resumedCount = new AtomicLong();
+    private final AtomicLong duplicateCount = new AtomicLong();
+    private final AtomicLong reroutedCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+
+    public BatchSender(EmailAsyncClient emailAsyncClient, SendRateLimiter rateLimiter, String senderAddress,
+                       int maxConcurrency) {
+        this(emailAsyncClient, rateLimiter, senderAddress, maxConcurrency, null);
+    }
+
+    /**
+     * @param operationStore null 以外を指定すると fire-and-forget モードで送信する
+     */
+    public BatchSender(EmailAsyncClient emailAsyncClient, SendRateLimiter rateLimiter, String senderAddress,
+                       int maxConcurrency, OperationStore operationStore) {
+        this(emailAsyncClient, rateLimiter, senderAddress, maxConcurrency, operationStore, null);
+    }
+
+    /**
+     * @param operationStore null 以外を指定すると fire-and-forget モードで送信する
+     * @param journal        null 以外を指定すると進行状況を記録し、受付済みの行を再送しない
+     */
+    public BatchSender(EmailAsyncClient emailAsyncClient, SendRateLimiter rateLimiter, String senderAddress,
+                       int maxConcurrency, OperationStore operationStore, OutboxJournal journal) {
+        this(emailAsyncClient, rateLimiter, senderAddress, maxConcurrency, operationStore, journal, null);
+    }
+
+    /**
+     * @param operationStore null 以外を指定すると fire-and-forget モードで送信する
+     * @param journal        null 以外を指定すると進行状況を記録し、受付済みの行を再送しない
+     * @param sentIndex      null 以外を指定すると受付済みの Operation-Id を記録し、同じ ID の行を再送しない
+     */
+    public BatchSender(EmailAsyncClient emailAsyncClient, SendRateLimiter rateLimiter, String senderAddress,
+                       int maxConcurrency, OperationStore operationStore, OutboxJournal journal,
+                       SentOperationIndex sentIndex) {
+        this(EmailResourcePool.single(new EmailResource("#1", emailAsyncClient, senderAddress,
+                rateLimiter.getPerMinute(), rateLimiter)),
+            maxConcurrency, operationStore, journal, sentIndex);
+    }
+
+    /**
+     * @param pool           送信先リソースのプール
+     * @param operationStore null 以外を指定すると fire-and-forget モードで送信する
+     * @param journal        null 以外を指定すると進行状況を記録し、受付済みの行を再送しない
+     * @param sentIndex      null 以外を指定すると受付済みの Operation-Id を記録し、同じ ID の行を再送しない
+     */
+    public BatchSender(EmailResourcePool pool, int maxConcurrency, OperationStore operationStore,
+                       OutboxJournal journal, SentOperationIndex sentIndex) {
+        this(pool, maxConcurrency, operationStore, journal, sentIndex, null);
+    }
+
+    /**
+     * @param pool              送信先リソースのプール
+     * @param operationStore    null 以外を指定すると fire-and-forget モードで送信する
+     * @param journal           null 以外を指定すると進行状況を記録し、受付済みの行を再送しない
+     * @param sentIndex         null 以外を指定すると受付済みの Operation-Id を記録し、同じ ID の行を再送しない
+     * @param coalesceToAddress null 以外を指定すると、同じ内容の行を BCC にまとめて送信する（to にはこのアドレスを入れる）
+     */
+    public BatchSender(EmailResourcePool pool, int maxConcurrency, OperationStore operationStore,
+                       OutboxJournal journal, SentOperationIndex sentIndex, String coalesceToAddress) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("同時送信数は1以上を指定してください: " + maxConcurrency);
+        }
+        // ジャーナル・インデックスは1行 = 1通の前提で記録するため、束ねる場合は使えない
+        if (coalesceToAddress != null && (journal != null || sentIndex != null)) {
+            throw new IllegalArgumentException("BCC へのまとめ送信はジャーナル・重複排除インデックスと同時に指定できません");
+        }
+        this.pool = pool;
+        this.maxConcurrency = maxConcurrency;
+        this.inFlight = new Semaphore(maxConcurrency);
+        this.operationStore = operationStore;
+        this.journal = journal;
+        this.sentIndex = sentIndex;
+        this.coalescer = coalesceToAddress == null ? null : new RecipientCoalescer(coalesceToAddress);
+    }
+
+    public static void main(String[] args) {
+        System.out.println("=================================================");
+        System.out.println("ACS メール一括送信ツール");
+        System.out.println("=================================================\n");
+
+        // 設定の確認（ACS_CONNECTION_STRING_1 などの番号付きの設定があれば複数リソースに振り分ける）
+        EmailResourcePool pool = EmailResourcePool.fromEnvironment();
+        if (pool == null) {
+            System.err.println("エラー: 環境変数 ACS_CONNECTION_STRING / ACS_SENDER_ADDRESS が設定されていません。");
+            System.err.println("複数リソースに振り分ける場合は ACS_CONNECTION_STRING_1 / ACS_SENDER_ADDRESS_1 から連番で設定してください。");
+            return;
+        }
+
+        if (args.length < 1) {
+            System.err.println("使用法: java BatchSender <ジョブファイル.jsonl> [同時送信数] [--fire-and-forget <記録ディレクトリ>] [--journal <ジャーナルディレクトリ>] [--dedup <インデックスファイル>] [--coalesce <表示用Toアドレス>]");
+            System.err.println("例: java BatchSender requests.jsonl 16");
+            System.err.println("例: java BatchSender requests.jsonl 16 --fire-and-forget operations");
+            System.err.println("例: java BatchSender requests.jsonl 16 --journal outbox");
+            System.err.println("例: java BatchSender requests.jsonl 16 --journal outbox --dedup sent.idx");
+            System.err.println("例: java BatchSender requests.jsonl 16 --coalesce undisclosed-recipients@example.com");
+            return;
+        }
+
+        Path jobFile = Paths.get(args[0]);
+        int maxConcurrency = DEFAULT_MAX_CONCURRENCY;
+        Path storeDirectory = null;
+        Path journalDirectory = null;
+        Path indexFile = null;
+        String coalesceToAddress = null;
+        for (int i = 1; i < args.length; i++) {
+            if ("--fire-and-forget".equals(args[i]) && i + 1 < args.length) {
+                storeDirectory = Paths.get(args[++i]);
+            } else if ("--journal".equals(args[i]) && i + 1 < args.length) {
+                journalDirectory = Paths.get(args[++i]);
+            } else if ("--dedup".equals(args[i]) && i + 1 < args.length) {
+                indexFile = Paths.get(args[++i]);
+            } else if ("--coalesce".equals(args[i]) && i + 1 < args.length) {
+                coalesceToAddress = args[++i];
+            } else {
+                maxConcurrency = Integer.parseInt(args[i]);
+            }
+        }
+
+        if (coalesceToAddress != null && (journalDirectory != null || indexFile != null)) {
+            System.err.println("エラー: --coalesce は --journal / --dedup と同時に指定できません（1行 = 1通の前提で記録するため）。");
+            return;
+        }
+
+        System.out.println("ジョブファイル: " + jobFile);
+        if (pool.size() == 1) {
+            EmailResource resource = pool.getResources().get(0);
+            System.out.println("送信元: " + resource.getSenderAddress());
+            System.out.println("レート制限: " + resource.getRateLimiter());
+        } else {
+            System.out.println("送信先リソース: " + pool.size() + " 件");
+            for (EmailResource resource : pool.getResources()) {
+                System.out.println("  " + resource);
+            }
+        }
+        System.out.println("同時送信数: " + maxConcurrency);
+        if (storeDirectory != null) {
+            System.out.println("モード: fire-and-forget（記録先: " + storeDirectory + "）");
+        }
+        if (journalDirectory != null) {
+            System.out.println("ジャーナル: " + journalDirectory);
+        }
+        if (indexFile != null) {
+            System.out.println("重複排除インデックス: " + indexFile);
+        }
+        if (coalesceToAddress != null) {
+            System.out.println("BCC へのまとめ送信: 有効（to: " + coalesceToAddress + "）");
+        }
+        System.out.println("-------------------------------------------------\n");
+
+        OperationStore operationStore = null;
+        OutboxJournal journal = null;
+        SentOperationIndex sentIndex = null;
+        MetricsEndpoint metricsEndpoint;
+        try {
+            metricsEndpoint = MetricsEndpoint.startFromEnvironment();
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("エラー: メトリクスのエンドポイントを起動できません: " + e.getMessage());
+            return;
+        }
+        if (metricsEndpoint != null) {
+            System.out.println("メトリクス: " + metricsEndpoint.url() + "\n");
+        }
+        long startTime = System.currentTimeMillis();
+        try {
+            if (storeDirectory != null) {
+                operationStore = new OperationStore(storeDirectory);
+            }
+            if (journalDirectory != null) {
+                journal = new OutboxJournal(journalDirectory);
+                System.out.println("ジャーナルから復元: 受付済み " + journal.count(OutboxJournal.State.ACCEPTED)
+                    + " 件 / 確定済み " + journal.count(OutboxJournal.State.FINAL) + " 件\n");
+            }
+            if (indexFile != null) {
+                sentIndex = new SentOperationIndex(indexFile);
+                System.out.println("重複排除インデックス: 受付済み " + sentIndex.size() + " 件\n");
+            }
+            BatchSender sender = new BatchSender(pool, maxConcurrency, operationStore, journal, sentIndex,
+                coalesceToAddress);
+            sender.registerGauges();
+            sender.run(jobFile);
+            sender.printSummary(System.currentTimeMillis() - startTime);
+        } catch (IOException e) {
+            System.err.println("\n【例外発生】ファイルを読み書きできません");
+            System.err.println("メッセージ: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            System.err.println("\nエラー: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("\n中断されました。");
+        } finally {
+            if (metricsEndpoint != null) {
+                metricsEndpoint.close();
+            }
+            if (operationStore != null) {
+                try {
+                    operationStore.close();
+                } catch (IOException e) {
+                    System.err.println("記録ファイルを閉じられません: " + e.getMessage());
+                }
+            }
+            if (journal != null) {
+                try {
+                    journal.close();
+                } catch (IOException e) {
+                    System.err.println("ジャーナルを閉じられません: " + e.getMessage());
+                }
+            }
+            if (sentIndex != null) {
+                try {
+                    sentIndex.close();
+                } catch (IOException e) {
+                    System.err.println("重複排除インデックスを閉じられません: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * 送信枠の残り（リソースごと）と同時送信数の空きをゲージとして SenderMetrics に登録する
+     */
+    void registerGauges() {
+        for (EmailResource resource : pool.getResources()) {
+            metrics.registerRateLimiter(resource.getName(), resource.getRateLimiter());
+        }
+        metrics.registerGauge("acs_email_concurrency_available", "同時送信数の空き（0 なら読み込みが止まっている）",
+            null, inFlight::availablePermits);
+    }
+
+    /**
+     * ジョブファイルを最後まで送信し、全ての送信が完了するまで待機する
+     */
+    public void run(Path jobFile) throws IOException, InterruptedException {
+        if (journal != null) {
+            // 行番号で再開するため、ジャーナルと別の（編集した）ジョブファイルでは再開しない
+            journal.bindJobFile(jobFile);
+        }
+        try (BufferedReader reader = Files.newBufferedReader(jobFile, StandardCharsets.UTF_8)) {
+            run(reader, jobFile.getFileName().toString());
+        }
+    }
+
+    /**
+     * reader の行を最後まで送信し、全ての送信が完了するまで待機する
+     *
+     * @param source Operation-Id の決定に使うジョブの出所（ファイル名）
+     */
+    void run(BufferedReader reader, String source) throws IOException, InterruptedException {
+        boolean deterministicIds = journal != null || sentIndex != null;
+        // 束ねる場合は別スレッドで読み、次の行を待つ間に linger を過ぎた束を送信する
+        try (BackgroundLineReader background = coalescer == null ? null
+                 : new BackgroundLineReader(reader, READ_AHEAD_LINES, "job-reader")) {
+            String line;
+            long lineNumber = 0;
+            while ((line = nextLine(reader, background)) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                // 前回の実行で受付済みの行は再送しない
+                if (journal != null && journal.isAccepted(jobKey(lineNumber))) {
+                    resumedCount.incrementAndGet();
+                    continue;
+                }
+                String operationId = deterministicIds
+                    ? OperationIdPolicy.forJob(source, lineNumber, line)
+                    : OperationIdPolicy.newOperationId();
+                // 前回までの実行で同じファイルの同じ行が受付済みなら再送しない
+                if (sentIndex != null && sentIndex.contains(operationId)) {
+                    duplicateCount.incrementAndGet();
+                    continue;
+                }
+
+                EmailJob job;
+                try {
+                    // 添付ファイルの内容は読み込みスレッドで取得してジョブに持たせる（送信の経路ではファイルに触れない）
+                    job = EmailJob.fromJson(line).resolveAttachments(AttachmentCache.getDefault());
+                } catch (IOException | RuntimeException e) {
+                    skippedCount.incrementAndGet();
+                    logLine("parse_error", lineNumber, "解析エラーのためスキップ", e.getMessage());
+                    continue;
+                }
+
+                if (coalescer != null && RecipientCoalescer.isCoalescable(job)) {
+                    for (RecipientCoalescer.Batch batch : coalescer.add(lineNumber, job)) {
+                        send(batch);
+                    }
+                } else {
+                    send(new Lines(lineNumber), operationId, job);
+                }
+
+                if (lineNumber % PROGRESS_INTERVAL == 0) {
+                    System.out.println("進捗: " + lineNumber + " 行読み込み / 成功 " + succeededCount.get()
+                        + " 件 / 失敗 " + failedCount.get() + " 件");
+                    latency.printInterval(System.out);
+                }
+            }
+        }
+        if (coalescer != null) {
+            for (RecipientCoalescer.Batch batch : coalescer.drainAll()) {
+                send(batch);
+            }
+        }
+
+        // 全ての許可が戻るまで待つ = 全送信の完了
+        inFlight.acquire(maxConcurrency);
+        inFlight.release(maxConcurrency);
+        if (journal != null) {
+            journal.sync();
+        }
+    }
+
+    /**
+     * 次の行を読む（入力の終わりなら null）
+     * 束ねている場合は、次の行が届くまでの間に linger を過ぎた束を送信する（入力が途切れても束を待たせない）。
+     */
+    private String nextLine(BufferedReader reader, BackgroundLineReader background)
+        throws IOException, InterruptedException {
+        if (background == null) {
+            return reader.readLine();
+        }
+        while (!background.await(coalescer.nanosUntilNextExpiry())) {
+            for (RecipientCoalescer.Batch batch : coalescer.drainExpired()) {
+                send(batch);
+            }
+        }
+        return background.readLine();
+    }
+
+    /**
+     * BCC にまとめた束を1通として送信する
+     */
+    private void send(RecipientCoalescer.Batch batch) throws IOException, InterruptedException {
+        coalescedCount.addAndGet(batch.size() - 1);
+        send(new Lines(batch.getLineNumbers()), OperationIdPolicy.newOperationId(), batch.toJob());
+    }
+
+    /**
+     * 同時送信数と送信枠を取得してから送信する（取得できるまで読み込みスレッドをブロックする）
+     */
+    private void send(Lines lines, String operationId, EmailJob job) throws IOException, InterruptedException {
+        SendLatencyRecorder.Timer timer = latency.startTimer();
+        // 同時送信数の上限に達している場合はここで待機する（読み込みも止まる）
+        inFlight.acquire();
+        // クォータを超えないよう、送信枠を取得できたリソースに送信する
+        EmailResource resource;
+        try {
+            resource = pool.acquire();
+        } catch (InterruptedException e) {
+            inFlight.release();
+            throw e;
+        }
+        if (journal != null) {
+            try {
+                journal.recordEnqueued(lines.jobKey());
+            } catch (IOException e) {
+                inFlight.release();
+                throw e;
+            }
+        }
+        timer.markAcquired();
+        submit(lines, operationId, job, resource, timer);
+    }
+
+    private void submit(Lines lines, String operationId, EmailJob job, EmailResource resource,
+                        SendLatencyRecorder.Timer timer) {
+        submittedCount.incrementAndGet();
+        metrics.sendStarted();
+        if (operationStore != null) {
+            submitFireAndForget(lines, operationId, job, resource, timer);
+            return;
+        }
+        try {
+            responsesWithFailover(lines, operationId, job, resource, timer, new AtomicReference<>())
+                .last()
+                .doFinally(signal -> inFlight.release())
+                .subscribe(
+                    response -> {
+                        timer.markCompleted();
+                        onResult(lines, response.getValue());
+                    },
+                    error -> {
+                        failedCount.addAndGet(lines.count());
+                        metrics.sendFailed();
+                        logLine("send_error", lines, "送信エラー", error.getMessage());
+                    });
+        } catch (RuntimeException e) {
+            inFlight.release();
+            failedCount.addAndGet(lines.count());
+            metrics.sendFailed();
+            logLine("send_error", lines, "送信エラー", e.getMessage());
+        }
+    }
+
+    /**
+     * 最初の応答（受付）で operationId を受け付けたリソースと一緒に記録し、完了を待たずに許可を返す
+     */
+    private void submitFireAndForget(Lines lines, String operationId, EmailJob job, EmailResource resource,
+                                     SendLatencyRecorder.Timer timer) {
+        AtomicReference<EmailResource> acceptedBy = new AtomicReference<>();
+        try {
+            responsesWithFailover(lines, operationId, job, resource, timer, acceptedBy)
+                .next()
+                .doFinally(signal -> inFlight.release())
+                .subscribe(
+                    response -> onAccepted(lines, acceptedBy.get(), response.getValue()),
+                    error -> {
+                        failedCount.addAndGet(lines.count());
+                        metrics.sendFailed();
+                        logLine("send_error", lines, "送信エラー", error.getMessage());
+                    });
+        } catch (RuntimeException e) {
+            inFlight.release();
+            failedCount.addAndGet(lines.count());
+            metrics.sendFailed();
+            logLine("send_error", lines, "送信エラー", e.getMessage());
+        }
+    }
+
+    /**
+     * resource に送信したポーリング応答のストリーム
+     * 受付前に 429 / 503 で拒否された場合は、別のリソースで1回だけ送り直す（受付前なので二重送信にならない）。
+     * 受付後のエラー（ステータス取得の失敗など）は送り直さない。
+     *
+     * @param acceptedBy 最初の応答を返したリソース（送り直した場合は送り直し先）を設定する
+     */
+    private Flux<AsyncPollResponse<EmailSendResult, EmailSendResult>> responsesWithFailover(
+            Lines lines, String operationId, EmailJob job, EmailResource resource,
+            SendLatencyRecorder.Timer timer, AtomicReference<EmailResource> acceptedBy) {
+        return responses(lines, operationId, job, resource, timer)
+            .doOnNext(response -> acceptedBy.compareAndSet(null, resource))
+            .onErrorResume(error -> {
+                if (acceptedBy.get() != null || !EmailResource.isRejected(error)) {
+                    return Flux.error(error);
+                }
+                EmailResource alternative = pool.alternativeTo(resource);
+                if (alternative == null) {
+                    return Flux.error(error);
+                }
+                reroutedCount.incrementAndGet();
+                metrics.rerouted();
+                lines.addTo(log.warn("rerouted")).field("from", resource.getName())
+                    .field("to", alternative.getName()).field("detail", error.getMessage())
+                    .text("[" + lines + "行目] " + resource.getName() + " で拒否されたため "
+                        + alternative.getName() + " で送り直します: " + error.getMessage())
+                    .emit();
+                Flux<AsyncPollResponse<EmailSendResult, EmailSendResult>> retry =
+                    Flux.defer(() -> responses(lines, operationId, job, alternative, timer))
+                        .doOnNext(response -> acceptedBy.compareAndSet(null, alternative));
+                Duration wait = alternative.getRateLimiter().reserve();
+                return wait.isZero() ? retry : Mono.delay(wait).thenMany(retry);
+            });
+    }
+
+    /**
+     * Operation-Id を付けたポーリング応答のストリーム
+     * 最初の応答でリソースの成功を、エラーで失敗を記録する（連続して失敗したリソースは一時的に振り分け対象から外れる）。
+     * 1番目の応答（受付）と2番目の応答（最初のポーリング）の時刻を timer に記録する。
+     * ジャーナル・インデックスがあれば、最初に operationId が分かった時点で受付を記録する
+     */
+    private Flux<AsyncPollResponse<EmailSendResult, EmailSendResult>> responses(Lines lines, String operationId,
+                                                                               EmailJob job, EmailResource resource,
+                                                                               SendLatencyRecorder.Timer timer) {
+        EmailMessage message = job.toEmailMessage(resource.getSenderAddress());
+        AtomicInteger responseIndex = new AtomicInteger();
+        Flux<AsyncPollResponse<EmailSendResult, EmailSendResult>> responses = resource.getAsyncClient()
+            .beginSend(message)
+            .contextWrite(context -> context.put(OperationIdPolicy.CONTEXT_KEY, operationId))
+            .doOnNext(response -> {
+                int index = responseIndex.getAndIncrement();
+                timer.markResponse(index);
+                if (index == 0) {
+                    resource.recordSuccess();
+                }
+            })
+            .doOnError(error -> {
+                if (resource.recordFailure()) {
+                    log.warn("resource_unavailable").field("resource", resource.getName())
+                        .text("リソース " + resource.getName() + " で失敗が続いたため、一時的に振り分け対象から外します")
+                        .emit();
+                }
+            });
+        if (journal == null && sentIndex == null) {
+            return responses;
+        }
+        return responses.doOnNext(response -> {
+            EmailSendResult result = response.getValue();
+            if (result == null || result.getId() == null) {
+                return;
+            }
+            try {
+                if (journal != null) {
+                    journal.recordAccepted(lines.jobKey(), result.getId());
+                }
+                if (sentIndex != null) {
+                    sentIndex.add(operationId);
+                }
+            } catch (IOException e) {
+                logLine("record_error", lines, "受付の記録に失敗しました", e.getMessage());
+            }
+        });
+    }
+
+    private void onAccepted(Lines lines, EmailResource resource, EmailSendResult result) {
+        if (result == null || result.getId() == null) {
+            failedCount.addAndGet(lines.count());
+            metrics.sendFailed();
+            logLine("send_error", lines, "受付応答に operationId がありません", null);
+            return;
+        }
+        try {
+            operationStore.recordAccepted(result.getId(), resource.getName(), lines.jobKey());
+            acceptedCount.addAndGet(lines.count());
+            metrics.sendDetached();
+        } catch (IOException e) {
+            failedCount.addAndGet(lines.count());
+            metrics.sendFailed();
+            logLine("record_error", lines, "operationId の記録に失敗しました", e.getMessage());
+        }
+    }
+
+    private void onResult(Lines lines, EmailSendResult result) {
+        metrics.sendCompleted(result == null ? null : result.getStatus());
+        if (journal != null && result != null && result.getStatus() != null) {
+            try {
+                journal.recordFinal(lines.jobKey(), result.getStatus(),
+                    result.getError() == null ? null : result.getError().getCode());
+            } catch (IOException e) {
+                logLine("record_error", lines, "ジャーナルへの記録に失敗しました", e.getMessage());
+            }
+        }
+
+        if (result != null && result.getStatus() == EmailSendStatus.SUCCEEDED) {
+            succeededCount.addAndGet(lines.count());
+            return;
+        }
+
+        failedCount.addAndGet(lines.count());
+        if (result == null) {
+            logLine("send_failed", lines, "送信失敗", "EmailSendResult が null です");
+        } else if (result.getError() != null) {
+            lines.addTo(log.error("send_failed")).field("status", result.getStatus())
+                .field("errorCode", result.getError().getCode()).field("detail", result.getError().getMessage())
+                .text("[" + lines + "行目] 送信失敗: " + result.getStatus()
+                    + " (" + result.getError().getCode() + ": " + result.getError().getMessage() + ")")
+                .emit();
+        } else {
+            lines.addTo(log.error("send_failed")).field("status", result.getStatus())
+                .text("[" + lines + "行目] 送信失敗: " + result.getStatus())
+                .emit();
+        }
+    }
+
+    /**
+     * 行ごとのエラーを AsyncLog に出力する（TEXT 形式では "[n行目] 説明: 詳細"）
+     */
+    private void logLine(String event, long lineNumber, String description, String detail) {
+        logLine(event, new Lines(lineNumber), description, detail);
+    }
+
+    private void logLine(String event, Lines lines, String description, String detail) {
+        lines.addTo(log.error(event)).field("detail", detail)
+            .text("[" + lines + "行目] " + description + (detail == null ? "" : ": " + detail))
+            .emit();
+    }
+
+    private static String jobKey(long lineNumber) {
+        return "line:" + lineNumber;
+    }
+
+    /**
+     * 1リクエストで送信する行（BCC にまとめた束では複数行）
+     * エラー・受付の記録には全ての行番号を載せ、成功・失敗・受付の件数は行数で数える
+     */
+    private static final class Lines {
+        private final long[] numbers;
+
+        Lines(long... numbers) {
+            this.numbers = numbers;
+        }
+
+        int count() {
+            return numbers.length;
+        }
+
+        /**
+         * ジャーナル・OperationStore に記録するキー（"line:N"、束は "line:N,M,..."）
+         */
+        String jobKey() {
+            return "line:" + this;
+        }
+
+        /**
+         * ログの項目を追加する（line は最初の行番号、束では lines に全ての行番号を載せる）
+         */
+        AsyncLog.Entry addTo(AsyncLog.Entry entry) {
+            entry.field("line", numbers[0]);
+            if (numbers.length > 1) {
+                entry.field("lines", toString());
+            }
+            return entry;
+        }
+
+        @Override
+        public String toString() {
+            if (numbers.length == 1) {
+                return Long.toString(numbers[0]);
+            }
+            StringBuilder text = new StringBuilder();
+            for (long number : numbers) {
+                if (text.length() > 0) {
+                    text.append(',');
+                }
+                text.append(number);
+            }
+            return text.toString();
+        }
+    }
+
+    private void printSummary(long totalDuration) {
+        // 行ごとのエラーを書き出してからサマリーを出力する
+        log.flush();
+        System.out.println("\n=================================================");
+        System.out.println("一括送信サマリー");
+        System.out.println("=================================================");
+        System.out.println("送信: " + submittedCount.get() + " 件");
+        if (operationStore != null) {
+            System.out.println("受付（最終ステータスは OperationReconciler で確定）: " + acceptedCount.get() + " 件");
+        }
+        System.out.println("成功: " + succeededCount.get() + " 件");
+        System.out.println("失敗: " + failedCount.get() + " 件");
+        System.out.println("スキップ（解析エラー）: " + skippedCount.get() + " 件");
+        if (journal != null) {
+            System.out.println("スキップ（前回までに受付済み）: " + resumedCount.get() + " 件");
+        }
+        if (sentIndex != null) {
+            System.out.println("スキップ（受付済みの Operation-Id）: " + duplicateCount.get() + " 件");
+        }
+        if (pool.size() > 1) {
+            System.out.println("別のリソースで送り直し: " + reroutedCount.get() + " 件");
+        }
+        if (coalescer != null) {
+            System.out.println("BCC にまとめた行（送信数に含まれない）: " + coalescedCount.get() + " 件");
+        }
+        if (log.getDroppedCount() > 0) {
+            System.out.println("ログの破棄（出力が追いつかなかった INFO。エラーは破棄しない）: " + log.getDroppedCount() + " 件");
+        }
+        System.out.println("合計処理時間: " + totalDuration + " ms (" + (totalDuration / 1000.0) + " 秒)");
+        System.out.println("-------------------------------------------------");
+        System.out.println("フェーズ別レイテンシ:");
+        latency.printSummary(System.out);
+        System.out.println("=================================================");
+    }
+}
@@ -1,15 +1,17 @@
 package com.acs.email;
 
 import com.azure.communication.email.EmailClient;
-import com.azure.communication.email.EmailClientBuilder;
 import com.azure.communication.email.models.EmailMessage;
 import com.azure.communication.email.models.EmailSendResult;
 import com.azure.core.http.HttpResponse;
+import com.azure.core.http.policy.FixedDelay;
 import com.azure.core.http.policy.RetryPolicy;
 import com.azure.core.http.policy.RetryStrategy;
 import com.azure.core.util.polling.SyncPoller;
 
+import java.io.IOException;
 import java.time.Duration;
+import java.util.concurrent.TimeUnit;
 
 /**
  * ACS メール送信レート制限検証アプリケーション
@@ -17,6 +19,9 @@ import java.time.Duration;
  * 30/min の送信制限に達して429エラーが発生することを確認するためのアプリ
  * 35件のメール送信APIを呼び出し、429エラーがどこで発生するかを確認する
  *
+ * --probe を指定すると AIMD（加算増加・乗算減少）で持続可能な送信レートを探り続け、終了時に
+ * 学習したレートをリソースごとに保存する（LearnedRateStore）。次回のプローブは保存済みのレートから開始する。
+ *
  * 参考: https://learn.microsoft.com/ja-jp/azure/communication-services/quickstarts/email/send-email-advanced/throw-exception-when-tier-limit-reached
  */
 public class CheckRateLimit {
@@ -25,6 +30,7 @@ public class CheckRateLimit {
     private static final String SENDER_ADDRESS = System.getenv("ACS_SENDER_ADDRESS");
     private static final int TOTAL_EMAILS = 35;
     private static final int HTTP_STATUS_TOO_MANY_REQUESTS = 429;
+    private static final Duration DEFAULT_PROBE_DURATION = Duration.ofMinutes(10);
 
     /**
      * カスタムリトライ戦略 - 429エラーで即座に例外をスローする
@@ -76,13 +82,31 @@ public class CheckRateLimit {
             return;
         }
 
-        // 送信先アドレスをコマンドライン引数から取得
-        String recipientAddress;
-        if (args.length > 0) {
-            recipientAddress = args[0];
-        } else {
-            System.err.println("使用法: java CheckRateLimit <送信先メールアドレス>");
+        // 送信先アドレスとオプションをコマンドライン引数から取得
+        String recipientAddress = null;
+        boolean probe = false;
+        Duration probeDuration = DEFAULT_PROBE_DURATION;
+        Double initialRate = null;
+        for (int i = 0; i < args.length; i++) {
+            if ("--probe".equals(args[i])) {
+                probe = true;
+            } else if ("--duration".equals(args[i]) && i + 1 < args.length) {
+                probeDuration = Duration.ofSeconds(Long.parseLong(args[++i]));
+            } else if ("--initial-rate".equals(args[i]) && i + 1 < args.length) {
+                initialRate = Double.valueOf(args[++i]);
+            } else {
+                recipientAddress = args[i];
+            }
+        }
+        if (recipientAddress == null) {
+            System.err.println("使用法: java CheckRateLimit <送信先メールアドレス> [--probe [--duration <秒>] [--initial-rate <通/分>]]");
             System.err.println("例: java CheckRateLimit test@example.com");
+            System.err.println("例: java CheckRateLimit test@example.com --probe --duration 1800");
+            return;
+        }
+
+        if (probe) {
+            runProbe(recipientAddress, probeDuration, initialRate);
             return;
         }
 
@@ -91,13 +115,14 @@ public class CheckRateLimit {
         System.out.println("-------------------------------------------------\n");
 
         // 429でリトライしないEmailClientを作成
-        EmailClient emailClient = new EmailClientBuilder()
-            .connectionString(CONNECTION_STRING)
-            .retryPolicy(new RetryPolicy(new NoRetryOn429Strategy()))
+        EmailClient emailClient = EmailClientRegistry
+            .newBuilder(CONNECTION_STRING, new RetryPolicy(new NoRetryOn429Strategy()))
             .buildClient();
 
         int successCount = 0;
         int failCount = 0;
+        // 受付と最初のポーリングの所要時間（どちらが遅くなってから 429 になるかを見る）
+        SendLatencyRecorder latency = new SendLatencyRecorder();
 
         long startTime = System.currentTimeMillis();
 
@@ -116,10 +141,13 @@ public class CheckRateLimit {
                     .setBodyPlainText("これはレート制限テストメール #" + i + " です。\n送信時刻: " + java.time.LocalDateTime.now());
 
                 // メール送信を開始（ポーリングなし、beginSendのみ）
+                SendLatencyRecorder.Timer timer = latency.startTimer();
                 SyncPoller<EmailSendResult, EmailSendResult> poller = emailClient.beginSend(message);
+                timer.markAccepted();
 
                 // 最初のレスポンスのみ取得（ポーリングはしない）
                 EmailSendResult initialResult = poller.poll().getValue();
+                timer.markFirstPoll();
 
                 long emailEndTime = System.currentTimeMillis();
                 long duration = emailEndTime - emailStartTime;
@@ -170,6 +198,112 @@ public class CheckRateLimit {
         System.out.println("成功: " + successCount + " 件");
         System.out.println("失敗: " + failCount + " 件");
         System.out.println("合計処理時間: " + totalDuration + " ms (" + (totalDuration / 1000.0) + " 秒)");
+        System.out.println("-------------------------------------------------");
+        latency.printSummary(System.out);
+        System.out.println("=================================================");
+    }
+
+    /**
+     * AIMD プローブ: 現在のレートの間隔で1通ずつ送信し、成功でレートを少しずつ上げ、429 で半分に下げる
+     * duration 経過後、429 を受け取ったレートから求めた値（AimdRateController.getLearnedRate）を学習済みレートとして保存する。
+     */
+    private static void runProbe(String recipientAddress, Duration duration, Double initialRate) {
+        String resource = EmailClientRegistry.endpointOf(CONNECTION_STRING);
+        LearnedRateStore store = LearnedRateStore.fromEnvironment();
+
+        double startRate;
+        try {
+            Double learned = store.load(resource);
+            startRate = initialRate != null ? initialRate
+                : learned != null ? learned
+                : SendRateLimiter.DEFAULT_PER_MINUTE;
+            if (initialRate == null && learned != null) {
+                System.out.println("保存済みの学習レートから開始します: " + learned + " 通/分");
+            }
+        } catch (IOException e) {
+            System.err.println("警告: 学習済みレートを読み込めませんでした: " + e.getMessage());
+            startRate = initialRate != null ? initialRate : SendRateLimiter.DEFAULT_PER_MINUTE;
+        }
+
+        AimdRateController controller = new AimdRateController(startRate);
+        System.out.println("モード: AIMD プローブ（" + duration.getSeconds() + " 秒）");
+        System.out.println("リソース: " + resource);
+        System.out.println("開始レート: " + controller);
+        System.out.println("保存先: " + store.getFile());
+        System.out.println("-------------------------------------------------\n");
+
+        // 429 をそのまま受け取るため SDK の再試行は無効にする
+        EmailClient emailClient = EmailClientRegistry
+            .newBuilder(CONNECTION_STRING, new RetryPolicy(new FixedDelay(0, Duration.ZERO)))
+            .buildClient();
+
+        int successCount = 0;
+        int failCount = 0;
+        long startTime = System.nanoTime();
+        long end = startTime + duration.toNanos();
+        long next = startTime;
+
+        for (int i = 1; System.nanoTime() - end < 0; i++) {
+            try {
+                long waitNanos = next - System.nanoTime();
+                if (waitNanos > 0) {
+                    TimeUnit.NANOSECONDS.sleep(waitNanos);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                System.err.println("中断されました。");
+                break;
+            }
+
+            EmailMessage message = new EmailMessage()
+                .setSenderAddress(SENDER_ADDRESS)
+                .setToRecipients(recipientAddress)
+                .setSubject("レートプローブ #" + i)
+                .setBodyPlainText("これはレートプローブのテストメール #" + i + " です。\n送信時刻: " + java.time.LocalDateTime.now());
+
+            try {
+                emailClient.beginSend(message).poll();
+                successCount++;
+                controller.onSuccess();
+            } catch (RuntimeException e) {
+                if (!AimdRateController.isThrottled(e)) {
+                    failCount++;
+                    System.err.println("[" + i + "] エラー: " + e.getMessage());
+                } else if (controller.onThrottled()) {
+                    System.err.println("[" + i + "] 429 を受信 → レートを下げます: "
+                        + String.format("%.1f", controller.getThrottledRate()) + " → " + controller);
+                }
+            }
+
+            if (i % 10 == 0) {
+                System.out.println("[" + i + "] 現在のレート: " + controller + " / 成功 " + successCount
+                    + " 件 / 429 " + controller.getThrottledCount() + " 件");
+            }
+            // 送信が間隔より長くかかった場合は、遅れを取り戻すためにまとめて送らず次をすぐ送る
+            next = Math.max(next + controller.getInterval().toNanos(), System.nanoTime());
+        }
+
+        double learnedRate = controller.getLearnedRate();
+        try {
+            store.save(resource, learnedRate);
+        } catch (IOException e) {
+            System.err.println("警告: 学習済みレートを保存できませんでした: " + e.getMessage());
+        }
+
+        long totalDuration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        System.out.println("\n=================================================");
+        System.out.println("プローブ完了サマリー");
+        System.out.println("=================================================");
+        System.out.println("成功: " + successCount + " 件");
+        System.out.println("429: " + controller.getThrottledCount() + " 件");
+        System.out.println("その他の失敗: " + failCount + " 件");
+        if (!Double.isNaN(controller.getThrottledRate())) {
+            System.out.println("直近で 429 が発生したレート: " + String.format("%.1f", controller.getThrottledRate()) + " 通/分");
+        }
+        System.out.println("学習したレート: " + String.format("%.1f", learnedRate) + " 通/分");
+        System.out.println("送信アプリは ACS_RATE_LIMIT_PER_MINUTE が未設定ならこの値を使います: "
+            + (int) Math.floor(learnedRate) + " 通/分");
+        System.out.println("合計処理時間: " + totalDuration + " ms (" + (totalDuration / 1000.0) + " 秒)");
         System.out.println("=================================================");
     }
 }
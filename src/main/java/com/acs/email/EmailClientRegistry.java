@@ -0,0 +1,325 @@
+package com.acs.email;
+
+import com.azure.communication.email.EmailAsyncClient;
+import com.azure.communication.email.EmailClient;
+import com.azure.communication.email.EmailClientBuilder;
+import com.azure.core.http.HttpPipeline;
+import com.azure.core.http.HttpPipelineBuilder;
+import com.azure.core.http.policy.AddHeadersFromContextPolicy;
+import com.azure.core.http.policy.FixedDelay;
+import com.azure.core.http.policy.HttpLogOptions;
+import com.azure.core.http.policy.HttpLoggingPolicy;
+import com.azure.core.http.policy.HttpPipelinePolicy;
+import com.azure.core.http.policy.RequestIdPolicy;
+import com.azure.core.http.policy.RetryPolicy;
+import com.azure.core.http.policy.UserAgentPolicy;
+import com.azure.core.util.Configuration;
+import com.azure.core.util.CoreUtils;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * EmailClient / EmailAsyncClient の共有レジストリ
+ *
+ * 送信ごとに EmailClientBuilder を組み立てると、接続文字列の解析・HTTP パイプラインの構築・
+ * TLS 接続の確立が毎回発生する。本クラスは (接続文字列, 送信元アドレス) をキーとして
+ * クライアントを1度だけ生成し、以降の送信ではプール済みの接続を再利用する。
+ *
+ * - warmUp: 送信開始前にクライアントを事前生成する
+ * - shutdown: 新規取得を停止し、保持しているクライアントへの参照を手放す（JVM 終了時にも実行）。
+ *   接続プール（HttpTransport）とトークンの更新（RefreshingTokenCredential）はプロセス全体で共有しており、
+ *   レジストリの所有物ではないため閉じない（どちらもデーモンスレッドで動くため JVM の終了は妨げない）
+ */
+public final class EmailClientRegistry {
+
+    private static final EmailClientRegistry DEFAULT = new EmailClientRegistry();
+    private static final String APPLICATION_ID = "acs-email-sender";
+    private static final String ENDPOINT = "endpoint";
+    private static final String ACCESS_KEY = "accesskey";
+    // Entra ID のクライアントで SDK の再試行を無効にする（再試行は呼び出し側のポリシーで行う）
+    private static final RetryPolicy NO_RETRY = new RetryPolicy(new FixedDelay(0, Duration.ZERO));
+    // SDK の jar に含まれる azure-communication-email.properties（name / version）から User-Agent を作る
+    private static final Map<String, String> SDK_PROPERTIES =
+        CoreUtils.getProperties("azure-communication-email.properties");
+    private static final String SDK_NAME = SDK_PROPERTIES.getOrDefault("name", "azure-communication-email");
+    private static final String SDK_VERSION = SDK_PROPERTIES.getOrDefault("version", "UnknownVersion");
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(DEFAULT::shutdown, "email-client-registry-shutdown"));
+    }
+
+    private final ConcurrentMap<ClientKey, ClientEntry> clients = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, EmailOperationStatusClient> statusClients = new ConcurrentHashMap<>();
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    /**
+     * プロセス全体で共有するレジストリを取得
+     */
+    public static EmailClientRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * 接続文字列から EmailClientBuilder を組み立てる
+     *
+     * accesskey を含まない接続文字列（endpoint=https://...;）は Entra ID で認証する。
+     * credential(...) に共有の RefreshingTokenCredential を渡し、トークンはバックグラウンドで更新する。
+     *
+     * accesskey を含む場合、connectionString(...) を使うと SDK の HmacAuthenticationPolicy がリクエストごとに Mac を生成して署名するため、
+     * パイプラインを自前で組み立てて HmacSigningPolicy で署名する。HTTP クライアントは HttpTransport を共有する。
+     * retryPolicy には SDK の RetryPolicy のほか、AdaptiveRetryStrategy.toRetryPolicy のポリシーを渡せる。
+     * 順序: User-Agent / x-ms-client-request-id / Context のヘッダー → Operation-Id → 再試行 → (以降は再試行ごと) 署名
+     * → メトリクス → HTTP ログ
+     *
+     * SDK の EmailClientBuilder が組み立てるパイプラインとの違い:
+     * - User-Agent は SDK と同じ形式（azsdk-java-azure-communication-email/バージョン）で、先頭にアプリケーション ID を付ける
+     * - HTTP ログは環境変数 AZURE_HTTP_LOG_DETAIL_LEVEL に従う（SDK と同じ既定の HttpLogOptions）
+     * - ClientOptions（追加のヘッダー・アプリケーション ID）と httpLogOptions は指定できない。
+     *   返すビルダーは pipeline(...) を設定済みのため、clientOptions / httpLogOptions / addPolicy / retryPolicy を
+     *   後から呼んでも無視される
+     */
+    public static EmailClientBuilder newBuilder(String connectionString, HttpPipelinePolicy retryPolicy) {
+        if (usesEntraId(connectionString)) {
+            RefreshingTokenCredential credential = RefreshingTokenCredential.getDefault();
+            // 最初の送信までにトークンの取得を始めておく
+            credential.prefetch(RefreshingTokenCredential.COMMUNICATION_SCOPE);
+            EmailClientBuilder builder = new EmailClientBuilder()
+                .endpoint(endpointOf(connectionString))
+                .credential(credential)
+                .httpClient(HttpTransport.getDefault())
+                .addPolicy(new OperationIdPolicy());
+            if (retryPolicy instanceof RetryPolicy) {
+                builder.retryPolicy((RetryPolicy) retryPolicy);
+            } else {
+                // SDK の再試行を無効にし、PER_CALL のポリシーとして認証ポリシーより前で再試行する
+                builder.retryPolicy(NO_RETRY).addPolicy(retryPolicy);
+            }
+            return builder.addPolicy(new MetricsPolicy());
+        }
+        HttpPipeline pipeline = new HttpPipelineBuilder()
+            .httpClient(HttpTransport.getDefault())
+            .policies(
+                new UserAgentPolicy(APPLICATION_ID, SDK_NAME, SDK_VERSION, Configuration.getGlobalConfiguration()),
+                new RequestIdPolicy(),
+                new AddHeadersFromContextPolicy(),
+                new OperationIdPolicy(),
+                retryPolicy,
+                new HmacSigningPolicy(accessKeyOf(connectionString)),
+                new MetricsPolicy(),
+                new HttpLoggingPolicy(new HttpLogOptions()))
+            .build();
+        return new EmailClientBuilder()
+            .endpoint(endpointOf(connectionString))
+            .pipeline(pipeline);
+    }
+
+    /**
+     * endpoint だけの接続文字列か（Entra ID で認証する）
+     * endpoint と accesskey の両方があればアクセスキーで署名する。
+     *
+     * @throws IllegalArgumentException 接続文字列の形式が不正な場合（parse を参照）
+     */
+    static boolean usesEntraId(String connectionString) {
+        return !parse(connectionString).containsKey(ACCESS_KEY);
+    }
+
+    /**
+     * 接続文字列の endpoint の値
+     */
+    static String endpointOf(String connectionString) {
+        return parse(connectionString).get(ENDPOINT);
+    }
+
+    /**
+     * 接続文字列の accesskey の値
+     *
+     * @throws IllegalArgumentException accesskey が無い場合
+     */
+    static String accessKeyOf(String connectionString) {
+        String accessKey = parse(connectionString).get(ACCESS_KEY);
+        if (accessKey == null) {
+            throw new IllegalArgumentException("接続文字列に accesskey がありません");
+        }
+        return accessKey;
+    }
+
+    /**
+     * 接続文字列（endpoint=https://...;accesskey=...;）を解析する
+     * 項目名は大文字・小文字を区別せず、値は最初の '=' より後ろ全て（Base64 の '=' を含む）。
+     * 空の項目（末尾の ';' など）は無視する。
+     *
+     * @return 小文字の項目名 → 値。必ず endpoint を含み、それ以外は accesskey だけ
+     * @throws IllegalArgumentException '=' の無い項目・空の値・重複・未知の項目がある、または endpoint が無い場合
+     */
+    static Map<String, String> parse(String connectionString) {
+        Map<String, String> values = new HashMap<>();
+        for (String segment : Objects.requireNonNull(connectionString, "connectionString").split(";")) {
+            if (segment.trim().isEmpty()) {
+                continue;
+            }
+            int separator = segment.indexOf('=');
+            String name = separator < 0 ? "" : segment.substring(0, separator).trim().toLowerCase(Locale.ROOT);
+            String value = separator < 0 ? "" : segment.substring(separator + 1).trim();
+            if (name.isEmpty() || value.isEmpty()) {
+                throw new IllegalArgumentException("接続文字列の形式が不正です（項目は 名前=値 で指定してください）");
+            }
+            if (!ENDPOINT.equals(name) && !ACCESS_KEY.equals(name)) {
+                throw new IllegalArgumentException("接続文字列に未知の項目があります: " + name);
+            }
+            if (values.put(name, value) != null) {
+                throw new IllegalArgumentException("接続文字列の項目が重複しています: " + name);
+            }
+        }
+        if (!values.containsKey(ENDPOINT)) {
+            throw new IllegalArgumentException("接続文字列に endpoint がありません");
+        }
+        return values;
+    }
+
+    /**
+     * 同期クライアントを取得（未生成なら生成してキャッシュする）
+     */
+    public EmailClient getClient(String connectionString, String senderAddress) {
+        return entry(connectionString, senderAddress).client();
+    }
+
+    /**
+     * 非同期クライアントを取得（未生成なら生成してキャッシュする）
+     */
+    public EmailAsyncClient getAsyncClient(String connectionString, String senderAddress) {
+        return entry(connectionString, senderAddress).asyncClient();
+    }
+
+    /**
+     * 送信操作のステータス取得クライアントを取得（接続文字列ごとに1つ）
+     */
+    public EmailOperationStatusClient getStatusClient(String connectionString) {
+        ensureOpen();
+        return statusClients.computeIfAbsent(Objects.requireNonNull(connectionString, "connectionString"),
+            EmailOperationStatusClient::fromConnectionString);
+    }
+
+    /**
+     * 同期・非同期クライアントを事前に生成しておく
+     * 最初の送信でパイプライン構築のコストを払わないようにするため、送信ループの前に呼び出す
+     */
+    public void warmUp(String connectionString, String senderAddress) {
+        ClientEntry entry = entry(connectionString, senderAddress);
+        entry.client();
+        entry.asyncClient();
+        if (usesEntraId(connectionString)) {
+            // 送信経路でトークンの取得を待たないよう、最初のトークンを取得しておく
+            RefreshingTokenCredential.getDefault().warmUp(RefreshingTokenCredential.COMMUNICATION_SCOPE);
+        }
+    }
+
+    /**
+     * 新規の取得を停止し、キャッシュしているクライアントへの参照を手放す
+     * 以降の取得は IllegalStateException となる。取得済みのクライアントで進行中の送信はそのまま完了できる。
+     * クライアントが使う共有の接続プール（HttpTransport.getDefault）とトークンの更新
+     * （RefreshingTokenCredential.getDefault）は閉じない。進行中の送信が引き続き使うため。
+     */
+    public void shutdown() {
+        if (closed.compareAndSet(false, true)) {
+            clients.clear();
+            statusClients.clear();
+        }
+    }
+
+    public boolean isShutdown() {
+        return closed.get();
+    }
+
+    private ClientEntry entry(String connectionString, String senderAddress) {
+        ensureOpen();
+        return clients.computeIfAbsent(new ClientKey(connectionString, senderAddress),
+            key -> new ClientEntry(key.connectionString));
+    }
+
+    private void ensureOpen() {
+        if (closed.get()) {
+            throw new IllegalStateException("EmailClientRegistry はシャットダウン済みです");
+        }
+    }
+
+    /**
+     * レジストリのキー（接続文字列 + 送信元アドレス）
+     */
+    private static final class ClientKey {
+        private final String connectionString;
+        private final String senderAddress;
+
+        ClientKey(String connectionString, String senderAddress) {
+            this.connectionString = Objects.requireNonNull(connectionString, "connectionString");
+            this.senderAddress = Objects.requireNonNull(senderAddress, "senderAddress");
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ClientKey)) {
+                return false;
+            }
+            ClientKey other = (ClientKey) o;
+            return connectionString.equals(other.connectionString) && senderAddress.equals(other.senderAddress);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * connectionString.hashCode() + senderAddress.hashCode();
+        }
+    }
+
+    /**
+     * 1つのキーに対応するクライアントの組
+     * 同期・非同期クライアントはそれぞれ必要になった時点で1度だけ生成する
+     */
+    private static final class ClientEntry {
+        private final String connectionString;
+        private volatile EmailClient client;
+        private volatile EmailAsyncClient asyncClient;
+
+        ClientEntry(String connectionString) {
+            this.connectionString = connectionString;
+        }
+
+        EmailClient client() {
+            EmailClient result = client;
+            if (result == null) {
+                synchronized (this) {
+                    result = client;
+                    if (result == null) {
+                        result = newBuilder(connectionString, AdaptiveRetryStrategy.getDefault().toRetryPolicy())
+                            .buildClient();
+                        client = result;
+                    }
+                }
+            }
+            return result;
+        }
+
+        EmailAsyncClient asyncClient() {
+            EmailAsyncClient result = asyncClient;
+            if (result == null) {
+                synchronized (this) {
+                    result = asyncClient;
+                    if (result == null) {
+                        result = newBuilder(connectionString, AdaptiveRetryStrategy.getDefault().toRetryPolicy())
+                            .buildAsyncClient();
+                        asyncClient = result;
+                    }
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,423 @@
+package com.acs.email;
+
+import com.azure.communication.email.models.EmailAddress;
+import com.azure.communication.email.models.EmailAttachment;
+import com.azure.communication.email.models.EmailMessage;
+import com.azure.core.util.BinaryData;
+import com.azure.json.JsonProviders;
+import com.azure.json.JsonReader;
+import com.azure.json.JsonToken;
+import com.azure.json.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.net.URLConnection;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * JSONL ジョブファイルの1行分（1通分）の送信ジョブ
+ *
+ * 形式（to 以外は省略可。to / cc / bcc は文字列または文字列の配列）:
+ * {"to": ["user@example.com"], "cc": [], "bcc": [], "subject": "件名", "plainText": "本文", "html": "<p>本文</p>"}
+ *
+ * variables を指定すると subject / plainText / html をテンプレート（EmailTemplate）として扱い、{{name}} に値を埋め込む。
+ * html に埋め込む値は HTML エスケープする。同じテンプレート文字列の解析結果はキャッシュされる。
+ * {"to": "user@example.com", "subject": "{{name}} 様", "html": "<p>{{name}} 様のご注文</p>", "variables": {"name": "山田"}}
+ *
+ * attachments には添付ファイルのパスを指定する（name は省略時にファイル名、contentType は省略時に拡張子から決める）。
+ * ファイルの内容は AttachmentCache で共有するため、同じファイルを多数のジョブに添付してもヒープには1つだけ載る。
+ * resolveAttachments で内容を取得したジョブは、toEmailMessage でファイルにもキャッシュにも触れない。
+ * {"to": "user@example.com", "subject": "請求書", "attachments": [{"path": "invoices/2026-10.pdf", "name": "請求書.pdf"}]}
+ */
+public final class EmailJob {
+
+    private final List<String> to;
+    private final List<String> cc;
+    private final List<String> bcc;
+    private final String subject;
+    private final String plainText;
+    private final String html;
+    private final Map<String, String> variables;
+    private final List<Attachment> attachments;
+
+    public EmailJob(List<String> to, List<String> cc, List<String> bcc, String subject, String plainText, String html) {
+        this(to, cc, bcc, subject, plainText, html, null);
+    }
+
+    /**
+     * @param variables null 以外（かつ空でない）場合、subject / plainText / html をテンプレートとして描画する
+     */
+    public EmailJob(List<String> to, List<String> cc, List<String> bcc, String subject, String plainText, String html,
+                    Map<String, String> variables) {
+        this(to, cc, bcc, subject, plainText, html, variables, null);
+    }
+
+    /**
+     * @param attachments 添付ファイル（null なら添付なし）
+     */
+    public EmailJob(List<String> to, List<String> cc, List<String> bcc, String subject, String plainText, String html,
+                    Map<String, String> variables, List<Attachment> attachments) {
+        this.to = to == null ? Collections.emptyList() : to;
+        this.cc = cc == null ? Collections.emptyList() : cc;
+        this.bcc = bcc == null ? Collections.emptyList() : bcc;
+        this.subject = subject;
+        this.plainText = plainText;
+        this.html = html;
+        this.variables = variables == null ? Collections.emptyMap() : variables;
+        this.attachments = attachments == null ? Collections.emptyList() : attachments;
+    }
+
+    /**
+     * JSONL の1行を解析する
+     *
+     * @throws IOException JSON として不正な場合
+     * @throws IllegalArgumentException 宛先 (to) が無い場合
+     */
+    public static EmailJob fromJson(String line) throws IOException {
+        try (JsonReader reader = JsonProviders.createReader(line)) {
+            EmailJob job = reader.readObject(EmailJob::readJob);
+            if (job.to.isEmpty()) {
+                throw new IllegalArgumentException("宛先 (to) が指定されていません");
+            }
+            return job;
+        }
+    }
+
+    private static EmailJob readJob(JsonReader reader) throws IOException {
+        List<String> to = null;
+        List<String> cc = null;
+        List<String> bcc = null;
+        String subject = null;
+        String plainText = null;
+        String html = null;
+        Map<String, String> variables = null;
+        List<Attachment> attachments = null;
+
+        while (reader.nextToken() != JsonToken.END_OBJECT) {
+            String fieldName = reader.getFieldName();
+            reader.nextToken();
+
+            if ("to".equals(fieldName)) {
+                to = readAddresses(reader);
+            } else if ("cc".equals(fieldName)) {
+                cc = readAddresses(reader);
+            } else if ("bcc".equals(fieldName)) {
+                bcc = readAddresses(reader);
+            } else if ("subject".equals(fieldName)) {
+                subject = reader.getString();
+            } else if ("plainText".equals(fieldName)) {
+                plainText = reader.getString();
+            } else if ("html".equals(fieldName)) {
+                html = reader.getString();
+            } else if ("variables".equals(fieldName)) {
+                variables = reader.currentToken() == JsonToken.NULL ? null : reader.readMap(JsonReader::getString);
+            } else if ("attachments".equals(fieldName)) {
+                attachments = reader.currentToken() == JsonToken.NULL ? null : reader.readArray(Attachment::read);
+            } else {
+                reader.skipChildren();
+            }
+        }
+        return new EmailJob(to, cc, bcc, subject, plainText, html, variables, attachments);
+    }
+
+    /**
+     * 宛先は単一の文字列と文字列の配列のどちらでも受け付ける
+     */
+    private static List<String> readAddresses(JsonReader reader) throws IOException {
+        if (reader.currentToken() == JsonToken.NULL) {
+            return null;
+        }
+        if (reader.currentToken() == JsonToken.START_ARRAY) {
+            return reader.readArray(JsonReader::getString);
+        }
+        List<String> single = new ArrayList<>(1);
+        single.add(reader.getString());
+        return single;
+    }
+
+    /**
+     * JSONL の1行（改行なし）に変換する。fromJson で読み戻せる形式
+     */
+    public String toJson() throws IOException {
+        StringWriter out = new StringWriter();
+        try (JsonWriter writer = JsonProviders.createWriter(out)) {
+            writer.writeStartObject();
+            writeAddresses(writer, "to", to);
+            writeAddresses(writer, "cc", cc);
+            writeAddresses(writer, "bcc", bcc);
+            if (subject != null) {
+                writer.writeStringField("subject", subject);
+            }
+            if (plainText != null) {
+                writer.writeStringField("plainText", plainText);
+            }
+            if (html != null) {
+                writer.writeStringField("html", html);
+            }
+            if (!variables.isEmpty()) {
+                writer.writeStartObject("variables");
+                for (Map.Entry<String, String> variable : variables.entrySet()) {
+                    writer.writeStringField(variable.getKey(), variable.getValue());
+                }
+                writer.writeEndObject();
+            }
+            if (!attachments.isEmpty()) {
+                writer.writeStartArray("attachments");
+                for (Attachment attachment : attachments) {
+                    attachment.write(writer);
+                }
+                writer.writeEndArray();
+            }
+            writer.writeEndObject();
+            writer.flush();
+        }
+        return out.toString();
+    }
+
+    private static void writeAddresses(JsonWriter writer, String fieldName, List<String> addresses) throws IOException {
+        if (addresses.isEmpty()) {
+            return;
+        }
+        writer.writeStartArray(fieldName);
+        for (String address : addresses) {
+            writer.writeString(address);
+        }
+        writer.writeEndArray();
+    }
+
+    /**
+     * 送信元アドレスを指定して EmailMessage を構築する
+     * 添付ファイルは resolveAttachments で取得済みの内容を使う（未取得なら AttachmentCache.getDefault() から取得する）
+     *
+     * @throws IllegalArgumentException テンプレートの構文が不正、または変数の値が無い場合
+     * @throws UncheckedIOException 添付ファイルを読めない場合
+     */
+    public EmailMessage toEmailMessage(String senderAddress) {
+        return toEmailMessage(senderAddress, AttachmentCache.getDefault());
+    }
+
+    EmailMessage toEmailMessage(String senderAddress, AttachmentCache attachmentCache) {
+        String subject = this.subject;
+        String plainText = this.plainText;
+        String html = this.html;
+        if (!variables.isEmpty()) {
+            subject = subject == null ? null : EmailTemplate.text(subject).render(variables);
+            plainText = plainText == null ? null : EmailTemplate.text(plainText).render(variables);
+            html = html == null ? null : EmailTemplate.html(html).render(variables);
+        }
+
+        EmailMessage message = new EmailMessage()
+            .setSenderAddress(senderAddress)
+            .setToRecipients(toEmailAddresses(to))
+            .setSubject(subject);
+
+        if (!cc.isEmpty()) {
+            message.setCcRecipients(toEmailAddresses(cc));
+        }
+        if (!bcc.isEmpty()) {
+            message.setBccRecipients(toEmailAddresses(bcc));
+        }
+        if (plainText != null) {
+            message.setBodyPlainText(plainText);
+        }
+        if (html != null) {
+            message.setBodyHtml(html);
+        }
+        if (!attachments.isEmpty()) {
+            List<EmailAttachment> emailAttachments = new ArrayList<>(attachments.size());
+            for (Attachment attachment : attachments) {
+                BinaryData content = attachment.getContent();
+                if (content == null) {
+                    try {
+                        content = attachmentCache.load(attachment.getPath());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("添付ファイルを読み込めません: " + attachment.getPath(), e);
+                    }
+                }
+                emailAttachments.add(new EmailAttachment(attachment.getName(), attachment.getContentType(), content));
+            }
+            message.setAttachments(emailAttachments);
+        }
+        return message;
+    }
+
+    /**
+     * 添付ファイルの内容を取得したジョブを返す（取得するものが無ければこのジョブをそのまま返す）
+     * 読み込みスレッドで呼んでおけば、送信の経路（toEmailMessage）ではファイルの属性の確認もキャッシュの参照も行わない。
+     *
+     * @throws IOException 添付ファイルを読めない場合
+     * @throws IllegalArgumentException 添付ファイルが大きすぎる場合
+     */
+    public EmailJob resolveAttachments(AttachmentCache attachmentCache) throws IOException {
+        List<Attachment> resolved = null;
+        for (int i = 0; i < attachments.size(); i++) {
+            Attachment attachment = attachments.get(i);
+            if (attachment.getContent() != null) {
+                continue;
+            }
+            if (resolved == null) {
+                resolved = new ArrayList<>(attachments);
+            }
+            resolved.set(i, attachment.withContent(attachmentCache.load(attachment.getPath())));
+        }
+        return resolved == null ? this : new EmailJob(to, cc, bcc, subject, plainText, html, variables, resolved);
+    }
+
+    private static List<EmailAddress> toEmailAddresses(List<String> addresses) {
+        List<EmailAddress> result = new ArrayList<>(addresses.size());
+        for (String address : addresses) {
+            result.add(new EmailAddress(address));
+        }
+        return result;
+    }
+
+    public List<String> getTo() {
+        return to;
+    }
+
+    public List<String> getCc() {
+        return cc;
+    }
+
+    public List<String> getBcc() {
+        return bcc;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public String getPlainText() {
+        return plainText;
+    }
+
+    public String getHtml() {
+        return html;
+    }
+
+    /**
+     * テンプレートに埋め込む変数（無ければ空）
+     */
+    public Map<String, String> getVariables() {
+        return variables;
+    }
+
+    /**
+     * 添付ファイル（無ければ空）
+     */
+    public List<Attachment> getAttachments() {
+        return attachments;
+    }
+
+    /**
+     * 添付ファイルの指定（パス・表示名・Content-Type）と、取得済みであればその内容
+     * 同じ添付かどうか（equals）は指定だけで決まり、内容を取得済みかどうかは問わない。
+     */
+    public static final class Attachment {
+        private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+
+        private final Path path;
+        private final String name;
+        private final String contentType;
+        private final BinaryData content;
+
+        /**
+         * @param name        null なら path のファイル名
+         * @param contentType null なら name の拡張子から決める（不明なら application/octet-stream）
+         */
+        public Attachment(Path path, String name, String contentType) {
+            this.path = Objects.requireNonNull(path, "path");
+            this.name = name == null ? path.getFileName().toString() : name;
+            if (contentType == null) {
+                contentType = URLConnection.guessContentTypeFromName(this.name);
+            }
+            this.contentType = contentType == null ? DEFAULT_CONTENT_TYPE : contentType;
+            this.content = null;
+        }
+
+        private Attachment(Attachment attachment, BinaryData content) {
+            this.path = attachment.path;
+            this.name = attachment.name;
+            this.contentType = attachment.contentType;
+            this.content = content;
+        }
+
+        Attachment withContent(BinaryData content) {
+            return new Attachment(this, Objects.requireNonNull(content, "content"));
+        }
+
+        private static Attachment read(JsonReader reader) throws IOException {
+            return reader.readObject(object -> {
+                String path = null;
+                String name = null;
+                String contentType = null;
+                while (object.nextToken() != JsonToken.END_OBJECT) {
+                    String fieldName = object.getFieldName();
+                    object.nextToken();
+                    if ("path".equals(fieldName)) {
+                        path = object.getString();
+                    } else if ("name".equals(fieldName)) {
+                        name = object.getString();
+                    } else if ("contentType".equals(fieldName)) {
+                        contentType = object.getString();
+                    } else {
+                        object.skipChildren();
+                    }
+                }
+                if (path == null) {
+                    throw new IllegalArgumentException("添付ファイルのパス (path) が指定されていません");
+                }
+                return new Attachment(Paths.get(path), name, contentType);
+            });
+        }
+
+        private void write(JsonWriter writer) throws IOException {
+            writer.writeStartObject();
+            writer.writeStringField("path", path.toString());
+            writer.writeStringField("name", name);
+            writer.writeStringField("contentType", contentType);
+            writer.writeEndObject();
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        /**
+         * 取得済みの内容（EmailJob.resolveAttachments の前は null）
+         */
+        public BinaryData getContent() {
+            return content;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Attachment)) {
+                return false;
+            }
+            Attachment attachment = (Attachment) other;
+            return path.equals(attachment.path) && name.equals(attachment.name)
+                && contentType.equals(attachment.contentType);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, name, contentType);
+        }
+    }
+}
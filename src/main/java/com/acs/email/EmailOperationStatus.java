@@ -0,0 +1,71 @@
+package com.acs.email;
+
+import com.azure.communication.email.models.EmailSendStatus;
+import com.azure.core.models.ResponseError;
+
+import java.time.Duration;
+
+/**
+ * 送信操作ステータス取得 API (GET /emails/operations/{operationId}) の1回分の応答
+ *
+ * EmailSendResult に加えて、次のポーリングのヒント（Retry-After / Operation-Location）を保持する。
+ */
+public final class EmailOperationStatus {
+
+    private final String operationId;
+    private final EmailSendStatus status;
+    private final ResponseError error;
+    private final Duration retryAfter;
+    private final String operationLocation;
+
+    public EmailOperationStatus(String operationId, EmailSendStatus status, ResponseError error,
+                                Duration retryAfter, String operationLocation) {
+        this.operationId = operationId;
+        this.status = status;
+        this.error = error;
+        this.retryAfter = retryAfter;
+        this.operationLocation = operationLocation;
+    }
+
+    public String getOperationId() {
+        return operationId;
+    }
+
+    public EmailSendStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * 失敗時のエラー詳細（無ければ null）
+     */
+    public ResponseError getError() {
+        return error;
+    }
+
+    /**
+     * サービスが指定した次回ポーリングまでの待ち時間（無ければ null）
+     */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+    /**
+     * サービスが指定した次回ポーリング先の URL（無ければ null）
+     */
+    public String getOperationLocation() {
+        return operationLocation;
+    }
+
+    /**
+     * 終端状態（Succeeded / Failed / Canceled）かどうか
+     */
+    public boolean isTerminal() {
+        return isTerminal(status);
+    }
+
+    public static boolean isTerminal(EmailSendStatus status) {
+        return status == EmailSendStatus.SUCCEEDED
+            || status == EmailSendStatus.FAILED
+            || status == EmailSendStatus.CANCELED;
+    }
+}
@@ -0,0 +1,160 @@
+package com.acs.email;
+
+import com.azure.communication.email.models.EmailSendStatus;
+import com.azure.core.exception.HttpResponseException;
+import com.azure.core.http.HttpClient;
+import com.azure.core.http.HttpHeaderName;
+import com.azure.core.http.HttpMethod;
+import com.azure.core.http.HttpPipeline;
+import com.azure.core.http.HttpPipelineBuilder;
+import com.azure.core.http.HttpRequest;
+import com.azure.core.http.policy.BearerTokenAuthenticationPolicy;
+import com.azure.core.http.policy.HttpPipelinePolicy;
+import com.azure.core.models.ResponseError;
+import com.azure.json.JsonProviders;
+import com.azure.json.JsonReader;
+import com.azure.json.JsonToken;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+
+/**
+ * 送信操作のステータスを operationId から直接取得するクライアント
+ *
+ * SDK の SyncPoller / PollerFlux は1通ごとにポーリングを抱えるため、多数の送信をまとめて追跡する
+ * EmailPollScheduler 用に、ステータス取得 API (GET /emails/operations/{operationId}) を非同期で呼び出す。
+ * 認証は EmailClientBuilder.connectionString と同じ HMAC 署名を HmacSigningPolicy で付ける
+ * （accesskey を含まない接続文字列では RefreshingTokenCredential の Entra ID トークン）。
+ */
+public final class EmailOperationStatusClient {
+
+    static final String API_VERSION = "2023-03-31";
+
+    private static final HttpHeaderName OPERATION_LOCATION = HttpHeaderName.fromString("Operation-Location");
+    private static final int HTTP_STATUS_OK = 200;
+    private static final int HTTP_STATUS_TOO_MANY_REQUESTS = 429;
+    private static final int HTTP_STATUS_INTERNAL_SERVER_ERROR = 500;
+
+    private final String endpoint;
+    private final HttpPipeline pipeline;
+
+    public EmailOperationStatusClient(String endpoint, HttpPipeline pipeline) {
+        this.endpoint = endpoint.endsWith("/") ? endpoint.substring(0, endpoint.length() - 1) : endpoint;
+        this.pipeline = pipeline;
+    }
+
+    /**
+     * 接続文字列からクライアントを生成する
+     */
+    public static EmailOperationStatusClient fromConnectionString(String connectionString) {
+        return fromConnectionString(connectionString, HttpTransport.getDefault());
+    }
+
+    /**
+     * 接続文字列と HTTP クライアントを指定してクライアントを生成する（送信側と同じ HTTP クライアントを使う場合など）
+     *
+     * 送信と同じ AdaptiveRetryStrategy で再試行する（リトライバジェットも送信と共有する）。
+     * 再試行しても 429 / 5xx の場合は getStatus が一時的なエラーの結果を返し、EmailPollScheduler が次のポーリングで取り直す。
+     */
+    public static EmailOperationStatusClient fromConnectionString(String connectionString, HttpClient httpClient) {
+        HttpPipelinePolicy authentication = EmailClientRegistry.usesEntraId(connectionString)
+            ? new BearerTokenAuthenticationPolicy(RefreshingTokenCredential.getDefault(),
+                RefreshingTokenCredential.COMMUNICATION_SCOPE)
+            : new HmacSigningPolicy(EmailClientRegistry.accessKeyOf(connectionString));
+        HttpPipeline pipeline = new HttpPipelineBuilder()
+            .httpClient(httpClient)
+            .policies(AdaptiveRetryStrategy.getDefault().toRetryPolicy(), authentication)
+            .build();
+        return new EmailOperationStatusClient(EmailClientRegistry.endpointOf(connectionString), pipeline);
+    }
+
+    /**
+     * operationId に対応するステータス取得 URL
+     */
+    public String operationUrl(String operationId) {
+        return endpoint + "/emails/operations/" + operationId + "?api-version=" + API_VERSION;
+    }
+
+    /**
+     * operationId のステータスを取得する
+     */
+    public Mono<EmailOperationStatus> getStatus(String operationId) {
+        return getStatus(operationId, operationUrl(operationId));
+    }
+
+    /**
+     * 指定した URL（Operation-Location ヘッダーの値など）からステータスを取得する
+     *
+     * 429 / 5xx は一時的なエラーとして扱い、status が null で Retry-After ヒント付きの結果を返す。
+     * それ以外の失敗応答は HttpResponseException としてエラーにする。
+     */
+    public Mono<EmailOperationStatus> getStatus(String operationId, String url) {
+        return pipeline.send(new HttpRequest(HttpMethod.GET, url))
+            .flatMap(response -> {
+                int code = response.getStatusCode();
+                Duration retryAfter = RetryAfterHeaders.parse(response.getHeaders());
+                String operationLocation = response.getHeaderValue(OPERATION_LOCATION);
+
+                if (code == HTTP_STATUS_OK) {
+                    return response.getBodyAsString()
+                        .map(body -> parse(operationId, body, retryAfter, operationLocation));
+                }
+                if (code == HTTP_STATUS_TOO_MANY_REQUESTS || code >= HTTP_STATUS_INTERNAL_SERVER_ERROR) {
+                    response.close();
+                    return Mono.just(new EmailOperationStatus(operationId, null, null, retryAfter, operationLocation));
+                }
+                return response.getBodyAsString()
+                    .defaultIfEmpty("")
+                    .flatMap(body -> Mono.<EmailOperationStatus>error(new HttpResponseException(
+                        "ステータス取得に失敗しました (HTTP " + code + "): " + body, response)));
+            });
+    }
+
+    static EmailOperationStatus parse(String operationId, String body, Duration retryAfter, String operationLocation) {
+        try (JsonReader reader = JsonProviders.createReader(body)) {
+            return reader.readObject(r -> {
+                String id = operationId;
+                EmailSendStatus status = null;
+                ResponseError error = null;
+
+                while (r.nextToken() != JsonToken.END_OBJECT) {
+                    String fieldName = r.getFieldName();
+                    r.nextToken();
+
+                    if ("id".equals(fieldName)) {
+                        id = r.getString();
+                    } else if ("status".equals(fieldName)) {
+                        status = EmailSendStatus.fromString(r.getString());
+                    } else if ("error".equals(fieldName) && r.currentToken() == JsonToken.START_OBJECT) {
+                        error = readError(r);
+                    } else {
+                        r.skipChildren();
+                    }
+                }
+                return new EmailOperationStatus(id, status, error, retryAfter, operationLocation);
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException("ステータス応答を解析できません: " + body, e);
+        }
+    }
+
+    private static ResponseError readError(JsonReader reader) throws IOException {
+        String code = null;
+        String message = null;
+        while (reader.nextToken() != JsonToken.END_OBJECT) {
+            String fieldName = reader.getFieldName();
+            reader.nextToken();
+
+            if ("code".equals(fieldName)) {
+                code = reader.getString();
+            } else if ("message".equals(fieldName)) {
+                message = reader.getString();
+            } else {
+                reader.skipChildren();
+            }
+        }
+        return new ResponseError(code, message);
+    }
+}
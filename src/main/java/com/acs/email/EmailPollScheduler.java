@@ -0,0 +1,160 @@
+package com.acs.email;
+
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 送信操作のステータスをまとめてポーリングするスケジューラ
+ *
+ * 1通ごとに Thread.sleep でポーリングする代わりに、HashedTimingWheel 1本で全ての未完了の操作を追跡する。
+ * ステータス取得は非同期で行うため、数千件の操作を追跡していてもスレッドはホイールの1本だけで済む。
+ *
+ * - ポーリング間隔は INITIAL_INTERVAL から2倍ずつ MAX_INTERVAL まで伸ばす（指数バックオフ）
+ * - 応答に Retry-After があれば、それより短い間隔ではポーリングしない
+ * - 応答に Operation-Location があれば、次回はその URL をポーリングする
+ */
+public final class EmailPollScheduler {
+
+    private static final Duration TICK_DURATION = Duration.ofMillis(50);
+    private static final int WHEEL_SIZE = 512;
+
+    private static final Duration INITIAL_INTERVAL = Duration.ofMillis(500);
+    private static final Duration MAX_INTERVAL = Duration.ofSeconds(8);
+    private static final Duration DEFAULT_TIMEOUT = Duration.ofMinutes(2);
+
+    private final HashedTimingWheel wheel;
+    private final Duration timeout;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    public EmailPollScheduler(Duration timeout) {
+        this.wheel = new HashedTimingWheel("email-poll-scheduler", TICK_DURATION, WHEEL_SIZE);
+        this.timeout = timeout;
+    }
+
+    /**
+     * プロセス全体で共有するスケジューラを取得
+     */
+    public static EmailPollScheduler getDefault() {
+        return Holder.DEFAULT;
+    }
+
+    /**
+     * 操作を追跡対象に追加する
+     *
+     * @param client    ステータス取得に使うクライアント
+     * @param operationId beginSend で受け付けられた操作の ID
+     * @return 終端状態（Succeeded / Failed / Canceled）の応答で完了する Future。
+     *         タイムアウト時は TimeoutException で例外完了する。
+     */
+    public CompletableFuture<EmailOperationStatus> track(EmailOperationStatusClient client, String operationId) {
+        PollTask task = new PollTask(client, operationId, System.nanoTime() + timeout.toNanos());
+        inFlight.incrementAndGet();
+        task.future.whenComplete((status, error) -> inFlight.decrementAndGet());
+        wheel.schedule(() -> poll(task), INITIAL_INTERVAL);
+        return task.future;
+    }
+
+    /**
+     * 追跡中（終端状態に達していない）の操作数
+     */
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * スケジューラを停止する（追跡中の操作は破棄される）
+     */
+    public void stop() {
+        wheel.stop();
+    }
+
+    /**
+     * ステータスを1回取得する
+     * 応答が返らない場合も期限で打ち切れるよう、取得自体にも期限までの残り時間でタイムアウトを付ける。
+     * ホイールのワーカースレッドで呼ばれるため、ここで投げた例外はホイールに握りつぶされる。必ず Future を完了させる。
+     */
+    private void poll(PollTask task) {
+        long remaining = task.deadline - System.nanoTime();
+        if (remaining <= 0) {
+            task.future.completeExceptionally(timeoutError(task));
+            return;
+        }
+        task.pollCount++;
+        try {
+            task.client.getStatus(task.operationId, task.url)
+                .timeout(Duration.ofNanos(remaining), Mono.defer(() -> Mono.error(timeoutError(task))))
+                .subscribe(
+                    status -> onStatus(task, status),
+                    task.future::completeExceptionally);
+        } catch (RuntimeException e) {
+            task.future.completeExceptionally(e);
+        }
+    }
+
+    private void onStatus(PollTask task, EmailOperationStatus status) {
+        if (status.isTerminal()) {
+            task.future.complete(status);
+            return;
+        }
+        if (System.nanoTime() - task.deadline >= 0) {
+            task.future.completeExceptionally(timeoutError(task));
+            return;
+        }
+
+        if (status.getOperationLocation() != null) {
+            task.url = status.getOperationLocation();
+        }
+
+        Duration delay = backoff(task.pollCount);
+        if (status.getRetryAfter() != null && status.getRetryAfter().compareTo(delay) > 0) {
+            delay = status.getRetryAfter();
+        }
+        wheel.schedule(() -> poll(task), delay);
+    }
+
+    private TimeoutException timeoutError(PollTask task) {
+        return new TimeoutException(
+            "操作 " + task.operationId + " が " + timeout.getSeconds() + " 秒以内に完了しませんでした");
+    }
+
+    static Duration backoff(int pollCount) {
+        Duration delay = INITIAL_INTERVAL;
+        for (int i = 1; i < pollCount && delay.compareTo(MAX_INTERVAL) < 0; i++) {
+            delay = delay.multipliedBy(2);
+        }
+        return delay.compareTo(MAX_INTERVAL) > 0 ? MAX_INTERVAL : delay;
+    }
+
+    /**
+     * 1つの操作のポーリング状態
+     * ホイールのワーカースレッドと HTTP 応答スレッドから交互に（同時ではなく）触られるため、volatile で可視性だけ保証する
+     */
+    private static final class PollTask {
+        private final EmailOperationStatusClient client;
+        private final String operationId;
+        private final long deadline;
+        private final CompletableFuture<EmailOperationStatus> future = new CompletableFuture<>();
+        private volatile String url;
+        private volatile int pollCount;
+
+        PollTask(EmailOperationStatusClient client, String operationId, long deadline) {
+            this.client = client;
+            this.operationId = operationId;
+            this.deadline = deadline;
+            this.url = client.operationUrl(operationId);
+        }
+    }
+
+    private static final class Holder {
+        private static final EmailPollScheduler DEFAULT = new EmailPollScheduler(DEFAULT_TIMEOUT);
+
+        static {
+            SenderMetrics.getDefault().registerGauge("acs_email_poll_queue_depth",
+                "ステータスのポーリングを待っている操作数", null, DEFAULT::inFlight);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.acs.email;
+
+import com.azure.communication.email.EmailAsyncClient;
+import com.azure.core.exception.HttpResponseException;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * 送信先の ACS リソース1つ（接続文字列 + 送信元アドレス）
+ *
+ * リソースごとにクライアント・レートリミッター・重み・健全性を持つ。EmailResourcePool が重みに従って振り分ける。
+ *
+ * 健全性: 連続 FAILURE_THRESHOLD 回失敗すると一定時間（初回 30 秒、以降倍々で最大 5 分）振り分け対象から外す。
+ * 1回でも成功すれば元に戻る。
+ */
+public final class EmailResource {
+
+    static final int FAILURE_THRESHOLD = 3;
+    static final Duration BASE_COOLDOWN = Duration.ofSeconds(30);
+    static final Duration MAX_COOLDOWN = Duration.ofMinutes(5);
+
+    private static final int HTTP_STATUS_TOO_MANY_REQUESTS = 429;
+    private static final int HTTP_STATUS_SERVICE_UNAVAILABLE = 503;
+
+    private final String name;
+    private final EmailAsyncClient asyncClient;
+    private final String senderAddress;
+    private final int weight;
+    private final SendRateLimiter rateLimiter;
+    private final LongSupplier clock;
+
+    private int consecutiveFailures;
+    private int cooldownCount;
+    private long unavailableUntilNanos;
+    private boolean unavailable;
+
+    public EmailResource(String name, EmailAsyncClient asyncClient, String senderAddress, int weight,
+                         SendRateLimiter rateLimiter) {
+        this(name, asyncClient, senderAddress, weight, rateLimiter, System::nanoTime);
+    }
+
+    EmailResource(String name, EmailAsyncClient asyncClient, String senderAddress, int weight,
+                  SendRateLimiter rateLimiter, LongSupplier clock) {
+        if (weight <= 0) {
+            throw new IllegalArgumentException("重みは1以上を指定してください: " + name + "=" + weight);
+        }
+        this.name = name;
+        this.asyncClient = asyncClient;
+        this.senderAddress = senderAddress;
+        this.weight = weight;
+        this.rateLimiter = rateLimiter;
+        this.clock = clock;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public EmailAsyncClient getAsyncClient() {
+        return asyncClient;
+    }
+
+    public String getSenderAddress() {
+        return senderAddress;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    public SendRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * 振り分け対象か（一時的に外されていないか）
+     */
+    public synchronized boolean isAvailable() {
+        if (unavailable && clock.getAsLong() - unavailableUntilNanos >= 0) {
+            unavailable = false;
+        }
+        return !unavailable;
+    }
+
+    /**
+     * 振り分け対象に戻るまでの残り時間（対象なら 0）
+     */
+    synchronized long nanosUntilAvailable() {
+        return isAvailable() ? 0L : unavailableUntilNanos - clock.getAsLong();
+    }
+
+    public synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        cooldownCount = 0;
+        unavailable = false;
+    }
+
+    /**
+     * 失敗を記録する
+     *
+     * @return この失敗で振り分け対象から外した場合 true
+     */
+    public synchronized boolean recordFailure() {
+        consecutiveFailures++;
+        if (consecutiveFailures < FAILURE_THRESHOLD || unavailable) {
+            return false;
+        }
+        long cooldown = Math.min(BASE_COOLDOWN.toNanos() << Math.min(cooldownCount, 16), MAX_COOLDOWN.toNanos());
+        cooldownCount++;
+        consecutiveFailures = 0;
+        unavailable = true;
+        unavailableUntilNanos = clock.getAsLong() + cooldown;
+        return true;
+    }
+
+    /**
+     * 送信が確実に受け付けられなかったエラーか（別のリソースで送り直しても二重送信にならない）
+     * 429 と 503 はサービスが処理せずに拒否したもの。タイムアウトや接続断は受付済みの可能性があるため含めない。
+     */
+    static boolean isRejected(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof HttpResponseException) {
+                HttpResponseException exception = (HttpResponseException) cause;
+                if (exception.getResponse() == null) {
+                    return false;
+                }
+                int code = exception.getResponse().getStatusCode();
+                return code == HTTP_STATUS_TOO_MANY_REQUESTS || code == HTTP_STATUS_SERVICE_UNAVAILABLE;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return name + "（" + senderAddress + ", 重み " + weight + ", " + rateLimiter + "）";
+    }
+}
@@ -0,0 +1,190 @@
+package com.acs.email;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 複数の ACS リソースへ送信を振り分けるプール
+ *
+ * 1リソースのクォータが送信量の上限になるため、リソース（と送信元ドメイン）を増やした分だけ合計の送信ペースを上げられるようにする。
+ * - 重み付きラウンドロビン（smooth weighted round-robin）で振り分ける。重みの既定値は各リソースの分単位のクォータ
+ * - 送信枠はリソースごとのレートリミッターで管理し、枠の空いていないリソースは飛ばして次の候補を使う
+ * - 連続して失敗したリソースは一定時間振り分け対象から外す（EmailResource の健全性）
+ *
+ * 環境変数（番号は 1 から連番）:
+ * - ACS_CONNECTION_STRING_n / ACS_SENDER_ADDRESS_n: リソース n の接続文字列と送信元アドレス
+ * - ACS_RESOURCE_WEIGHT_n: 重み（省略時は分単位のクォータ）
+ * - ACS_RATE_LIMIT_PER_MINUTE_n / ACS_RATE_LIMIT_PER_HOUR_n: リソース n のクォータ（省略時は番号なしの値）
+ * 番号付きの設定が無い場合は ACS_CONNECTION_STRING / ACS_SENDER_ADDRESS の1リソースのプールになる。
+ */
+public final class EmailResourcePool {
+
+    private final List<EmailResource> resources;
+    private final int[] currentWeights;
+
+    public EmailResourcePool(List<EmailResource> resources) {
+        if (resources.isEmpty()) {
+            throw new IllegalArgumentException("リソースを1つ以上指定してください");
+        }
+        this.resources = Collections.unmodifiableList(new ArrayList<>(resources));
+        this.currentWeights = new int[resources.size()];
+    }
+
+    /**
+     * 1リソースだけのプール
+     */
+    public static EmailResourcePool single(EmailResource resource) {
+        return new EmailResourcePool(Collections.singletonList(resource));
+    }
+
+    /**
+     * 環境変数からプールを生成する
+     *
+     * @return 接続文字列・送信元アドレスが1つも設定されていない場合は null
+     */
+    public static EmailResourcePool fromEnvironment() {
+        List<EmailResource> resources = new ArrayList<>();
+        for (int n = 1; ; n++) {
+            String connectionString = System.getenv("ACS_CONNECTION_STRING_" + n);
+            String senderAddress = System.getenv("ACS_SENDER_ADDRESS_" + n);
+            if (isEmpty(connectionString) || isEmpty(senderAddress)) {
+                break;
+            }
+            SendRateLimiter rateLimiter = SendRateLimiter.fromEnvironment("_" + n, connectionString);
+            String weight = System.getenv("ACS_RESOURCE_WEIGHT_" + n);
+            resources.add(new EmailResource("#" + n,
+                EmailClientRegistry.getDefault().getAsyncClient(connectionString, senderAddress),
+                senderAddress,
+                isEmpty(weight) ? rateLimiter.getPerMinute() : Integer.parseInt(weight.trim()),
+                rateLimiter));
+        }
+        if (!resources.isEmpty()) {
+            return new EmailResourcePool(resources);
+        }
+
+        String connectionString = System.getenv("ACS_CONNECTION_STRING");
+        String senderAddress = System.getenv("ACS_SENDER_ADDRESS");
+        if (isEmpty(connectionString) || isEmpty(senderAddress)) {
+            return null;
+        }
+        SendRateLimiter rateLimiter = SendRateLimiter.getDefault();
+        return single(new EmailResource("#1",
+            EmailClientRegistry.getDefault().getAsyncClient(connectionString, senderAddress),
+            senderAddress, rateLimiter.getPerMinute(), rateLimiter));
+    }
+
+    /**
+     * 環境変数に設定されたリソースの名前と接続文字列（名前は fromEnvironment と同じ #n）
+     * OperationReconciler が、操作を受け付けたリソースに問い合わせるために使う。
+     *
+     * @return 名前 → 接続文字列（番号順。番号付きの設定が無ければ ACS_CONNECTION_STRING を #1 とする）
+     */
+    public static Map<String, String> connectionStringsFromEnvironment() {
+        Map<String, String> connectionStrings = new LinkedHashMap<>();
+        for (int n = 1; ; n++) {
+            String connectionString = System.getenv("ACS_CONNECTION_STRING_" + n);
+            // fromEnvironment と同じ条件で打ち切り、同じ番号に同じ名前を付ける
+            if (isEmpty(connectionString) || isEmpty(System.getenv("ACS_SENDER_ADDRESS_" + n))) {
+                break;
+            }
+            connectionStrings.put("#" + n, connectionString);
+        }
+        if (connectionStrings.isEmpty()) {
+            String connectionString = System.getenv("ACS_CONNECTION_STRING");
+            if (!isEmpty(connectionString)) {
+                connectionStrings.put("#1", connectionString);
+            }
+        }
+        return connectionStrings;
+    }
+
+    public List<EmailResource> getResources() {
+        return resources;
+    }
+
+    public int size() {
+        return resources.size();
+    }
+
+    /**
+     * 次に送信するリソースを重みに従って選ぶ
+     * 全リソースが振り分け対象外なら、最も早く対象に戻るリソースを返す（送信を止めない）
+     */
+    public synchronized EmailResource select() {
+        int index = nextIndex(null);
+        if (index >= 0) {
+            return resources.get(index);
+        }
+        EmailResource earliest = resources.get(0);
+        for (EmailResource resource : resources) {
+            if (resource.nanosUntilAvailable() < earliest.nanosUntilAvailable()) {
+                earliest = resource;
+            }
+        }
+        return earliest;
+    }
+
+    /**
+     * exclude 以外で、次に送信するリソースを重みに従って選ぶ
+     *
+     * @return 振り分け対象のリソースが無ければ null
+     */
+    public synchronized EmailResource alternativeTo(EmailResource exclude) {
+        int index = nextIndex(exclude);
+        return index < 0 ? null : resources.get(index);
+    }
+
+    /**
+     * 送信枠を取得できたリソースを返す（取得できるまで呼び出しスレッドをブロックする）
+     * 重みに従った候補の送信枠が空いていなければ次の候補を試し、どれも空いていなければ最初の候補の枠を待つ。
+     */
+    public EmailResource acquire() throws InterruptedException {
+        EmailResource first = select();
+        if (first.getRateLimiter().tryAcquire()) {
+            return first;
+        }
+        for (int i = 1; i < resources.size(); i++) {
+            EmailResource candidate = select();
+            if (candidate != first && candidate.getRateLimiter().tryAcquire()) {
+                return candidate;
+            }
+        }
+        first.getRateLimiter().acquire();
+        return first;
+    }
+
+    /**
+     * smooth weighted round-robin: 対象の各リソースに重みを加算し、最大のものを選んで合計重みを引く
+     */
+    private int nextIndex(EmailResource exclude) {
+        int best = -1;
+        int totalWeight = 0;
+        for (int i = 0; i < resources.size(); i++) {
+            EmailResource resource = resources.get(i);
+            if (resource == exclude || !resource.isAvailable()) {
+                continue;
+            }
+            currentWeights[i] += resource.getWeight();
+            totalWeight += resource.getWeight();
+            if (best < 0 || currentWeights[i] > currentWeights[best]) {
+                best = i;
+            }
+        }
+        if (best >= 0) {
+            currentWeights[best] -= totalWeight;
+        }
+        return best;
+    }
+
+    private static boolean isEmpty(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return resources.toString();
+    }
+}
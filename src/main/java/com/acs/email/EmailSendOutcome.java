@@ -0,0 +1,57 @@
+package com.acs.email;
+
+import com.azure.communication.email.models.EmailMessage;
+import com.azure.communication.email.models.EmailSendResult;
+import com.azure.communication.email.models.EmailSendStatus;
+
+/**
+ * EmailSendPipeline が1通ごとに出力する送信結果
+ *
+ * 送信元の EmailMessage と、最終的な EmailSendResult またはエラーの組。
+ * 1通の失敗でパイプライン全体を止めないよう、エラーも要素として流す。
+ */
+public final class EmailSendOutcome {
+
+    private final EmailMessage message;
+    private final EmailSendResult result;
+    private final Throwable error;
+
+    private EmailSendOutcome(EmailMessage message, EmailSendResult result, Throwable error) {
+        this.message = message;
+        this.result = result;
+        this.error = error;
+    }
+
+    static EmailSendOutcome completed(EmailMessage message, EmailSendResult result) {
+        return new EmailSendOutcome(message, result, null);
+    }
+
+    static EmailSendOutcome failed(EmailMessage message, Throwable error) {
+        return new EmailSendOutcome(message, null, error);
+    }
+
+    public EmailMessage getMessage() {
+        return message;
+    }
+
+    /**
+     * 最終の EmailSendResult（エラーで終わった場合は null）
+     */
+    public EmailSendResult getResult() {
+        return result;
+    }
+
+    /**
+     * 送信・ポーリング中に発生したエラー（タイムアウトを含む。正常に終わった場合は null）
+     */
+    public Throwable getError() {
+        return error;
+    }
+
+    /**
+     * EmailSendStatus.SUCCEEDED で終わったかどうか
+     */
+    public boolean isSucceeded() {
+        return result != null && result.getStatus() == EmailSendStatus.SUCCEEDED;
+    }
+}
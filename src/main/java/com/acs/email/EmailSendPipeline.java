@@ -0,0 +1,134 @@
+package com.acs.email;
+
+import com.azure.communication.email.EmailAsyncClient;
+import com.azure.communication.email.models.EmailMessage;
+import com.azure.communication.email.models.EmailSendResult;
+import com.azure.core.util.polling.AsyncPollResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * EmailMessage のストリームを送信結果のストリームに変換するリアクティブパイプライン
+ *
+ * Flux&lt;EmailMessage&gt; → Flux&lt;EmailSendOutcome&gt;
+ * - flatMap の同時実行数で未完了の送信数を制限する。上流には同時実行数分しか要求しないため、
+ *   上流がファイル読み込みなどでも読み込みが送信に合わせて進む（背圧）
+ * - 1通ごとにタイムアウトを設定し、タイムアウトやエラーは EmailSendOutcome として流す
+ * - 送信前に SendRateLimiter の送信枠を予約し、待ちが必要ならスレッドをブロックせず遅延させる
+ * - 1通ごとに Operation-Id を送信前に採番し、SDK が再試行しても同じ操作として扱われるようにする
+ * - 送信数・最終ステータス・未完了の送信数を SenderMetrics に記録する
+ * - SendLatencyRecorder を指定すると、1通ごとに送信枠の待ち・受付・最初のポーリング・最終ステータスの所要時間を記録する
+ *
+ * 1通ごとにスレッドや CountDownLatch を用意する必要がないため、1プロセスでキャンペーン全体を流せる。
+ */
+public final class EmailSendPipeline {
+
+    private final EmailAsyncClient emailAsyncClient;
+    private final SendRateLimiter rateLimiter;
+    private final int maxConcurrency;
+    private final Duration perItemTimeout;
+    private final SendLatencyRecorder latencyRecorder;
+    private final SenderMetrics metrics;
+
+    public EmailSendPipeline(EmailAsyncClient emailAsyncClient, SendRateLimiter rateLimiter, int maxConcurrency,
+                             Duration perItemTimeout) {
+        this(emailAsyncClient, rateLimiter, maxConcurrency, perItemTimeout, null);
+    }
+
+    /**
+     * @param latencyRecorder null 以外を指定するとフェーズ別の所要時間を記録する
+     */
+    public EmailSendPipeline(EmailAsyncClient emailAsyncClient, SendRateLimiter rateLimiter, int maxConcurrency,
+                             Duration perItemTimeout, SendLatencyRecorder latencyRecorder) {
+        this(emailAsyncClient, rateLimiter, maxConcurrency, perItemTimeout, latencyRecorder,
+            SenderMetrics.getDefault());
+    }
+
+    EmailSendPipeline(EmailAsyncClient emailAsyncClient, SendRateLimiter rateLimiter, int maxConcurrency,
+                      Duration perItemTimeout, SendLatencyRecorder latencyRecorder, SenderMetrics metrics) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("同時送信数は1以上を指定してください: " + maxConcurrency);
+        }
+        this.emailAsyncClient = emailAsyncClient;
+        this.rateLimiter = rateLimiter;
+        this.maxConcurrency = maxConcurrency;
+        this.perItemTimeout = perItemTimeout;
+        this.latencyRecorder = latencyRecorder;
+        this.metrics = metrics;
+    }
+
+    /**
+     * メッセージを送信し、1通ごとの結果を完了した順に流す
+     */
+    public Flux<EmailSendOutcome> send(Flux<EmailMessage> messages) {
+        return send(messages, response -> { });
+    }
+
+    /**
+     * メッセージを送信し、1通ごとの結果を完了した順に流す
+     *
+     * @param pollListener 各ポーリング応答を受け取るリスナー（進捗表示用。ブロックしてはならない）
+     */
+    public Flux<EmailSendOutcome> send(Flux<EmailMessage> messages,
+                                       Consumer<AsyncPollResponse<EmailSendResult, EmailSendResult>> pollListener) {
+        return messages.flatMap(message -> sendOne(message, pollListener), maxConcurrency);
+    }
+
+    private Mono<EmailSendOutcome> sendOne(EmailMessage message,
+                                           Consumer<AsyncPollResponse<EmailSendResult, EmailSendResult>> pollListener) {
+        String operationId = OperationIdPolicy.newOperationId();
+        return Mono.defer(() -> {
+            SendLatencyRecorder.Timer timer = latencyRecorder == null ? null : latencyRecorder.startTimer();
+            AtomicInteger responseIndex = new AtomicInteger();
+            Mono<EmailSendResult> send = Mono.defer(() -> {
+                if (timer != null) {
+                    timer.markAcquired();
+                }
+                metrics.sendStarted();
+                return emailAsyncClient.beginSend(message)
+                    .contextWrite(context -> context.put(OperationIdPolicy.CONTEXT_KEY, operationId))
+                    .doOnNext(response -> {
+                        if (timer != null) {
+                            timer.markResponse(responseIndex.getAndIncrement());
+                        }
+                    })
+                    .doOnNext(pollListener)
+                    .last()
+                    .doOnNext(response -> {
+                        if (timer != null) {
+                            timer.markCompleted();
+                        }
+                    });
+            })
+                .flatMap(EmailSendPipeline::finalResult)
+                .timeout(perItemTimeout)
+                .doOnNext(result -> metrics.sendCompleted(result.getStatus()))
+                .doOnError(error -> metrics.sendFailed())
+                // 下流が購読を解除した（take やプロセスの停止など）場合も未完了の送信数を戻す
+                .doOnCancel(metrics::sendCancelled);
+
+            // 送信枠の待ち時間はタイムアウトに含めない
+            Duration wait = rateLimiter.reserve();
+            return wait.isZero() ? send : Mono.delay(wait).then(send);
+        })
+            .map(result -> EmailSendOutcome.completed(message, result))
+            .onErrorResume(error -> Mono.just(EmailSendOutcome.failed(message, error)));
+    }
+
+    /**
+     * 最後のポーリング応答から送信結果を取り出す
+     * 結果の本文が無い応答（終端状態で本文が空など）は NullPointerException にせず、送信の失敗として扱う。
+     */
+    private static Mono<EmailSendResult> finalResult(AsyncPollResponse<EmailSendResult, EmailSendResult> response) {
+        EmailSendResult result = response.getValue();
+        if (result == null) {
+            return Mono.error(new IllegalStateException(
+                "最終ステータスの応答に送信結果がありません: " + response.getStatus()));
+        }
+        return Mono.just(result);
+    }
+}
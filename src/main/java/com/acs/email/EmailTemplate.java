@@ -0,0 +1,251 @@
+package com.acs.email;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 件名・本文のテンプレート
+ *
+ * テンプレート文字列を1度だけ解析し、「固定部分」と「変数名」の配列にした形（コンパイル済み）で保持する。
+ * 描画は固定部分と変数値を順にバッファへ書き出すだけで、文字列連結の中間オブジェクトを作らない。
+ * - 変数は {{name}}（名前は英数字・_ . -、前後の空白は無視）
+ * - HTML テンプレートでは変数値を HTML エスケープする（& < > " '）。テキストテンプレートではそのまま埋め込む
+ * - 描画用のバッファはスレッドごとに使い回す（大きくなりすぎたバッファは捨てる）
+ * - compile は同じテンプレート文字列の解析結果をキャッシュする（JSONL の各行で同じテンプレートを使う場合など）
+ *
+ * コンパイル済みのテンプレートは不変でスレッドセーフ。
+ */
+public final class EmailTemplate {
+
+    /**
+     * 変数値の埋め込み方
+     */
+    public enum Escaping {
+        NONE,
+        HTML
+    }
+
+    private static final int MAX_CACHED_TEMPLATES = 10_000;
+    private static final int MAX_POOLED_BUFFER_CAPACITY = 64 * 1024;
+    private static final ConcurrentMap<CacheKey, EmailTemplate> CACHE = new ConcurrentHashMap<>();
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(1024));
+
+    private final String source;
+    private final Escaping escaping;
+    // literals.length == names.length + 1: literals[0] names[0] literals[1] names[1] ... literals[n]
+    private final String[] literals;
+    private final String[] names;
+    private final int literalLength;
+
+    private EmailTemplate(String source, Escaping escaping, String[] literals, String[] names) {
+        this.source = source;
+        this.escaping = escaping;
+        this.literals = literals;
+        this.names = names;
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.literalLength = length;
+    }
+
+    /**
+     * HTML テンプレートを取得する（変数値を HTML エスケープする）
+     */
+    public static EmailTemplate html(String source) {
+        return compile(source, Escaping.HTML);
+    }
+
+    /**
+     * テキストテンプレートを取得する（件名・プレーンテキスト本文用）
+     */
+    public static EmailTemplate text(String source) {
+        return compile(source, Escaping.NONE);
+    }
+
+    /**
+     * テンプレートを取得する（解析済みならキャッシュから返す）
+     *
+     * @throws IllegalArgumentException テンプレートの構文が不正な場合
+     */
+    public static EmailTemplate compile(String source, Escaping escaping) {
+        CacheKey key = new CacheKey(Objects.requireNonNull(source, "source"), escaping);
+        EmailTemplate template = CACHE.get(key);
+        if (template != null) {
+            return template;
+        }
+        template = parse(source, escaping);
+        // 行ごとに異なるテンプレートが大量に来てもメモリを使い切らないよう、上限を超えたらキャッシュしない
+        if (CACHE.size() < MAX_CACHED_TEMPLATES) {
+            EmailTemplate existing = CACHE.putIfAbsent(key, template);
+            if (existing != null) {
+                return existing;
+            }
+        }
+        return template;
+    }
+
+    static EmailTemplate parse(String source, Escaping escaping) {
+        List<String> literals = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        int position = 0;
+        while (true) {
+            int open = source.indexOf("{{", position);
+            if (open < 0) {
+                literals.add(source.substring(position));
+                break;
+            }
+            int close = source.indexOf("}}", open + 2);
+            if (close < 0) {
+                throw new IllegalArgumentException("テンプレートの {{ が閉じられていません（" + open + " 文字目）");
+            }
+            String name = source.substring(open + 2, close).trim();
+            if (!isValidName(name)) {
+                throw new IllegalArgumentException("テンプレートの変数名が不正です（" + open + " 文字目）: " + name);
+            }
+            literals.add(source.substring(position, open));
+            names.add(name);
+            position = close + 2;
+        }
+        return new EmailTemplate(source, escaping,
+            literals.toArray(new String[0]), names.toArray(new String[0]));
+    }
+
+    private static boolean isValidName(String name) {
+        if (name.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (!(Character.isLetterOrDigit(c) || c == '_' || c == '.' || c == '-')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 変数を埋め込んだ文字列を返す
+     *
+     * @throws IllegalArgumentException テンプレートの変数が variables に無い場合
+     */
+    public String render(Map<String, String> variables) {
+        if (names.length == 0) {
+            return literals[0];
+        }
+        StringBuilder buffer = BUFFER.get();
+        buffer.setLength(0);
+        renderTo(variables, buffer);
+        String result = buffer.toString();
+        if (buffer.capacity() > MAX_POOLED_BUFFER_CAPACITY) {
+            BUFFER.remove();
+        }
+        return result;
+    }
+
+    /**
+     * 変数を埋め込んだ結果を buffer に追記する
+     *
+     * @throws IllegalArgumentException テンプレートの変数が variables に無い場合
+     */
+    public void renderTo(Map<String, String> variables, StringBuilder buffer) {
+        buffer.ensureCapacity(buffer.length() + literalLength + 16 * names.length);
+        for (int i = 0; i < names.length; i++) {
+            buffer.append(literals[i]);
+            String value = variables.get(names[i]);
+            if (value == null) {
+                throw new IllegalArgumentException("テンプレートの変数 " + names[i] + " の値がありません");
+            }
+            if (escaping == Escaping.HTML) {
+                escapeHtml(value, buffer);
+            } else {
+                buffer.append(value);
+            }
+        }
+        buffer.append(literals[names.length]);
+    }
+
+    /**
+     * HTML の特殊文字をエスケープして追記する（エスケープ不要な区間はまとめて追記する）
+     */
+    static void escapeHtml(String value, StringBuilder buffer) {
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            String replacement;
+            switch (value.charAt(i)) {
+                case '&':
+                    replacement = "&amp;";
+                    break;
+                case '<':
+                    replacement = "&lt;";
+                    break;
+                case '>':
+                    replacement = "&gt;";
+                    break;
+                case '"':
+                    replacement = "&quot;";
+                    break;
+                case '\'':
+                    replacement = "&#39;";
+                    break;
+                default:
+                    continue;
+            }
+            buffer.append(value, start, i).append(replacement);
+            start = i + 1;
+        }
+        buffer.append(value, start, value.length());
+    }
+
+    /**
+     * テンプレートで使われている変数名（出現順、重複あり）
+     */
+    public List<String> getVariableNames() {
+        return Collections.unmodifiableList(Arrays.asList(names));
+    }
+
+    public Escaping getEscaping() {
+        return escaping;
+    }
+
+    @Override
+    public String toString() {
+        return source;
+    }
+
+    /**
+     * キャッシュのキー（テンプレート文字列 + 埋め込み方）
+     */
+    private static final class CacheKey {
+        private final String source;
+        private final Escaping escaping;
+
+        CacheKey(String source, Escaping escaping) {
+            this.source = source;
+            this.escaping = escaping;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CacheKey)) {
+                return false;
+            }
+            CacheKey other = (CacheKey) o;
+            return source.equals(other.source) && escaping == other.escaping;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * source.hashCode() + escaping.hashCode();
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.acs.email;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ハッシュドタイミングホイール
+ *
+ * 1本のワーカースレッドで数千〜数万のタイマーを扱うための単純なタイマー実装。
+ * tick ごとにホイールの1スロットだけを処理するため、登録数が増えても1 tick あたりの処理量は
+ * そのスロットに入っているタイマー数にしか比例しない。
+ *
+ * - schedule はどのスレッドからでも呼べる（ロックフリーのキュー経由でワーカーに渡す）
+ * - タスクはワーカースレッド上で実行されるため、ブロックする処理を行ってはならない
+ * - 精度は tick 単位（tick より短い遅延は次の tick で実行される）
+ */
+public final class HashedTimingWheel {
+
+    private final long tickNanos;
+    private final int mask;
+    private final List<Timeout>[] wheel;
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicBoolean started = new AtomicBoolean(false);
+    private final Thread worker;
+
+    private volatile boolean stopped;
+    private long startTime;
+    private long tick;
+
+    @SuppressWarnings("unchecked")
+    public HashedTimingWheel(String name, Duration tickDuration, int wheelSize) {
+        if (tickDuration.isZero() || tickDuration.isNegative()) {
+            throw new IllegalArgumentException("tickDuration は正の値を指定してください: " + tickDuration);
+        }
+        if (wheelSize <= 0 || Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException("wheelSize は2のべき乗を指定してください: " + wheelSize);
+        }
+        this.tickNanos = tickDuration.toNanos();
+        this.mask = wheelSize - 1;
+        this.wheel = new List[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            wheel[i] = new ArrayList<>();
+        }
+        this.worker = new Thread(this::run, name);
+        this.worker.setDaemon(true);
+    }
+
+    /**
+     * delay 経過後に task を実行するよう登録する
+     */
+    public void schedule(Runnable task, Duration delay) {
+        if (stopped) {
+            throw new IllegalStateException("HashedTimingWheel は停止済みです");
+        }
+        if (started.compareAndSet(false, true)) {
+            startTime = System.nanoTime();
+            worker.start();
+        }
+        long deadline = System.nanoTime() + Math.max(0L, delay.toNanos());
+        pending.add(new Timeout(task, deadline));
+        size.incrementAndGet();
+    }
+
+    /**
+     * 登録済みで未実行のタイマー数
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * ワーカースレッドを停止する（未実行のタイマーは破棄される）
+     */
+    public void stop() {
+        stopped = true;
+        worker.interrupt();
+    }
+
+    private void run() {
+        while (!stopped) {
+            long deadline = startTime + (tick + 1) * tickNanos;
+            long sleepNanos = deadline - System.nanoTime();
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    if (stopped) {
+                        return;
+                    }
+                    continue;
+                }
+            }
+
+            transferPending();
+            expire(wheel[(int) (tick & mask)]);
+            tick++;
+        }
+    }
+
+    /**
+     * 登録待ちのタイマーを期限に応じたスロットへ振り分ける
+     */
+    private void transferPending() {
+        Timeout timeout;
+        while ((timeout = pending.poll()) != null) {
+            long ticks = Math.max(tick, (timeout.deadline - startTime + tickNanos - 1) / tickNanos);
+            timeout.remainingRounds = (ticks - tick) / wheel.length;
+            wheel[(int) (ticks & mask)].add(timeout);
+        }
+    }
+
+    private void expire(List<Timeout> bucket) {
+        int kept = 0;
+        for (int i = 0; i < bucket.size(); i++) {
+            Timeout timeout = bucket.get(i);
+            if (timeout.remainingRounds > 0) {
+                timeout.remainingRounds--;
+                bucket.set(kept++, timeout);
+                continue;
+            }
+            size.decrementAndGet();
+            try {
+                timeout.task.run();
+            } catch (RuntimeException e) {
+                System.err.println("タイマータスクで例外が発生しました: " + e);
+            }
+        }
+        bucket.subList(kept, bucket.size()).clear();
+    }
+
+    private static final class Timeout {
+        private final Runnable task;
+        private final long deadline;
+        private long remainingRounds;
+
+        Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+    }
+}
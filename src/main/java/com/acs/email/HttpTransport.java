@@ -0,0 +1,245 @@
+package com.acs.email;
+
+import com.azure.core.http.HttpClient;
+import com.azure.core.http.jdk.httpclient.JdkHttpClientBuilder;
+import com.azure.core.http.netty.NettyAsyncHttpClientBuilder;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.Locale;
+
+/**
+ * EmailClientBuilder.httpClient に渡す HTTP クライアント（接続プール・HTTP/2・タイムアウトの設定）
+ *
+ * 既定のトランスポートは送信ごとの接続数やアイドル接続の扱いを調整できず、バースト時に TLS ハンドシェイクの
+ * やり直しや接続プールの取得待ちが発生する。本クラスは設定を明示した HttpClient を1つだけ生成し、
+ * 全てのクライアント（送信・ステータス取得）で共有して接続を使い回す。
+ * - NETTY: reactor-netty の接続プール（最大接続数・取得待ちのタイムアウト・アイドル接続の削除）と HTTP/2
+ * - JDK: java.net.http.HttpClient（接続プールとキープアライブは jdk.httpclient.* システムプロパティで設定）
+ * - HTTP/2 は ALPN でネゴシエートするため、サーバーが対応していなければ HTTP/1.1 で接続する
+ *
+ * 設定（環境変数。未設定の項目は既定値）:
+ * - ACS_HTTP_CLIENT: netty / jdk（既定 netty）
+ * - ACS_HTTP_MAX_CONNECTIONS: 最大接続数（既定 64）
+ * - ACS_HTTP_PENDING_ACQUIRE_TIMEOUT_MS: 接続の取得待ちの上限（既定 10000。netty のみ）
+ * - ACS_HTTP_IDLE_TIMEOUT_MS: アイドル接続を閉じるまでの時間（既定 60000）
+ * - ACS_HTTP_HTTP2: HTTP/2 を使うか（既定 true）
+ * - ACS_HTTP_CONNECT_TIMEOUT_MS / ACS_HTTP_RESPONSE_TIMEOUT_MS / ACS_HTTP_READ_TIMEOUT_MS: タイムアウト
+ */
+public final class HttpTransport {
+
+    /**
+     * HTTP クライアントの実装
+     */
+    public enum Implementation {
+        NETTY,
+        JDK
+    }
+
+    private HttpTransport() {
+    }
+
+    /**
+     * プロセス全体で共有する HTTP クライアントを取得（環境変数の設定で1度だけ生成する）
+     */
+    public static HttpClient getDefault() {
+        return Holder.DEFAULT;
+    }
+
+    /**
+     * getDefault が使う設定（起動時の表示用）
+     */
+    public static Settings getDefaultSettings() {
+        return Holder.SETTINGS;
+    }
+
+    /**
+     * 設定に従って HTTP クライアントを生成する
+     */
+    public static HttpClient create(Settings settings) {
+        if (settings.implementation == Implementation.JDK) {
+            return createJdk(settings);
+        }
+        return createNetty(settings);
+    }
+
+    private static HttpClient createNetty(Settings settings) {
+        ConnectionProvider provider = ConnectionProvider.builder("acs-email")
+            .maxConnections(settings.maxConnections)
+            .pendingAcquireTimeout(settings.pendingAcquireTimeout)
+            .maxIdleTime(settings.idleTimeout)
+            // アイドル接続はリクエストの有無に関係なく削除する（サーバー側に切られた接続を掴まないように）
+            .evictInBackground(settings.idleTimeout)
+            .build();
+        reactor.netty.http.client.HttpClient reactorClient = reactor.netty.http.client.HttpClient.create(provider)
+            .keepAlive(true)
+            .protocol(settings.http2
+                ? new HttpProtocol[] {HttpProtocol.H2, HttpProtocol.HTTP11}
+                : new HttpProtocol[] {HttpProtocol.HTTP11});
+        return new NettyAsyncHttpClientBuilder(reactorClient)
+            .connectTimeout(settings.connectTimeout)
+            .responseTimeout(settings.responseTimeout)
+            .readTimeout(settings.readTimeout)
+            .writeTimeout(settings.readTimeout)
+            .build();
+    }
+
+    private static HttpClient createJdk(Settings settings) {
+        // JDK の HttpClient は接続プールの設定をシステムプロパティで読む（明示的に設定されていれば尊重する）
+        setPropertyIfAbsent("jdk.httpclient.connectionPoolSize", Integer.toString(settings.maxConnections));
+        String keepAliveSeconds = Long.toString(Math.max(1L, settings.idleTimeout.getSeconds()));
+        setPropertyIfAbsent("jdk.httpclient.keepalive.timeout", keepAliveSeconds);
+        setPropertyIfAbsent("jdk.httpclient.keepalive.timeout.h2", keepAliveSeconds);
+        java.net.http.HttpClient.Builder jdkBuilder = java.net.http.HttpClient.newBuilder()
+            .version(settings.http2 ? java.net.http.HttpClient.Version.HTTP_2 : java.net.http.HttpClient.Version.HTTP_1_1);
+        return new JdkHttpClientBuilder(jdkBuilder)
+            .connectionTimeout(settings.connectTimeout)
+            .responseTimeout(settings.responseTimeout)
+            .readTimeout(settings.readTimeout)
+            .writeTimeout(settings.readTimeout)
+            .build();
+    }
+
+    private static void setPropertyIfAbsent(String name, String value) {
+        if (System.getProperty(name) == null) {
+            System.setProperty(name, value);
+        }
+    }
+
+    /**
+     * HTTP クライアントの設定
+     */
+    public static final class Settings {
+        private Implementation implementation = Implementation.NETTY;
+        private int maxConnections = 64;
+        private Duration pendingAcquireTimeout = Duration.ofSeconds(10);
+        private Duration idleTimeout = Duration.ofSeconds(60);
+        private boolean http2 = true;
+        private Duration connectTimeout = Duration.ofSeconds(10);
+        private Duration responseTimeout = Duration.ofSeconds(60);
+        private Duration readTimeout = Duration.ofSeconds(60);
+
+        /**
+         * 環境変数から設定を読み込む
+         */
+        public static Settings fromEnvironment() {
+            Settings settings = new Settings();
+            String value = System.getenv("ACS_HTTP_CLIENT");
+            if (value != null && !value.trim().isEmpty()) {
+                try {
+                    settings.implementation(Implementation.valueOf(value.trim().toUpperCase(Locale.ROOT)));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("環境変数 ACS_HTTP_CLIENT は netty か jdk を指定してください: " + value, e);
+                }
+            }
+            value = System.getenv("ACS_HTTP_MAX_CONNECTIONS");
+            if (value != null && !value.trim().isEmpty()) {
+                settings.maxConnections(Integer.parseInt(value.trim()));
+            }
+            settings.pendingAcquireTimeout = readMillis("ACS_HTTP_PENDING_ACQUIRE_TIMEOUT_MS", settings.pendingAcquireTimeout);
+            settings.idleTimeout = readMillis("ACS_HTTP_IDLE_TIMEOUT_MS", settings.idleTimeout);
+            value = System.getenv("ACS_HTTP_HTTP2");
+            if (value != null && !value.trim().isEmpty()) {
+                settings.http2(Boolean.parseBoolean(value.trim()));
+            }
+            settings.connectTimeout = readMillis("ACS_HTTP_CONNECT_TIMEOUT_MS", settings.connectTimeout);
+            settings.responseTimeout = readMillis("ACS_HTTP_RESPONSE_TIMEOUT_MS", settings.responseTimeout);
+            settings.readTimeout = readMillis("ACS_HTTP_READ_TIMEOUT_MS", settings.readTimeout);
+            return settings;
+        }
+
+        private static Duration readMillis(String name, Duration defaultValue) {
+            String value = System.getenv(name);
+            if (value == null || value.trim().isEmpty()) {
+                return defaultValue;
+            }
+            try {
+                long millis = Long.parseLong(value.trim());
+                if (millis <= 0) {
+                    throw new IllegalArgumentException("環境変数 " + name + " は正の値を指定してください: " + value);
+                }
+                return Duration.ofMillis(millis);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("環境変数 " + name + " が数値ではありません: " + value, e);
+            }
+        }
+
+        public Settings implementation(Implementation implementation) {
+            this.implementation = implementation;
+            return this;
+        }
+
+        public Settings maxConnections(int maxConnections) {
+            if (maxConnections <= 0) {
+                throw new IllegalArgumentException("最大接続数は1以上を指定してください: " + maxConnections);
+            }
+            this.maxConnections = maxConnections;
+            return this;
+        }
+
+        /**
+         * 最大接続数に達しているときに、接続が空くのを待つ時間の上限（超えたらリクエストを失敗させる）
+         */
+        public Settings pendingAcquireTimeout(Duration pendingAcquireTimeout) {
+            this.pendingAcquireTimeout = pendingAcquireTimeout;
+            return this;
+        }
+
+        public Settings idleTimeout(Duration idleTimeout) {
+            this.idleTimeout = idleTimeout;
+            return this;
+        }
+
+        public Settings http2(boolean http2) {
+            this.http2 = http2;
+            return this;
+        }
+
+        public Settings connectTimeout(Duration connectTimeout) {
+            this.connectTimeout = connectTimeout;
+            return this;
+        }
+
+        /**
+         * リクエストを送り終えてから応答ヘッダーを受け取るまでの上限
+         */
+        public Settings responseTimeout(Duration responseTimeout) {
+            this.responseTimeout = responseTimeout;
+            return this;
+        }
+
+        /**
+         * 応答本文の読み込み（と送信）で、データが途切れてよい時間の上限
+         */
+        public Settings readTimeout(Duration readTimeout) {
+            this.readTimeout = readTimeout;
+            return this;
+        }
+
+        public Implementation getImplementation() {
+            return implementation;
+        }
+
+        public int getMaxConnections() {
+            return maxConnections;
+        }
+
+        public boolean isHttp2() {
+            return http2;
+        }
+
+        @Override
+        public String toString() {
+            return implementation.name().toLowerCase(Locale.ROOT) + " / " + (http2 ? "HTTP/2" : "HTTP/1.1")
+                + " / 最大接続数 " + maxConnections + " / アイドル " + idleTimeout.toMillis() + "ms / 接続 "
+                + connectTimeout.toMillis() + "ms / 応答 " + responseTimeout.toMillis() + "ms / 読み込み "
+                + readTimeout.toMillis() + "ms";
+        }
+    }
+
+    private static final class Holder {
+        private static final Settings SETTINGS = Settings.fromEnvironment();
+        private static final HttpClient DEFAULT = create(SETTINGS);
+    }
+}
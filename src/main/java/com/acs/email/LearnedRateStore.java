@@ -0,0 +1,83 @@
+package com.acs.email;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * CheckRateLimit の AIMD プローブが学習した送信レートをリソースごとに保存するファイル
+ *
+ * 形式は properties（キー: リソースのエンドポイント、値: 通/分）。次回のプローブはこの値から開始する。
+ * 保存先は環境変数 ACS_LEARNED_RATE_FILE、未設定なら ~/.acs-email-sender/learned-rates.properties
+ */
+public final class LearnedRateStore {
+
+    private final Path file;
+
+    public LearnedRateStore(Path file) {
+        this.file = file;
+    }
+
+    public static LearnedRateStore fromEnvironment() {
+        String value = System.getenv("ACS_LEARNED_RATE_FILE");
+        if (value != null && !value.trim().isEmpty()) {
+            return new LearnedRateStore(Paths.get(value.trim()));
+        }
+        return new LearnedRateStore(Paths.get(System.getProperty("user.home"), ".acs-email-sender", "learned-rates.properties"));
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * 保存済みのレートを取得する
+     *
+     * @return 通/分。保存されていなければ null
+     */
+    public synchronized Double load(String resource) throws IOException {
+        String value = read().getProperty(resource);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Double.valueOf(value.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("警告: 学習済みレートが数値ではないため無視します: " + resource + "=" + value);
+            return null;
+        }
+    }
+
+    /**
+     * レートを保存する（他のリソースの値は保持し、一時ファイル経由で置き換える）
+     */
+    public synchronized void save(String resource, double ratePerMinute) throws IOException {
+        Properties properties = read();
+        properties.setProperty(resource, String.format(Locale.ROOT, "%.2f", ratePerMinute));
+
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            properties.store(writer, "ACS email learned send rates (per minute)");
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Properties read() throws IOException {
+        Properties properties = new Properties();
+        if (Files.exists(file)) {
+            try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                properties.load(reader);
+            }
+        }
+        return properties;
+    }
+}
@@ -0,0 +1,293 @@
+package com.acs.email;
+
+import com.azure.communication.email.EmailAsyncClient;
+import com.azure.communication.email.models.EmailMessage;
+import com.azure.communication.email.models.EmailSendResult;
+import com.azure.core.http.policy.FixedDelay;
+import com.azure.core.http.policy.RetryPolicy;
+import com.azure.core.util.polling.AsyncPollResponse;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * ACS メール送信 負荷生成ツール
+ *
+ * CheckRateLimit（35件を逐次送信して 429 の発生位置を確認する）を一般化し、送信ペースと並列度を指定して
+ * 一定時間送信し続け、レイテンシの分布・達成スループット・429 の割合を報告する。
+ * キャンペーン前のワーカー数やクォータの見積もりに使う。
+ *
+ * - open-loop（--rate）: 指定したレートで送信を開始する（応答を待たない）。レイテンシは「予定していた開始時刻」から
+ *   測るため、サーバーが詰まっても遅延が過小評価されない（coordinated omission の補正）
+ * - closed-loop（--workers）: N 本のワーカーがそれぞれ「送信 → 応答 → 次の送信」を繰り返す
+ *
+ * レイテンシは HdrHistogram に記録し、1秒ごとの区間値と最後に全体の p50 / p99 / p99.9 を出力する。
+ * 既定では SDK の再試行を無効にして 429 をそのまま数える（--with-retry で本番と同じ再試行付きクライアントを使う）。
+ *
+ * 使用法: java LoadGenerator <送信先メールアドレス> (--rate <通/秒> | --workers <並列数>)
+ *         [--duration <秒>] [--until-complete] [--with-retry]
+ */
+public class LoadGenerator {
+
+    private static final String CONNECTION_STRING = System.getenv("ACS_CONNECTION_STRING");
+    private static final String SENDER_ADDRESS = System.getenv("ACS_SENDER_ADDRESS");
+
+    private static final Duration DEFAULT_DURATION = Duration.ofSeconds(60);
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(10);
+    private static final int SIGNIFICANT_DIGITS = 3;
+    // open-loop で応答待ちがこれを超えたら、送信せずに「取りこぼし」として数える（メモリ保護）
+    private static final int MAX_OPEN_LOOP_IN_FLIGHT = 10_000;
+
+    private final EmailAsyncClient emailAsyncClient;
+    private final String senderAddress;
+    private final String recipientAddress;
+    private final boolean untilComplete;
+
+    private final Recorder recorder = new Recorder(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS);
+    private final Histogram total = new Histogram(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS);
+    private final AtomicLong sequence = new AtomicLong();
+    private final LongAdder succeededCount = new LongAdder();
+    private final LongAdder throttledCount = new LongAdder();
+    private final LongAdder errorCount = new LongAdder();
+    private final LongAdder droppedCount = new LongAdder();
+
+    public LoadGenerator(EmailAsyncClient emailAsyncClient, String senderAddress, String recipientAddress,
+                         boolean untilComplete) {
+        this.emailAsyncClient = emailAsyncClient;
+        this.senderAddress = senderAddress;
+        this.recipientAddress = recipientAddress;
+        this.untilComplete = untilComplete;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        System.out.println("=================================================");
+        System.out.println("ACS メール送信 負荷生成ツール");
+        System.out.println("=================================================\n");
+
+        if (CONNECTION_STRING == null || CONNECTION_STRING.isEmpty()) {
+            System.err.println("エラー: 環境変数 ACS_CONNECTION_STRING が設定されていません。");
+            return;
+        }
+
+        if (SENDER_ADDRESS == null || SENDER_ADDRESS.isEmpty()) {
+            System.err.println("エラー: 環境変数 ACS_SENDER_ADDRESS が設定されていません。");
+            return;
+        }
+
+        String recipientAddress = null;
+        double rate = 0;
+        int workers = 0;
+        Duration duration = DEFAULT_DURATION;
+        boolean untilComplete = false;
+        boolean withRetry = false;
+        for (int i = 0; i < args.length; i++) {
+            if ("--rate".equals(args[i]) && i + 1 < args.length) {
+                rate = Double.parseDouble(args[++i]);
+            } else if ("--workers".equals(args[i]) && i + 1 < args.length) {
+                workers = Integer.parseInt(args[++i]);
+            } else if ("--duration".equals(args[i]) && i + 1 < args.length) {
+                duration = Duration.ofSeconds(Long.parseLong(args[++i]));
+            } else if ("--until-complete".equals(args[i])) {
+                untilComplete = true;
+            } else if ("--with-retry".equals(args[i])) {
+                withRetry = true;
+            } else {
+                recipientAddress = args[i];
+            }
+        }
+
+        if (recipientAddress == null || (rate > 0) == (workers > 0)) {
+            System.err.println("使用法: java LoadGenerator <送信先メールアドレス> (--rate <通/秒> | --workers <並列数>) "
+                + "[--duration <秒>] [--until-complete] [--with-retry]");
+            System.err.println("例: java LoadGenerator test@example.com --rate 50 --duration 60");
+            System.err.println("例: java LoadGenerator test@example.com --workers 32 --duration 60 --until-complete");
+            return;
+        }
+
+        System.out.println("送信元: " + SENDER_ADDRESS);
+        System.out.println("送信先: " + recipientAddress);
+        System.out.println("モード: " + (rate > 0 ? "open-loop（" + rate + " 通/秒）" : "closed-loop（" + workers + " 並列）"));
+        System.out.println("計測時間: " + duration.getSeconds() + " 秒");
+        System.out.println("計測対象: " + (untilComplete ? "受付から最終ステータスまで" : "受付（beginSend の最初の応答）まで"));
+        System.out.println("SDK の再試行: " + (withRetry ? "あり" : "なし（429 をそのまま数える）"));
+        System.out.println("-------------------------------------------------\n");
+
+        EmailAsyncClient emailAsyncClient = withRetry
+            ? EmailClientRegistry.getDefault().getAsyncClient(CONNECTION_STRING, SENDER_ADDRESS)
+            : EmailClientRegistry.newBuilder(CONNECTION_STRING, new RetryPolicy(new FixedDelay(0, Duration.ZERO)))
+                .buildAsyncClient();
+
+        LoadGenerator generator = new LoadGenerator(emailAsyncClient, SENDER_ADDRESS, recipientAddress, untilComplete);
+        long startTime = System.nanoTime();
+        if (rate > 0) {
+            generator.runOpenLoop(rate, duration);
+        } else {
+            generator.runClosedLoop(workers, duration);
+        }
+        generator.printSummary(System.nanoTime() - startTime);
+    }
+
+    /**
+     * open-loop: 1 / rate 秒ごとに送信を開始する
+     */
+    public void runOpenLoop(double rate, Duration duration) throws InterruptedException {
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        long start = System.nanoTime();
+        long end = start + duration.toNanos();
+        Semaphore inFlight = new Semaphore(MAX_OPEN_LOOP_IN_FLIGHT);
+        long nextReport = start + TimeUnit.SECONDS.toNanos(1);
+
+        for (long i = 0; ; i++) {
+            long scheduled = start + i * intervalNanos;
+            if (scheduled - end >= 0) {
+                break;
+            }
+            long now;
+            while ((now = System.nanoTime()) < scheduled) {
+                LockSupport.parkNanos(scheduled - now);
+            }
+            if (now - nextReport >= 0) {
+                reportInterval();
+                nextReport += TimeUnit.SECONDS.toNanos(1);
+            }
+
+            if (!inFlight.tryAcquire()) {
+                droppedCount.increment();
+                continue;
+            }
+            sendOnce(scheduled)
+                .doFinally(signal -> inFlight.release())
+                .subscribe();
+        }
+
+        // 応答待ちの送信が全て終わるまで待つ
+        while (!inFlight.tryAcquire(MAX_OPEN_LOOP_IN_FLIGHT, 1, TimeUnit.SECONDS)) {
+            reportInterval();
+        }
+        reportInterval();
+    }
+
+    /**
+     * closed-loop: workers 本の仮想スレッドがそれぞれ送信と応答待ちを繰り返す
+     */
+    public void runClosedLoop(int workers, Duration duration) throws InterruptedException {
+        long end = System.nanoTime() + duration.toNanos();
+        List<Thread> threads = new ArrayList<>(workers);
+        for (int i = 0; i < workers; i++) {
+            threads.add(Thread.ofVirtual().name("load-worker-" + i).start(() -> {
+                while (System.nanoTime() - end < 0) {
+                    sendOnce(System.nanoTime()).block();
+                }
+            }));
+        }
+
+        while (anyAlive(threads)) {
+            TimeUnit.SECONDS.sleep(1);
+            reportInterval();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    /**
+     * 1通送信し、開始時刻（open-loop では予定時刻）からのレイテンシを記録する。エラーは記録して完了扱いにする
+     */
+    private Mono<Void> sendOnce(long startNanos) {
+        long n = sequence.incrementAndGet();
+        EmailMessage message = new EmailMessage()
+            .setSenderAddress(senderAddress)
+            .setToRecipients(recipientAddress)
+            .setSubject("負荷試験 #" + n)
+            .setBodyPlainText("これは負荷試験メール #" + n + " です。");
+
+        Mono<AsyncPollResponse<EmailSendResult, EmailSendResult>> response = untilComplete
+            ? emailAsyncClient.beginSend(message).last()
+            : emailAsyncClient.beginSend(message).next();
+
+        return response
+            .doOnNext(ignored -> {
+                record(startNanos);
+                succeededCount.increment();
+            })
+            .doOnError(error -> {
+                record(startNanos);
+                if (AimdRateController.isThrottled(error)) {
+                    throttledCount.increment();
+                } else {
+                    errorCount.increment();
+                }
+            })
+            .onErrorResume(error -> Mono.empty())
+            .then();
+    }
+
+    private void record(long startNanos) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+        recorder.recordValue(Math.min(micros, HIGHEST_TRACKABLE_MICROS));
+    }
+
+    private static boolean anyAlive(List<Thread> threads) {
+        for (Thread thread : threads) {
+            if (thread.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 直近1区間のレイテンシを出力し、全体の集計に加える
+     */
+    private synchronized void reportInterval() {
+        Histogram interval = recorder.getIntervalHistogram();
+        total.add(interval);
+        if (interval.getTotalCount() == 0) {
+            return;
+        }
+        System.out.println(String.format("[%6d] 応答 %5d 件 / p50 %8.1f ms / p99 %8.1f ms / 最大 %8.1f ms / 429 累計 %d 件",
+            sequence.get(), interval.getTotalCount(),
+            millis(interval.getValueAtPercentile(50)), millis(interval.getValueAtPercentile(99)),
+            millis(interval.getMaxValue()), throttledCount.sum()));
+    }
+
+    private synchronized void printSummary(long elapsedNanos) {
+        reportInterval();
+        long responses = total.getTotalCount();
+        double seconds = elapsedNanos / 1e9;
+
+        System.out.println("\n=================================================");
+        System.out.println("負荷試験サマリー");
+        System.out.println("=================================================");
+        System.out.println("送信開始: " + sequence.get() + " 件");
+        System.out.println("成功: " + succeededCount.sum() + " 件");
+        System.out.println("429（レート制限）: " + throttledCount.sum() + " 件 ("
+            + String.format("%.2f", responses == 0 ? 0.0 : 100.0 * throttledCount.sum() / responses) + "%)");
+        System.out.println("その他のエラー: " + errorCount.sum() + " 件");
+        if (droppedCount.sum() > 0) {
+            System.out.println("取りこぼし（応答待ちが上限超過）: " + droppedCount.sum() + " 件");
+        }
+        System.out.println("達成スループット: " + String.format("%.2f", responses / seconds) + " 件/秒"
+            + "（成功のみ " + String.format("%.2f", succeededCount.sum() / seconds) + " 件/秒）");
+        System.out.println("-------------------------------------------------");
+        System.out.println(String.format("レイテンシ p50:   %10.1f ms", millis(total.getValueAtPercentile(50))));
+        System.out.println(String.format("レイテンシ p99:   %10.1f ms", millis(total.getValueAtPercentile(99))));
+        System.out.println(String.format("レイテンシ p99.9: %10.1f ms", millis(total.getValueAtPercentile(99.9))));
+        System.out.println(String.format("レイテンシ 最大:  %10.1f ms", millis(total.getMaxValue())));
+        System.out.println("合計処理時間: " + String.format("%.1f", seconds) + " 秒");
+        System.out.println("=================================================");
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+}
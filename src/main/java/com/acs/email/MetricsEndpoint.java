@@ -0,0 +1,111 @@
+package com.acs.email;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * SenderMetrics を HTTP で公開する組み込みエンドポイント（Prometheus などからの収集用）
+ *
+ * - GET /metrics: Accept に application/openmetrics-text があれば OpenMetrics、無ければ Prometheus テキスト形式
+ * - 収集は数秒〜数十秒に1回なので、リクエストは1スレッドで処理する（送信スレッドとは独立）
+ *
+ * 設定（環境変数）:
+ * - ACS_METRICS_PORT: ポート番号（未設定ならエンドポイントを起動しない）
+ * - ACS_METRICS_ADDRESS: 待ち受けるアドレス（既定はループバック。別ホストから収集する場合は 0.0.0.0）
+ */
+public final class MetricsEndpoint implements Closeable {
+
+    private static final String PATH = "/metrics";
+    private static final String PROMETHEUS_CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final String OPENMETRICS_CONTENT_TYPE =
+        "application/openmetrics-text; version=1.0.0; charset=utf-8";
+
+    private final SenderMetrics metrics;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * @param port 0 を指定すると空いているポートを使う
+     */
+    public MetricsEndpoint(InetAddress address, int port, SenderMetrics metrics) throws IOException {
+        this.metrics = metrics;
+        this.server = HttpServer.create(new InetSocketAddress(address, port), 0);
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-endpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server.setExecutor(executor);
+        this.server.createContext(PATH, this::handle);
+    }
+
+    /**
+     * 環境変数の設定でエンドポイントを起動する
+     *
+     * @return 起動したエンドポイント（ACS_METRICS_PORT が未設定なら null）
+     */
+    public static MetricsEndpoint startFromEnvironment() throws IOException {
+        String port = System.getenv("ACS_METRICS_PORT");
+        if (port == null || port.trim().isEmpty()) {
+            return null;
+        }
+        String address = System.getenv("ACS_METRICS_ADDRESS");
+        MetricsEndpoint endpoint;
+        try {
+            endpoint = new MetricsEndpoint(
+                address == null || address.trim().isEmpty() ? InetAddress.getLoopbackAddress()
+                    : InetAddress.getByName(address.trim()),
+                Integer.parseInt(port.trim()), SenderMetrics.getDefault());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("環境変数 ACS_METRICS_PORT が数値ではありません: " + port, e);
+        }
+        endpoint.start();
+        return endpoint;
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public String url() {
+        return "http://" + server.getAddress().getHostString() + ":" + getPort() + PATH;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod()) || !PATH.equals(exchange.getRequestURI().getPath())) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            String accept = exchange.getRequestHeaders().getFirst("Accept");
+            boolean openMetrics = accept != null && accept.contains("application/openmetrics-text");
+            StringBuilder text = new StringBuilder(4096);
+            metrics.writeTo(text, openMetrics);
+            byte[] body = text.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type",
+                openMetrics ? OPENMETRICS_CONTENT_TYPE : PROMETHEUS_CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+        } finally {
+            exchange.close();
+        }
+    }
+}
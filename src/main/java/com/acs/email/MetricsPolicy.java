@@ -0,0 +1,57 @@
+package com.acs.email;
+
+import com.azure.core.http.HttpPipelineCallContext;
+import com.azure.core.http.HttpPipelineNextPolicy;
+import com.azure.core.http.HttpPipelineNextSyncPolicy;
+import com.azure.core.http.HttpPipelinePosition;
+import com.azure.core.http.HttpResponse;
+import com.azure.core.http.policy.HttpPipelinePolicy;
+import reactor.core.publisher.Mono;
+
+import java.util.function.Consumer;
+
+/**
+ * HTTP 応答を SenderMetrics に数えるポリシー
+ *
+ * リトライの内側 (PER_RETRY) に置くため、SDK が再試行して最終的に成功した送信の 429 も1回ずつ数える。
+ * 429 を例外として受け取る側（呼び出し元）で数えると、再試行で隠れた 429 が見えなくなるため、ここで数える。
+ */
+public final class MetricsPolicy implements HttpPipelinePolicy {
+
+    private static final int HTTP_STATUS_TOO_MANY_REQUESTS = 429;
+
+    private final SenderMetrics metrics;
+    // 呼び出しごとにラムダを生成しないよう、応答の処理を1つだけ作っておく
+    private final Consumer<HttpResponse> responseCounter = this::onResponse;
+
+    public MetricsPolicy() {
+        this(SenderMetrics.getDefault());
+    }
+
+    public MetricsPolicy(SenderMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Mono<HttpResponse> process(HttpPipelineCallContext context, HttpPipelineNextPolicy next) {
+        return next.process().doOnNext(responseCounter);
+    }
+
+    @Override
+    public HttpResponse processSync(HttpPipelineCallContext context, HttpPipelineNextSyncPolicy next) {
+        HttpResponse response = next.processSync();
+        onResponse(response);
+        return response;
+    }
+
+    private void onResponse(HttpResponse response) {
+        if (response.getStatusCode() == HTTP_STATUS_TOO_MANY_REQUESTS) {
+            metrics.throttled();
+        }
+    }
+
+    @Override
+    public HttpPipelinePosition getPipelinePosition() {
+        return HttpPipelinePosition.PER_RETRY;
+    }
+}
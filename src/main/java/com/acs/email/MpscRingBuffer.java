@@ -0,0 +1,98 @@
+package com.acs.email;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 固定長のロックフリーなリングバッファ（複数の書き込みスレッド・1本の読み出しスレッド）
+ *
+ * スロットごとに「次に書き込める位置 / 読み出せる位置」を表すシーケンス番号を持ち、書き込み側は
+ * 末尾位置の CAS だけで書き込む位置を確保する（Dmitry Vyukov の bounded queue）。
+ * - offer は満杯なら待たずに false を返す（呼び出し側で破棄するか判断する）
+ * - poll は読み出しスレッド1本からのみ呼ぶ
+ * - 確保した要素を入れ替えるだけで、offer / poll はオブジェクトを生成しない
+ */
+public final class MpscRingBuffer<E> {
+
+    private final int mask;
+    private final AtomicReferenceArray<E> slots;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private long head;
+
+    public MpscRingBuffer(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity は2のべき乗を指定してください: " + capacity);
+        }
+        this.mask = capacity - 1;
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * 要素を追加する（どのスレッドからでも呼べる）
+     *
+     * @return 満杯で追加できなかった場合は false
+     */
+    public boolean offer(E element) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    slots.lazySet(index, element);
+                    // 要素を書いてからシーケンスを進める（読み出し側はシーケンスを見てから要素を読む）
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                // 1周前の要素がまだ読み出されていない = 満杯
+                return false;
+            } else {
+                // 他の書き込みスレッドに先を越された
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * 先頭の要素を取り出す（読み出しスレッドからのみ呼ぶ）
+     *
+     * @return 空なら null
+     */
+    public E poll() {
+        int index = (int) head & mask;
+        if (sequences.get(index) != head + 1) {
+            return null;
+        }
+        E element = slots.get(index);
+        slots.lazySet(index, null);
+        sequences.set(index, head + mask + 1);
+        head++;
+        return element;
+    }
+
+    /**
+     * これまでに追加された要素の数（累計）
+     */
+    public long offered() {
+        return tail.get();
+    }
+
+    /**
+     * 読み出し待ちの要素数（概算値）
+     */
+    public int size() {
+        return (int) Math.max(0L, tail.get() - head);
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+}
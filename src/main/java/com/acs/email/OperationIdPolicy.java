@@ -0,0 +1,76 @@
+package com.acs.email;
+
+import com.azure.core.http.HttpHeaderName;
+import com.azure.core.http.HttpMethod;
+import com.azure.core.http.HttpPipelineCallContext;
+import com.azure.core.http.HttpPipelineNextPolicy;
+import com.azure.core.http.HttpPipelinePosition;
+import com.azure.core.http.HttpResponse;
+import com.azure.core.http.policy.HttpPipelinePolicy;
+import com.azure.core.util.Context;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * 送信リクエスト (POST /emails:send) に呼び出し側で決めた Operation-Id ヘッダーを付けるポリシー
+ *
+ * Email SDK の beginSend は Operation-Id を指定する API を公開していないため、Context 経由で ID を受け取り
+ * ここでヘッダーに設定する。同じ Operation-Id の送信リクエストはサービス側で同じ操作として扱われるため、
+ * タイムアウト後の再試行や中断からの再開で同じメッセージを再送しても二重送信にならない。
+ *
+ * - 同期: emailClient.beginSend(message, OperationIdPolicy.context(id))
+ * - 非同期: emailAsyncClient.beginSend(message).contextWrite(ctx -> ctx.put(OperationIdPolicy.CONTEXT_KEY, id))
+ *   （Reactor の Context は azure-core により Azure の Context に引き継がれる）
+ *
+ * リトライより前 (PER_CALL) に1回だけ設定するため、SDK 内部の再試行でも同じ ID が送られる。
+ */
+public final class OperationIdPolicy implements HttpPipelinePolicy {
+
+    /**
+     * Operation-Id を渡すための Context のキー
+     */
+    public static final String CONTEXT_KEY = "acs-email-sender-operation-id";
+
+    private static final HttpHeaderName OPERATION_ID = HttpHeaderName.fromString("Operation-Id");
+    private static final String SEND_PATH_SUFFIX = "/emails:send";
+
+    /**
+     * Operation-Id を指定した Context を作成
+     */
+    public static Context context(String operationId) {
+        return new Context(CONTEXT_KEY, operationId);
+    }
+
+    /**
+     * ジョブの出所と内容から決定的な Operation-Id (UUID v3) を生成する
+     * 同じジョブファイルの同じ行であれば、何度実行しても同じ ID になる。
+     */
+    public static String forJob(String source, long lineNumber, String line) {
+        String name = source + '\n' + lineNumber + '\n' + line;
+        return UUID.nameUUIDFromBytes(name.getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    /**
+     * 再試行しても変わらない、送信ごとの新しい Operation-Id を生成する
+     */
+    public static String newOperationId() {
+        return UUID.randomUUID().toString();
+    }
+
+    @Override
+    public Mono<HttpResponse> process(HttpPipelineCallContext context, HttpPipelineNextPolicy next) {
+        if (context.getHttpRequest().getHttpMethod() == HttpMethod.POST
+            && context.getHttpRequest().getUrl().getPath().endsWith(SEND_PATH_SUFFIX)) {
+            context.getData(CONTEXT_KEY).ifPresent(operationId ->
+                context.getHttpRequest().setHeader(OPERATION_ID, operationId.toString()));
+        }
+        return next.process();
+    }
+
+    @Override
+    public HttpPipelinePosition getPipelinePosition() {
+        return HttpPipelinePosition.PER_CALL;
+    }
+}
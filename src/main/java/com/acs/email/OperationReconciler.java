@@ -0,0 +1,214 @@
+package com.acs.email;
+
+import com.azure.communication.email.models.EmailSendStatus;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 受付済み操作の最終ステータス確定ツール
+ *
+ * BatchSender の fire-and-forget モードで OperationStore に記録された操作について、
+ * ステータス取得 API をまとめて呼び出し、終端状態になったものを final.tsv に記録する。
+ * まだ Running の操作は未確定のまま残るため、後で再実行すればよい。
+ *
+ * 再試行しても 429 / 5xx だった操作（ステータス取得クライアントが status = null の結果を返す）は一時エラーとして数え、
+ * 未確定のまま残す。その場合は Retry-After（無ければ DEFAULT_THROTTLE_PAUSE）の間、次の問い合わせを始めない。
+ *
+ * 操作のステータスは受け付けたリソースにしか問い合わせられないため、accepted.tsv に記録されたリソース名（#n）ごとに
+ * ステータス取得クライアントを使い分ける。リソースは BatchSender と同じ環境変数（ACS_CONNECTION_STRING_n、
+ * 番号付きの設定が無ければ ACS_CONNECTION_STRING）から読む。接続文字列が設定されていないリソースの操作は取得エラーにする。
+ *
+ * 使用法: java OperationReconciler <記録ディレクトリ> [同時リクエスト数]
+ */
+public class OperationReconciler {
+
+    private static final int DEFAULT_MAX_CONCURRENCY = 32;
+    // 一時エラーの応答に Retry-After が無い場合に、次の問い合わせを止める時間
+    static final Duration DEFAULT_THROTTLE_PAUSE = Duration.ofSeconds(1);
+
+    private final Map<String, EmailOperationStatusClient> statusClients;
+    private final OperationStore store;
+    private final int maxConcurrency;
+    private final Semaphore inFlight;
+
+    private final AtomicLong checkedCount = new AtomicLong();
+    private final AtomicLong succeededCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong runningCount = new AtomicLong();
+    private final AtomicLong errorCount = new AtomicLong();
+    private final AtomicLong throttledCount = new AtomicLong();
+    // この時刻（System.nanoTime）まで次の問い合わせを始めない
+    private final AtomicLong pausedUntilNanos = new AtomicLong(System.nanoTime());
+
+    /**
+     * 1リソース（OperationStore.DEFAULT_RESOURCE）だけの構成
+     */
+    public OperationReconciler(EmailOperationStatusClient statusClient, OperationStore store, int maxConcurrency) {
+        this(Collections.singletonMap(OperationStore.DEFAULT_RESOURCE, statusClient), store, maxConcurrency);
+    }
+
+    /**
+     * @param statusClients リソース名（#n）→ そのリソースのステータス取得クライアント
+     */
+    public OperationReconciler(Map<String, EmailOperationStatusClient> statusClients, OperationStore store,
+                               int maxConcurrency) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("同時リクエスト数は1以上を指定してください: " + maxConcurrency);
+        }
+        this.statusClients = statusClients;
+        this.store = store;
+        this.maxConcurrency = maxConcurrency;
+        this.inFlight = new Semaphore(maxConcurrency);
+    }
+
+    public static void main(String[] args) {
+        System.out.println("=================================================");
+        System.out.println("ACS メール送信 ステータス確定ツール");
+        System.out.println("=================================================\n");
+
+        Map<String, String> connectionStrings = EmailResourcePool.connectionStringsFromEnvironment();
+        if (connectionStrings.isEmpty()) {
+            System.err.println("エラー: 環境変数 ACS_CONNECTION_STRING が設定されていません。");
+            System.err.println("複数リソースで送信した場合は、送信時と同じ ACS_CONNECTION_STRING_1 / ACS_SENDER_ADDRESS_1 からの連番を設定してください。");
+            return;
+        }
+
+        if (args.length < 1) {
+            System.err.println("使用法: java OperationReconciler <記録ディレクトリ> [同時リクエスト数]");
+            System.err.println("例: java OperationReconciler operations 32");
+            return;
+        }
+
+        Path storeDirectory = Paths.get(args[0]);
+        int maxConcurrency = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_MAX_CONCURRENCY;
+
+        Map<String, EmailOperationStatusClient> statusClients = new LinkedHashMap<>();
+        for (Map.Entry<String, String> connectionString : connectionStrings.entrySet()) {
+            statusClients.put(connectionString.getKey(),
+                EmailClientRegistry.getDefault().getStatusClient(connectionString.getValue()));
+        }
+        System.out.println("問い合わせ先リソース: " + String.join(", ", statusClients.keySet()) + "\n");
+
+        long startTime = System.currentTimeMillis();
+        try (OperationStore store = new OperationStore(storeDirectory)) {
+            OperationReconciler reconciler = new OperationReconciler(statusClients, store, maxConcurrency);
+            reconciler.run();
+            reconciler.printSummary(System.currentTimeMillis() - startTime);
+        } catch (IOException e) {
+            System.err.println("\n【例外発生】記録ディレクトリを読み書きできません");
+            System.err.println("メッセージ: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("\n中断されました。");
+        }
+    }
+
+    /**
+     * 未確定の全操作についてステータスを1回ずつ取得し、終端状態のものを記録する
+     */
+    public void run() throws IOException, InterruptedException {
+        store.forEachPending((operationId, resource, reference) -> {
+            inFlight.acquire();
+            awaitPause();
+            check(operationId, resource);
+        });
+
+        // 全ての許可が戻るまで待つ = 全リクエストの完了
+        inFlight.acquire(maxConcurrency);
+        inFlight.release(maxConcurrency);
+        store.flush();
+    }
+
+    /**
+     * 一時エラーの応答で指定された時刻まで待つ
+     */
+    private void awaitPause() throws InterruptedException {
+        long waitNanos;
+        while ((waitNanos = pausedUntilNanos.get() - System.nanoTime()) > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    private void pause(Duration retryAfter) {
+        long until = System.nanoTime() + (retryAfter == null ? DEFAULT_THROTTLE_PAUSE : retryAfter).toNanos();
+        pausedUntilNanos.accumulateAndGet(until, (current, next) -> next - current > 0 ? next : current);
+    }
+
+    private void check(String operationId, String resource) {
+        checkedCount.incrementAndGet();
+        EmailOperationStatusClient statusClient = statusClients.get(resource);
+        if (statusClient == null) {
+            inFlight.release();
+            errorCount.incrementAndGet();
+            System.err.println("[" + operationId + "] リソース " + resource + " の接続文字列が設定されていません"
+                + "（ACS_CONNECTION_STRING_" + resource.replace("#", "") + "）");
+            return;
+        }
+        statusClient.getStatus(operationId)
+            .doFinally(signal -> inFlight.release())
+            .subscribe(
+                status -> {
+                    if (status.getStatus() == null) {
+                        // 429 / 5xx。処理中とは数えず、Retry-After の間は次の問い合わせを止める
+                        throttledCount.incrementAndGet();
+                        pause(status.getRetryAfter());
+                        return;
+                    }
+                    if (!status.isTerminal()) {
+                        runningCount.incrementAndGet();
+                        return;
+                    }
+                    if (status.getStatus() == EmailSendStatus.SUCCEEDED) {
+                        succeededCount.incrementAndGet();
+                    } else {
+                        failedCount.incrementAndGet();
+                    }
+                    try {
+                        store.recordFinal(operationId, status.getStatus(),
+                            status.getError() == null ? null : status.getError().getCode());
+                    } catch (IOException e) {
+                        errorCount.incrementAndGet();
+                        System.err.println("[" + operationId + "] 記録に失敗しました: " + e.getMessage());
+                    }
+                },
+                error -> {
+                    errorCount.incrementAndGet();
+                    System.err.println("[" + operationId + "] ステータス取得エラー: " + error.getMessage());
+                });
+    }
+
+    private void printSummary(long totalDuration) {
+        System.out.println("\n=================================================");
+        System.out.println("ステータス確定サマリー");
+        System.out.println("=================================================");
+        System.out.println("確認: " + checkedCount.get() + " 件");
+        System.out.println("確定（成功）: " + succeededCount.get() + " 件");
+        System.out.println("確定（失敗・キャンセル）: " + failedCount.get() + " 件");
+        System.out.println("未確定（処理中）: " + runningCount.get() + " 件");
+        System.out.println("一時エラー（429 / 5xx、再実行で取り直す）: " + throttledCount.get() + " 件");
+        System.out.println("取得エラー: " + errorCount.get() + " 件");
+        System.out.println("合計処理時間: " + totalDuration + " ms (" + (totalDuration / 1000.0) + " 秒)");
+        System.out.println("=================================================");
+    }
+
+    long getRunningCount() {
+        return runningCount.get();
+    }
+
+    long getThrottledCount() {
+        return throttledCount.get();
+    }
+
+    long getErrorCount() {
+        return errorCount.get();
+    }
+}
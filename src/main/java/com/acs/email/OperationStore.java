@@ -0,0 +1,149 @@
+package com.acs.email;
+
+import com.azure.communication.email.models.EmailSendStatus;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 受付済みの送信操作 ID を記録するローカルストア
+ *
+ * 送信は受付 (beginSend の最初の応答) の時点で完了とみなし、最終ステータスの確定は
+ * OperationReconciler が後からまとめて行う。ディレクトリ内に2つの追記専用ファイルを持つ:
+ * - accepted.tsv: 受付済みの操作（operationId \t 送信先リソース \t 参照情報）
+ * - final.tsv: 最終ステータスが確定した操作（operationId \t EmailSendStatus \t エラーコード）
+ *
+ * 未確定の操作 = accepted.tsv にあり final.tsv に無い操作。
+ *
+ * 送信先リソースは EmailResourcePool のリソース名（#n）。操作のステータスは受け付けたリソースにしか問い合わせられないため、
+ * OperationReconciler はこの名前で問い合わせ先を選ぶ。リソースの列が無い行（以前の形式）は DEFAULT_RESOURCE とみなす。
+ */
+public final class OperationStore implements Closeable {
+
+    static final String ACCEPTED_FILE = "accepted.tsv";
+    static final String FINAL_FILE = "final.tsv";
+
+    /**
+     * リソースの列が無い行の送信先（1リソースだけの構成のリソース名）
+     */
+    public static final String DEFAULT_RESOURCE = "#1";
+
+    private final Path acceptedFile;
+    private final Path finalFile;
+    private final BufferedWriter acceptedWriter;
+    private final BufferedWriter finalWriter;
+
+    public OperationStore(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        this.acceptedFile = directory.resolve(ACCEPTED_FILE);
+        this.finalFile = directory.resolve(FINAL_FILE);
+        this.acceptedWriter = Files.newBufferedWriter(acceptedFile, StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        this.finalWriter = Files.newBufferedWriter(finalFile, StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * 受付済みの操作を記録する
+     * 記録した時点でファイルに書き出す（受付済みと数えた操作が、プロセスが落ちた場合に未確定の一覧から漏れないように）。
+     *
+     * @param resource  操作を受け付けたリソースの名前（EmailResource.getName()）
+     * @param reference 送信元ジョブを特定するための情報（行番号など）
+     */
+    public synchronized void recordAccepted(String operationId, String resource, String reference) throws IOException {
+        acceptedWriter.write(operationId);
+        acceptedWriter.write('\t');
+        acceptedWriter.write(sanitize(resource));
+        acceptedWriter.write('\t');
+        acceptedWriter.write(sanitize(reference));
+        acceptedWriter.newLine();
+        acceptedWriter.flush();
+    }
+
+    /**
+     * 最終ステータスを記録する
+     */
+    public synchronized void recordFinal(String operationId, EmailSendStatus status, String errorCode) throws IOException {
+        finalWriter.write(operationId);
+        finalWriter.write('\t');
+        finalWriter.write(String.valueOf(status));
+        finalWriter.write('\t');
+        finalWriter.write(sanitize(errorCode));
+        finalWriter.newLine();
+    }
+
+    /**
+     * 最終ステータスが未確定の操作を列挙する
+     * 確定済みの ID の集合だけをメモリに載せ、受付済みファイルはストリーミングで読む。
+     */
+    public void forEachPending(PendingOperationVisitor visitor) throws IOException, InterruptedException {
+        flush();
+
+        Set<String> finished = new HashSet<>();
+        try (BufferedReader reader = Files.newBufferedReader(finalFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int tab = line.indexOf('\t');
+                finished.add(tab < 0 ? line : line.substring(0, tab));
+            }
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(acceptedFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                int tab = line.indexOf('\t');
+                String operationId = tab < 0 ? line : line.substring(0, tab);
+                if (finished.contains(operationId)) {
+                    continue;
+                }
+                int secondTab = tab < 0 ? -1 : line.indexOf('\t', tab + 1);
+                if (secondTab < 0) {
+                    // 以前の形式（operationId \t 参照情報）
+                    visitor.visit(operationId, DEFAULT_RESOURCE, tab < 0 ? "" : line.substring(tab + 1));
+                } else {
+                    visitor.visit(operationId, line.substring(tab + 1, secondTab), line.substring(secondTab + 1));
+                }
+            }
+        }
+    }
+
+    public synchronized void flush() throws IOException {
+        acceptedWriter.flush();
+        finalWriter.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            acceptedWriter.close();
+        } finally {
+            finalWriter.close();
+        }
+    }
+
+    /**
+     * 未確定の操作を1件ずつ受け取るコールバック
+     */
+    @FunctionalInterface
+    public interface PendingOperationVisitor {
+        void visit(String operationId, String resource, String reference) throws InterruptedException;
+    }
+
+    private static String sanitize(String value) {
+        if (value == null) {
+            return "";
+        }
+        return value.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+}
@@ -0,0 +1,553 @@
+package com.acs.email;
+
+import com.azure.communication.email.models.EmailSendStatus;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * 送信ジョブの進行状況を記録する追記専用ジャーナル（メモリマップドファイル）
+ *
+ * ジョブ1件ごとに「投入 (ENQUEUED) → 受付 (ACCEPTED, operationId 付き) → 最終ステータス (FINAL)」を記録し、
+ * 再起動時にはジャーナルを先頭から読み直して各ジョブの状態を復元する。受付済みのジョブは再送しない。
+ *
+ * - 書き込みはメモリマップ領域へのコピーだけで済み、JVM が異常終了してもページキャッシュ上のデータは失われない
+ * - OS クラッシュ・電源断に備えた fsync (MappedByteBuffer.force) は、専用スレッドが COMMIT_INTERVAL ごとに
+ *   まとめて行う（グループコミット）。1件ごとに fsync するとスループットが fsync の回数で頭打ちになるため
+ * - 各レコードは CRC32 付きで、復元時は最初の壊れたレコード（書き込み途中で落ちたもの）で読み込みを止める
+ *
+ * ヒープに載せるのは最終ステータスが未確定のジョブ（同時送信数と、前回落ちた時点で送信中だったジョブの分）だけにする。
+ * 確定済みのジョブはキーから作った UUID を SentOperationIndex（メモリマップドファイルのハッシュ表）に入れ、
+ * 数百万行のジョブファイルでもヒープの使用量が行数に比例しないようにする（確定済みのジョブの operationId は保持しない）。
+ * インデックスは復元のたびにジャーナルから入れ直すため、消えても壊れてもジャーナルから作り直せる。
+ *
+ * ジョブはジョブファイルの行番号で識別するため、bindJobFile でジョブファイルの名前・サイズ・SHA-256 を記録し、
+ * 別のファイルや編集したファイルで再開しようとした場合は拒否する（行番号がずれて未送信の行を飛ばさないように）。
+ *
+ * レコード形式: [ペイロード長 int][CRC32 int][種別 byte][ペイロード (UTF-8, タブ区切り)]
+ */
+public final class OutboxJournal implements Closeable {
+
+    /**
+     * ジョブの状態
+     */
+    public enum State {
+        /** 送信前に投入された（受付の記録が無いため、再起動時は再送の対象） */
+        ENQUEUED,
+        /** ACS に受け付けられた（operationId あり、再送しない） */
+        ACCEPTED,
+        /** 最終ステータスが確定した */
+        FINAL
+    }
+
+    static final String SEGMENT_PREFIX = "outbox-";
+    static final String SEGMENT_SUFFIX = ".log";
+    static final String FINAL_INDEX_FILE = "final.idx";
+
+    private static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    private static final Duration COMMIT_INTERVAL = Duration.ofMillis(10);
+    private static final int HEADER_SIZE = 4 + 4 + 1;
+
+    private static final byte TYPE_ENQUEUED = 1;
+    private static final byte TYPE_ACCEPTED = 2;
+    private static final byte TYPE_FINAL = 3;
+    private static final byte TYPE_JOB_FILE = 4;
+
+    private final Path directory;
+    private final int segmentSize;
+    // 最終ステータスが未確定のジョブだけを持つ
+    private final Map<String, Entry> entries = new HashMap<>();
+    // 確定済みのジョブ（キーの UUID）
+    private final SentOperationIndex finalIndex;
+    // 記録されているジョブファイル（名前 \t サイズ \t SHA-256 \t 絶対パス）。無ければ null
+    private String jobFile;
+
+    // 以下は this のロックで保護する
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int segmentIndex;
+    private long writtenSequence;
+    private long durableSequence;
+    private boolean commitRequested;
+    private boolean closed;
+
+    private final Thread committer;
+
+    public OutboxJournal(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE, COMMIT_INTERVAL);
+    }
+
+    OutboxJournal(Path directory, int segmentSize, Duration commitInterval) throws IOException {
+        if (segmentSize <= HEADER_SIZE) {
+            throw new IllegalArgumentException("セグメントサイズが小さすぎます: " + segmentSize);
+        }
+        Files.createDirectories(directory);
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.finalIndex = new SentOperationIndex(directory.resolve(FINAL_INDEX_FILE));
+
+        try {
+            recover();
+        } catch (IOException | RuntimeException e) {
+            finalIndex.close();
+            throw e;
+        }
+
+        long intervalNanos = commitInterval.toNanos();
+        this.committer = new Thread(() -> runCommitter(intervalNanos), "outbox-journal-committer");
+        this.committer.setDaemon(true);
+        this.committer.start();
+    }
+
+    /**
+     * ジャーナルをジョブファイルに結び付ける（最初の1回はジョブファイルを記録し、以降は同じファイルかを確認する）
+     * ファイル全体の SHA-256 を計算するため、ファイルを1度読み通す。
+     *
+     * @throws IllegalArgumentException ジャーナルに記録されたジョブファイルと名前・サイズ・内容が異なる場合
+     */
+    public void bindJobFile(Path file) throws IOException {
+        String identity = fileIdentity(file);
+        synchronized (this) {
+            if (jobFile == null) {
+                jobFile = identity;
+                append(TYPE_JOB_FILE, identity);
+                return;
+            }
+            checkSameJobFile(file, identity);
+        }
+    }
+
+    private void checkSameJobFile(Path file, String identity) {
+        String[] recorded = jobFile.split("\t", -1);
+        String[] current = identity.split("\t", -1);
+        // 名前・サイズ・SHA-256 を比べる（Operation-Id がファイル名から決まるため、名前が変わっても再開しない）
+        for (int i = 0; i < 3; i++) {
+            if (!recorded[i].equals(current[i])) {
+                throw new IllegalArgumentException("ジャーナルは別のジョブファイル（" + recorded[3] + ", " + recorded[1]
+                    + " バイト）の記録です。同じジョブファイルで再開するか、別のジャーナルディレクトリを指定してください: "
+                    + file + " (" + current[1] + " バイト)");
+            }
+        }
+    }
+
+    /**
+     * ジョブファイルの識別情報（名前 \t サイズ \t SHA-256 \t 絶対パス）
+     */
+    static String fileIdentity(Path file) throws IOException {
+        MessageDigest sha256;
+        try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 を利用できません", e);
+        }
+        long size = 0;
+        byte[] chunk = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(chunk)) > 0) {
+                sha256.update(chunk, 0, read);
+                size += read;
+            }
+        }
+        StringBuilder hex = new StringBuilder(64);
+        for (byte b : sha256.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sanitize(file.getFileName().toString()) + '\t' + size + '\t' + hex + '\t'
+            + sanitize(file.toAbsolutePath().normalize().toString());
+    }
+
+    /**
+     * ジョブの現在の状態を取得（記録が無ければ null）
+     */
+    public synchronized State state(String key) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            return entry.state;
+        }
+        return isFinal(key) ? State.FINAL : null;
+    }
+
+    /**
+     * 受付済みで最終ステータスが未確定のジョブの operationId を取得（未受付・確定済みなら null）
+     */
+    public synchronized String operationId(String key) {
+        Entry entry = entries.get(key);
+        return entry == null ? null : entry.operationId;
+    }
+
+    /**
+     * 受付済み（ACCEPTED / FINAL）で再送してはならないジョブかどうか
+     */
+    public synchronized boolean isAccepted(String key) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            return entry.state != State.ENQUEUED;
+        }
+        return isFinal(key);
+    }
+
+    /**
+     * 送信前の投入を記録する
+     *
+     * @return このレコードのシーケンス番号（awaitDurable に渡す）
+     */
+    public synchronized long recordEnqueued(String key) throws IOException {
+        Entry entry = entries.get(key);
+        if (entry != null || isFinal(key)) {
+            return writtenSequence;
+        }
+        entries.put(key, new Entry(State.ENQUEUED, null));
+        return append(TYPE_ENQUEUED, key);
+    }
+
+    /**
+     * 受付（operationId の確定）を記録する。同じジョブで2回目以降の呼び出しは何も書かない
+     */
+    public synchronized long recordAccepted(String key, String operationId) throws IOException {
+        Entry entry = entries.get(key);
+        if ((entry != null && entry.state != State.ENQUEUED) || isFinal(key)) {
+            return writtenSequence;
+        }
+        entries.put(key, new Entry(State.ACCEPTED, operationId));
+        return append(TYPE_ACCEPTED, key + '\t' + sanitize(operationId));
+    }
+
+    /**
+     * 最終ステータスを記録する
+     */
+    public synchronized long recordFinal(String key, EmailSendStatus status, String errorCode) throws IOException {
+        if (isFinal(key)) {
+            return writtenSequence;
+        }
+        long sequence = append(TYPE_FINAL, key + '\t' + status + '\t' + sanitize(errorCode));
+        markFinal(key);
+        return sequence;
+    }
+
+    /**
+     * 指定したシーケンス番号までのレコードがディスクに同期されるまで待つ（次のグループコミットを待つ）
+     */
+    public synchronized void awaitDurable(long sequence) throws InterruptedException, IOException {
+        while (durableSequence < sequence) {
+            if (closed) {
+                throw new IOException("ジャーナルは閉じられています: " + directory);
+            }
+            if (!commitRequested) {
+                commitRequested = true;
+                notifyAll();
+            }
+            wait();
+        }
+    }
+
+    /**
+     * 書き込み済みの全レコードを今すぐディスクに同期する
+     * force はロックの外で行うため、同期中も他のスレッドは追記を続けられる。
+     */
+    public void sync() {
+        long target;
+        MappedByteBuffer forcing;
+        synchronized (this) {
+            if (buffer == null || durableSequence >= writtenSequence) {
+                return;
+            }
+            target = writtenSequence;
+            forcing = buffer;
+        }
+        forcing.force();
+        synchronized (this) {
+            if (durableSequence < target) {
+                durableSequence = target;
+            }
+            notifyAll();
+        }
+    }
+
+    /**
+     * 記録されているジョブ数（状態を問わない）
+     */
+    public synchronized long size() {
+        return entries.size() + finalIndex.size();
+    }
+
+    /**
+     * 状態ごとのジョブ数
+     */
+    public synchronized long count(State state) {
+        if (state == State.FINAL) {
+            return finalIndex.size();
+        }
+        return entries.values().stream().filter(entry -> entry.state == state).count();
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            sync();
+            closed = true;
+            notifyAll();
+        }
+        committer.interrupt();
+        try {
+            committer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            buffer = null;
+            try {
+                channel.close();
+            } finally {
+                finalIndex.close();
+            }
+        }
+    }
+
+    /**
+     * 既存のセグメントを先頭から読み直して状態を復元し、最後のセグメントの末尾から追記を再開する
+     */
+    private void recover() throws IOException {
+        List<Path> segments = listSegments();
+        if (segments.isEmpty()) {
+            openSegment(1);
+            writtenSequence = sequenceOf(segmentIndex, 0);
+            durableSequence = writtenSequence;
+            return;
+        }
+
+        for (int i = 0; i < segments.size(); i++) {
+            Path segment = segments.get(i);
+            boolean last = i == segments.size() - 1;
+            int index = segmentIndexOf(segment);
+            if (!last) {
+                try (FileChannel readChannel = FileChannel.open(segment, StandardOpenOption.READ)) {
+                    replay(readChannel.map(FileChannel.MapMode.READ_ONLY, 0, readChannel.size()));
+                }
+                continue;
+            }
+
+            openSegment(index);
+            int end = replay(buffer);
+            // 書き込み途中で落ちたレコードの残骸を消しておく（後から追記したレコードと混ざらないように）
+            byte[] zeros = new byte[64 * 1024];
+            for (int position = end; position < segmentSize; position += zeros.length) {
+                buffer.put(position, zeros, 0, Math.min(zeros.length, segmentSize - position));
+            }
+            buffer.position(end);
+            buffer.force();
+            writtenSequence = sequenceOf(segmentIndex, end);
+            durableSequence = writtenSequence;
+        }
+    }
+
+    /**
+     * セグメント内のレコードを順に適用し、最後の正しいレコードの直後の位置を返す
+     */
+    private int replay(MappedByteBuffer segment) throws IOException {
+        int position = 0;
+        CRC32 crc = new CRC32();
+        while (position + HEADER_SIZE <= segment.limit()) {
+            int length = segment.getInt(position);
+            if (length <= 0 || position + HEADER_SIZE + length > segment.limit()) {
+                break;
+            }
+            int expectedCrc = segment.getInt(position + 4);
+            byte type = segment.get(position + 8);
+            byte[] payload = new byte[length];
+            segment.get(position + HEADER_SIZE, payload);
+
+            crc.reset();
+            crc.update(type);
+            crc.update(payload);
+            if ((int) crc.getValue() != expectedCrc) {
+                break;
+            }
+
+            apply(type, new String(payload, StandardCharsets.UTF_8));
+            position += HEADER_SIZE + length;
+        }
+        return position;
+    }
+
+    private void apply(byte type, String payload) throws IOException {
+        if (type == TYPE_JOB_FILE) {
+            if (jobFile == null) {
+                jobFile = payload;
+            }
+            return;
+        }
+        String[] fields = payload.split("\t", -1);
+        String key = fields[0];
+        if (type == TYPE_FINAL) {
+            markFinal(key);
+            return;
+        }
+        if (isFinal(key)) {
+            return;
+        }
+        Entry previous = entries.get(key);
+        if (type == TYPE_ENQUEUED) {
+            if (previous == null) {
+                entries.put(key, new Entry(State.ENQUEUED, null));
+            }
+        } else if (type == TYPE_ACCEPTED) {
+            if (previous == null || previous.state == State.ENQUEUED) {
+                entries.put(key, new Entry(State.ACCEPTED, fields.length > 1 ? emptyToNull(fields[1]) : null));
+            }
+        }
+    }
+
+    /**
+     * 確定済みにする（ヒープのエントリを捨て、インデックスに入れる。既に入っていれば何もしない）
+     */
+    private void markFinal(String key) throws IOException {
+        entries.remove(key);
+        finalIndex.add(keyId(key));
+    }
+
+    private boolean isFinal(String key) {
+        return finalIndex.contains(keyId(key));
+    }
+
+    /**
+     * インデックスに入れるキーの UUID（SentOperationIndex は 16 バイトの値を格納する）
+     */
+    private static UUID keyId(String key) {
+        return UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private long append(byte type, String payload) throws IOException {
+        if (closed) {
+            throw new IOException("ジャーナルは閉じられています: " + directory);
+        }
+        byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+        int recordSize = HEADER_SIZE + bytes.length;
+        if (recordSize > segmentSize) {
+            throw new IOException("レコードがセグメントサイズを超えています: " + recordSize + " bytes");
+        }
+        if (buffer.remaining() < recordSize) {
+            rollSegment();
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(bytes);
+
+        // 長さを最後に書くことで、途中で落ちても長さ 0（= 末尾）として読まれる
+        int start = buffer.position();
+        buffer.putInt(start + 4, (int) crc.getValue());
+        buffer.put(start + 8, type);
+        buffer.put(start + HEADER_SIZE, bytes);
+        buffer.putInt(start, bytes.length);
+        buffer.position(start + recordSize);
+
+        writtenSequence = sequenceOf(segmentIndex, buffer.position());
+        return writtenSequence;
+    }
+
+    /**
+     * 現在のセグメントを同期してから次のセグメントに切り替える
+     */
+    private void rollSegment() throws IOException {
+        buffer.force();
+        durableSequence = writtenSequence;
+        notifyAll();
+        channel.close();
+        openSegment(segmentIndex + 1);
+        writtenSequence = sequenceOf(segmentIndex, 0);
+        durableSequence = writtenSequence;
+    }
+
+    private void openSegment(int index) throws IOException {
+        Path segment = directory.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+        channel = FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        segmentIndex = index;
+    }
+
+    /**
+     * グループコミット: 一定間隔（または awaitDurable の待ち手が現れた時点）で未同期の書き込みをまとめて force する
+     */
+    private void runCommitter(long intervalNanos) {
+        while (true) {
+            synchronized (this) {
+                try {
+                    if (!commitRequested && !closed) {
+                        TimeUnit.NANOSECONDS.timedWait(this, intervalNanos);
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (closed) {
+                    return;
+                }
+                commitRequested = false;
+            }
+            sync();
+        }
+    }
+
+    private List<Path> listSegments() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(path -> {
+                String name = path.getFileName().toString();
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }).sorted().forEach(segments::add);
+        }
+        return segments;
+    }
+
+    private static int segmentIndexOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private long sequenceOf(int index, int position) {
+        return (long) index * segmentSize + position;
+    }
+
+    private static String sanitize(String value) {
+        if (value == null) {
+            return "";
+        }
+        return value.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    private static final class Entry {
+        private final State state;
+        private final String operationId;
+
+        Entry(State state, String operationId) {
+            this.state = state;
+            this.operationId = operationId;
+        }
+    }
+}
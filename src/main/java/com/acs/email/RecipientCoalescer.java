@@ -0,0 +1,194 @@
+package com.acs.email;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * 同じ内容（件名・本文・添付ファイル）で宛先だけが異なる送信ジョブを、BCC にまとめた1通に束ねる
+ *
+ * ACS のレート制限はリクエスト数で数えるため、一斉送信のお知らせでは1リクエストで多数の宛先に送れば
+ * 実効スループットが宛先数倍になる。
+ * - 束ねるのは宛先が to の1件だけのジョブ（cc / bcc 付きは宛先どうしが見える前提のため、差し込み変数付きは
+ *   宛先ごとに内容が異なるため、そのまま送る）
+ * - 宛先は互いに見えないよう全て BCC に入れ、to には表示用アドレスを1件だけ入れる（ACS は to を必須とする）
+ * - 1通の宛先数（to + bcc）が maxRecipients に達するか、最初のジョブを受け取ってから linger を過ぎたら送信する
+ * - 束ねかけの内容が maxOpenBatches を超えたら、最も古いものから送信する（メモリ使用量の上限）
+ *
+ * linger は clock（既定は System.nanoTime）で測る。期限切れの束は add の呼び出し時に返すほか、呼び出し側が
+ * nanosUntilNextExpiry の時間だけ次の入力を待ち、届かなければ drainExpired で取り出す
+ * （BatchSender は BackgroundLineReader で次の行をタイムアウト付きで待つ）。入力が途切れても束は linger 後に送信される。
+ *
+ * スレッドセーフではない（ジョブを読み込む1スレッドから使う）。
+ */
+public final class RecipientCoalescer {
+
+    /**
+     * ACS の1通あたりの宛先数の上限（to + cc + bcc）
+     */
+    public static final int MAX_RECIPIENTS_PER_MESSAGE = 50;
+    public static final Duration DEFAULT_LINGER = Duration.ofMillis(200);
+    public static final int DEFAULT_MAX_OPEN_BATCHES = 1000;
+
+    private final String visibleToAddress;
+    private final int maxRecipients;
+    private final long lingerNanos;
+    private final int maxOpenBatches;
+    private final LongSupplier clock;
+    private final Map<List<Object>, Batch> openBatches = new LinkedHashMap<>();
+
+    public RecipientCoalescer(String visibleToAddress) {
+        this(visibleToAddress, MAX_RECIPIENTS_PER_MESSAGE, DEFAULT_LINGER, DEFAULT_MAX_OPEN_BATCHES, System::nanoTime);
+    }
+
+    public RecipientCoalescer(String visibleToAddress, int maxRecipients, Duration linger, int maxOpenBatches,
+                              LongSupplier clock) {
+        if (maxRecipients < 2 || maxRecipients > MAX_RECIPIENTS_PER_MESSAGE) {
+            throw new IllegalArgumentException("1通の宛先数は 2 以上 " + MAX_RECIPIENTS_PER_MESSAGE
+                + " 以下を指定してください: " + maxRecipients);
+        }
+        this.visibleToAddress = visibleToAddress;
+        this.maxRecipients = maxRecipients;
+        this.lingerNanos = linger.toNanos();
+        this.maxOpenBatches = maxOpenBatches;
+        this.clock = clock;
+    }
+
+    /**
+     * 束ねられるジョブか（宛先が to の1件だけで、宛先ごとに差し込む変数が無い）
+     */
+    public static boolean isCoalescable(EmailJob job) {
+        return job.getTo().size() == 1 && job.getCc().isEmpty() && job.getBcc().isEmpty()
+            && job.getVariables().isEmpty();
+    }
+
+    /**
+     * ジョブを追加し、送信できる状態になった束を返す
+     *
+     * @param lineNumber ジョブの行番号（束に含めた全ての行番号を記録に使う）
+     * @return 送信する束（無ければ空）
+     * @throws IllegalArgumentException 束ねられないジョブの場合
+     */
+    public List<Batch> add(long lineNumber, EmailJob job) {
+        if (!isCoalescable(job)) {
+            throw new IllegalArgumentException("宛先が to の1件だけのジョブのみ束ねられます");
+        }
+        List<Batch> ready = drainExpired();
+
+        List<Object> key = Arrays.asList(job.getSubject(), job.getPlainText(), job.getHtml(), job.getAttachments());
+        Batch batch = openBatches.get(key);
+        if (batch == null) {
+            if (openBatches.size() >= maxOpenBatches) {
+                Iterator<Batch> oldest = openBatches.values().iterator();
+                ready.add(oldest.next());
+                oldest.remove();
+            }
+            batch = new Batch(lineNumber, job, clock.getAsLong());
+            openBatches.put(key, batch);
+        }
+        batch.recipients.add(job.getTo().get(0));
+        batch.lineNumbers.add(lineNumber);
+        // to の表示用アドレスの分を1件引く
+        if (batch.recipients.size() >= maxRecipients - 1) {
+            openBatches.remove(key);
+            ready.add(batch);
+        }
+        return ready;
+    }
+
+    /**
+     * linger を過ぎた束を取り出す
+     */
+    public List<Batch> drainExpired() {
+        List<Batch> ready = new ArrayList<>();
+        long now = clock.getAsLong();
+        // 挿入順 = 作成順なので、期限内の束が見つかった時点で打ち切れる
+        Iterator<Batch> iterator = openBatches.values().iterator();
+        while (iterator.hasNext()) {
+            Batch batch = iterator.next();
+            if (now - batch.createdNanos < lingerNanos) {
+                break;
+            }
+            ready.add(batch);
+            iterator.remove();
+        }
+        return ready;
+    }
+
+    /**
+     * 最も古い束が linger を過ぎるまでの時間（ナノ秒）。既に過ぎていれば 0、束が無ければ Long.MAX_VALUE
+     */
+    public long nanosUntilNextExpiry() {
+        Iterator<Batch> oldest = openBatches.values().iterator();
+        if (!oldest.hasNext()) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0L, oldest.next().createdNanos + lingerNanos - clock.getAsLong());
+    }
+
+    /**
+     * 残っている束を全て取り出す（入力の終わりで呼ぶ）
+     */
+    public List<Batch> drainAll() {
+        List<Batch> ready = new ArrayList<>(openBatches.values());
+        openBatches.clear();
+        return ready;
+    }
+
+    /**
+     * 1通にまとめる宛先の束
+     */
+    public final class Batch {
+        private final long firstLineNumber;
+        private final EmailJob template;
+        private final long createdNanos;
+        private final List<String> recipients = new ArrayList<>();
+        private final List<Long> lineNumbers = new ArrayList<>();
+
+        Batch(long firstLineNumber, EmailJob template, long createdNanos) {
+            this.firstLineNumber = firstLineNumber;
+            this.template = template;
+            this.createdNanos = createdNanos;
+        }
+
+        public long getFirstLineNumber() {
+            return firstLineNumber;
+        }
+
+        /**
+         * 束ねた全てのジョブの行番号（宛先と同じ順）
+         */
+        public long[] getLineNumbers() {
+            long[] numbers = new long[lineNumbers.size()];
+            for (int i = 0; i < numbers.length; i++) {
+                numbers[i] = lineNumbers.get(i);
+            }
+            return numbers;
+        }
+
+        /**
+         * 束ねた宛先の数（= 元のジョブ数）
+         */
+        public int size() {
+            return recipients.size();
+        }
+
+        /**
+         * 送信するジョブ。宛先が1件だけなら元のジョブをそのまま返す
+         */
+        public EmailJob toJob() {
+            if (recipients.size() == 1) {
+                return template;
+            }
+            return new EmailJob(Collections.singletonList(visibleToAddress), Collections.emptyList(),
+                new ArrayList<>(recipients), template.getSubject(), template.getPlainText(), template.getHtml(), null,
+                template.getAttachments());
+        }
+    }
+}
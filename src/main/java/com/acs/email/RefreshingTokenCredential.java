@@ -0,0 +1,254 @@
+package com.acs.email;
+
+import com.azure.core.credential.AccessToken;
+import com.azure.core.credential.TokenCredential;
+import com.azure.core.credential.TokenRequestContext;
+import com.azure.identity.DefaultAzureCredentialBuilder;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Entra ID のアクセストークンをバックグラウンドで事前に更新する TokenCredential
+ *
+ * azure-identity の資格情報（DefaultAzureCredential など）は、キャッシュが期限切れ間近になると
+ * 呼び出し元のリクエストの中でトークンを取得し直すため、送信の途中でトークンエンドポイントの待ち時間が発生する。
+ * 本クラスはスコープごとにトークンを1つ保持し、期限の refreshBefore 前に専用スレッドで取得し直す。
+ * - 有効なトークンがあれば getToken / getTokenSync は待たずにそれを返す（更新中も古いトークンを返す）。
+ *   時計のずれやリクエストの所要時間で送信中に期限が切れないよう、期限の expiryMargin 前からは有効とみなさない
+ * - 有効なトークンが無い場合（起動直後・更新の失敗が続いて期限切れ）だけ、進行中の1回の取得を全員で待つ
+ * - 取得に失敗した場合は retryDelay 後に再試行し、期限までは古いトークンを使い続ける
+ *
+ * 送信を始める前に warmUp を呼べば、送信経路でトークンの取得を待つことはない。
+ */
+public final class RefreshingTokenCredential implements TokenCredential, AutoCloseable {
+
+    /**
+     * ACS のトークンのスコープ
+     */
+    public static final String COMMUNICATION_SCOPE = "https://communication.azure.com//.default";
+
+    private static final Duration DEFAULT_REFRESH_BEFORE = Duration.ofMinutes(10);
+    private static final Duration DEFAULT_RETRY_DELAY = Duration.ofSeconds(30);
+    private static final Duration DEFAULT_EXPIRY_MARGIN = Duration.ofMinutes(2);
+    private static final Duration FETCH_TIMEOUT = Duration.ofSeconds(60);
+
+    private final TokenCredential delegate;
+    private final Duration refreshBefore;
+    private final Duration retryDelay;
+    private final Duration expiryMargin;
+    private final AsyncLog log;
+    private final ScheduledExecutorService refresher;
+    private final ConcurrentMap<List<String>, Entry> entries = new ConcurrentHashMap<>();
+
+    public RefreshingTokenCredential(TokenCredential delegate) {
+        this(delegate, DEFAULT_REFRESH_BEFORE, DEFAULT_RETRY_DELAY, DEFAULT_EXPIRY_MARGIN, AsyncLog.getDefault());
+    }
+
+    /**
+     * @param refreshBefore 期限のどれだけ前に更新するか（トークンの有効期間がこれより短い場合は残り時間の半分で更新する）
+     * @param retryDelay    取得に失敗した場合の再試行までの時間
+     * @param expiryMargin  期限のどれだけ前から有効なトークンとみなさないか（refreshBefore より短くする）
+     */
+    RefreshingTokenCredential(TokenCredential delegate, Duration refreshBefore, Duration retryDelay,
+                              Duration expiryMargin, AsyncLog log) {
+        if (expiryMargin.compareTo(refreshBefore) >= 0) {
+            throw new IllegalArgumentException("expiryMargin は refreshBefore より短くしてください: "
+                + expiryMargin + " >= " + refreshBefore);
+        }
+        this.delegate = delegate;
+        this.refreshBefore = refreshBefore;
+        this.retryDelay = retryDelay;
+        this.expiryMargin = expiryMargin;
+        this.log = log;
+        this.refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "token-refresher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * プロセス全体で共有する資格情報を取得（DefaultAzureCredential: 環境変数・マネージド ID・Azure CLI など）
+     */
+    public static RefreshingTokenCredential getDefault() {
+        return Holder.DEFAULT;
+    }
+
+    @Override
+    public Mono<AccessToken> getToken(TokenRequestContext request) {
+        Entry entry = entry(request);
+        AccessToken token = entry.validToken();
+        if (token != null) {
+            return Mono.just(token);
+        }
+        return Mono.fromFuture(entry.fetch());
+    }
+
+    @Override
+    public AccessToken getTokenSync(TokenRequestContext request) {
+        Entry entry = entry(request);
+        AccessToken token = entry.validToken();
+        if (token != null) {
+            return token;
+        }
+        return await(entry.fetch());
+    }
+
+    /**
+     * トークンを取得してバックグラウンドの更新を始める（送信を始める前に呼び出す。取得できるまで待つ）
+     */
+    public AccessToken warmUp(String... scopes) {
+        return getTokenSync(new TokenRequestContext().addScopes(scopes));
+    }
+
+    /**
+     * トークンの取得を待たずに開始する（既に有効なトークンがあれば何もしない）
+     */
+    public void prefetch(String... scopes) {
+        Entry entry = entry(new TokenRequestContext().addScopes(scopes));
+        if (entry.validToken() == null) {
+            entry.fetch();
+        }
+    }
+
+    /**
+     * バックグラウンドの更新を止める
+     */
+    @Override
+    public void close() {
+        refresher.shutdownNow();
+    }
+
+    private Entry entry(TokenRequestContext request) {
+        List<String> scopes = new ArrayList<>(request.getScopes());
+        Entry entry = entries.get(scopes);
+        if (entry == null) {
+            entry = entries.computeIfAbsent(scopes, key -> new Entry(request));
+        }
+        return entry;
+    }
+
+    private static AccessToken await(CompletableFuture<AccessToken> future) {
+        try {
+            return future.get(FETCH_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("トークンの取得待ちが中断されました", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("トークンを取得できません", e.getCause());
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("トークンの取得が " + FETCH_TIMEOUT.getSeconds() + " 秒以内に完了しません", e);
+        }
+    }
+
+    /**
+     * 1つのスコープのトークンと、その取得・更新の状態
+     */
+    private final class Entry {
+        private final TokenRequestContext request;
+        private final AtomicReference<CompletableFuture<AccessToken>> inFlight = new AtomicReference<>();
+        private volatile AccessToken token;
+        private ScheduledFuture<?> nextRefresh;
+
+        Entry(TokenRequestContext request) {
+            this.request = request;
+        }
+
+        /**
+         * 期限まで expiryMargin 以上残っているトークン（無ければ null）
+         */
+        AccessToken validToken() {
+            AccessToken current = token;
+            return current != null && OffsetDateTime.now().isBefore(current.getExpiresAt().minus(expiryMargin))
+                ? current : null;
+        }
+
+        /**
+         * 取得を開始する（進行中の取得があればそれを返す。取得は更新用のスレッドで行う）
+         */
+        CompletableFuture<AccessToken> fetch() {
+            while (true) {
+                CompletableFuture<AccessToken> current = inFlight.get();
+                if (current != null) {
+                    return current;
+                }
+                CompletableFuture<AccessToken> created = new CompletableFuture<>();
+                if (inFlight.compareAndSet(null, created)) {
+                    try {
+                        refresher.execute(() -> run(created));
+                    } catch (RuntimeException e) {
+                        inFlight.set(null);
+                        created.completeExceptionally(e);
+                    }
+                    return created;
+                }
+            }
+        }
+
+        private void run(CompletableFuture<AccessToken> future) {
+            AccessToken fetched;
+            try {
+                fetched = delegate.getTokenSync(request);
+            } catch (RuntimeException e) {
+                inFlight.set(null);
+                future.completeExceptionally(e);
+                AccessToken current = validToken();
+                log.warn("token_refresh_failed")
+                    .field("scopes", request.getScopes())
+                    .field("expiresAt", current == null ? null : current.getExpiresAt())
+                    .field("retryInSeconds", retryDelay.getSeconds())
+                    .field("error", e.toString())
+                    .text("[認証] トークンの取得に失敗しました。" + retryDelay.getSeconds() + " 秒後に再試行します"
+                        + (current == null ? "" : "（期限 " + current.getExpiresAt() + " までは現在のトークンを使います）")
+                        + ": " + e)
+                    .emit();
+                schedule(retryDelay.toMillis());
+                return;
+            }
+            // 次の呼び出しが新しいトークンを見てから、待っている呼び出しを再開する
+            token = fetched;
+            inFlight.set(null);
+            future.complete(fetched);
+            long remaining = Duration.between(OffsetDateTime.now(), fetched.getExpiresAt()).toMillis();
+            if (remaining > refreshBefore.toMillis()) {
+                schedule(remaining - refreshBefore.toMillis());
+            } else {
+                // 有効期間が refreshBefore より短い（または期限切れの）トークンは、有効とみなす残り時間の半分で取得し直す
+                long usable = remaining - expiryMargin.toMillis();
+                schedule(usable > 0 ? usable / 2 : retryDelay.toMillis());
+            }
+        }
+
+        /**
+         * 次の更新を予約する（更新用のスレッドからのみ呼ぶ。予約済みの更新は置き換える）
+         */
+        private void schedule(long delayMillis) {
+            if (nextRefresh != null) {
+                nextRefresh.cancel(false);
+            }
+            nextRefresh = refresher.schedule(this::fetch, Math.max(0L, delayMillis), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static final class Holder {
+        private static final RefreshingTokenCredential DEFAULT =
+            new RefreshingTokenCredential(new DefaultAzureCredentialBuilder().build());
+    }
+}
@@ -0,0 +1,83 @@
+package com.acs.email;
+
+import com.azure.core.http.HttpHeaderName;
+import com.azure.core.http.HttpHeaders;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * レスポンスヘッダーから「次のリクエストまでに待つべき時間」を読み取るユーティリティ
+ *
+ * ACS は 429 や LRO のステータス応答で以下のいずれかを返す（優先順）:
+ * - x-ms-retry-after-ms: ミリ秒
+ * - retry-after-ms: ミリ秒
+ * - Retry-After: 秒数、または HTTP-date (RFC 1123)
+ */
+public final class RetryAfterHeaders {
+
+    private static final HttpHeaderName X_MS_RETRY_AFTER_MS = HttpHeaderName.fromString("x-ms-retry-after-ms");
+    private static final HttpHeaderName RETRY_AFTER_MS = HttpHeaderName.fromString("retry-after-ms");
+
+    private RetryAfterHeaders() {
+    }
+
+    /**
+     * ヘッダーから待ち時間を取得する
+     *
+     * @return 待ち時間。ヘッダーが無い・解析できない場合は null
+     */
+    public static Duration parse(HttpHeaders headers) {
+        return parse(headers, OffsetDateTime.now());
+    }
+
+    static Duration parse(HttpHeaders headers, OffsetDateTime now) {
+        if (headers == null) {
+            return null;
+        }
+
+        Duration millis = parseMillis(headers.getValue(X_MS_RETRY_AFTER_MS));
+        if (millis != null) {
+            return millis;
+        }
+        millis = parseMillis(headers.getValue(RETRY_AFTER_MS));
+        if (millis != null) {
+            return millis;
+        }
+        return parseRetryAfter(headers.getValue(HttpHeaderName.RETRY_AFTER), now);
+    }
+
+    private static Duration parseMillis(String value) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        try {
+            long ms = Long.parseLong(value.trim());
+            return ms < 0 ? null : Duration.ofMillis(ms);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static Duration parseRetryAfter(String value, OffsetDateTime now) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        String trimmed = value.trim();
+        try {
+            long seconds = Long.parseLong(trimmed);
+            return seconds < 0 ? null : Duration.ofSeconds(seconds);
+        } catch (NumberFormatException e) {
+            // 秒数でなければ HTTP-date として解釈する
+        }
+        try {
+            OffsetDateTime retryAt = OffsetDateTime.parse(trimmed, DateTimeFormatter.RFC_1123_DATE_TIME);
+            Duration delay = Duration.between(now, retryAt);
+            return delay.isNegative() ? Duration.ZERO : delay;
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
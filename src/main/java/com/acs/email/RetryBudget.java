@@ -0,0 +1,74 @@
+package com.acs.email;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * 時間窓ごとのリトライ回数の上限（リトライバジェット）
+ *
+ * 過負荷時にリトライがリクエスト数を増幅させないよう、全ワーカー合計のリトライ回数を
+ * 固定時間窓ごとに maxRetries 回までに制限する。
+ * 状態は「窓番号 + 窓内の回数」を1つの long に詰めた AtomicLong で持ち、CAS で更新する。
+ */
+public final class RetryBudget {
+
+    private static final int COUNT_BITS = 24;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+    private final int maxRetries;
+    private final long windowNanos;
+    private final LongSupplier clock;
+    private final AtomicLong state = new AtomicLong();
+
+    public RetryBudget(int maxRetries, Duration window) {
+        this(maxRetries, window, System::nanoTime);
+    }
+
+    RetryBudget(int maxRetries, Duration window, LongSupplier clock) {
+        if (maxRetries < 0 || maxRetries > COUNT_MASK) {
+            throw new IllegalArgumentException("maxRetries が範囲外です: " + maxRetries);
+        }
+        if (window.isZero() || window.isNegative()) {
+            throw new IllegalArgumentException("window は正の値を指定してください: " + window);
+        }
+        this.maxRetries = maxRetries;
+        this.windowNanos = window.toNanos();
+        this.clock = clock;
+        this.state.set(currentWindow() << COUNT_BITS);
+    }
+
+    /**
+     * リトライを1回分消費する
+     *
+     * @return 現在の時間窓にまだ余裕があれば true
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            long current = state.get();
+            long window = currentWindow();
+            long used = (current >>> COUNT_BITS) == window ? current & COUNT_MASK : 0L;
+            if (used >= maxRetries) {
+                return false;
+            }
+            if (state.compareAndSet(current, (window << COUNT_BITS) | (used + 1))) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 現在の時間窓の残りリトライ回数
+     */
+    public int remaining() {
+        long current = state.get();
+        if ((current >>> COUNT_BITS) != currentWindow()) {
+            return maxRetries;
+        }
+        return (int) (maxRetries - (current & COUNT_MASK));
+    }
+
+    private long currentWindow() {
+        return Math.floorDiv(clock.getAsLong(), windowNanos) & (Long.MAX_VALUE >>> COUNT_BITS);
+    }
+}
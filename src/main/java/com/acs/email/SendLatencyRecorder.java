@@ -0,0 +1,235 @@
+package com.acs.email;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * 送信1通ごとのフェーズ別レイテンシを HdrHistogram に記録する
+ *
+ * フェーズ（連続する区間。どこが遅いのかを切り分けるため）:
+ * - ACQUIRE: 送信の開始 → 同時送信数・送信枠の取得（こちら側の待ち）
+ * - ACCEPT: 送信リクエスト → 受付の応答（HTTP 202。ネットワーク + ACS の受付処理）
+ * - FIRST_POLL: 受付 → 最初のステータス取得の応答
+ * - COMPLETION: 最初のステータス取得 → 最終ステータス（ACS 側の処理時間 + ポーリング間隔）
+ * - TOTAL: 送信の開始 → 最終ステータス
+ *
+ * 記録は HdrHistogram の Recorder（書き込みはロックなし・待ちなし）にナノ秒で行い、集計時に区間のヒストグラムを
+ * 取り出して全体のヒストグラムに加える。start で定期的に集計し、区間ごとの p50 / p99 を出力できる。
+ */
+public final class SendLatencyRecorder implements AutoCloseable {
+
+    /**
+     * 計測するフェーズ
+     */
+    public enum Phase {
+        ACQUIRE("送信枠の取得"),
+        ACCEPT("受付"),
+        FIRST_POLL("最初のポーリング"),
+        COMPLETION("最終ステータス"),
+        TOTAL("合計");
+
+        private final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.HOURS.toNanos(1);
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    private final Map<Phase, Recorder> recorders = new EnumMap<>(Phase.class);
+    private final Map<Phase, Histogram> totals = new EnumMap<>(Phase.class);
+    private final Map<Phase, Histogram> recycled = new EnumMap<>(Phase.class);
+    private final LongSupplier clock;
+    private ScheduledExecutorService scheduler;
+
+    public SendLatencyRecorder() {
+        this(System::nanoTime);
+    }
+
+    SendLatencyRecorder(LongSupplier clock) {
+        this.clock = clock;
+        for (Phase phase : Phase.values()) {
+            recorders.put(phase, new Recorder(HIGHEST_TRACKABLE_NANOS, SIGNIFICANT_DIGITS));
+            totals.put(phase, new Histogram(HIGHEST_TRACKABLE_NANOS, SIGNIFICANT_DIGITS));
+        }
+    }
+
+    /**
+     * 1通分の計測を開始する（この時点が ACQUIRE の起点）
+     */
+    public Timer startTimer() {
+        return new Timer(clock.getAsLong());
+    }
+
+    /**
+     * フェーズの所要時間を記録する（範囲外の値は上限に丸める）
+     */
+    public void record(Phase phase, long nanos) {
+        recorders.get(phase).recordValue(Math.max(0L, Math.min(nanos, HIGHEST_TRACKABLE_NANOS)));
+    }
+
+    /**
+     * interval ごとに集計し、区間の値を out に出力する（デーモンスレッド）
+     */
+    public synchronized void start(Duration interval, PrintStream out) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "send-latency-recorder");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long millis = interval.toMillis();
+        scheduler.scheduleAtFixedRate(() -> printInterval(out), millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 区間の記録を全体に加え、区間の値を1行ずつ出力する（記録の無いフェーズは出力しない）
+     */
+    public synchronized void printInterval(PrintStream out) {
+        StringBuilder line = new StringBuilder();
+        for (Phase phase : Phase.values()) {
+            Histogram interval = merge(phase);
+            if (interval.getTotalCount() == 0) {
+                continue;
+            }
+            line.append(line.length() == 0 ? "[レイテンシ] " : " / ")
+                .append(phase.getLabel())
+                .append(String.format(" p50 %.1f ms, p99 %.1f ms", millis(interval.getValueAtPercentile(50)),
+                    millis(interval.getValueAtPercentile(99))));
+        }
+        if (line.length() > 0) {
+            out.println(line);
+        }
+    }
+
+    /**
+     * 全体の集計結果（記録の無いフェーズは出力しない）
+     */
+    public synchronized void printSummary(PrintStream out) {
+        for (Phase phase : Phase.values()) {
+            merge(phase);
+        }
+        out.println(String.format("%-16s %8s %10s %10s %10s %10s", "フェーズ", "件数", "p50(ms)", "p99(ms)",
+            "p99.9(ms)", "最大(ms)"));
+        for (Phase phase : Phase.values()) {
+            Histogram total = totals.get(phase);
+            if (total.getTotalCount() == 0) {
+                continue;
+            }
+            out.println(String.format("%-16s %8d %10.1f %10.1f %10.1f %10.1f", phase.getLabel(), total.getTotalCount(),
+                millis(total.getValueAtPercentile(50)), millis(total.getValueAtPercentile(99)),
+                millis(total.getValueAtPercentile(99.9)), millis(total.getMaxValue())));
+        }
+    }
+
+    /**
+     * 全体のヒストグラムのコピー（集計してから返す）
+     */
+    public synchronized Histogram snapshot(Phase phase) {
+        merge(phase);
+        return totals.get(phase).copy();
+    }
+
+    private Histogram merge(Phase phase) {
+        Histogram interval = recorders.get(phase).getIntervalHistogram(recycled.get(phase));
+        recycled.put(phase, interval);
+        totals.get(phase).add(interval);
+        return interval;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    /**
+     * 1通分の計測。各 mark は直前の mark からの経過時間を対応するフェーズに記録する
+     * 1通分のイベントは順に届く前提（同じ送信のシグナルは Reactor が直列化する）。同じ mark を2回呼んでも1回目だけ記録する。
+     */
+    public final class Timer {
+        private final long startNanos;
+        private long lastNanos;
+        private int reached;
+
+        Timer(long startNanos) {
+            this.startNanos = startNanos;
+            this.lastNanos = startNanos;
+        }
+
+        /**
+         * 同時送信数・送信枠を取得した
+         */
+        public void markAcquired() {
+            mark(Phase.ACQUIRE);
+        }
+
+        /**
+         * 受付の応答を受け取った
+         */
+        public void markAccepted() {
+            mark(Phase.ACCEPT);
+        }
+
+        /**
+         * 最初のステータス取得の応答を受け取った
+         */
+        public void markFirstPoll() {
+            mark(Phase.FIRST_POLL);
+        }
+
+        /**
+         * 最終ステータスを受け取った（合計も記録する）
+         */
+        public void markCompleted() {
+            if (mark(Phase.COMPLETION)) {
+                record(Phase.TOTAL, lastNanos - startNanos);
+            }
+        }
+
+        /**
+         * 受付の応答から数えた応答の順番に応じて mark する（0: 受付, 1: 最初のポーリング）
+         */
+        public void markResponse(int index) {
+            if (index == 0) {
+                markAccepted();
+            } else if (index == 1) {
+                markFirstPoll();
+            }
+        }
+
+        private boolean mark(Phase phase) {
+            if (reached > phase.ordinal()) {
+                return false;
+            }
+            long now = clock.getAsLong();
+            record(phase, now - lastNanos);
+            lastNanos = now;
+            reached = phase.ordinal() + 1;
+            return true;
+        }
+    }
+}
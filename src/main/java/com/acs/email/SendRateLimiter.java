@@ -0,0 +1,165 @@
+package com.acs.email;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * ACS のメール送信クォータ（分単位・時間単位）に合わせたクライアント側レート制限
+ *
+ * 429 を受け取ってから制限に気付くのではなく、beginSend の前に必ず acquire してクォータ以下の
+ * ペースで送信する。分・時間それぞれを独立した TokenBucket で管理する。
+ *
+ * 既定値は ACS の標準クォータ（30通/分, 100通/時間）。環境変数で変更できる:
+ * - ACS_RATE_LIMIT_PER_MINUTE
+ * - ACS_RATE_LIMIT_PER_HOUR
+ *
+ * ACS_RATE_LIMIT_PER_MINUTE が未設定で、CheckRateLimit --probe がそのリソースのレートを学習済み（LearnedRateStore）
+ * であれば、分単位の上限にはその値を使う。
+ */
+public final class SendRateLimiter {
+
+    public static final int DEFAULT_PER_MINUTE = 30;
+    public static final int DEFAULT_PER_HOUR = 100;
+
+    // 環境変数が未設定であることを表す readLimit の既定値
+    private static final int NOT_SET = -1;
+
+    private static final SendRateLimiter DEFAULT = fromEnvironment();
+
+    private final TokenBucket perMinute;
+    private final TokenBucket perHour;
+
+    public SendRateLimiter(int perMinute, int perHour) {
+        this(new TokenBucket(perMinute, Duration.ofMinutes(1)), new TokenBucket(perHour, Duration.ofHours(1)));
+    }
+
+    SendRateLimiter(TokenBucket perMinute, TokenBucket perHour) {
+        this.perMinute = perMinute;
+        this.perHour = perHour;
+    }
+
+    /**
+     * プロセス全体で共有するレートリミッターを取得
+     * 全ての送信経路 (App / AsyncApp / BatchSender) が同じインスタンスを使うことで合計の送信ペースを制御する
+     */
+    public static SendRateLimiter getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * 環境変数から設定を読み込んで生成する
+     * 分単位の上限が未設定なら、ACS_CONNECTION_STRING のリソースの学習済みレートを使う。
+     */
+    public static SendRateLimiter fromEnvironment() {
+        return fromEnvironment("", System.getenv("ACS_CONNECTION_STRING"));
+    }
+
+    /**
+     * 環境変数名に suffix を付けた設定（例: ACS_RATE_LIMIT_PER_MINUTE_2）から生成する
+     * suffix 付きの値が無ければ suffix なしの値を使う。分単位の上限がどちらも無ければ connectionString のリソースの
+     * 学習済みレート、それも無ければ既定値を使う。
+     */
+    static SendRateLimiter fromEnvironment(String suffix, String connectionString) {
+        int perMinute = readLimit("ACS_RATE_LIMIT_PER_MINUTE" + suffix,
+            readLimit("ACS_RATE_LIMIT_PER_MINUTE", NOT_SET));
+        if (perMinute == NOT_SET) {
+            perMinute = learnedPerMinute(LearnedRateStore.fromEnvironment(), connectionString, DEFAULT_PER_MINUTE);
+        }
+        return new SendRateLimiter(perMinute,
+            readLimit("ACS_RATE_LIMIT_PER_HOUR" + suffix, readLimit("ACS_RATE_LIMIT_PER_HOUR", DEFAULT_PER_HOUR)));
+    }
+
+    /**
+     * 接続文字列のリソース（エンドポイント）の学習済みレート（通/分、小数点以下切り捨て）
+     *
+     * @return 学習済みのレートが無い・読めない場合は defaultValue
+     */
+    static int learnedPerMinute(LearnedRateStore store, String connectionString, int defaultValue) {
+        if (connectionString == null || connectionString.trim().isEmpty()) {
+            return defaultValue;
+        }
+        Double learned;
+        try {
+            learned = store.load(EmailClientRegistry.endpointOf(connectionString));
+        } catch (IOException | IllegalArgumentException e) {
+            // 接続文字列の誤りは送信時に報告されるため、ここではレートの既定値で続ける
+            System.err.println("警告: 学習済みレートを読み込めませんでした: " + e.getMessage());
+            return defaultValue;
+        }
+        return learned == null ? defaultValue : Math.max(1, (int) Math.floor(learned));
+    }
+
+    private static int readLimit(String name, int defaultValue) {
+        String value = System.getenv(name);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("環境変数 " + name + " が数値ではありません: " + value, e);
+        }
+    }
+
+    /**
+     * 送信枠を1つ予約し、送信してよい時刻までの待ち時間を返す
+     * 呼び出しスレッドをブロックできない非同期経路では、戻り値の分だけ遅延させてから送信する。
+     */
+    public Duration reserve() {
+        long waitNanos = Math.max(perMinute.reserve(), perHour.reserve());
+        return Duration.ofNanos(waitNanos);
+    }
+
+    /**
+     * 送信枠を1つ取得する（取得できるまで呼び出しスレッドをブロックする）
+     */
+    public void acquire() throws InterruptedException {
+        long waitNanos = reserve().toNanos();
+        if (waitNanos == 0) {
+            return;
+        }
+        long deadline = System.nanoTime() + waitNanos;
+        while (waitNanos > 0) {
+            LockSupport.parkNanos(this, waitNanos);
+            if (Thread.interrupted()) {
+                throw new InterruptedException("送信枠の待機中に中断されました");
+            }
+            waitNanos = deadline - System.nanoTime();
+        }
+    }
+
+    /**
+     * 待たずに送信できる場合のみ送信枠を取得する
+     * 時間単位の枠を取得した後に分単位の枠を取得できなければ、時間単位の枠を返す（片方だけを消費しない）。
+     */
+    public boolean tryAcquire() {
+        if (!perHour.tryAcquire()) {
+            return false;
+        }
+        if (!perMinute.tryAcquire()) {
+            perHour.release();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 現時点で即時に送信できる件数（監視用の概算値）
+     */
+    public int availablePermits() {
+        return Math.min(perMinute.availableTokens(), perHour.availableTokens());
+    }
+
+    /**
+     * 分単位のクォータ
+     */
+    public int getPerMinute() {
+        return perMinute.getCapacity();
+    }
+
+    @Override
+    public String toString() {
+        return perMinute.getCapacity() + "/min, " + perHour.getCapacity() + "/hour";
+    }
+}
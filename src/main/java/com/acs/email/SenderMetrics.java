@@ -0,0 +1,252 @@
+package com.acs.email;
+
+import com.azure.communication.email.models.EmailSendStatus;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * 送信プロセスのメトリクス（カウンターとゲージ）
+ *
+ * 送信経路（BatchSender / EmailSendPipeline / HTTP パイプライン）から更新し、MetricsEndpoint が
+ * Prometheus / OpenMetrics のテキスト形式で公開する。
+ * - カウンターは LongAdder で、更新はオブジェクトを生成しない（ラベル付きのカウンターも事前に確保しておく）
+ * - ゲージ（送信枠の残りやキューの長さ）は値を持たず、取得時に登録された関数を呼び出して読む
+ *
+ * スレッドセーフ。
+ */
+public final class SenderMetrics {
+
+    // 最終ステータスのラベル（EmailSendStatus の終端状態 + それ以外）
+    private static final String[] STATUS_LABELS = {"Succeeded", "Failed", "Canceled", "other"};
+    private static final int STATUS_OTHER = 3;
+
+    private static final SenderMetrics DEFAULT = new SenderMetrics();
+
+    private final LongAdder[] sendsByStatus = new LongAdder[STATUS_LABELS.length];
+    private final LongAdder sendErrors = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder rerouted = new LongAdder();
+    private final LongAdder inFlight = new LongAdder();
+    private final LongAdder signings = new LongAdder();
+    private final LongAdder signingNanos = new LongAdder();
+    private final List<Gauge> gauges = new CopyOnWriteArrayList<>();
+
+    SenderMetrics() {
+        for (int i = 0; i < sendsByStatus.length; i++) {
+            sendsByStatus[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * プロセス全体で共有するメトリクスを取得
+     */
+    public static SenderMetrics getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * 送信を開始した（未完了の送信数を増やす）
+     */
+    public void sendStarted() {
+        inFlight.increment();
+    }
+
+    /**
+     * 最終ステータスを受け取った（未完了の送信数を減らす）
+     */
+    public void sendCompleted(EmailSendStatus status) {
+        sendsByStatus[statusIndex(status)].increment();
+        inFlight.decrement();
+    }
+
+    /**
+     * ステータスを受け取れずに失敗した（例外・タイムアウト）
+     */
+    public void sendFailed() {
+        sendErrors.increment();
+        inFlight.decrement();
+    }
+
+    /**
+     * 結果を受け取る前に購読が解除された（未完了の送信数を減らす）
+     */
+    public void sendCancelled() {
+        inFlight.decrement();
+    }
+
+    /**
+     * 受付の時点で追跡をやめた（fire-and-forget。最終ステータスは後から別に確定する）
+     */
+    public void sendDetached() {
+        inFlight.decrement();
+    }
+
+    /**
+     * 429 の応答を受け取った（SDK が再試行する場合も1回として数える）
+     */
+    public void throttled() {
+        throttled.increment();
+    }
+
+    /**
+     * SDK がリクエストを再試行した
+     */
+    public void retried() {
+        retries.increment();
+    }
+
+    /**
+     * 別のリソースで送り直した
+     */
+    public void rerouted() {
+        rerouted.increment();
+    }
+
+    /**
+     * リクエストに HMAC 署名を付けた（HmacSigningPolicy。本文のハッシュと署名の計算にかかった時間）
+     */
+    public void requestSigned(long nanos) {
+        signings.increment();
+        signingNanos.add(nanos);
+    }
+
+    /**
+     * ゲージを登録する（値は取得時に supplier から読む。同じ名前・ラベルのゲージは置き換える）
+     *
+     * @param name   メトリクス名
+     * @param help   説明
+     * @param labels ラベル（例: resource="#1"。無ければ null）
+     */
+    public void registerGauge(String name, String help, String labels, LongSupplier supplier) {
+        gauges.removeIf(gauge -> gauge.name.equals(name) && Objects.equals(gauge.labels, labels));
+        gauges.add(new Gauge(name, help, labels, supplier));
+    }
+
+    /**
+     * 送信枠の残り（SendRateLimiter.availablePermits）をゲージとして登録する
+     */
+    public void registerRateLimiter(String resource, SendRateLimiter limiter) {
+        registerGauge("acs_email_rate_limiter_available_permits", "待たずに送信できる件数（送信枠の残り）",
+            "resource=\"" + escapeLabel(resource) + "\"", limiter::availablePermits);
+    }
+
+    private static int statusIndex(EmailSendStatus status) {
+        if (EmailSendStatus.SUCCEEDED.equals(status)) {
+            return 0;
+        }
+        if (EmailSendStatus.FAILED.equals(status)) {
+            return 1;
+        }
+        if (EmailSendStatus.CANCELED.equals(status)) {
+            return 2;
+        }
+        return STATUS_OTHER;
+    }
+
+    long getSends(EmailSendStatus status) {
+        return sendsByStatus[statusIndex(status)].sum();
+    }
+
+    long getInFlight() {
+        return inFlight.sum();
+    }
+
+    long getSigningCount() {
+        return signings.sum();
+    }
+
+    /**
+     * テキスト形式で出力する
+     *
+     * @param openMetrics true なら OpenMetrics（application/openmetrics-text）、false なら Prometheus テキスト形式 0.0.4
+     */
+    public void writeTo(StringBuilder out, boolean openMetrics) {
+        counterHeader(out, "acs_email_sends", "最終ステータスを受け取った送信数（EmailSendStatus 別）", openMetrics);
+        for (int i = 0; i < sendsByStatus.length; i++) {
+            sample(out, "acs_email_sends_total", "status=\"" + STATUS_LABELS[i] + "\"", sendsByStatus[i].sum());
+        }
+        counter(out, "acs_email_send_errors", "ステータスを受け取れずに失敗した送信数（例外・タイムアウト）",
+            sendErrors.sum(), openMetrics);
+        counter(out, "acs_email_throttled", "429 の応答数", throttled.sum(), openMetrics);
+        counter(out, "acs_email_retries", "SDK によるリクエストの再試行数", retries.sum(), openMetrics);
+        counter(out, "acs_email_rerouted", "別のリソースで送り直した送信数", rerouted.sum(), openMetrics);
+
+        header(out, "acs_email_request_signing_seconds", "summary", "リクエストの HMAC 署名にかかった時間");
+        out.append("acs_email_request_signing_seconds_count ").append(signings.sum()).append('\n');
+        out.append("acs_email_request_signing_seconds_sum ").append(signingNanos.sum() / 1e9).append('\n');
+
+        header(out, "acs_email_in_flight", "gauge", "送信を開始して最終ステータスを待っている送信数");
+        sample(out, "acs_email_in_flight", null, inFlight.sum());
+        // 同じ名前のゲージ（ラベル違い）はまとめて、HELP / TYPE を1度だけ出す
+        List<Gauge> snapshot = new ArrayList<>(gauges);
+        Set<String> written = new HashSet<>();
+        for (Gauge first : snapshot) {
+            if (!written.add(first.name)) {
+                continue;
+            }
+            header(out, first.name, "gauge", first.help);
+            for (Gauge gauge : snapshot) {
+                if (gauge.name.equals(first.name)) {
+                    sample(out, gauge.name, gauge.labels, gauge.supplier.getAsLong());
+                }
+            }
+        }
+        if (openMetrics) {
+            out.append("# EOF\n");
+        }
+    }
+
+    private static void counter(StringBuilder out, String name, String help, long value, boolean openMetrics) {
+        counterHeader(out, name, help, openMetrics);
+        sample(out, name + "_total", null, value);
+    }
+
+    /**
+     * OpenMetrics ではカウンターのファミリー名に _total を付けず、Prometheus 形式では付ける
+     */
+    private static void counterHeader(StringBuilder out, String name, String help, boolean openMetrics) {
+        header(out, openMetrics ? name : name + "_total", "counter", help);
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, long value) {
+        out.append(name);
+        if (labels != null) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ').append(value).append('\n');
+    }
+
+    private static String escapeLabel(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * 取得時に値を読むゲージ
+     */
+    private static final class Gauge {
+        private final String name;
+        private final String help;
+        private final String labels;
+        private final LongSupplier supplier;
+
+        Gauge(String name, String help, String labels, LongSupplier supplier) {
+            this.name = name;
+            this.help = help;
+            this.labels = labels;
+            this.supplier = supplier;
+        }
+    }
+}
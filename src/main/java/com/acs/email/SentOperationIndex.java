@@ -0,0 +1,233 @@
+package com.acs.email;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+
+/**
+ * 送信済み Operation-Id (UUID) の重複排除インデックス
+ *
+ * UUID を 16 バイトのまま、メモリマップドファイル上のオープンアドレス法（線形探索）のハッシュ表に格納する。
+ * - ヒープ外に置くため、数千万件でも GC の対象にならない（1件あたり 16 バイト / 負荷率 0.75 以下）
+ * - 検索・追加は O(1)。ブルームフィルタと違い偽陽性が無いため、未送信のメッセージを誤って飛ばすことはない
+ * - ファイルに残るので、再起動後もそのまま使える
+ *
+ * 負荷率が MAX_LOAD_FACTOR を超えたら、2倍の容量のファイルを作り直して入れ替える。
+ */
+public final class SentOperationIndex implements Closeable {
+
+    private static final long MAGIC = 0x4143534F50494458L; // "ACSOPIDX"
+    private static final int HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 16;
+    private static final double MAX_LOAD_FACTOR = 0.75;
+    private static final long DEFAULT_CAPACITY = 1L << 20;
+
+    // 1つのマッピングは 2GB 未満に制限されるため、スロット領域を 1GB ごとのチャンクに分けてマップする
+    private static final int CHUNK_SHIFT = 26;
+    private static final long CHUNK_SLOTS = 1L << CHUNK_SHIFT;
+
+    private final Path file;
+
+    // 以下は this のロックで保護する
+    private FileChannel channel;
+    private MappedByteBuffer header;
+    private MappedByteBuffer[] chunks;
+    private long capacity;
+    private long size;
+
+    public SentOperationIndex(Path file) throws IOException {
+        this(file, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param initialCapacity 新規作成時のスロット数（2の累乗に切り上げる）。既存のファイルを開く場合は無視される
+     */
+    public SentOperationIndex(Path file, long initialCapacity) throws IOException {
+        this.file = file;
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        if (Files.exists(file) && Files.size(file) > 0) {
+            open(file);
+        } else {
+            create(file, roundUpToPowerOfTwo(Math.max(initialCapacity, 16)));
+        }
+    }
+
+    /**
+     * 送信済みとして記録されているかどうか
+     */
+    public boolean contains(String operationId) {
+        return contains(UUID.fromString(operationId));
+    }
+
+    synchronized boolean contains(UUID uuid) {
+        return findSlot(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits()) >= 0;
+    }
+
+    /**
+     * 送信済みとして記録する
+     *
+     * @return 新たに記録した場合 true、既に記録済みだった場合 false
+     */
+    public boolean add(String operationId) throws IOException {
+        return add(UUID.fromString(operationId));
+    }
+
+    synchronized boolean add(UUID uuid) throws IOException {
+        long high = uuid.getMostSignificantBits();
+        long low = uuid.getLeastSignificantBits();
+        if (findSlot(high, low) >= 0) {
+            return false;
+        }
+        if (size + 1 > capacity * MAX_LOAD_FACTOR) {
+            grow();
+        }
+        insert(high, low);
+        size++;
+        header.putLong(16, size);
+        return true;
+    }
+
+    /**
+     * 記録されている件数
+     */
+    public synchronized long size() {
+        return size;
+    }
+
+    /**
+     * ディスクに同期する
+     */
+    public synchronized void flush() {
+        header.force();
+        for (MappedByteBuffer chunk : chunks) {
+            chunk.force();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        flush();
+        channel.close();
+        channel = null;
+    }
+
+    /**
+     * 見つかればスロット番号、無ければ -1
+     */
+    private long findSlot(long high, long low) {
+        long mask = capacity - 1;
+        for (long slot = hash(high, low) & mask; ; slot = (slot + 1) & mask) {
+            long storedHigh = readLong(slot, 0);
+            long storedLow = readLong(slot, 8);
+            if (storedHigh == 0 && storedLow == 0) {
+                return -1;
+            }
+            if (storedHigh == high && storedLow == low) {
+                return slot;
+            }
+        }
+    }
+
+    private void insert(long high, long low) {
+        long mask = capacity - 1;
+        long slot = hash(high, low) & mask;
+        while (readLong(slot, 0) != 0 || readLong(slot, 8) != 0) {
+            slot = (slot + 1) & mask;
+        }
+        // 空きスロットの印は (0, 0)。UUID はバージョンビットがあるため (0, 0) にはならない
+        writeLong(slot, 0, high);
+        writeLong(slot, 8, low);
+    }
+
+    /**
+     * 2倍の容量のファイルに全件を入れ直し、元のファイルと入れ替える
+     */
+    private void grow() throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".grow");
+        Files.deleteIfExists(temporary);
+
+        FileChannel oldChannel = channel;
+        MappedByteBuffer[] oldChunks = chunks;
+        long oldCapacity = capacity;
+        long oldSize = size;
+
+        create(temporary, oldCapacity * 2);
+        for (long slot = 0; slot < oldCapacity; slot++) {
+            MappedByteBuffer chunk = oldChunks[(int) (slot >>> CHUNK_SHIFT)];
+            int offset = (int) (slot & (CHUNK_SLOTS - 1)) * SLOT_SIZE;
+            long high = chunk.getLong(offset);
+            long low = chunk.getLong(offset + 8);
+            if (high != 0 || low != 0) {
+                insert(high, low);
+            }
+        }
+        size = oldSize;
+        header.putLong(16, size);
+        flush();
+        channel.close();
+        oldChannel.close();
+
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        open(file);
+    }
+
+    private void create(Path target, long slots) throws IOException {
+        try (FileChannel created = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            MappedByteBuffer newHeader = created.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            newHeader.putLong(0, MAGIC);
+            newHeader.putLong(8, slots);
+            newHeader.putLong(16, 0);
+            newHeader.force();
+        }
+        open(target);
+    }
+
+    private void open(Path target) throws IOException {
+        channel = FileChannel.open(target, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        if (header.getLong(0) != MAGIC) {
+            channel.close();
+            throw new IOException("重複排除インデックスのファイルではありません: " + target);
+        }
+        capacity = header.getLong(8);
+        size = header.getLong(16);
+
+        int chunkCount = (int) ((capacity + CHUNK_SLOTS - 1) >>> CHUNK_SHIFT);
+        chunks = new MappedByteBuffer[chunkCount];
+        for (int i = 0; i < chunkCount; i++) {
+            long slots = Math.min(CHUNK_SLOTS, capacity - ((long) i << CHUNK_SHIFT));
+            chunks[i] = channel.map(FileChannel.MapMode.READ_WRITE,
+                HEADER_SIZE + ((long) i << CHUNK_SHIFT) * SLOT_SIZE, slots * SLOT_SIZE);
+        }
+    }
+
+    private long readLong(long slot, int field) {
+        return chunks[(int) (slot >>> CHUNK_SHIFT)].getLong((int) (slot & (CHUNK_SLOTS - 1)) * SLOT_SIZE + field);
+    }
+
+    private void writeLong(long slot, int field, long value) {
+        chunks[(int) (slot >>> CHUNK_SHIFT)].putLong((int) (slot & (CHUNK_SLOTS - 1)) * SLOT_SIZE + field, value);
+    }
+
+    private static long hash(long high, long low) {
+        long h = (high ^ Long.rotateLeft(low, 32)) * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+
+    private static long roundUpToPowerOfTwo(long value) {
+        long highest = Long.highestOneBit(value);
+        return highest == value ? value : highest << 1;
+    }
+}
@@ -0,0 +1,106 @@
+package com.acs.email;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * ロックフリーのトークンバケット
+ *
+ * GCRA (Generic Cell Rate Algorithm) で実装しており、状態は「理論上の次回到着時刻 (TAT)」の
+ * AtomicLong 1つだけ。取得は CAS 1回で完了するため、多数の送信スレッドから同時に呼ばれても
+ * ロック競合が発生しない。
+ *
+ * capacity 個のトークンが period ごとに均等に補充され、最大 capacity 個までバーストできる。
+ */
+public final class TokenBucket {
+
+    private final int capacity;
+    private final long emissionIntervalNanos;
+    private final long burstToleranceNanos;
+    private final LongSupplier clock;
+    private final AtomicLong theoreticalArrivalTime;
+
+    public TokenBucket(int capacity, Duration period) {
+        this(capacity, period, System::nanoTime);
+    }
+
+    TokenBucket(int capacity, Duration period, LongSupplier clock) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity は1以上を指定してください: " + capacity);
+        }
+        if (period.isZero() || period.isNegative()) {
+            throw new IllegalArgumentException("period は正の値を指定してください: " + period);
+        }
+        this.capacity = capacity;
+        this.emissionIntervalNanos = period.toNanos() / capacity;
+        this.burstToleranceNanos = emissionIntervalNanos * (capacity - 1);
+        this.clock = clock;
+        this.theoreticalArrivalTime = new AtomicLong(clock.getAsLong());
+    }
+
+    /**
+     * トークンを1つ予約し、使用可能になるまでの待ち時間（ナノ秒）を返す
+     * 戻り値が 0 なら即時に使用できる。予約は取り消せないため、呼び出し側は必ず待ち時間の経過後に送信すること。
+     */
+    public long reserve() {
+        while (true) {
+            long now = clock.getAsLong();
+            long tat = theoreticalArrivalTime.get();
+            long base = Math.max(tat, now);
+            if (theoreticalArrivalTime.compareAndSet(tat, base + emissionIntervalNanos)) {
+                return Math.max(0L, base - burstToleranceNanos - now);
+            }
+        }
+    }
+
+    /**
+     * 待たずに使用できる場合のみトークンを1つ取得する
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            long now = clock.getAsLong();
+            long tat = theoreticalArrivalTime.get();
+            long base = Math.max(tat, now);
+            if (base - burstToleranceNanos > now) {
+                return false;
+            }
+            if (theoreticalArrivalTime.compareAndSet(tat, base + emissionIntervalNanos)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * tryAcquire で取得したトークンを1つ返す（取得したトークンを使わなかった場合に呼ぶ）
+     * TAT を1トークン分戻すだけなので、取得後に他のスレッドが取得していても返すのは1つ分だけになる。
+     */
+    void release() {
+        theoreticalArrivalTime.addAndGet(-emissionIntervalNanos);
+    }
+
+    /**
+     * 現時点で即時に使用できるトークン数（監視用の概算値）
+     */
+    public int availableTokens() {
+        long now = clock.getAsLong();
+        long tat = Math.max(theoreticalArrivalTime.get(), now);
+        long headroom = now + burstToleranceNanos - tat;
+        if (headroom < 0) {
+            return 0;
+        }
+        return (int) Math.min(capacity, headroom / emissionIntervalNanos + 1);
+    }
+
+    /**
+     * 次のトークンが使用可能になるまでの時間（ナノ秒、即時に使用できれば 0）
+     */
+    public long nanosUntilAvailable() {
+        long now = clock.getAsLong();
+        return Math.max(0L, theoreticalArrivalTime.get() - burstToleranceNanos - now);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+}
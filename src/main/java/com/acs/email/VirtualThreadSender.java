@@ -0,0 +1,225 @@
+package com.acs.email;
+
+import com.azure.communication.email.EmailClient;
+import com.azure.communication.email.models.EmailMessage;
+import com.azure.communication.email.models.EmailSendResult;
+import com.azure.communication.email.models.EmailSendStatus;
+import com.azure.core.util.polling.PollResponse;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ACS メール一括送信アプリケーション（仮想スレッド版）
+ *
+ * 同期 API (EmailClient + SyncPoller) のまま、1通ごとに仮想スレッドを割り当てて送信する。
+ * 仮想スレッドはブロック中に OS スレッドを手放すため、数千通を同時に waitForCompletion で待っても
+ * 使用する OS スレッドはキャリアスレッド数（CPU コア数程度）で済む。
+ *
+ * - 仮想スレッドの Executor はインスタンスごとに1つだけ作り、ジョブファイル全体で使い続ける
+ * - 同時送信数（未完了の送信数）は Semaphore で上限を設ける。上限に達したら読み込みを止め、
+ *   どれか1通が完了すれば次の行を送る（一定行数ごとに全送信の完了を待つことはしない）
+ * - run はファイルの最後まで送信した後、Semaphore の許可が全て戻る（= 全送信の完了）まで待つ
+ *
+ * 使用法: java VirtualThreadSender <ジョブファイル.jsonl> [同時送信数]
+ */
+public class VirtualThreadSender implements Closeable {
+
+    private static final String CONNECTION_STRING = System.getenv("ACS_CONNECTION_STRING");
+    private static final String SENDER_ADDRESS = System.getenv("ACS_SENDER_ADDRESS");
+    private static final int DEFAULT_MAX_IN_FLIGHT = 1000;
+    // 進捗を出力する間隔（行数）
+    private static final int PROGRESS_INTERVAL = 10_000;
+    private static final Duration COMPLETION_TIMEOUT = Duration.ofMinutes(2);
+
+    private final EmailClient emailClient;
+    private final SendRateLimiter rateLimiter;
+    private final String senderAddress;
+    private final int maxInFlight;
+    private final Semaphore inFlight;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final AtomicLong submittedCount = new AtomicLong();
+    private final AtomicLong succeededCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong skippedCount = new AtomicLong();
+
+    public VirtualThreadSender(EmailClient emailClient, SendRateLimiter rateLimiter, String senderAddress,
+                               int maxInFlight) {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("同時送信数は1以上を指定してください: " + maxInFlight);
+        }
+        this.emailClient = emailClient;
+        this.rateLimiter = rateLimiter;
+        this.senderAddress = senderAddress;
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight);
+    }
+
+    public static void main(String[] args) {
+        System.out.println("=================================================");
+        System.out.println("ACS メール一括送信ツール（仮想スレッド版）");
+        System.out.println("=================================================\n");
+
+        // 設定の確認
+        if (CONNECTION_STRING == null || CONNECTION_STRING.isEmpty()) {
+            System.err.println("エラー: 環境変数 ACS_CONNECTION_STRING が設定されていません。");
+            return;
+        }
+
+        if (SENDER_ADDRESS == null || SENDER_ADDRESS.isEmpty()) {
+            System.err.println("エラー: 環境変数 ACS_SENDER_ADDRESS が設定されていません。");
+            return;
+        }
+
+        if (args.length < 1) {
+            System.err.println("使用法: java VirtualThreadSender <ジョブファイル.jsonl> [同時送信数]");
+            System.err.println("例: java VirtualThreadSender requests.jsonl 1000");
+            return;
+        }
+
+        Path jobFile = Paths.get(args[0]);
+        int maxInFlight = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_MAX_IN_FLIGHT;
+
+        System.out.println("ジョブファイル: " + jobFile);
+        System.out.println("送信元: " + SENDER_ADDRESS);
+        System.out.println("同時送信数: " + maxInFlight);
+        System.out.println("レート制限: " + SendRateLimiter.getDefault());
+        System.out.println("-------------------------------------------------\n");
+
+        EmailClient emailClient = EmailClientRegistry.getDefault().getClient(CONNECTION_STRING, SENDER_ADDRESS);
+        VirtualThreadSender sender = new VirtualThreadSender(emailClient, SendRateLimiter.getDefault(),
+            SENDER_ADDRESS, maxInFlight);
+
+        long startTime = System.currentTimeMillis();
+        try (sender) {
+            sender.run(jobFile);
+            sender.printSummary(System.currentTimeMillis() - startTime);
+        } catch (IOException e) {
+            System.err.println("\n【例外発生】ジョブファイルを読み込めません");
+            System.err.println("メッセージ: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("\n中断されました。");
+        }
+    }
+
+    /**
+     * ジョブファイルを最後まで送信し、全ての送信が完了するまで待機する
+     */
+    public void run(Path jobFile) throws IOException, InterruptedException {
+        try (BufferedReader reader = Files.newBufferedReader(jobFile, StandardCharsets.UTF_8)) {
+            String line;
+            long lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (!line.isBlank()) {
+                    submit(lineNumber, line);
+                }
+                if (lineNumber % PROGRESS_INTERVAL == 0) {
+                    System.out.println("進捗: " + lineNumber + " 行読み込み / 成功 " + succeededCount.get()
+                        + " 件 / 失敗 " + failedCount.get() + " 件");
+                }
+            }
+        }
+
+        // 全ての許可が戻るまで待つ = 全送信の完了
+        inFlight.acquire(maxInFlight);
+        inFlight.release(maxInFlight);
+    }
+
+    /**
+     * 1行を解析し、同時送信数の許可を取得してから仮想スレッドで送信する
+     */
+    private void submit(long lineNumber, String line) throws InterruptedException {
+        EmailMessage message;
+        try {
+            message = EmailJob.fromJson(line).toEmailMessage(senderAddress);
+        } catch (IOException | RuntimeException e) {
+            skippedCount.incrementAndGet();
+            System.err.println("[" + lineNumber + "行目] 解析エラーのためスキップ: " + e.getMessage());
+            return;
+        }
+
+        // 同時送信数の上限に達している場合は読み込みを止めて待つ
+        inFlight.acquire();
+        try {
+            executor.submit(() -> send(lineNumber, message));
+        } catch (RuntimeException e) {
+            inFlight.release();
+            throw e;
+        }
+        submittedCount.incrementAndGet();
+    }
+
+    /**
+     * 1通を送信して完了まで待つ（仮想スレッド上で実行される）
+     */
+    private void send(long lineNumber, EmailMessage message) {
+        try {
+            rateLimiter.acquire();
+            PollResponse<EmailSendResult> response = emailClient
+                .beginSend(message, OperationIdPolicy.context(OperationIdPolicy.newOperationId()))
+                .waitForCompletion(COMPLETION_TIMEOUT);
+
+            EmailSendResult result = response.getValue();
+            if (result != null && result.getStatus() == EmailSendStatus.SUCCEEDED) {
+                succeededCount.incrementAndGet();
+            } else {
+                failedCount.incrementAndGet();
+                System.err.println("[" + lineNumber + "行目] 送信失敗: "
+                    + (result == null ? response.getStatus() : result.getStatus()));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failedCount.incrementAndGet();
+        } catch (RuntimeException e) {
+            failedCount.incrementAndGet();
+            System.err.println("[" + lineNumber + "行目] 送信エラー: " + e.getMessage());
+        } finally {
+            inFlight.release();
+        }
+    }
+
+    /**
+     * Executor を閉じる（実行中の送信があれば完了を待つ）
+     */
+    @Override
+    public void close() {
+        executor.close();
+    }
+
+    long getSucceededCount() {
+        return succeededCount.get();
+    }
+
+    long getFailedCount() {
+        return failedCount.get();
+    }
+
+    long getSkippedCount() {
+        return skippedCount.get();
+    }
+
+    private void printSummary(long totalDuration) {
+        System.out.println("\n=================================================");
+        System.out.println("一括送信サマリー（仮想スレッド版）");
+        System.out.println("=================================================");
+        System.out.println("送信: " + submittedCount.get() + " 件");
+        System.out.println("成功: " + succeededCount.get() + " 件");
+        System.out.println("失敗: " + failedCount.get() + " 件");
+        System.out.println("スキップ（解析エラー）: " + skippedCount.get() + " 件");
+        System.out.println("合計処理時間: " + totalDuration + " ms (" + (totalDuration / 1000.0) + " 秒)");
+        System.out.println("=================================================");
+    }
+}
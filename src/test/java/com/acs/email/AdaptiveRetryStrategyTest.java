@@ -0,0 +1,209 @@
+package com.acs.email;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.azure.core.http.HttpHeaderName;
+import com.azure.core.http.HttpMethod;
+import com.azure.core.http.HttpPipeline;
+import com.azure.core.http.HttpPipelineBuilder;
+import com.azure.core.http.HttpRequest;
+import com.azure.core.http.HttpResponse;
+import com.azure.core.util.Context;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.Test;
+
+/**
+ * AdaptiveRetryStrategy / RetryBudget のテスト
+ */
+public class AdaptiveRetryStrategyTest {
+
+    @Test
+    public void budgetIsLimitedPerWindow() {
+        AtomicLong now = new AtomicLong(0);
+        RetryBudget budget = new RetryBudget(2, Duration.ofMinutes(1), now::get);
+
+        assertTrue(budget.tryAcquire());
+        assertTrue(budget.tryAcquire());
+        assertFalse(budget.tryAcquire());
+        assertEquals(0, budget.remaining());
+
+        // 次の時間窓でリセットされる
+        now.addAndGet(TimeUnit.MINUTES.toNanos(1));
+        assertEquals(2, budget.remaining());
+        assertTrue(budget.tryAcquire());
+    }
+
+    @Test
+    public void zeroBudgetNeverRetries() {
+        RetryBudget budget = new RetryBudget(0, Duration.ofMinutes(1));
+
+        assertFalse(budget.tryAcquire());
+    }
+
+    @Test
+    public void delayWithoutHintStaysWithinJitterBounds() {
+        AdaptiveRetryStrategy strategy = new AdaptiveRetryStrategy(4, Duration.ofMillis(100), Duration.ofSeconds(2),
+            new RetryBudget(10, Duration.ofMinutes(1)));
+
+        for (int i = 0; i < 100; i++) {
+            Duration first = strategy.calculateRetryDelay(1);
+            assertTrue(first.toMillis() >= 100 && first.toMillis() <= 300);
+
+            Duration capped = strategy.calculateRetryDelay(10);
+            assertTrue(capped.toMillis() >= 100 && capped.toMillis() <= 2000);
+        }
+    }
+
+    @Test
+    public void jitterIsAddedOnTopOfTheHint() {
+        AdaptiveRetryStrategy strategy = new AdaptiveRetryStrategy(4, Duration.ofMillis(100), Duration.ofSeconds(2),
+            new RetryBudget(10, Duration.ofMinutes(1)));
+
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < 200; i++) {
+            long delay = strategy.nextDelay(Duration.ofSeconds(1), Duration.ZERO).toMillis();
+            assertTrue("ヒントの範囲外: " + delay, delay >= 1000 && delay <= 1500);
+            min = Math.min(min, delay);
+            max = Math.max(max, delay);
+        }
+        // 全てヒントどおりの時刻に再送するのではなく、散らばる
+        assertTrue("ジッターが掛かっていません: " + min + " - " + max, max - min >= 100);
+    }
+
+    @Test
+    public void delayWithoutHintIsDecorrelatedFromThePreviousDelay() {
+        AdaptiveRetryStrategy strategy = new AdaptiveRetryStrategy(4, Duration.ofMillis(100), Duration.ofSeconds(2),
+            new RetryBudget(10, Duration.ofMinutes(1)));
+
+        for (int i = 0; i < 100; i++) {
+            long first = strategy.nextDelay(null, Duration.ZERO).toMillis();
+            assertTrue(first >= 100 && first <= 300);
+
+            // 上限は前回の待ち時間の 3 倍
+            long afterLong = strategy.nextDelay(null, Duration.ofMillis(500)).toMillis();
+            assertTrue(afterLong >= 100 && afterLong <= 1500);
+
+            long capped = strategy.nextDelay(null, Duration.ofMillis(1900)).toMillis();
+            assertTrue(capped >= 100 && capped <= 2000);
+        }
+    }
+
+    @Test
+    public void concurrentThrottledRequestsRetryAtDifferentTimes() throws Exception {
+        int clients = 20;
+        Map<String, Long> throttledAt = new ConcurrentHashMap<>();
+        Map<String, Long> retriedAt = new ConcurrentHashMap<>();
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        ExecutorService handlers = Executors.newCachedThreadPool();
+        server.setExecutor(handlers);
+        server.createContext("/", exchange -> {
+            String client = exchange.getRequestHeaders().getFirst("x-test-client");
+            if (throttledAt.putIfAbsent(client, System.nanoTime()) == null) {
+                // 同じ時間窓で拒否された全てのリクエストに同じヒントを返す
+                exchange.getResponseHeaders().set("retry-after-ms", "200");
+                exchange.sendResponseHeaders(429, -1);
+            } else {
+                retriedAt.put(client, System.nanoTime());
+                exchange.sendResponseHeaders(200, -1);
+            }
+            exchange.close();
+        });
+        server.start();
+        ExecutorService callers = Executors.newFixedThreadPool(clients);
+        try {
+            AdaptiveRetryStrategy strategy = new AdaptiveRetryStrategy(2, Duration.ofMillis(1), Duration.ofMillis(10),
+                new RetryBudget(100, Duration.ofMinutes(1)));
+            HttpPipeline pipeline = new HttpPipelineBuilder()
+                .httpClient(HttpTransport.getDefault())
+                .policies(strategy.toRetryPolicy())
+                .build();
+            String url = "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/";
+
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int i = 0; i < clients; i++) {
+                String client = "client-" + i;
+                results.add(callers.submit(() -> {
+                    HttpRequest request = new HttpRequest(HttpMethod.GET, url)
+                        .setHeader(HttpHeaderName.fromString("x-test-client"), client);
+                    try (HttpResponse response = pipeline.sendSync(request, Context.NONE)) {
+                        return response.getStatusCode();
+                    }
+                }));
+            }
+            for (Future<Integer> result : results) {
+                assertEquals(Integer.valueOf(200), result.get(30, TimeUnit.SECONDS));
+            }
+
+            long minDelay = Long.MAX_VALUE;
+            long maxDelay = Long.MIN_VALUE;
+            for (Map.Entry<String, Long> retried : retriedAt.entrySet()) {
+                long delayMillis =
+                    TimeUnit.NANOSECONDS.toMillis(retried.getValue() - throttledAt.get(retried.getKey()));
+                assertTrue("Retry-After より早く再送しました: " + delayMillis + "ms", delayMillis >= 200);
+                minDelay = Math.min(minDelay, delayMillis);
+                maxDelay = Math.max(maxDelay, delayMillis);
+            }
+            assertEquals(clients, retriedAt.size());
+            // ヒント（200ms）に 0 〜 100ms のジッターを加えるため、再送の時刻が揃わない
+            assertTrue("再送の時刻が揃っています: " + minDelay + " - " + maxDelay + "ms", maxDelay - minDelay >= 30);
+        } finally {
+            callers.shutdownNow();
+            server.stop(0);
+            handlers.shutdownNow();
+        }
+    }
+
+    @Test
+    public void retryAfterHintFromResponseIsHonored() throws Exception {
+        AtomicInteger requests = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", exchange -> {
+            if (requests.incrementAndGet() == 1) {
+                exchange.getResponseHeaders().set("retry-after-ms", "300");
+                exchange.sendResponseHeaders(429, -1);
+            } else {
+                exchange.sendResponseHeaders(200, -1);
+            }
+            exchange.close();
+        });
+        server.start();
+        try {
+            // ヒントが無い場合の待ち時間（最大 10ms）より十分長いヒントを返す
+            AdaptiveRetryStrategy strategy = new AdaptiveRetryStrategy(2, Duration.ofMillis(1), Duration.ofMillis(10),
+                new RetryBudget(10, Duration.ofMinutes(1)));
+            HttpPipeline pipeline = new HttpPipelineBuilder()
+                .httpClient(HttpTransport.getDefault())
+                .policies(strategy.toRetryPolicy())
+                .build();
+            String url = "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/";
+
+            long start = System.nanoTime();
+            try (HttpResponse response = pipeline.sendSync(new HttpRequest(HttpMethod.GET, url), Context.NONE)) {
+                assertEquals(200, response.getStatusCode());
+            }
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+            assertEquals(2, requests.get());
+            assertTrue("Retry-After より早く再送しました: " + elapsedMillis + "ms", elapsedMillis >= 300);
+            assertEquals(9, strategy.remainingBudget());
+        } finally {
+            server.stop(0);
+        }
+    }
+}
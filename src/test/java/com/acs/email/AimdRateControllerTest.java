@@ -0,0 +1,103 @@
+package com.acs.email;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+/**
+ * AimdRateController のテスト（時刻は疑似クロックで進める）
+ */
+public class AimdRateControllerTest {
+
+    private static final double DELTA = 1e-9;
+
+    private final AtomicLong now = new AtomicLong(0);
+
+    private AimdRateController controller(double initialRate) {
+        return new AimdRateController(initialRate, 1.0, 0.5, 1.0, 1000.0, Duration.ofSeconds(10), now::get);
+    }
+
+    @Test
+    public void increasesByStepPerMinuteOfSuccesses() {
+        AimdRateController controller = controller(30);
+
+        // 30通/分 で1分ぶん成功 → 約 +1通/分
+        for (int i = 0; i < 30; i++) {
+            controller.onSuccess();
+        }
+        assertEquals(31.0, controller.getRatePerMinute(), 0.05);
+        assertEquals(Duration.ofNanos((long) (TimeUnit.MINUTES.toNanos(1) / controller.getRatePerMinute())),
+            controller.getInterval());
+    }
+
+    @Test
+    public void halvesOnThrottle() {
+        AimdRateController controller = controller(40);
+
+        assertTrue(controller.onThrottled());
+        assertEquals(20.0, controller.getRatePerMinute(), DELTA);
+        assertEquals(40.0, controller.getThrottledRate(), DELTA);
+    }
+
+    @Test
+    public void ignoresThrottlesWithinHoldTime() {
+        AimdRateController controller = controller(40);
+
+        assertTrue(controller.onThrottled());
+        now.addAndGet(TimeUnit.SECONDS.toNanos(5));
+        assertFalse(controller.onThrottled());
+        assertEquals(20.0, controller.getRatePerMinute(), DELTA);
+        assertEquals(2, controller.getThrottledCount());
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(5));
+        assertTrue(controller.onThrottled());
+        assertEquals(10.0, controller.getRatePerMinute(), DELTA);
+    }
+
+    @Test
+    public void learnedRateIsDerivedFromThrottledRates() {
+        AimdRateController controller = controller(40);
+        assertEquals(40.0, controller.getLearnedRate(), DELTA);
+
+        // 40 で 429 → 鋸歯状の平均は 40 × 0.75 = 30
+        controller.onThrottled();
+        assertEquals(30.0, controller.getLearnedRate(), DELTA);
+
+        // 終了直前に 429 で下げても、保存する値は下げた直後のレート（10）ではなく上限の移動平均から決まる
+        now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        controller.onThrottled();
+        assertEquals(10.0, controller.getRatePerMinute(), DELTA);
+        assertEquals((40.0 + 0.3 * (20.0 - 40.0)) * 0.75, controller.getLearnedRate(), DELTA);
+
+        // 429 の後に成功が続いても、上限の推定は変わらない
+        for (int i = 0; i < 100; i++) {
+            controller.onSuccess();
+        }
+        assertEquals((40.0 + 0.3 * (20.0 - 40.0)) * 0.75, controller.getLearnedRate(), DELTA);
+    }
+
+    @Test
+    public void staysWithinBounds() {
+        AimdRateController controller = controller(1.5);
+
+        controller.onThrottled();
+        assertEquals(1.0, controller.getRatePerMinute(), DELTA);
+
+        AimdRateController high = controller(5000);
+        assertEquals(1000.0, high.getRatePerMinute(), DELTA);
+        high.onSuccess();
+        assertEquals(1000.0, high.getRatePerMinute(), DELTA);
+    }
+
+    @Test
+    public void detectsThrottleInCauseChain() {
+        assertFalse(AimdRateController.isThrottled(new RuntimeException("boom")));
+        assertFalse(AimdRateController.isThrottled(new RuntimeException(new IllegalStateException())));
+    }
+}
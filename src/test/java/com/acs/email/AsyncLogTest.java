@@ -0,0 +1,92 @@
+package com.acs.email;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+/**
+ * AsyncLog のテスト（出力先をバイト列に差し替えて確認する）
+ */
+public class AsyncLogTest {
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+    private AsyncLog log(AsyncLog.Format format, int capacity) {
+        return new AsyncLog(format, new PrintStream(out, true, StandardCharsets.UTF_8),
+            new PrintStream(err, true, StandardCharsets.UTF_8), capacity);
+    }
+
+    private String out() {
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private String err() {
+        return new String(err.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void textFormatWritesTextAndRoutesErrorsToStderr() {
+        AsyncLog log = log(AsyncLog.Format.TEXT, 1024);
+        log.info("poll").field("pollCount", 1).text("[ポーリング #1]\n  処理中").emit();
+        log.error("send_error").field("line", 3).text("[3行目] 送信エラー: boom").emit();
+        log.info("progress").field("lines", 1000).emit();
+        log.close();
+
+        assertEquals("[ポーリング #1]\n  処理中\nprogress lines=1000\n", out());
+        assertEquals("[3行目] 送信エラー: boom\n", err());
+    }
+
+    @Test
+    public void jsonFormatWritesOneObjectPerLine() {
+        AsyncLog log = log(AsyncLog.Format.JSON, 1024);
+        log.error("send_failed").field("line", 7).field("ok", false).field("detail", "a \"quoted\"\nvalue")
+            .field("missing", null).text("ignored").emit();
+        log.close();
+
+        String line = out();
+        assertTrue(line, line.startsWith("{\"ts\":\""));
+        assertTrue(line, line.endsWith(",\"level\":\"ERROR\",\"event\":\"send_failed\",\"line\":7,\"ok\":false,"
+            + "\"detail\":\"a \\\"quoted\\\"\\nvalue\",\"missing\":null}\n"));
+        assertEquals("", err());
+    }
+
+    @Test
+    public void flushWaitsForEarlierEntries() {
+        AsyncLog log = log(AsyncLog.Format.TEXT, 1024);
+        for (int i = 0; i < 500; i++) {
+            log.info("line").field("n", i).emit();
+        }
+        log.flush();
+        assertTrue(out().endsWith("line n=499\n"));
+        log.close();
+    }
+
+    @Test
+    public void countsEntriesDroppedAfterClose() {
+        AsyncLog log = log(AsyncLog.Format.TEXT, 2);
+        log.close();
+        log.info("late").emit();
+
+        assertEquals(1, log.getDroppedCount());
+        assertEquals("", out());
+    }
+
+    @Test
+    public void warningsAndErrorsAreWrittenDirectlyInsteadOfDropped() {
+        AsyncLog log = log(AsyncLog.Format.TEXT, 2);
+        log.close();
+        log.info("late").emit();
+        log.warn("late_warning").text("[警告] 閉じた後").emit();
+        log.error("send_error").text("[9行目] 送信エラー: boom").emit();
+
+        assertEquals(1, log.getDroppedCount());
+        assertEquals("", out());
+        assertEquals("[警告] 閉じた後\n[9行目] 送信エラー: boom\n", err());
+    }
+}
@@ -0,0 +1,113 @@
+package com.acs.email;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Random;
+
+import com.azure.core.util.BinaryData;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * AttachmentCache のテスト
+ */
+public class AttachmentCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path write(String name, byte[] content) throws IOException {
+        Path path = temporaryFolder.getRoot().toPath().resolve(name);
+        Files.write(path, content);
+        return path;
+    }
+
+    private static byte[] bytes(int length, int seed) {
+        byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    @Test
+    public void sameFileIsReadOnceAndShared() throws IOException {
+        AttachmentCache cache = new AttachmentCache(1024 * 1024);
+        // CHUNK_SIZE (64KB) の倍数でない大きさで、分割して読んでも内容が変わらないことを確認する
+        byte[] content = bytes(200_001, 1);
+        Path path = write("invoice.pdf", content);
+
+        BinaryData first = cache.load(path);
+        for (int i = 0; i < 99; i++) {
+            assertSame(first, cache.load(path));
+        }
+        assertArrayEquals(content, first.toBytes());
+        assertEquals(1, cache.getReads());
+        assertEquals(99, cache.getHits());
+        assertEquals(content.length, cache.getTotalBytes());
+    }
+
+    @Test
+    public void identicalContentAtDifferentPathsIsStoredOnce() throws IOException {
+        AttachmentCache cache = new AttachmentCache(1024 * 1024);
+        byte[] content = bytes(1000, 2);
+
+        BinaryData first = cache.load(write("a.pdf", content));
+        BinaryData copy = cache.load(write("b.pdf", content));
+
+        assertSame(first, copy);
+        assertEquals(1, cache.size());
+        assertEquals(content.length, cache.getTotalBytes());
+    }
+
+    @Test
+    public void modifiedFileIsReadAgain() throws IOException {
+        AttachmentCache cache = new AttachmentCache(1024 * 1024);
+        Path path = write("a.pdf", bytes(1000, 3));
+        BinaryData before = cache.load(path);
+
+        byte[] updated = bytes(1000, 4);
+        Files.write(path, updated);
+        Files.setLastModifiedTime(path, FileTime.fromMillis(Files.getLastModifiedTime(path).toMillis() + 1000));
+        BinaryData after = cache.load(path);
+
+        assertNotSame(before, after);
+        assertArrayEquals(updated, after.toBytes());
+        assertEquals(2, cache.getReads());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedContentOverTheLimit() throws IOException {
+        AttachmentCache cache = new AttachmentCache(250);
+        Path a = write("a.pdf", bytes(100, 5));
+        Path b = write("b.pdf", bytes(100, 6));
+        Path c = write("c.pdf", bytes(100, 7));
+        Path large = write("large.pdf", bytes(300, 8));
+
+        cache.load(a);
+        cache.load(b);
+        cache.load(a);
+        cache.load(c);
+        assertEquals(2, cache.size());
+        assertEquals(200, cache.getTotalBytes());
+
+        // 上限より大きいファイルは返すがキャッシュしない
+        assertArrayEquals(Files.readAllBytes(large), cache.load(large).toBytes());
+        assertEquals(200, cache.getTotalBytes());
+
+        long reads = cache.getReads();
+        cache.load(a);
+        cache.load(c);
+        assertEquals(reads, cache.getReads());
+        cache.load(b);
+        assertEquals(reads + 1, cache.getReads());
+        assertEquals(2, cache.size());
+        assertEquals(200, cache.getTotalBytes());
+    }
+}
@@ -0,0 +1,72 @@
+package com.acs.email;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.PipedReader;
+import java.io.PipedWriter;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.azure.communication.email.EmailClientBuilder;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * BatchSender のテスト（MockAcsServer に実際に送信する）
+ */
+public class BatchSenderTest {
+
+    private MockAcsServer server;
+
+    @After
+    public void tearDown() {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    public void coalescedBatchIsSentAfterLingerWithoutFurtherInput() throws Exception {
+        server = new MockAcsServer(0, new MockAcsServer.Settings());
+        server.start();
+        BatchSender sender = coalescingSender("undisclosed@example.com");
+        PipedWriter writer = new PipedWriter();
+        BufferedReader reader = new BufferedReader(new PipedReader(writer));
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread runner = new Thread(() -> {
+            try {
+                sender.run(reader, "jobs.jsonl");
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        }, "batch-sender-test");
+        runner.start();
+
+        // 1行だけ書き、入力を閉じずに待つ（次の行が来なくても linger を過ぎれば送信される）
+        writer.write("{\"to\":\"user@example.com\",\"subject\":\"テスト\",\"plainText\":\"本文\"}\n");
+        writer.flush();
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (server.acceptedCount() < 1 && System.nanoTime() - deadline < 0) {
+            Thread.sleep(20);
+        }
+        assertEquals(1, server.acceptedCount());
+        assertTrue(runner.isAlive());
+
+        writer.close();
+        runner.join(Duration.ofSeconds(30).toMillis());
+        assertFalse(runner.isAlive());
+        assertNull(failure.get());
+        assertEquals(1, server.acceptedCount());
+    }
+
+    private BatchSender coalescingSender(String coalesceToAddress) {
+        EmailResource resource = new EmailResource("#1", new EmailClientBuilder()
+            .connectionString(server.connectionString())
+            .buildAsyncClient(), "sender@example.com", 30, new SendRateLimiter(100_000, 1_000_000));
+        return new BatchSender(EmailResourcePool.single(resource), 4, null, null, null, coalesceToAddress);
+    }
+}
@@ -0,0 +1,80 @@
+package com.acs.email;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+/**
+ * EmailClientRegistry の接続文字列の解析のテスト
+ */
+public class EmailClientRegistryTest {
+
+    private static final String ENDPOINT = "https://example.communication.azure.com/";
+    private static final String ACCESS_KEY = "dGVzdC1hY2Nlc3Mta2V5LTAxMjM0NTY3ODk=";
+
+    @Test
+    public void accessKeyConnectionStringIsSignedWithHmac() {
+        String connectionString = "endpoint=" + ENDPOINT + ";accesskey=" + ACCESS_KEY;
+
+        assertFalse(EmailClientRegistry.usesEntraId(connectionString));
+        assertEquals(ENDPOINT, EmailClientRegistry.endpointOf(connectionString));
+        // Base64 の末尾の '=' も値に含める
+        assertEquals(ACCESS_KEY, EmailClientRegistry.accessKeyOf(connectionString));
+    }
+
+    @Test
+    public void endpointOnlyConnectionStringUsesEntraId() {
+        assertTrue(EmailClientRegistry.usesEntraId("endpoint=" + ENDPOINT + ";"));
+        assertTrue(EmailClientRegistry.usesEntraId(" Endpoint = " + ENDPOINT));
+        assertEquals(ENDPOINT, EmailClientRegistry.endpointOf("ENDPOINT=" + ENDPOINT + ";;"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void segmentWithoutValueIsRejected() {
+        // accesskey の値が欠けた接続文字列を Entra ID として扱わない
+        EmailClientRegistry.usesEntraId("endpoint=" + ENDPOINT + ";accesskey=");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void segmentWithoutSeparatorIsRejected() {
+        EmailClientRegistry.usesEntraId("endpoint=" + ENDPOINT + ";" + ACCESS_KEY);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void misspelledNameIsRejected() {
+        EmailClientRegistry.usesEntraId("endpoint=" + ENDPOINT + ";access_key=" + ACCESS_KEY);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void duplicateNameIsRejected() {
+        EmailClientRegistry.endpointOf("endpoint=" + ENDPOINT + ";endpoint=https://other.example.com/");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void missingEndpointIsRejected() {
+        EmailClientRegistry.usesEntraId("accesskey=" + ACCESS_KEY);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void accessKeyIsRequiredForHmac() {
+        EmailClientRegistry.accessKeyOf("endpoint=" + ENDPOINT);
+    }
+
+    @Test
+    public void shutdownStopsNewLookups() {
+        EmailClientRegistry registry = new EmailClientRegistry();
+        assertFalse(registry.isShutdown());
+
+        registry.shutdown();
+        assertTrue(registry.isShutdown());
+        try {
+            registry.getAsyncClient("endpoint=" + ENDPOINT + ";accesskey=" + ACCESS_KEY, "sender@example.com");
+            fail("シャットダウン後の取得は IllegalStateException になるはず");
+        } catch (IllegalStateException expected) {
+            assertTrue(expected.getMessage().contains("シャットダウン済み"));
+        }
+    }
+}
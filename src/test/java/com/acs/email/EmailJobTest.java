@@ -0,0 +1,119 @@
+package com.acs.email;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+
+import com.azure.communication.email.models.EmailMessage;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * EmailJob の JSONL 解析のテスト
+ */
+public class EmailJobTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void parsesAllFields() throws IOException {
+        EmailJob job = EmailJob.fromJson("{\"to\":[\"a@example.com\",\"b@example.com\"],\"cc\":\"c@example.com\","
+            + "\"subject\":\"件名\",\"plainText\":\"本文\",\"html\":\"<p>本文</p>\"}");
+
+        assertEquals(Arrays.asList("a@example.com", "b@example.com"), job.getTo());
+        assertEquals(Collections.singletonList("c@example.com"), job.getCc());
+        assertTrue(job.getBcc().isEmpty());
+        assertEquals("件名", job.getSubject());
+        assertEquals("本文", job.getPlainText());
+        assertEquals("<p>本文</p>", job.getHtml());
+    }
+
+    @Test
+    public void ignoresUnknownFields() throws IOException {
+        EmailJob job = EmailJob.fromJson("{\"to\":\"a@example.com\",\"extra\":{\"nested\":[1,2]},\"subject\":\"s\"}");
+
+        assertEquals(Collections.singletonList("a@example.com"), job.getTo());
+        assertEquals("s", job.getSubject());
+        assertNull(job.getHtml());
+    }
+
+    @Test
+    public void toJsonRoundTrips() throws IOException {
+        EmailJob job = new EmailJob(Arrays.asList("a@example.com", "b@example.com"), null,
+            Collections.singletonList("c@example.com"), "件名 \"引用\"", "本文\n2行目", null);
+
+        EmailJob parsed = EmailJob.fromJson(job.toJson());
+
+        assertEquals(job.getTo(), parsed.getTo());
+        assertTrue(parsed.getCc().isEmpty());
+        assertEquals(job.getBcc(), parsed.getBcc());
+        assertEquals(job.getSubject(), parsed.getSubject());
+        assertEquals(job.getPlainText(), parsed.getPlainText());
+        assertNull(parsed.getHtml());
+    }
+
+    @Test
+    public void parsesTemplateVariables() throws IOException {
+        EmailJob job = EmailJob.fromJson("{\"to\":\"a@example.com\",\"subject\":\"{{name}} 様\","
+            + "\"variables\":{\"name\":\"山田\",\"order\":\"A-1\"}}");
+
+        assertEquals("{{name}} 様", job.getSubject());
+        assertEquals("山田", job.getVariables().get("name"));
+        assertEquals("A-1", job.getVariables().get("order"));
+        assertTrue(EmailJob.fromJson("{\"to\":\"a@example.com\"}").getVariables().isEmpty());
+    }
+
+    @Test
+    public void parsesAttachmentsWithDefaults() throws IOException {
+        EmailJob job = EmailJob.fromJson("{\"to\":\"a@example.com\",\"attachments\":["
+            + "{\"path\":\"invoices/2026-10.pdf\"},"
+            + "{\"path\":\"data.bin\",\"name\":\"明細.csv\",\"contentType\":\"text/csv\"}]}");
+
+        EmailJob.Attachment invoice = job.getAttachments().get(0);
+        assertEquals(Paths.get("invoices/2026-10.pdf"), invoice.getPath());
+        assertEquals("2026-10.pdf", invoice.getName());
+        assertEquals("application/pdf", invoice.getContentType());
+        assertEquals(new EmailJob.Attachment(Paths.get("data.bin"), "明細.csv", "text/csv"),
+            job.getAttachments().get(1));
+
+        assertEquals(job.getAttachments(), EmailJob.fromJson(job.toJson()).getAttachments());
+        assertTrue(EmailJob.fromJson("{\"to\":\"a@example.com\"}").getAttachments().isEmpty());
+    }
+
+    @Test
+    public void resolvedAttachmentsAreNotReadAgainWhenSending() throws IOException {
+        Path path = temporaryFolder.getRoot().toPath().resolve("invoice.pdf");
+        Files.write(path, new byte[] {1, 2, 3});
+        AttachmentCache cache = new AttachmentCache(1024);
+        EmailJob job = new EmailJob(Collections.singletonList("a@example.com"), null, null, "s", "本文", null, null,
+            Collections.singletonList(new EmailJob.Attachment(path, null, null)));
+
+        EmailJob resolved = job.resolveAttachments(cache);
+        assertNull(job.getAttachments().get(0).getContent());
+        assertEquals(job.getAttachments(), resolved.getAttachments());
+        assertSame(resolved, resolved.resolveAttachments(cache));
+
+        // 送信の経路ではファイルもキャッシュも参照しない（消えたファイルでも取得済みの内容で送る）
+        Files.delete(path);
+        EmailMessage message = resolved.toEmailMessage("sender@example.com", cache);
+        assertArrayEquals(new byte[] {1, 2, 3}, message.getAttachments().get(0).getContent().toBytes());
+        assertEquals(1, cache.getReads());
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsJobWithoutRecipients() throws IOException {
+        EmailJob.fromJson("{\"subject\":\"s\"}");
+    }
+}
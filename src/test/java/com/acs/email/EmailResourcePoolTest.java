@@ -0,0 +1,128 @@
+package com.acs.email;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+/**
+ * EmailResourcePool / EmailResource のテスト（時刻は疑似クロックで進める）
+ */
+public class EmailResourcePoolTest {
+
+    private final AtomicLong now = new AtomicLong(0);
+
+    private EmailResource resource(String name, int weight) {
+        return new EmailResource(name, null, name + "@example.com", weight, new SendRateLimiter(1000, 100_000),
+            now::get);
+    }
+
+    @Test
+    public void distributesByWeight() {
+        EmailResource a = resource("a", 3);
+        EmailResource b = resource("b", 1);
+        EmailResourcePool pool = new EmailResourcePool(Arrays.asList(a, b));
+
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < 400; i++) {
+            counts.merge(pool.select().getName(), 1, Integer::sum);
+        }
+        assertEquals(300, (int) counts.get("a"));
+        assertEquals(100, (int) counts.get("b"));
+    }
+
+    @Test
+    public void interleavesRatherThanBursting() {
+        EmailResource a = resource("a", 2);
+        EmailResource b = resource("b", 1);
+        EmailResourcePool pool = new EmailResourcePool(Arrays.asList(a, b));
+
+        // smooth weighted round-robin: a, b, a の順
+        assertSame(a, pool.select());
+        assertSame(b, pool.select());
+        assertSame(a, pool.select());
+    }
+
+    @Test
+    public void skipsUnavailableResourceUntilCooldownEnds() {
+        EmailResource a = resource("a", 1);
+        EmailResource b = resource("b", 1);
+        EmailResourcePool pool = new EmailResourcePool(Arrays.asList(a, b));
+
+        for (int i = 1; i < EmailResource.FAILURE_THRESHOLD; i++) {
+            assertFalse(a.recordFailure());
+        }
+        assertTrue(a.recordFailure());
+        assertFalse(a.isAvailable());
+        for (int i = 0; i < 10; i++) {
+            assertSame(b, pool.select());
+        }
+        assertNull(pool.alternativeTo(b));
+
+        now.addAndGet(EmailResource.BASE_COOLDOWN.toNanos());
+        assertTrue(a.isAvailable());
+        assertSame(b, pool.alternativeTo(a));
+    }
+
+    @Test
+    public void cooldownGrowsWhileFailuresContinue() {
+        EmailResource a = resource("a", 1);
+        for (int i = 0; i < EmailResource.FAILURE_THRESHOLD; i++) {
+            a.recordFailure();
+        }
+        now.addAndGet(EmailResource.BASE_COOLDOWN.toNanos());
+        assertTrue(a.isAvailable());
+
+        for (int i = 0; i < EmailResource.FAILURE_THRESHOLD; i++) {
+            a.recordFailure();
+        }
+        now.addAndGet(EmailResource.BASE_COOLDOWN.toNanos());
+        assertFalse(a.isAvailable());
+        now.addAndGet(EmailResource.BASE_COOLDOWN.toNanos());
+        assertTrue(a.isAvailable());
+
+        // 成功で元に戻る
+        a.recordSuccess();
+        for (int i = 1; i < EmailResource.FAILURE_THRESHOLD; i++) {
+            a.recordFailure();
+        }
+        assertTrue(a.isAvailable());
+    }
+
+    @Test
+    public void fallsBackToEarliestRecoveringResourceWhenAllUnavailable() {
+        EmailResource a = resource("a", 1);
+        EmailResource b = resource("b", 1);
+        EmailResourcePool pool = new EmailResourcePool(Arrays.asList(a, b));
+
+        for (int i = 0; i < EmailResource.FAILURE_THRESHOLD; i++) {
+            a.recordFailure();
+        }
+        now.addAndGet(1_000_000L);
+        for (int i = 0; i < EmailResource.FAILURE_THRESHOLD; i++) {
+            b.recordFailure();
+        }
+        assertSame(a, pool.select());
+    }
+
+    @Test
+    public void acquirePrefersResourceWithFreeQuota() throws InterruptedException {
+        EmailResource a = new EmailResource("a", null, "a@example.com", 1, new SendRateLimiter(1, 1), now::get);
+        EmailResource b = resource("b", 1);
+        EmailResourcePool pool = new EmailResourcePool(Arrays.asList(a, b));
+
+        assertSame(a, pool.acquire());
+        // a の枠は使い切ったので、a の番でも b に送る
+        for (int i = 0; i < 5; i++) {
+            assertSame(b, pool.acquire());
+        }
+    }
+}
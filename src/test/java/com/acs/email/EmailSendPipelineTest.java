@@ -0,0 +1,148 @@
+package com.acs.email;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.azure.communication.email.EmailAsyncClient;
+import com.azure.communication.email.EmailClientBuilder;
+import com.azure.communication.email.models.EmailMessage;
+import com.azure.communication.email.models.EmailSendStatus;
+import org.junit.After;
+import org.junit.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+/**
+ * EmailSendPipeline のテスト（MockAcsServer に実際に送信する）
+ */
+public class EmailSendPipelineTest {
+
+    private static final Duration BLOCK_TIMEOUT = Duration.ofSeconds(30);
+
+    private final SenderMetrics metrics = new SenderMetrics();
+    private MockAcsServer server;
+
+    @After
+    public void tearDown() {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    public void concurrencyIsBoundedByMaxConcurrency() throws Exception {
+        server = start(new MockAcsServer.Settings().completionDelay(Duration.ofMillis(300)));
+        EmailSendPipeline pipeline = pipeline(unlimited(), 3, Duration.ofSeconds(20));
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+
+        List<EmailSendOutcome> outcomes = pipeline.send(Flux.fromIterable(messages(12))
+                .doOnNext(message -> maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max)))
+            .doOnNext(outcome -> inFlight.decrementAndGet())
+            .collectList()
+            .block(BLOCK_TIMEOUT);
+
+        assertEquals(12, outcomes.size());
+        for (EmailSendOutcome outcome : outcomes) {
+            assertTrue(String.valueOf(outcome.getError()), outcome.isSucceeded());
+        }
+        // 上流からは同時実行数分しか読み出さない
+        assertTrue("最大の未完了数: " + maxInFlight.get(), maxInFlight.get() <= 3);
+        assertEquals(12, server.acceptedCount());
+        assertEquals(12, metrics.getSends(EmailSendStatus.SUCCEEDED));
+        assertEquals(0, metrics.getInFlight());
+    }
+
+    @Test
+    public void sendExceedingTimeoutIsReportedAsFailure() throws Exception {
+        server = start(new MockAcsServer.Settings().completionDelay(Duration.ofSeconds(10)));
+        EmailSendPipeline pipeline = pipeline(unlimited(), 2, Duration.ofMillis(500));
+
+        List<EmailSendOutcome> outcomes = pipeline.send(Flux.fromIterable(messages(2)))
+            .collectList()
+            .block(BLOCK_TIMEOUT);
+
+        assertEquals(2, outcomes.size());
+        for (EmailSendOutcome outcome : outcomes) {
+            assertFalse(outcome.isSucceeded());
+            assertTrue(String.valueOf(outcome.getError()), outcome.getError() instanceof TimeoutException);
+        }
+        assertEquals(0, metrics.getInFlight());
+    }
+
+    @Test
+    public void rateLimiterDelaysSendsBeyondTheBurst() throws Exception {
+        server = start(new MockAcsServer.Settings());
+        // 2通まで即時、以降は 500ms ごとに1通
+        SendRateLimiter limiter = new SendRateLimiter(new TokenBucket(2, Duration.ofSeconds(1)),
+            new TokenBucket(1000, Duration.ofHours(1)));
+        EmailSendPipeline pipeline = pipeline(limiter, 4, Duration.ofSeconds(20));
+        List<Long> completedAt = new ArrayList<>();
+        long start = System.nanoTime();
+
+        List<EmailSendOutcome> outcomes = pipeline.send(Flux.fromIterable(messages(4)))
+            .doOnNext(outcome -> completedAt.add(System.nanoTime() - start))
+            .collectList()
+            .block(BLOCK_TIMEOUT);
+
+        assertEquals(4, outcomes.size());
+        for (EmailSendOutcome outcome : outcomes) {
+            assertTrue(String.valueOf(outcome.getError()), outcome.isSucceeded());
+        }
+        // 4通目は送信枠を 1 秒待つ（ポーリングの所要時間はどの送信も同じなので差で比べる）
+        long spreadMillis = Duration.ofNanos(completedAt.get(3) - completedAt.get(0)).toMillis();
+        assertTrue("最初と最後の完了の差: " + spreadMillis + "ms", spreadMillis >= 800);
+    }
+
+    @Test
+    public void cancelledSendsAreNotLeftInFlight() throws Exception {
+        server = start(new MockAcsServer.Settings().completionDelay(Duration.ofSeconds(10)));
+        EmailSendPipeline pipeline = pipeline(unlimited(), 3, Duration.ofSeconds(20));
+
+        Disposable subscription = pipeline.send(Flux.fromIterable(messages(3))).subscribe();
+        long deadline = System.nanoTime() + BLOCK_TIMEOUT.toNanos();
+        while (server.acceptedCount() < 3 && System.nanoTime() - deadline < 0) {
+            Thread.sleep(20);
+        }
+        assertEquals(3, metrics.getInFlight());
+
+        subscription.dispose();
+        assertEquals(0, metrics.getInFlight());
+    }
+
+    private EmailSendPipeline pipeline(SendRateLimiter limiter, int maxConcurrency, Duration perItemTimeout) {
+        EmailAsyncClient client = new EmailClientBuilder()
+            .connectionString(server.connectionString())
+            .buildAsyncClient();
+        return new EmailSendPipeline(client, limiter, maxConcurrency, perItemTimeout, null, metrics);
+    }
+
+    private static SendRateLimiter unlimited() {
+        return new SendRateLimiter(100_000, 1_000_000);
+    }
+
+    private static List<EmailMessage> messages(int count) {
+        List<EmailMessage> messages = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            messages.add(new EmailMessage()
+                .setSenderAddress("sender@example.com")
+                .setToRecipients("user" + i + "@example.com")
+                .setSubject("テスト #" + i)
+                .setBodyPlainText("パイプラインのテスト #" + i));
+        }
+        return messages;
+    }
+
+    private static MockAcsServer start(MockAcsServer.Settings settings) throws Exception {
+        MockAcsServer server = new MockAcsServer(0, settings);
+        server.start();
+        return server;
+    }
+}
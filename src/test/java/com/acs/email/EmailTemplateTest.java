@@ -0,0 +1,90 @@
+package com.acs.email;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * EmailTemplate のテスト
+ */
+public class EmailTemplateTest {
+
+    private static Map<String, String> variables(String... keyValues) {
+        Map<String, String> variables = new HashMap<>();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            variables.put(keyValues[i], keyValues[i + 1]);
+        }
+        return variables;
+    }
+
+    @Test
+    public void rendersVariables() {
+        EmailTemplate template = EmailTemplate.text("{{ name }} 様、ご注文 {{order}} を承りました。{{name}} 様");
+
+        assertEquals(Arrays.asList("name", "order", "name"), template.getVariableNames());
+        assertEquals("山田 様、ご注文 A-1 を承りました。山田 様",
+            template.render(variables("name", "山田", "order", "A-1")));
+    }
+
+    @Test
+    public void escapesHtmlOnlyInHtmlTemplates() {
+        Map<String, String> values = variables("v", "<b>\"Tom\" & 'Jerry'</b>");
+
+        assertEquals("<p>&lt;b&gt;&quot;Tom&quot; &amp; &#39;Jerry&#39;&lt;/b&gt;</p>",
+            EmailTemplate.html("<p>{{v}}</p>").render(values));
+        assertEquals("<b>\"Tom\" & 'Jerry'</b>", EmailTemplate.text("{{v}}").render(values));
+    }
+
+    @Test
+    public void templateWithoutVariablesRendersAsIs() {
+        assertEquals("固定の本文", EmailTemplate.text("固定の本文").render(variables()));
+        assertEquals("", EmailTemplate.text("").render(variables()));
+    }
+
+    @Test
+    public void cachesCompiledTemplates() {
+        String source = "<h1>{{subject}}</h1>";
+        assertSame(EmailTemplate.html(source), EmailTemplate.html(source));
+        assertEquals(EmailTemplate.Escaping.NONE, EmailTemplate.text(source).getEscaping());
+    }
+
+    @Test
+    public void renderToAppendsToBuffer() {
+        StringBuilder buffer = new StringBuilder("前置き:");
+        EmailTemplate.html("{{a}}-{{b}}").renderTo(variables("a", "1", "b", "<2>"), buffer);
+        assertEquals("前置き:1-&lt;2&gt;", buffer.toString());
+    }
+
+    @Test
+    public void pooledBufferDoesNotLeakBetweenRenders() {
+        EmailTemplate template = EmailTemplate.text("[{{v}}]");
+        assertEquals("[長い値の長い値の長い値]", template.render(variables("v", "長い値の長い値の長い値")));
+        assertEquals("[x]", template.render(variables("v", "x")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMissingVariable() {
+        EmailTemplate.text("{{name}}").render(variables());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnclosedPlaceholder() {
+        EmailTemplate.text("こんにちは {{name");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidVariableName() {
+        EmailTemplate.text("{{a b}}");
+    }
+
+    @Test
+    public void appHtmlBodyEscapesUserInput() {
+        assertEquals("<html><body><h1>A &amp; B</h1><p>&lt;script&gt;</p></body></html>",
+            App.toHtmlBody("A & B", "<script>"));
+    }
+}
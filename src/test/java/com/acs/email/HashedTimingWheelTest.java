@@ -0,0 +1,53 @@
+package com.acs.email;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * HashedTimingWheel / EmailPollScheduler のバックオフ計算のテスト
+ */
+public class HashedTimingWheelTest {
+
+    @Test
+    public void firesEveryTimerNoEarlierThanItsDelay() throws InterruptedException {
+        HashedTimingWheel wheel = new HashedTimingWheel("test-wheel", Duration.ofMillis(5), 8);
+        int count = 500;
+        CountDownLatch latch = new CountDownLatch(count);
+        AtomicInteger early = new AtomicInteger();
+
+        try {
+            for (int i = 0; i < count; i++) {
+                // ホイール1周 (40ms) を超える遅延も含める
+                long delayMillis = i % 120;
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+                wheel.schedule(() -> {
+                    if (System.nanoTime() < deadline) {
+                        early.incrementAndGet();
+                    }
+                    latch.countDown();
+                }, Duration.ofMillis(delayMillis));
+            }
+
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+            assertEquals(0, early.get());
+            assertEquals(0, wheel.size());
+        } finally {
+            wheel.stop();
+        }
+    }
+
+    @Test
+    public void pollBackoffDoublesUpToTheCap() {
+        assertEquals(Duration.ofMillis(500), EmailPollScheduler.backoff(1));
+        assertEquals(Duration.ofSeconds(1), EmailPollScheduler.backoff(2));
+        assertEquals(Duration.ofSeconds(2), EmailPollScheduler.backoff(3));
+        assertEquals(Duration.ofSeconds(8), EmailPollScheduler.backoff(20));
+    }
+}
@@ -0,0 +1,120 @@
+package com.acs.email;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.Test;
+
+/**
+ * HmacSigningPolicy のテスト
+ */
+public class HmacSigningPolicyTest {
+
+    private static final String ACCESS_KEY = Base64.getEncoder()
+        .encodeToString("test-access-key-0123456789".getBytes(StandardCharsets.UTF_8));
+
+    private final HmacSigningPolicy policy = new HmacSigningPolicy(ACCESS_KEY, new SenderMetrics(),
+        Clock.fixed(Instant.parse("2026-10-16T01:02:03.456Z"), ZoneOffset.UTC));
+
+    /**
+     * SDK の HmacAuthenticationPolicy と同じ手順（リクエストごとに Mac を生成）で計算した署名
+     */
+    private static String referenceSignature(String stringToSign) throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(Base64.getDecoder().decode(ACCESS_KEY), "HmacSHA256"));
+        return Base64.getEncoder().encodeToString(mac.doFinal(stringToSign.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static String referenceHash(byte[] body) throws Exception {
+        return Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(body));
+    }
+
+    @Test
+    public void emptyBodyHashesToSha256OfNothing() {
+        assertEquals("47DEQpj8HBSa+/TImW+5JCeuQeRkm5NMpJWZG3hSuFU=", policy.contentHash(null));
+        assertEquals("47DEQpj8HBSa+/TImW+5JCeuQeRkm5NMpJWZG3hSuFU=", policy.contentHash(ByteBuffer.allocate(0)));
+    }
+
+    @Test
+    public void signatureMatchesPerRequestMac() throws Exception {
+        URL url = new URL("https://example.communication.azure.com/emails:send?api-version=2023-03-31");
+        byte[] body = "{\"senderAddress\":\"DoNotReply@example.com\",\"content\":{\"subject\":\"件名\"}}"
+            .getBytes(StandardCharsets.UTF_8);
+
+        String contentHash = policy.contentHash(ByteBuffer.wrap(body).asReadOnlyBuffer());
+        assertEquals(referenceHash(body), contentHash);
+
+        String date = policy.date();
+        String host = HmacSigningPolicy.host(url);
+        assertEquals("example.communication.azure.com", host);
+        assertEquals(referenceSignature("POST\n/emails:send?api-version=2023-03-31\n" + date + ";" + host + ";"
+            + contentHash), policy.signature("POST", url, date, host, contentHash));
+    }
+
+    @Test
+    public void reusedSignerDoesNotCarryStateBetweenRequests() throws Exception {
+        URL url = new URL("http://127.0.0.1:8089/emails/operations/op-1?api-version=2023-03-31");
+        String host = HmacSigningPolicy.host(url);
+        assertEquals("127.0.0.1:8089", host);
+
+        for (int i = 0; i < 3; i++) {
+            byte[] body = ("body-" + i).getBytes(StandardCharsets.UTF_8);
+            String contentHash = policy.contentHash(ByteBuffer.wrap(body));
+            assertEquals(referenceHash(body), contentHash);
+            assertEquals(referenceSignature("GET\n/emails/operations/op-1?api-version=2023-03-31\n"
+                    + policy.date() + ";" + host + ";" + contentHash),
+                policy.signature("get", url, policy.date(), host, contentHash));
+        }
+    }
+
+    @Test
+    public void signersAreSharedAcrossThreads() throws Exception {
+        URL url = new URL("https://example.communication.azure.com/emails:send?api-version=2023-03-31");
+        String host = HmacSigningPolicy.host(url);
+        String date = policy.date();
+        String contentHash = policy.contentHash(null);
+        String expected = referenceSignature("POST\n/emails:send?api-version=2023-03-31\n" + date + ";" + host + ";"
+            + contentHash);
+
+        // 署名したスレッドが終わっても Signer はプールに残り、次のスレッドで使い回される
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> signatures = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                signatures.add(executor.submit(() -> policy.signature("POST", url, date, host, contentHash)));
+            }
+            for (Future<String> signature : signatures) {
+                assertEquals(expected, signature.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        int idle = policy.idleSigners();
+        assertTrue(idle >= 1 && idle <= Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    @Test
+    public void dateIsFormattedOncePerSecond() {
+        String first = policy.date();
+        assertEquals("Fri, 16 Oct 2026 01:02:03 GMT", first);
+        assertSame(first, policy.date());
+    }
+}
@@ -0,0 +1,60 @@
+package com.acs.email;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * HttpTransport のテスト
+ */
+public class HttpTransportTest {
+
+    @After
+    public void tearDown() {
+        System.clearProperty("jdk.httpclient.connectionPoolSize");
+        System.clearProperty("jdk.httpclient.keepalive.timeout");
+        System.clearProperty("jdk.httpclient.keepalive.timeout.h2");
+    }
+
+    @Test
+    public void defaultsToNettyWithHttp2() {
+        HttpTransport.Settings settings = new HttpTransport.Settings();
+        assertEquals(HttpTransport.Implementation.NETTY, settings.getImplementation());
+        assertEquals(64, settings.getMaxConnections());
+        assertTrue(settings.isHttp2());
+    }
+
+    @Test
+    public void settingsAreFluent() {
+        HttpTransport.Settings settings = new HttpTransport.Settings()
+            .implementation(HttpTransport.Implementation.JDK)
+            .maxConnections(8)
+            .http2(false)
+            .idleTimeout(Duration.ofSeconds(30))
+            .responseTimeout(Duration.ofSeconds(5));
+        assertEquals("jdk / HTTP/1.1 / 最大接続数 8 / アイドル 30000ms / 接続 10000ms / 応答 5000ms / 読み込み 60000ms",
+            settings.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPositiveMaxConnections() {
+        new HttpTransport.Settings().maxConnections(0);
+    }
+
+    @Test
+    public void jdkTransportSetsPoolPropertiesWithoutOverridingExplicitValues() {
+        System.setProperty("jdk.httpclient.connectionPoolSize", "3");
+        HttpTransport.create(new HttpTransport.Settings()
+            .implementation(HttpTransport.Implementation.JDK)
+            .maxConnections(16)
+            .idleTimeout(Duration.ofSeconds(45)));
+
+        assertEquals("3", System.getProperty("jdk.httpclient.connectionPoolSize"));
+        assertEquals("45", System.getProperty("jdk.httpclient.keepalive.timeout"));
+        assertEquals("45", System.getProperty("jdk.httpclient.keepalive.timeout.h2"));
+    }
+}
@@ -0,0 +1,442 @@
+package com.acs.email;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * ACS Email REST API のローカル代替サーバー（負荷試験用）
+ *
+ * 実際の ACS リソースやクォータ（30通/分）なしでクライアント側のスループットを測るためのモック。
+ * EmailClientBuilder には connectionString() の接続文字列を渡せばよい（署名は検証しない）。
+ *
+ * - POST /emails:send: 202 + Operation-Location を返す。Operation-Id ヘッダーが同じリクエストは同じ操作として扱う
+ * - GET /emails/operations/{id}: 受付から completionDelay が経つまでは Running、以降は Succeeded / Failed
+ * - レート制限: 分・時間のトークンバケットを超えた送信には 429 + Retry-After を返す
+ * - 障害注入: 一定の割合で送信に 500 を返す、または操作を Failed で終わらせる
+ * - 応答の遅延: MockLatency の分布に従う
+ *
+ * リクエストは仮想スレッドで1件ずつ処理するため、遅延を入れても同時接続数の上限にはならない。
+ * 操作の状態は受付時刻と最終ステータスだけを保持し、ステータスは問い合わせ時に計算する（タイマーを使わない）。
+ * 終端状態になってから operationRetention が過ぎた操作は、次のリクエストの処理時に捨てる（以降のステータス取得は 404）。
+ * 完了までの時間は全ての操作で同じなので、受付順のキューの先頭から期限切れを取り除くだけで済む。
+ * 長時間の負荷試験でも、保持する操作の数は「受付レート × (completionDelay + operationRetention)」で頭打ちになる。
+ *
+ * テスト用のクラスのため、本体の jar には含めない（テストと benchmarks モジュールからは test-jar で参照する）。
+ *
+ * 使用法: mvn exec:java -Dexec.mainClass="com.acs.email.MockAcsServer" -Dexec.classpathScope=test [-Dexec.args="ポート"]
+ * 設定（環境変数）:
+ * - MOCK_ACS_SEND_LATENCY / MOCK_ACS_STATUS_LATENCY: 遅延（MockLatency の表記、例: lognormal:50,400）
+ * - MOCK_ACS_COMPLETION_MS: 受付から完了までの時間
+ * - MOCK_ACS_SEND_FAILURE_RATE: 送信に 500 を返す割合（0.0〜1.0）
+ * - MOCK_ACS_OPERATION_FAILURE_RATE: 操作を Failed で終わらせる割合（0.0〜1.0）
+ * - MOCK_ACS_RATE_LIMIT_PER_MINUTE / MOCK_ACS_RATE_LIMIT_PER_HOUR: レート制限（0 で無制限）
+ * - MOCK_ACS_OPERATION_RETENTION_MS: 終端状態になった操作を保持する時間
+ */
+public final class MockAcsServer implements Closeable {
+
+    private static final int DEFAULT_PORT = 8089;
+    private static final Duration DEFAULT_OPERATION_RETENTION = Duration.ofMinutes(10);
+    private static final String API_VERSION = "2023-03-31";
+    private static final String SEND_PATH = "/emails:send";
+    private static final String OPERATIONS_PATH = "/emails/operations/";
+    private static final String ACCESS_KEY = Base64.getEncoder()
+        .encodeToString("mock-acs-access-key".getBytes(StandardCharsets.UTF_8));
+
+    static {
+        // 小さな応答が Nagle アルゴリズムで遅延しないようにする（HttpServer の設定は最初の生成時に読まれる）
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final Settings settings;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final TokenBucket perMinute;
+    private final TokenBucket perHour;
+    private final ConcurrentMap<String, Operation> operations = new ConcurrentHashMap<>();
+    // 受付順（= 完了順）の操作。先頭から期限切れを取り除く
+    private final Queue<Operation> expiryQueue = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock expiryLock = new ReentrantLock();
+
+    private final LongAdder acceptedCount = new LongAdder();
+    private final LongAdder throttledCount = new LongAdder();
+    private final LongAdder injectedFailureCount = new LongAdder();
+    private final LongAdder statusRequestCount = new LongAdder();
+
+    /**
+     * @param port 0 を指定すると空いているポートを使う
+     */
+    public MockAcsServer(int port, Settings settings) throws IOException {
+        this.settings = settings;
+        this.perMinute = settings.perMinute > 0 ? new TokenBucket(settings.perMinute, Duration.ofMinutes(1)) : null;
+        this.perHour = settings.perHour > 0 ? new TokenBucket(settings.perHour, Duration.ofHours(1)) : null;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 4096);
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        this.server.setExecutor(executor);
+        this.server.createContext("/", this::handle);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        Settings settings = Settings.fromEnvironment();
+
+        MockAcsServer server = new MockAcsServer(port, settings);
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            server.printSummary();
+        }, "mock-acs-server-shutdown"));
+
+        System.out.println("=================================================");
+        System.out.println("ACS メール送信 モックサーバー");
+        System.out.println("=================================================");
+        System.out.println("設定: " + settings);
+        System.out.println("接続文字列（ACS_CONNECTION_STRING に設定）:");
+        System.out.println("  " + server.connectionString());
+        System.out.println("Ctrl+C で終了します。");
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public String endpoint() {
+        return "http://" + server.getAddress().getHostString() + ":" + getPort() + "/";
+    }
+
+    /**
+     * EmailClientBuilder.connectionString に渡す接続文字列
+     */
+    public String connectionString() {
+        return "endpoint=" + endpoint() + ";accesskey=" + ACCESS_KEY;
+    }
+
+    public long acceptedCount() {
+        return acceptedCount.sum();
+    }
+
+    public long throttledCount() {
+        return throttledCount.sum();
+    }
+
+    public long injectedFailureCount() {
+        return injectedFailureCount.sum();
+    }
+
+    public long statusRequestCount() {
+        return statusRequestCount.sum();
+    }
+
+    /**
+     * 保持している操作の数（期限切れで捨てた操作を含まない）
+     */
+    public int operationCount() {
+        return operations.size();
+    }
+
+    public void printSummary() {
+        System.out.println("\n=================================================");
+        System.out.println("モックサーバー サマリー");
+        System.out.println("=================================================");
+        System.out.println("受付: " + acceptedCount() + " 件");
+        System.out.println("429（レート制限）: " + throttledCount() + " 件");
+        System.out.println("500（障害注入）: " + injectedFailureCount() + " 件");
+        System.out.println("ステータス取得: " + statusRequestCount() + " 件");
+        System.out.println("=================================================");
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            exchange.getRequestBody().transferTo(OutputStream.nullOutputStream());
+            String method = exchange.getRequestMethod();
+            String path = exchange.getRequestURI().getPath();
+            expireOperations(System.nanoTime());
+
+            if ("POST".equals(method) && SEND_PATH.equals(path)) {
+                handleSend(exchange);
+            } else if ("GET".equals(method) && path.startsWith(OPERATIONS_PATH)) {
+                handleStatus(exchange, path.substring(OPERATIONS_PATH.length()));
+            } else {
+                sendError(exchange, 404, "NotFound", "Unknown path: " + method + " " + path);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleSend(HttpExchange exchange) throws IOException, InterruptedException {
+        sleep(settings.sendLatency);
+
+        long retryAfterNanos = throttle();
+        if (retryAfterNanos > 0) {
+            throttledCount.increment();
+            long retryAfterMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(retryAfterNanos));
+            exchange.getResponseHeaders().set("Retry-After", String.valueOf((retryAfterMillis + 999) / 1000));
+            exchange.getResponseHeaders().set("retry-after-ms", String.valueOf(retryAfterMillis));
+            sendError(exchange, 429, "TooManyRequests", "Mock rate limit exceeded");
+            return;
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (random.nextDouble() < settings.sendFailureRate) {
+            injectedFailureCount.increment();
+            sendError(exchange, 500, "InternalServerError", "Injected failure");
+            return;
+        }
+
+        String requested = exchange.getRequestHeaders().getFirst("Operation-Id");
+        String operationId = requested == null || requested.isEmpty() ? UUID.randomUUID().toString() : requested;
+        boolean fails = random.nextDouble() < settings.operationFailureRate;
+        Operation operation = operations.computeIfAbsent(operationId, id -> {
+            Operation created = new Operation(id, System.nanoTime() + settings.completionDelay.toNanos(), fails);
+            expiryQueue.add(created);
+            return created;
+        });
+        acceptedCount.increment();
+
+        exchange.getResponseHeaders().set("Operation-Location",
+            endpoint() + "emails/operations/" + operation.id + "?api-version=" + API_VERSION);
+        exchange.getResponseHeaders().set("Operation-Id", operation.id);
+        sendJson(exchange, 202, operation.toJson(System.nanoTime()));
+    }
+
+    private void handleStatus(HttpExchange exchange, String operationId) throws IOException, InterruptedException {
+        statusRequestCount.increment();
+        sleep(settings.statusLatency);
+
+        Operation operation = operations.get(operationId);
+        if (operation == null) {
+            sendError(exchange, 404, "NotFound", "Operation not found: " + operationId);
+            return;
+        }
+        sendJson(exchange, 200, operation.toJson(System.nanoTime()));
+    }
+
+    /**
+     * 終端状態になってから operationRetention が過ぎた操作を捨てる
+     * 取り除くのは1スレッドだけ（他のスレッドが取り除いている間は何もしない）
+     */
+    private void expireOperations(long now) {
+        if (!expiryLock.tryLock()) {
+            return;
+        }
+        try {
+            long retentionNanos = settings.operationRetention.toNanos();
+            Operation oldest;
+            while ((oldest = expiryQueue.peek()) != null && now - oldest.completesAt - retentionNanos >= 0) {
+                expiryQueue.poll();
+                operations.remove(oldest.id, oldest);
+            }
+        } finally {
+            expiryLock.unlock();
+        }
+    }
+
+    /**
+     * レート制限に掛かった場合は次に受け付けられるまでの時間（ナノ秒）、掛からなければ 0
+     * SendRateLimiter.tryAcquire と同じく時間あたりの枠を先に取り、分あたりの枠で断った場合は時間あたりの枠を返す
+     * （断ったリクエストで時間あたりの枠を減らさない）。
+     */
+    private long throttle() {
+        if (perHour != null && !perHour.tryAcquire()) {
+            return Math.max(1, perHour.nanosUntilAvailable());
+        }
+        if (perMinute != null && !perMinute.tryAcquire()) {
+            if (perHour != null) {
+                perHour.release();
+            }
+            return Math.max(1, perMinute.nanosUntilAvailable());
+        }
+        return 0;
+    }
+
+    private static void sleep(MockLatency latency) throws InterruptedException {
+        long nanos = latency.sampleNanos();
+        if (nanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int statusCode, String code, String message) throws IOException {
+        sendJson(exchange, statusCode, "{\"error\":{\"code\":\"" + code + "\",\"message\":\"" + escape(message) + "\"}}");
+    }
+
+    private static void sendJson(HttpExchange exchange, int statusCode, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(statusCode, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    /**
+     * 受け付けた送信操作（状態は問い合わせ時刻から計算する）
+     */
+    private static final class Operation {
+        private final String id;
+        private final long completesAt;
+        private final boolean fails;
+
+        Operation(String id, long completesAt, boolean fails) {
+            this.id = id;
+            this.completesAt = completesAt;
+            this.fails = fails;
+        }
+
+        String toJson(long now) {
+            if (now - completesAt < 0) {
+                return "{\"id\":\"" + id + "\",\"status\":\"Running\"}";
+            }
+            if (fails) {
+                return "{\"id\":\"" + id + "\",\"status\":\"Failed\",\"error\":{\"code\":\"InjectedFailure\","
+                    + "\"message\":\"Injected operation failure\"}}";
+            }
+            return "{\"id\":\"" + id + "\",\"status\":\"Succeeded\"}";
+        }
+    }
+
+    /**
+     * モックサーバーの設定
+     */
+    public static final class Settings {
+        private MockLatency sendLatency = MockLatency.none();
+        private MockLatency statusLatency = MockLatency.none();
+        private Duration completionDelay = Duration.ZERO;
+        private double sendFailureRate;
+        private double operationFailureRate;
+        private int perMinute;
+        private int perHour;
+        private Duration operationRetention = DEFAULT_OPERATION_RETENTION;
+
+        /**
+         * 環境変数から設定を読み込む（未設定の項目は既定値: 遅延なし・即時完了・障害なし・無制限）
+         */
+        public static Settings fromEnvironment() {
+            Settings settings = new Settings();
+            String value = System.getenv("MOCK_ACS_SEND_LATENCY");
+            if (value != null) {
+                settings.sendLatency(MockLatency.parse(value));
+            }
+            value = System.getenv("MOCK_ACS_STATUS_LATENCY");
+            if (value != null) {
+                settings.statusLatency(MockLatency.parse(value));
+            }
+            value = System.getenv("MOCK_ACS_COMPLETION_MS");
+            if (value != null) {
+                settings.completionDelay(Duration.ofMillis(Long.parseLong(value.trim())));
+            }
+            value = System.getenv("MOCK_ACS_SEND_FAILURE_RATE");
+            if (value != null) {
+                settings.sendFailureRate(Double.parseDouble(value.trim()));
+            }
+            value = System.getenv("MOCK_ACS_OPERATION_FAILURE_RATE");
+            if (value != null) {
+                settings.operationFailureRate(Double.parseDouble(value.trim()));
+            }
+            value = System.getenv("MOCK_ACS_RATE_LIMIT_PER_MINUTE");
+            if (value != null) {
+                settings.rateLimit(Integer.parseInt(value.trim()), settings.perHour);
+            }
+            value = System.getenv("MOCK_ACS_RATE_LIMIT_PER_HOUR");
+            if (value != null) {
+                settings.rateLimit(settings.perMinute, Integer.parseInt(value.trim()));
+            }
+            value = System.getenv("MOCK_ACS_OPERATION_RETENTION_MS");
+            if (value != null) {
+                settings.operationRetention(Duration.ofMillis(Long.parseLong(value.trim())));
+            }
+            return settings;
+        }
+
+        public Settings sendLatency(MockLatency sendLatency) {
+            this.sendLatency = sendLatency;
+            return this;
+        }
+
+        public Settings statusLatency(MockLatency statusLatency) {
+            this.statusLatency = statusLatency;
+            return this;
+        }
+
+        /**
+         * 受付から Succeeded / Failed になるまでの時間
+         */
+        public Settings completionDelay(Duration completionDelay) {
+            this.completionDelay = completionDelay;
+            return this;
+        }
+
+        public Settings sendFailureRate(double sendFailureRate) {
+            this.sendFailureRate = sendFailureRate;
+            return this;
+        }
+
+        public Settings operationFailureRate(double operationFailureRate) {
+            this.operationFailureRate = operationFailureRate;
+            return this;
+        }
+
+        /**
+         * @param perMinute 1分あたりの受付上限（0 で無制限）
+         * @param perHour   1時間あたりの受付上限（0 で無制限）
+         */
+        public Settings rateLimit(int perMinute, int perHour) {
+            this.perMinute = perMinute;
+            this.perHour = perHour;
+            return this;
+        }
+
+        /**
+         * 終端状態になった操作を保持する時間（過ぎた操作のステータス取得は 404）
+         */
+        public Settings operationRetention(Duration operationRetention) {
+            this.operationRetention = operationRetention;
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return "送信遅延 " + sendLatency + "ms / ステータス遅延 " + statusLatency + "ms / 完了まで "
+                + completionDelay.toMillis() + "ms / 500 注入 " + sendFailureRate + " / Failed 注入 "
+                + operationFailureRate + " / 制限 " + (perMinute > 0 ? perMinute + "/分" : "無制限") + ", "
+                + (perHour > 0 ? perHour + "/時間" : "無制限") + " / 操作の保持 "
+                + operationRetention.toMillis() + "ms";
+        }
+    }
+}
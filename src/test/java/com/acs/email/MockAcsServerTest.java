@@ -0,0 +1,121 @@
+package com.acs.email;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * MockAcsServer のテスト（JDK の HttpClient で REST API を直接呼び出す）
+ */
+public class MockAcsServerTest {
+
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+    private MockAcsServer server;
+
+    @After
+    public void tearDown() {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    public void sendIsAcceptedAndCompletesAfterDelay() throws Exception {
+        server = start(new MockAcsServer.Settings().completionDelay(Duration.ofMillis(200)));
+
+        HttpResponse<String> accepted = send("op-1");
+        assertEquals(202, accepted.statusCode());
+        assertTrue(accepted.body().contains("\"status\":\"Running\""));
+        String operationLocation = accepted.headers().firstValue("Operation-Location").orElse(null);
+        assertNotNull(operationLocation);
+
+        assertTrue(get(operationLocation).body().contains("\"status\":\"Running\""));
+        Thread.sleep(300);
+        assertTrue(get(operationLocation).body().contains("\"status\":\"Succeeded\""));
+    }
+
+    @Test
+    public void sameOperationIdIsTheSameOperation() throws Exception {
+        server = start(new MockAcsServer.Settings());
+
+        assertTrue(send("op-1").body().contains("\"id\":\"op-1\""));
+        assertTrue(send("op-1").body().contains("\"id\":\"op-1\""));
+        assertEquals(200, get(server.endpoint() + "emails/operations/op-1").statusCode());
+        assertEquals(404, get(server.endpoint() + "emails/operations/op-2").statusCode());
+    }
+
+    @Test
+    public void completedOperationsExpireAfterRetention() throws Exception {
+        server = start(new MockAcsServer.Settings().operationRetention(Duration.ofMillis(100)));
+
+        send("op-1");
+        assertEquals(1, server.operationCount());
+        Thread.sleep(200);
+
+        // 期限切れの操作は次のリクエストの処理時に捨てる
+        send("op-2");
+        assertEquals(1, server.operationCount());
+        assertEquals(404, get(server.endpoint() + "emails/operations/op-1").statusCode());
+        assertEquals(200, get(server.endpoint() + "emails/operations/op-2").statusCode());
+    }
+
+    @Test
+    public void runningOperationsAreNotExpired() throws Exception {
+        server = start(new MockAcsServer.Settings().completionDelay(Duration.ofMillis(500))
+            .operationRetention(Duration.ZERO));
+
+        send("op-1");
+        Thread.sleep(100);
+        assertTrue(get(server.endpoint() + "emails/operations/op-1").body().contains("\"status\":\"Running\""));
+        Thread.sleep(500);
+        assertEquals(404, get(server.endpoint() + "emails/operations/op-1").statusCode());
+    }
+
+    @Test
+    public void rateLimitReturns429WithRetryAfter() throws Exception {
+        server = start(new MockAcsServer.Settings().rateLimit(2, 0));
+
+        assertEquals(202, send("op-1").statusCode());
+        assertEquals(202, send("op-2").statusCode());
+        HttpResponse<String> throttled = send("op-3");
+
+        assertEquals(429, throttled.statusCode());
+        assertTrue(Integer.parseInt(throttled.headers().firstValue("Retry-After").orElse("0")) > 0);
+        assertEquals(1, server.throttledCount());
+    }
+
+    @Test
+    public void injectedFailuresAreReported() throws Exception {
+        server = start(new MockAcsServer.Settings().sendFailureRate(1.0));
+
+        assertEquals(500, send("op-1").statusCode());
+        assertEquals(1, server.injectedFailureCount());
+    }
+
+    private static MockAcsServer start(MockAcsServer.Settings settings) throws Exception {
+        MockAcsServer server = new MockAcsServer(0, settings);
+        server.start();
+        return server;
+    }
+
+    private HttpResponse<String> send(String operationId) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(server.endpoint() + "emails:send?api-version=2023-03-31"))
+            .header("Operation-Id", operationId)
+            .POST(HttpRequest.BodyPublishers.ofString("{}"))
+            .build();
+        return httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> get(String url) throws Exception {
+        return httpClient.send(HttpRequest.newBuilder(URI.create(url)).GET().build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,115 @@
+package com.acs.email;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * MockAcsServer が応答前に挟む遅延の分布
+ *
+ * 文字列表記（ミリ秒）:
+ * - none
+ * - fixed:50
+ * - uniform:20-80
+ * - lognormal:50,400（中央値 50ms, p99 400ms の対数正規分布。実際の API のロングテールに近い）
+ */
+public abstract class MockLatency {
+
+    private static final double Z_99 = 2.3263478740408408;
+
+    /**
+     * 遅延を1つ標本化する（ナノ秒）
+     */
+    public abstract long sampleNanos();
+
+    public static MockLatency none() {
+        return fixed(Duration.ZERO);
+    }
+
+    public static MockLatency fixed(Duration latency) {
+        long nanos = latency.toNanos();
+        return new MockLatency() {
+            @Override
+            public long sampleNanos() {
+                return nanos;
+            }
+
+            @Override
+            public String toString() {
+                return "fixed:" + latency.toMillis();
+            }
+        };
+    }
+
+    public static MockLatency uniform(Duration min, Duration max) {
+        long minNanos = min.toNanos();
+        long maxNanos = max.toNanos();
+        if (maxNanos < minNanos) {
+            throw new IllegalArgumentException("最大値が最小値より小さい値です: " + min + " - " + max);
+        }
+        return new MockLatency() {
+            @Override
+            public long sampleNanos() {
+                return maxNanos == minNanos ? minNanos : ThreadLocalRandom.current().nextLong(minNanos, maxNanos + 1);
+            }
+
+            @Override
+            public String toString() {
+                return "uniform:" + min.toMillis() + "-" + max.toMillis();
+            }
+        };
+    }
+
+    /**
+     * 中央値と 99 パーセンタイルを指定した対数正規分布
+     */
+    public static MockLatency logNormal(Duration median, Duration p99) {
+        if (median.isZero() || median.isNegative() || p99.compareTo(median) < 0) {
+            throw new IllegalArgumentException("中央値は正、p99 は中央値以上を指定してください: " + median + ", " + p99);
+        }
+        double mu = Math.log(median.toNanos());
+        double sigma = Math.log((double) p99.toNanos() / median.toNanos()) / Z_99;
+        return new MockLatency() {
+            @Override
+            public long sampleNanos() {
+                return (long) Math.exp(mu + sigma * ThreadLocalRandom.current().nextGaussian());
+            }
+
+            @Override
+            public String toString() {
+                return "lognormal:" + median.toMillis() + "," + p99.toMillis();
+            }
+        };
+    }
+
+    /**
+     * 文字列表記から生成する
+     *
+     * @throws IllegalArgumentException 解析できない場合
+     */
+    public static MockLatency parse(String spec) {
+        String value = spec.trim();
+        try {
+            if (value.isEmpty() || "none".equals(value)) {
+                return none();
+            }
+            if (value.startsWith("fixed:")) {
+                return fixed(millis(value.substring("fixed:".length())));
+            }
+            if (value.startsWith("uniform:")) {
+                String[] range = value.substring("uniform:".length()).split("-", 2);
+                return uniform(millis(range[0]), millis(range[1]));
+            }
+            if (value.startsWith("lognormal:")) {
+                String[] params = value.substring("lognormal:".length()).split(",", 2);
+                return logNormal(millis(params[0]), millis(params[1]));
+            }
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("遅延の指定が不正です: " + spec, e);
+        }
+        throw new IllegalArgumentException("遅延の指定が不正です: " + spec);
+    }
+
+    private static Duration millis(String value) {
+        return Duration.ofMillis(Long.parseLong(value.trim()));
+    }
+}
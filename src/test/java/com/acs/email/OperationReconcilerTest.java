@@ -0,0 +1,66 @@
+package com.acs.email;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import com.azure.core.http.HttpPipelineBuilder;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * OperationReconciler のテスト（ステータス取得 API を JDK の HttpServer で模擬する）
+ */
+public class OperationReconcilerTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void throttledCheckIsNotCountedAsRunningAndPausesTheNextCheck() throws Exception {
+        List<Long> requestedAt = new CopyOnWriteArrayList<>();
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", exchange -> {
+            requestedAt.add(System.nanoTime());
+            if (exchange.getRequestURI().getPath().endsWith("/op-1")) {
+                exchange.getResponseHeaders().set("retry-after-ms", "400");
+                exchange.sendResponseHeaders(429, -1);
+            } else {
+                byte[] body = "{\"id\":\"op-2\",\"status\":\"Running\"}".getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            }
+            exchange.close();
+        });
+        server.start();
+        try (OperationStore store = new OperationStore(temporaryFolder.newFolder().toPath())) {
+            store.recordAccepted("op-1", OperationStore.DEFAULT_RESOURCE, "line:1");
+            store.recordAccepted("op-2", OperationStore.DEFAULT_RESOURCE, "line:2");
+            String endpoint = "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+            EmailOperationStatusClient statusClient = new EmailOperationStatusClient(endpoint,
+                new HttpPipelineBuilder().httpClient(HttpTransport.getDefault()).build());
+
+            // 1件ずつ問い合わせ、op-1 の 429 の後は Retry-After の間 op-2 の問い合わせを始めない
+            OperationReconciler reconciler = new OperationReconciler(statusClient, store, 1);
+            reconciler.run();
+
+            assertEquals(1, reconciler.getThrottledCount());
+            assertEquals(1, reconciler.getRunningCount());
+            assertEquals(0, reconciler.getErrorCount());
+            assertEquals(2, requestedAt.size());
+            long gapMillis = TimeUnit.NANOSECONDS.toMillis(requestedAt.get(1) - requestedAt.get(0));
+            assertTrue("Retry-After より早く次の問い合わせを始めました: " + gapMillis + "ms", gapMillis >= 400);
+        } finally {
+            server.stop(0);
+        }
+    }
+}
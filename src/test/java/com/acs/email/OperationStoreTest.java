@@ -0,0 +1,88 @@
+package com.acs.email;
+
+import static org.junit.Assert.assertEquals;
+
+import com.azure.communication.email.models.EmailSendStatus;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * OperationStore のテスト
+ */
+public class OperationStoreTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void pendingExcludesOperationsWithFinalStatus() throws Exception {
+        Path directory = temporaryFolder.newFolder().toPath();
+
+        try (OperationStore store = new OperationStore(directory)) {
+            store.recordAccepted("op-1", "#1", "line:1");
+            store.recordAccepted("op-2", "#1", "line:2");
+            store.recordAccepted("op-3", "#2", "line:3");
+            store.recordFinal("op-2", EmailSendStatus.SUCCEEDED, null);
+
+            assertEquals(Arrays.asList("op-1@#1=line:1", "op-3@#2=line:3"), pending(store));
+        }
+    }
+
+    @Test
+    public void acceptedOperationIsOnDiskBeforeCloseOrFlush() throws Exception {
+        Path directory = temporaryFolder.newFolder().toPath();
+
+        try (OperationStore store = new OperationStore(directory)) {
+            store.recordAccepted("op-1", "#1", "line:1");
+
+            // プロセスが落ちても、受付済みと報告した操作は記録に残っている
+            assertEquals(Arrays.asList("op-1\t#1\tline:1"),
+                Files.readAllLines(directory.resolve(OperationStore.ACCEPTED_FILE), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void pendingSurvivesReopen() throws Exception {
+        Path directory = temporaryFolder.newFolder().toPath();
+
+        try (OperationStore store = new OperationStore(directory)) {
+            store.recordAccepted("op-1", "#1", "line:1");
+            store.recordAccepted("op-2", "#2", "line\twith\ttabs");
+        }
+        try (OperationStore store = new OperationStore(directory)) {
+            store.recordFinal("op-1", EmailSendStatus.FAILED, "InvalidEmailAddress");
+
+            assertEquals(Arrays.asList("op-2@#2=line with tabs"), pending(store));
+        }
+    }
+
+    @Test
+    public void rowsWithoutResourceBelongToTheDefaultResource() throws Exception {
+        Path directory = temporaryFolder.newFolder().toPath();
+        Files.write(directory.resolve(OperationStore.ACCEPTED_FILE),
+            "op-1\tline:1\n".getBytes(StandardCharsets.UTF_8));
+
+        try (OperationStore store = new OperationStore(directory)) {
+            store.recordAccepted("op-2", "#3", "line:2");
+
+            assertEquals(Arrays.asList("op-1@#1=line:1", "op-2@#3=line:2"), pending(store));
+        }
+    }
+
+    private static List<String> pending(OperationStore store) throws IOException, InterruptedException {
+        List<String> result = new ArrayList<>();
+        store.forEachPending((operationId, resource, reference) ->
+            result.add(operationId + "@" + resource + "=" + reference));
+        return result;
+    }
+}
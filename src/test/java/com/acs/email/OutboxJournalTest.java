@@ -0,0 +1,151 @@
+package com.acs.email;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.azure.communication.email.models.EmailSendStatus;
+
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * OutboxJournal のテスト
+ */
+public class OutboxJournalTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void stateSurvivesReopen() throws Exception {
+        Path directory = temporaryFolder.newFolder().toPath();
+
+        try (OutboxJournal journal = new OutboxJournal(directory, 4096, Duration.ofMillis(5))) {
+            journal.recordEnqueued("line:1");
+            journal.recordEnqueued("line:2");
+            journal.recordEnqueued("line:3");
+            journal.recordAccepted("line:1", "op-1");
+            journal.recordAccepted("line:2", "op-2");
+            journal.recordFinal("line:2", EmailSendStatus.SUCCEEDED, null);
+        }
+
+        try (OutboxJournal journal = new OutboxJournal(directory, 4096, Duration.ofMillis(5))) {
+            assertEquals(OutboxJournal.State.ACCEPTED, journal.state("line:1"));
+            assertEquals("op-1", journal.operationId("line:1"));
+            assertEquals(OutboxJournal.State.FINAL, journal.state("line:2"));
+            // 確定済みの行は operationId を保持しない（ヒープには未確定の行だけを載せる）
+            assertNull(journal.operationId("line:2"));
+            assertTrue(journal.isAccepted("line:2"));
+            assertEquals(OutboxJournal.State.ENQUEUED, journal.state("line:3"));
+            assertFalse(journal.isAccepted("line:3"));
+            assertNull(journal.state("line:4"));
+        }
+    }
+
+    @Test
+    public void recordsRollOverToNewSegments() throws Exception {
+        Path directory = temporaryFolder.newFolder().toPath();
+
+        try (OutboxJournal journal = new OutboxJournal(directory, 256, Duration.ofMillis(5))) {
+            for (int i = 0; i < 100; i++) {
+                journal.recordAccepted("line:" + i, "op-" + i);
+            }
+            journal.awaitDurable(journal.recordEnqueued("line:100"));
+        }
+
+        try (OutboxJournal journal = new OutboxJournal(directory, 256, Duration.ofMillis(5))) {
+            assertEquals(101, journal.size());
+            assertEquals(100, journal.count(OutboxJournal.State.ACCEPTED));
+            assertEquals("op-99", journal.operationId("line:99"));
+        }
+    }
+
+    @Test
+    public void finalStateIsKeptInTheIndexAcrossReopen() throws Exception {
+        Path directory = temporaryFolder.newFolder().toPath();
+
+        try (OutboxJournal journal = new OutboxJournal(directory, 4096, Duration.ofMillis(5))) {
+            for (int i = 0; i < 50; i++) {
+                journal.recordAccepted("line:" + i, "op-" + i);
+                journal.recordFinal("line:" + i, EmailSendStatus.SUCCEEDED, null);
+            }
+            journal.recordAccepted("line:50", "op-50");
+            // 確定済みの行は再び記録しない
+            journal.recordEnqueued("line:0");
+            assertEquals(OutboxJournal.State.FINAL, journal.state("line:0"));
+        }
+        // インデックスが失われてもジャーナルから作り直す
+        Files.delete(directory.resolve(OutboxJournal.FINAL_INDEX_FILE));
+
+        try (OutboxJournal journal = new OutboxJournal(directory, 4096, Duration.ofMillis(5))) {
+            assertEquals(50, journal.count(OutboxJournal.State.FINAL));
+            assertEquals(1, journal.count(OutboxJournal.State.ACCEPTED));
+            assertEquals(51, journal.size());
+            assertTrue(journal.isAccepted("line:49"));
+            assertEquals("op-50", journal.operationId("line:50"));
+        }
+    }
+
+    @Test
+    public void refusesToResumeWithADifferentJobFile() throws Exception {
+        Path directory = temporaryFolder.newFolder().toPath();
+        Path jobFile = temporaryFolder.newFolder().toPath().resolve("jobs.jsonl");
+        Files.write(jobFile, "{\"to\":\"a@example.com\"}\n".getBytes(StandardCharsets.UTF_8));
+
+        try (OutboxJournal journal = new OutboxJournal(directory, 4096, Duration.ofMillis(5))) {
+            journal.bindJobFile(jobFile);
+            journal.recordAccepted("line:1", "op-1");
+        }
+        try (OutboxJournal journal = new OutboxJournal(directory, 4096, Duration.ofMillis(5))) {
+            // 同じファイルなら再開できる
+            journal.bindJobFile(jobFile);
+        }
+
+        Files.write(jobFile, "{\"to\":\"b@example.com\"}\n".getBytes(StandardCharsets.UTF_8));
+        try (OutboxJournal journal = new OutboxJournal(directory, 4096, Duration.ofMillis(5))) {
+            journal.bindJobFile(jobFile);
+            fail("内容の異なるジョブファイルで再開できてしまいました");
+        } catch (IllegalArgumentException expected) {
+            assertTrue(expected.getMessage().contains("別のジョブファイル"));
+        }
+    }
+
+    @Test
+    public void recoveryStopsAtTornRecordAndResumesAppending() throws Exception {
+        Path directory = temporaryFolder.newFolder().toPath();
+
+        try (OutboxJournal journal = new OutboxJournal(directory, 4096, Duration.ofMillis(5))) {
+            journal.recordAccepted("line:1", "op-1");
+            journal.recordAccepted("line:2", "op-2");
+        }
+
+        // 2件目のレコードのペイロードを壊す（書き込み途中で落ちた状態を再現）
+        Path segment = directory.resolve("outbox-00000001.log");
+        int firstRecordSize = 4 + 4 + 1 + "line:1\top-1".length();
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            file.seek(firstRecordSize + 4 + 4 + 1);
+            file.write('X');
+        }
+
+        try (OutboxJournal journal = new OutboxJournal(directory, 4096, Duration.ofMillis(5))) {
+            assertTrue(journal.isAccepted("line:1"));
+            assertFalse(journal.isAccepted("line:2"));
+            journal.recordAccepted("line:3", "op-3");
+        }
+
+        try (OutboxJournal journal = new OutboxJournal(directory, 4096, Duration.ofMillis(5))) {
+            assertEquals(2, journal.size());
+            assertEquals("op-3", journal.operationId("line:3"));
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.acs.email;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+/**
+ * RecipientCoalescer のテスト（時刻は疑似クロックで進める）
+ */
+public class RecipientCoalescerTest {
+
+    private static final String VISIBLE_TO = "undisclosed@example.com";
+
+    private final AtomicLong now = new AtomicLong(0);
+
+    private RecipientCoalescer coalescer(int maxRecipients, int maxOpenBatches) {
+        return new RecipientCoalescer(VISIBLE_TO, maxRecipients, Duration.ofMillis(200), maxOpenBatches, now::get);
+    }
+
+    private static EmailJob job(String to, String subject) {
+        return new EmailJob(Collections.singletonList(to), null, null, subject, "本文", null);
+    }
+
+    @Test
+    public void onlySingleToRecipientJobsAreCoalescable() {
+        assertTrue(RecipientCoalescer.isCoalescable(job("a@example.com", "s")));
+        assertFalse(RecipientCoalescer.isCoalescable(new EmailJob(Arrays.asList("a@example.com", "b@example.com"),
+            null, null, "s", "本文", null)));
+        assertFalse(RecipientCoalescer.isCoalescable(new EmailJob(Collections.singletonList("a@example.com"),
+            Collections.singletonList("c@example.com"), null, "s", "本文", null)));
+    }
+
+    @Test
+    public void emitsFullBatchAsBccMessage() {
+        RecipientCoalescer coalescer = coalescer(4, 10);
+
+        assertTrue(coalescer.add(1, job("a@example.com", "s")).isEmpty());
+        assertTrue(coalescer.add(2, job("b@example.com", "s")).isEmpty());
+        List<RecipientCoalescer.Batch> ready = coalescer.add(3, job("c@example.com", "s"));
+
+        // to の表示用アドレス + BCC 3件 = 4件
+        assertEquals(1, ready.size());
+        RecipientCoalescer.Batch batch = ready.get(0);
+        assertEquals(1, batch.getFirstLineNumber());
+        assertArrayEquals(new long[] {1, 2, 3}, batch.getLineNumbers());
+        assertEquals(3, batch.size());
+        EmailJob merged = batch.toJob();
+        assertEquals(Collections.singletonList(VISIBLE_TO), merged.getTo());
+        assertEquals(Arrays.asList("a@example.com", "b@example.com", "c@example.com"), merged.getBcc());
+        assertEquals("s", merged.getSubject());
+        assertEquals("本文", merged.getPlainText());
+        assertTrue(coalescer.drainAll().isEmpty());
+    }
+
+    @Test
+    public void keepsDifferentContentApart() {
+        RecipientCoalescer coalescer = coalescer(50, 10);
+
+        coalescer.add(1, job("a@example.com", "s1"));
+        coalescer.add(2, job("b@example.com", "s2"));
+        coalescer.add(3, job("c@example.com", "s1"));
+
+        List<RecipientCoalescer.Batch> batches = coalescer.drainAll();
+        assertEquals(2, batches.size());
+        assertEquals(Arrays.asList("a@example.com", "c@example.com"), batches.get(0).toJob().getBcc());
+        assertArrayEquals(new long[] {1, 3}, batches.get(0).getLineNumbers());
+        assertEquals(2, batches.get(1).getFirstLineNumber());
+    }
+
+    @Test
+    public void keepsDifferentAttachmentsApart() {
+        RecipientCoalescer coalescer = coalescer(50, 10);
+        List<EmailJob.Attachment> invoice = Collections.singletonList(
+            new EmailJob.Attachment(Paths.get("invoice.pdf"), null, null));
+
+        coalescer.add(1, job("a@example.com", "s"));
+        coalescer.add(2, new EmailJob(Collections.singletonList("b@example.com"), null, null, "s", "本文", null, null,
+            invoice));
+        coalescer.add(3, new EmailJob(Collections.singletonList("c@example.com"), null, null, "s", "本文", null, null,
+            invoice));
+
+        List<RecipientCoalescer.Batch> batches = coalescer.drainAll();
+        assertEquals(2, batches.size());
+        assertTrue(batches.get(0).toJob().getAttachments().isEmpty());
+        assertEquals(Arrays.asList("b@example.com", "c@example.com"), batches.get(1).toJob().getBcc());
+        assertEquals(invoice, batches.get(1).toJob().getAttachments());
+    }
+
+    @Test
+    public void singleRecipientBatchIsSentUnchanged() {
+        RecipientCoalescer coalescer = coalescer(50, 10);
+        EmailJob job = job("a@example.com", "s");
+
+        coalescer.add(1, job);
+        assertSame(job, coalescer.drainAll().get(0).toJob());
+    }
+
+    @Test
+    public void flushesBatchesAfterLinger() {
+        RecipientCoalescer coalescer = coalescer(50, 10);
+
+        coalescer.add(1, job("a@example.com", "s1"));
+        now.addAndGet(Duration.ofMillis(150).toNanos());
+        coalescer.add(2, job("b@example.com", "s2"));
+        assertTrue(coalescer.drainExpired().isEmpty());
+
+        now.addAndGet(Duration.ofMillis(50).toNanos());
+        List<RecipientCoalescer.Batch> ready = coalescer.add(3, job("c@example.com", "s3"));
+        assertEquals(1, ready.size());
+        assertEquals(1, ready.get(0).getFirstLineNumber());
+        assertEquals(2, coalescer.drainAll().size());
+    }
+
+    @Test
+    public void nanosUntilNextExpiryFollowsTheOldestBatch() {
+        RecipientCoalescer coalescer = coalescer(50, 10);
+        assertEquals(Long.MAX_VALUE, coalescer.nanosUntilNextExpiry());
+
+        coalescer.add(1, job("a@example.com", "s1"));
+        now.addAndGet(Duration.ofMillis(150).toNanos());
+        coalescer.add(2, job("b@example.com", "s2"));
+        assertEquals(Duration.ofMillis(50).toNanos(), coalescer.nanosUntilNextExpiry());
+
+        // 次の add を待たずに drainExpired で最も古い束だけを取り出せる
+        now.addAndGet(Duration.ofMillis(60).toNanos());
+        assertEquals(0, coalescer.nanosUntilNextExpiry());
+        List<RecipientCoalescer.Batch> ready = coalescer.drainExpired();
+        assertEquals(1, ready.size());
+        assertEquals(1, ready.get(0).getFirstLineNumber());
+        assertEquals(Duration.ofMillis(140).toNanos(), coalescer.nanosUntilNextExpiry());
+    }
+
+    @Test
+    public void evictsOldestBatchWhenTooManyAreOpen() {
+        RecipientCoalescer coalescer = coalescer(50, 2);
+
+        coalescer.add(1, job("a@example.com", "s1"));
+        coalescer.add(2, job("b@example.com", "s2"));
+        List<RecipientCoalescer.Batch> ready = coalescer.add(3, job("c@example.com", "s3"));
+
+        assertEquals(1, ready.size());
+        assertEquals(1, ready.get(0).getFirstLineNumber());
+    }
+}
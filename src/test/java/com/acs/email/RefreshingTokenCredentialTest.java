@@ -0,0 +1,296 @@
+package com.acs.email;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.azure.core.credential.AccessToken;
+import com.azure.core.credential.TokenCredential;
+import com.azure.core.credential.TokenRequestContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import reactor.core.publisher.Mono;
+
+/**
+ * RefreshingTokenCredential のテスト
+ *
+ * マネージド ID（App Service の IDENTITY_ENDPOINT）と同じ形式で応答するローカルのトークンエンドポイントに対して実行する。
+ */
+public class RefreshingTokenCredentialTest {
+
+    private static final String SCOPE = RefreshingTokenCredential.COMMUNICATION_SCOPE;
+
+    private final ByteArrayOutputStream logged = new ByteArrayOutputStream();
+    private TokenEndpoint endpoint;
+    private AsyncLog log;
+    private RefreshingTokenCredential credential;
+
+    @Before
+    public void setUp() throws IOException {
+        endpoint = new TokenEndpoint();
+        PrintStream out = new PrintStream(logged, true, StandardCharsets.UTF_8);
+        log = new AsyncLog(AsyncLog.Format.TEXT, out, out, 64);
+    }
+
+    @After
+    public void tearDown() {
+        if (credential != null) {
+            credential.close();
+        }
+        log.close();
+        endpoint.close();
+    }
+
+    private RefreshingTokenCredential credential(Duration refreshBefore, Duration retryDelay) {
+        return credential(refreshBefore, retryDelay, Duration.ZERO);
+    }
+
+    private RefreshingTokenCredential credential(Duration refreshBefore, Duration retryDelay, Duration expiryMargin) {
+        credential = new RefreshingTokenCredential(new EndpointCredential(endpoint), refreshBefore, retryDelay,
+            expiryMargin, log);
+        return credential;
+    }
+
+    private static TokenRequestContext context() {
+        return new TokenRequestContext().addScopes(SCOPE);
+    }
+
+    @Test
+    public void cachedTokenIsReturnedWithoutCallingTheEndpoint() {
+        endpoint.lifetimeSeconds = 3600;
+        RefreshingTokenCredential credential = credential(Duration.ofMinutes(10), Duration.ofSeconds(1));
+
+        AccessToken first = credential.warmUp(SCOPE);
+        for (int i = 0; i < 100; i++) {
+            assertSame(first, credential.getTokenSync(context()));
+        }
+        assertEquals(1, endpoint.requests.get());
+    }
+
+    @Test
+    public void concurrentColdStartSharesOneFetch() throws Exception {
+        endpoint.lifetimeSeconds = 3600;
+        endpoint.latencyMillis = 200;
+        RefreshingTokenCredential credential = credential(Duration.ofMinutes(10), Duration.ofSeconds(1));
+
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<AccessToken>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(callers.submit(() -> {
+                    start.await();
+                    return credential.getTokenSync(context());
+                }));
+            }
+            start.countDown();
+            AccessToken token = results.get(0).get();
+            for (Future<AccessToken> result : results) {
+                assertSame(token, result.get());
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+        assertEquals(1, endpoint.requests.get());
+    }
+
+    @Test
+    public void refreshesInTheBackgroundWithoutBlockingCallers() throws Exception {
+        // 有効期間 3 秒・期限の 2 秒前に更新 → 約 1 秒後に更新が始まり、トークンエンドポイントは 1 秒かかる
+        endpoint.lifetimeSeconds = 3;
+        RefreshingTokenCredential credential = credential(Duration.ofSeconds(2), Duration.ofSeconds(1));
+        AccessToken first = credential.warmUp(SCOPE);
+        endpoint.latencyMillis = 1000;
+
+        waitUntil(() -> endpoint.requests.get() == 2);
+        long start = System.nanoTime();
+        AccessToken during = credential.getTokenSync(context());
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        assertSame(first, during);
+        assertTrue("更新中の呼び出しが " + elapsedMillis + "ms 待たされました", elapsedMillis < 100);
+
+        waitUntil(() -> credential.getTokenSync(context()) != first);
+        assertNotEquals(first.getToken(), credential.getTokenSync(context()).getToken());
+    }
+
+    @Test
+    public void tokenCloseToExpiryIsNotHandedOut() {
+        // 有効期間 60 秒のトークンは、期限の 2 分前から有効とみなさない設定では取得した時点で使えない
+        endpoint.lifetimeSeconds = 60;
+        RefreshingTokenCredential credential = credential(Duration.ofMinutes(10), Duration.ofSeconds(30),
+            Duration.ofMinutes(2));
+
+        AccessToken first = credential.warmUp(SCOPE);
+        AccessToken second = credential.getTokenSync(context());
+        assertNotEquals(first.getToken(), second.getToken());
+        assertEquals(2, endpoint.requests.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void expiryMarginMustBeShorterThanRefreshBefore() {
+        credential(Duration.ofMinutes(1), Duration.ofSeconds(1), Duration.ofMinutes(1));
+    }
+
+    @Test
+    public void failedRefreshKeepsTheCurrentTokenAndRetries() throws Exception {
+        endpoint.lifetimeSeconds = 3;
+        RefreshingTokenCredential credential = credential(Duration.ofSeconds(2), Duration.ofMillis(300));
+        AccessToken first = credential.warmUp(SCOPE);
+        endpoint.failing = true;
+
+        waitUntil(() -> endpoint.requests.get() >= 3);
+        assertSame(first, credential.getTokenSync(context()));
+
+        endpoint.failing = false;
+        waitUntil(() -> credential.getTokenSync(context()) != first);
+        log.flush();
+        assertTrue(logged.toString(StandardCharsets.UTF_8).contains("トークンの取得に失敗しました"));
+    }
+
+    private static void waitUntil(Condition condition) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (!condition.met()) {
+            assertTrue("5 秒以内に条件を満たしませんでした", System.nanoTime() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private interface Condition {
+        boolean met();
+    }
+
+    /**
+     * App Service のマネージド ID と同じ形式のトークンエンドポイント
+     * GET /msi/token?resource=...&api-version=2019-08-01（X-IDENTITY-HEADER が必要）
+     */
+    static final class TokenEndpoint implements AutoCloseable {
+        static final String IDENTITY_HEADER = "test-identity-header";
+
+        final AtomicInteger requests = new AtomicInteger();
+        volatile long lifetimeSeconds = 3600;
+        volatile long latencyMillis;
+        volatile boolean failing;
+        private final HttpServer server;
+
+        TokenEndpoint() throws IOException {
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+            server.setExecutor(Executors.newCachedThreadPool());
+            server.createContext("/msi/token", this::handle);
+            server.start();
+        }
+
+        String url() {
+            return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/msi/token";
+        }
+
+        private void handle(HttpExchange exchange) throws IOException {
+            int number = requests.incrementAndGet();
+            try {
+                if (latencyMillis > 0) {
+                    Thread.sleep(latencyMillis);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (!IDENTITY_HEADER.equals(exchange.getRequestHeaders().getFirst("X-IDENTITY-HEADER"))) {
+                respond(exchange, 401, "{\"error\":\"invalid identity header\"}");
+            } else if (failing) {
+                respond(exchange, 500, "{\"error\":\"unavailable\"}");
+            } else {
+                long expiresOn = Instant.now().getEpochSecond() + lifetimeSeconds;
+                respond(exchange, 200, "{\"access_token\":\"token-" + number + "\",\"expires_on\":\"" + expiresOn
+                    + "\",\"resource\":\"https://communication.azure.com\",\"token_type\":\"Bearer\"}");
+            }
+        }
+
+        private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+
+        @Override
+        public void close() {
+            server.stop(0);
+        }
+    }
+
+    /**
+     * TokenEndpoint からトークンを取得する資格情報（マネージド ID の資格情報の代わり）
+     */
+    static final class EndpointCredential implements TokenCredential {
+        private static final Pattern ACCESS_TOKEN = Pattern.compile("\"access_token\":\"([^\"]+)\"");
+        private static final Pattern EXPIRES_ON = Pattern.compile("\"expires_on\":\"(\\d+)\"");
+
+        private final TokenEndpoint endpoint;
+        private final HttpClient httpClient = HttpClient.newHttpClient();
+
+        EndpointCredential(TokenEndpoint endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        @Override
+        public Mono<AccessToken> getToken(TokenRequestContext request) {
+            return Mono.fromCallable(() -> getTokenSync(request));
+        }
+
+        @Override
+        public AccessToken getTokenSync(TokenRequestContext request) {
+            String resource = request.getScopes().get(0).replace("//.default", "");
+            HttpRequest httpRequest = HttpRequest.newBuilder(URI.create(endpoint.url() + "?resource=" + resource
+                    + "&api-version=2019-08-01"))
+                .header("X-IDENTITY-HEADER", TokenEndpoint.IDENTITY_HEADER)
+                .build();
+            try {
+                HttpResponse<String> response = httpClient.send(httpRequest, HttpResponse.BodyHandlers.ofString());
+                if (response.statusCode() != 200) {
+                    throw new IllegalStateException("トークンエンドポイントの応答: HTTP " + response.statusCode());
+                }
+                Matcher token = ACCESS_TOKEN.matcher(response.body());
+                Matcher expiresOn = EXPIRES_ON.matcher(response.body());
+                if (!token.find() || !expiresOn.find()) {
+                    throw new IllegalStateException("トークンの応答を解析できません: " + response.body());
+                }
+                return new AccessToken(token.group(1), OffsetDateTime.ofInstant(
+                    Instant.ofEpochSecond(Long.parseLong(expiresOn.group(1))), ZoneOffset.UTC));
+            } catch (IOException e) {
+                throw new IllegalStateException("トークンエンドポイントに接続できません", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("トークンの取得が中断されました", e);
+            }
+        }
+    }
+}
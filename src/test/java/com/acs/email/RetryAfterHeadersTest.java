@@ -0,0 +1,73 @@
+package com.acs.email;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+
+import com.azure.core.http.HttpHeaderName;
+import com.azure.core.http.HttpHeaders;
+import org.junit.Test;
+
+/**
+ * RetryAfterHeaders のテスト
+ */
+public class RetryAfterHeadersTest {
+
+    private static final OffsetDateTime NOW = OffsetDateTime.parse("2026-10-16T01:02:03Z");
+    private static final HttpHeaderName X_MS_RETRY_AFTER_MS = HttpHeaderName.fromString("x-ms-retry-after-ms");
+    private static final HttpHeaderName RETRY_AFTER_MS = HttpHeaderName.fromString("retry-after-ms");
+
+    @Test
+    public void xMsRetryAfterMsTakesPriority() {
+        HttpHeaders headers = new HttpHeaders()
+            .set(X_MS_RETRY_AFTER_MS, "250")
+            .set(RETRY_AFTER_MS, "500")
+            .set(HttpHeaderName.RETRY_AFTER, "3");
+
+        assertEquals(Duration.ofMillis(250), RetryAfterHeaders.parse(headers, NOW));
+    }
+
+    @Test
+    public void retryAfterMsIsUsedBeforeRetryAfter() {
+        HttpHeaders headers = new HttpHeaders()
+            .set(RETRY_AFTER_MS, "500")
+            .set(HttpHeaderName.RETRY_AFTER, "3");
+
+        assertEquals(Duration.ofMillis(500), RetryAfterHeaders.parse(headers, NOW));
+    }
+
+    @Test
+    public void retryAfterSeconds() {
+        HttpHeaders headers = new HttpHeaders().set(HttpHeaderName.RETRY_AFTER, " 3 ");
+
+        assertEquals(Duration.ofSeconds(3), RetryAfterHeaders.parse(headers, NOW));
+    }
+
+    @Test
+    public void retryAfterHttpDate() {
+        assertEquals(Duration.ofSeconds(10), RetryAfterHeaders.parse(
+            new HttpHeaders().set(HttpHeaderName.RETRY_AFTER, "Fri, 16 Oct 2026 01:02:13 GMT"), NOW));
+        // 過去の日時はすぐに再送してよい
+        assertEquals(Duration.ZERO, RetryAfterHeaders.parse(
+            new HttpHeaders().set(HttpHeaderName.RETRY_AFTER, "Fri, 16 Oct 2026 01:00:00 GMT"), NOW));
+    }
+
+    @Test
+    public void invalidValuesFallBackToTheNextHeader() {
+        HttpHeaders headers = new HttpHeaders()
+            .set(X_MS_RETRY_AFTER_MS, "soon")
+            .set(RETRY_AFTER_MS, "-1")
+            .set(HttpHeaderName.RETRY_AFTER, "2");
+
+        assertEquals(Duration.ofSeconds(2), RetryAfterHeaders.parse(headers, NOW));
+    }
+
+    @Test
+    public void missingOrUnparsableHintIsNull() {
+        assertNull(RetryAfterHeaders.parse(null, NOW));
+        assertNull(RetryAfterHeaders.parse(new HttpHeaders(), NOW));
+        assertNull(RetryAfterHeaders.parse(new HttpHeaders().set(HttpHeaderName.RETRY_AFTER, "tomorrow"), NOW));
+    }
+}
@@ -0,0 +1,91 @@
+package com.acs.email;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.HdrHistogram.Histogram;
+import org.junit.Test;
+
+/**
+ * SendLatencyRecorder のテスト（時刻は疑似クロックで進める）
+ */
+public class SendLatencyRecorderTest {
+
+    private final AtomicLong now = new AtomicLong(0);
+    private final SendLatencyRecorder recorder = new SendLatencyRecorder(now::get);
+
+    private void advanceMillis(long millis) {
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    // 有効桁数 3 桁なので 0.1% の誤差を許す
+    private static void assertMillis(long expectedMillis, long actualNanos) {
+        double expected = TimeUnit.MILLISECONDS.toNanos(expectedMillis);
+        assertEquals(expected, actualNanos, expected * 0.001);
+    }
+
+    @Test
+    public void recordsEachPhaseSinceThePreviousMark() {
+        SendLatencyRecorder.Timer timer = recorder.startTimer();
+        advanceMillis(5);
+        timer.markAcquired();
+        advanceMillis(120);
+        timer.markResponse(0);
+        advanceMillis(40);
+        timer.markResponse(1);
+        advanceMillis(2000);
+        timer.markCompleted();
+
+        assertMillis(5, recorder.snapshot(SendLatencyRecorder.Phase.ACQUIRE).getMaxValue());
+        assertMillis(120, recorder.snapshot(SendLatencyRecorder.Phase.ACCEPT).getMaxValue());
+        assertMillis(40, recorder.snapshot(SendLatencyRecorder.Phase.FIRST_POLL).getMaxValue());
+        assertMillis(2000, recorder.snapshot(SendLatencyRecorder.Phase.COMPLETION).getMaxValue());
+        assertMillis(2165, recorder.snapshot(SendLatencyRecorder.Phase.TOTAL).getMaxValue());
+    }
+
+    @Test
+    public void skippedPhaseIsIncludedInTheNextOne() {
+        // 送信枠を取得しない場合は、受付の時間が開始から数えられる
+        SendLatencyRecorder.Timer timer = recorder.startTimer();
+        advanceMillis(80);
+        timer.markAccepted();
+
+        assertEquals(0, recorder.snapshot(SendLatencyRecorder.Phase.ACQUIRE).getTotalCount());
+        assertMillis(80, recorder.snapshot(SendLatencyRecorder.Phase.ACCEPT).getMaxValue());
+    }
+
+    @Test
+    public void laterResponsesAndRepeatedMarksAreIgnored() {
+        SendLatencyRecorder.Timer timer = recorder.startTimer();
+        timer.markResponse(0);
+        timer.markResponse(1);
+        timer.markResponse(2);
+        timer.markAccepted();
+        timer.markCompleted();
+        timer.markCompleted();
+
+        assertEquals(1, recorder.snapshot(SendLatencyRecorder.Phase.ACCEPT).getTotalCount());
+        assertEquals(1, recorder.snapshot(SendLatencyRecorder.Phase.FIRST_POLL).getTotalCount());
+        assertEquals(1, recorder.snapshot(SendLatencyRecorder.Phase.COMPLETION).getTotalCount());
+        assertEquals(1, recorder.snapshot(SendLatencyRecorder.Phase.TOTAL).getTotalCount());
+    }
+
+    @Test
+    public void summaryIncludesEveryInterval() {
+        PrintStream out = new PrintStream(new ByteArrayOutputStream());
+        for (int i = 0; i < 3; i++) {
+            SendLatencyRecorder.Timer timer = recorder.startTimer();
+            advanceMillis(10);
+            timer.markAccepted();
+            recorder.printInterval(out);
+        }
+
+        Histogram accept = recorder.snapshot(SendLatencyRecorder.Phase.ACCEPT);
+        assertEquals(3, accept.getTotalCount());
+        assertMillis(10, accept.getValueAtPercentile(50));
+    }
+}
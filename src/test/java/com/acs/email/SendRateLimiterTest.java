@@ -0,0 +1,54 @@
+package com.acs.email;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * SendRateLimiter のテスト
+ */
+public class SendRateLimiterTest {
+
+    private static final String ENDPOINT = "https://example.communication.azure.com/";
+    private static final String CONNECTION_STRING = "endpoint=" + ENDPOINT + ";accesskey=a2V5";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private LearnedRateStore store() {
+        Path file = temporaryFolder.getRoot().toPath().resolve("learned-rates.properties");
+        return new LearnedRateStore(file);
+    }
+
+    @Test
+    public void learnedRateOfTheResourceIsUsed() throws Exception {
+        LearnedRateStore store = store();
+        store.save(ENDPOINT, 87.6);
+        store.save("https://other.communication.azure.com/", 500);
+
+        assertEquals(87, SendRateLimiter.learnedPerMinute(store, CONNECTION_STRING, 30));
+    }
+
+    @Test
+    public void defaultIsUsedWithoutLearnedRate() throws Exception {
+        LearnedRateStore store = store();
+        store.save("https://other.communication.azure.com/", 500);
+
+        assertEquals(30, SendRateLimiter.learnedPerMinute(store, CONNECTION_STRING, 30));
+        assertEquals(30, SendRateLimiter.learnedPerMinute(store, null, 30));
+        // 接続文字列の誤りはここでは例外にしない
+        assertEquals(30, SendRateLimiter.learnedPerMinute(store, "accesskey=a2V5", 30));
+    }
+
+    @Test
+    public void learnedRateBelowOnePerMinuteIsRaisedToOne() throws Exception {
+        LearnedRateStore store = store();
+        store.save(ENDPOINT, 0.4);
+
+        assertEquals(1, SendRateLimiter.learnedPerMinute(store, CONNECTION_STRING, 30));
+    }
+}
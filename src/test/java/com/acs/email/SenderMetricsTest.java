@@ -0,0 +1,131 @@
+package com.acs.email;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.azure.communication.email.models.EmailSendStatus;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * SenderMetrics / MetricsEndpoint のテスト
+ */
+public class SenderMetricsTest {
+
+    private final SenderMetrics metrics = new SenderMetrics();
+    private MetricsEndpoint endpoint;
+
+    @After
+    public void tearDown() {
+        if (endpoint != null) {
+            endpoint.close();
+        }
+    }
+
+    private String scrape(boolean openMetrics) {
+        StringBuilder out = new StringBuilder();
+        metrics.writeTo(out, openMetrics);
+        return out.toString();
+    }
+
+    @Test
+    public void countsSendsByStatusAndInFlight() {
+        metrics.sendStarted();
+        metrics.sendStarted();
+        metrics.sendStarted();
+        metrics.sendStarted();
+        metrics.sendCompleted(EmailSendStatus.SUCCEEDED);
+        metrics.sendCompleted(EmailSendStatus.FAILED);
+        metrics.sendFailed();
+
+        assertEquals(1, metrics.getSends(EmailSendStatus.SUCCEEDED));
+        assertEquals(1, metrics.getSends(EmailSendStatus.FAILED));
+        assertEquals(1, metrics.getInFlight());
+
+        String text = scrape(false);
+        assertTrue(text.contains("acs_email_sends_total{status=\"Succeeded\"} 1\n"));
+        assertTrue(text.contains("acs_email_sends_total{status=\"Canceled\"} 0\n"));
+        assertTrue(text.contains("acs_email_send_errors_total 1\n"));
+        assertTrue(text.contains("acs_email_in_flight 1\n"));
+    }
+
+    @Test
+    public void prometheusAndOpenMetricsNameCountersDifferently() {
+        metrics.throttled();
+
+        String prometheus = scrape(false);
+        assertTrue(prometheus.contains("# TYPE acs_email_throttled_total counter\n"));
+        assertTrue(prometheus.contains("acs_email_throttled_total 1\n"));
+        assertFalse(prometheus.contains("# EOF"));
+
+        String openMetrics = scrape(true);
+        assertTrue(openMetrics.contains("# TYPE acs_email_throttled counter\n"));
+        assertTrue(openMetrics.contains("acs_email_throttled_total 1\n"));
+        assertTrue(openMetrics.endsWith("# EOF\n"));
+    }
+
+    @Test
+    public void signingCostIsASummaryInSeconds() {
+        metrics.requestSigned(1_500_000);
+        metrics.requestSigned(500_000);
+
+        assertEquals(2, metrics.getSigningCount());
+        String text = scrape(false);
+        assertTrue(text.contains("# TYPE acs_email_request_signing_seconds summary\n"));
+        assertTrue(text.contains("acs_email_request_signing_seconds_count 2\n"));
+        assertTrue(text.contains("acs_email_request_signing_seconds_sum 0.002\n"));
+    }
+
+    @Test
+    public void gaugesAreReadOnScrapeAndGroupedByName() {
+        AtomicLong depth = new AtomicLong(3);
+        metrics.registerRateLimiter("#1", new SendRateLimiter(30, 100));
+        metrics.registerGauge("acs_email_poll_queue_depth", "待ち", null, depth::get);
+        metrics.registerRateLimiter("#2", new SendRateLimiter(10, 100));
+        depth.set(7);
+
+        String text = scrape(false);
+        assertTrue(text.contains("acs_email_poll_queue_depth 7\n"));
+        assertTrue(text.contains("acs_email_rate_limiter_available_permits{resource=\"#1\"} 30\n"
+            + "acs_email_rate_limiter_available_permits{resource=\"#2\"} 10\n"));
+        assertEquals(text.indexOf("# TYPE acs_email_rate_limiter_available_permits"),
+            text.lastIndexOf("# TYPE acs_email_rate_limiter_available_permits"));
+
+        // 同じ名前・ラベルで登録し直すと置き換わる
+        metrics.registerGauge("acs_email_poll_queue_depth", "待ち", null, () -> 1);
+        assertTrue(scrape(false).contains("acs_email_poll_queue_depth 1\n"));
+    }
+
+    @Test
+    public void endpointServesMetrics() throws Exception {
+        endpoint = new MetricsEndpoint(InetAddress.getLoopbackAddress(), 0, metrics);
+        endpoint.start();
+        metrics.retried();
+        HttpClient client = HttpClient.newHttpClient();
+
+        HttpResponse<String> prometheus = client.send(HttpRequest.newBuilder(URI.create(endpoint.url())).build(),
+            HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, prometheus.statusCode());
+        assertTrue(prometheus.headers().firstValue("Content-Type").orElse("").startsWith("text/plain"));
+        assertTrue(prometheus.body().contains("acs_email_retries_total 1\n"));
+
+        HttpResponse<String> openMetrics = client.send(HttpRequest.newBuilder(URI.create(endpoint.url()))
+            .header("Accept", "application/openmetrics-text; version=1.0.0").build(),
+            HttpResponse.BodyHandlers.ofString());
+        assertTrue(openMetrics.headers().firstValue("Content-Type").orElse("")
+            .startsWith("application/openmetrics-text"));
+        assertTrue(openMetrics.body().endsWith("# EOF\n"));
+
+        HttpResponse<String> notFound = client.send(HttpRequest.newBuilder(
+            URI.create(endpoint.url().replace("/metrics", "/other"))).build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(404, notFound.statusCode());
+    }
+}
@@ -0,0 +1,63 @@
+package com.acs.email;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * SentOperationIndex と決定的な Operation-Id のテスト
+ */
+public class SentOperationIndexTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void addReportsDuplicates() throws Exception {
+        Path file = temporaryFolder.newFolder().toPath().resolve("sent.idx");
+
+        try (SentOperationIndex index = new SentOperationIndex(file, 16)) {
+            String operationId = OperationIdPolicy.forJob("jobs.jsonl", 1, "{\"to\":\"a@example.com\"}");
+
+            assertFalse(index.contains(operationId));
+            assertTrue(index.add(operationId));
+            assertFalse(index.add(operationId));
+            assertTrue(index.contains(operationId));
+            assertEquals(1, index.size());
+        }
+    }
+
+    @Test
+    public void growsAndSurvivesReopen() throws Exception {
+        Path file = temporaryFolder.newFolder().toPath().resolve("sent.idx");
+
+        try (SentOperationIndex index = new SentOperationIndex(file, 16)) {
+            for (int i = 0; i < 1000; i++) {
+                assertTrue(index.add(OperationIdPolicy.forJob("jobs.jsonl", i, "line")));
+            }
+        }
+
+        try (SentOperationIndex index = new SentOperationIndex(file)) {
+            assertEquals(1000, index.size());
+            for (int i = 0; i < 1000; i++) {
+                assertTrue(index.contains(OperationIdPolicy.forJob("jobs.jsonl", i, "line")));
+            }
+            assertFalse(index.contains(OperationIdPolicy.forJob("jobs.jsonl", 1000, "line")));
+        }
+    }
+
+    @Test
+    public void operationIdDependsOnSourceLineAndContent() {
+        String operationId = OperationIdPolicy.forJob("jobs.jsonl", 1, "{\"to\":\"a@example.com\"}");
+
+        assertEquals(operationId, OperationIdPolicy.forJob("jobs.jsonl", 1, "{\"to\":\"a@example.com\"}"));
+        assertFalse(operationId.equals(OperationIdPolicy.forJob("jobs.jsonl", 2, "{\"to\":\"a@example.com\"}")));
+        assertFalse(operationId.equals(OperationIdPolicy.forJob("jobs.jsonl", 1, "{\"to\":\"b@example.com\"}")));
+    }
+}
@@ -0,0 +1,94 @@
+package com.acs.email;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+/**
+ * TokenBucket のテスト（時刻は疑似クロックで進める）
+ */
+public class TokenBucketTest {
+
+    private final AtomicLong now = new AtomicLong(0);
+
+    @Test
+    public void allowsBurstUpToCapacity() {
+        TokenBucket bucket = new TokenBucket(30, Duration.ofMinutes(1), now::get);
+
+        assertEquals(30, bucket.availableTokens());
+        for (int i = 0; i < 30; i++) {
+            assertTrue("token " + i, bucket.tryAcquire());
+        }
+        assertFalse(bucket.tryAcquire());
+        assertEquals(0, bucket.availableTokens());
+    }
+
+    @Test
+    public void refillsAtSteadyRate() {
+        TokenBucket bucket = new TokenBucket(30, Duration.ofMinutes(1), now::get);
+        for (int i = 0; i < 30; i++) {
+            bucket.tryAcquire();
+        }
+
+        // 30通/分 = 2秒ごとに1トークン
+        now.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+    }
+
+    @Test
+    public void reserveReturnsWaitTimeOnceExhausted() {
+        TokenBucket bucket = new TokenBucket(2, Duration.ofSeconds(2), now::get);
+
+        assertEquals(0, bucket.reserve());
+        assertEquals(0, bucket.reserve());
+        assertEquals(TimeUnit.SECONDS.toNanos(1), bucket.reserve());
+        assertEquals(TimeUnit.SECONDS.toNanos(2), bucket.reserve());
+    }
+
+    @Test
+    public void limiterIsBoundedByTheStricterBucket() {
+        SendRateLimiter limiter = new SendRateLimiter(
+            new TokenBucket(30, Duration.ofMinutes(1), now::get),
+            new TokenBucket(2, Duration.ofHours(1), now::get));
+
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+        assertEquals(0, limiter.availablePermits());
+    }
+
+    @Test
+    public void releasedTokenCanBeAcquiredAgain() {
+        TokenBucket bucket = new TokenBucket(2, Duration.ofMinutes(1), now::get);
+
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+        bucket.release();
+        assertEquals(1, bucket.availableTokens());
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+    }
+
+    @Test
+    public void failedMinuteAcquireDoesNotConsumeTheHourQuota() {
+        TokenBucket perHour = new TokenBucket(100, Duration.ofHours(1), now::get);
+        SendRateLimiter limiter = new SendRateLimiter(
+            new TokenBucket(2, Duration.ofMinutes(1), now::get), perHour);
+
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        // 分単位の枠が尽きている間に何度試しても、時間単位の枠は減らない
+        for (int i = 0; i < 50; i++) {
+            assertFalse(limiter.tryAcquire());
+        }
+        assertEquals(98, perHour.availableTokens());
+    }
+}
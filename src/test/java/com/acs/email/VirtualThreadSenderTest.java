@@ -0,0 +1,108 @@
+package com.acs.email;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.azure.communication.email.EmailClient;
+import com.azure.communication.email.EmailClientBuilder;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * VirtualThreadSender のテスト（MockAcsServer に実際に送信する）
+ */
+public class VirtualThreadSenderTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private MockAcsServer server;
+
+    @After
+    public void tearDown() {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    public void sendsEveryLineAndSkipsMalformedOnes() throws Exception {
+        server = start(new MockAcsServer.Settings());
+        List<String> lines = jobLines(5);
+        lines.add(2, "{not json");
+        lines.add("");
+
+        try (VirtualThreadSender sender = sender(10)) {
+            sender.run(write(lines));
+
+            assertEquals(5, sender.getSucceededCount());
+            assertEquals(0, sender.getFailedCount());
+            assertEquals(1, sender.getSkippedCount());
+        }
+        assertEquals(5, server.acceptedCount());
+    }
+
+    @Test
+    public void inFlightSendsAreBoundedBySemaphore() throws Exception {
+        server = start(new MockAcsServer.Settings().completionDelay(Duration.ofMillis(300)));
+
+        long start = System.nanoTime();
+        try (VirtualThreadSender sender = sender(2)) {
+            sender.run(write(jobLines(6)));
+
+            assertEquals(6, sender.getSucceededCount());
+        }
+        // 同時に2通までのため、完了まで 300ms かかる送信を少なくとも3回に分けて送る
+        long elapsedMillis = Duration.ofNanos(System.nanoTime() - start).toMillis();
+        assertTrue("所要時間: " + elapsedMillis + "ms", elapsedMillis >= 900);
+    }
+
+    @Test
+    public void runReturnsOnlyAfterEverySendHasCompleted() throws Exception {
+        server = start(new MockAcsServer.Settings().completionDelay(Duration.ofMillis(200)));
+
+        try (VirtualThreadSender sender = sender(100)) {
+            sender.run(write(jobLines(20)));
+
+            // close() を待たずに run の戻りの時点で全ての結果が確定している
+            assertEquals(20, sender.getSucceededCount() + sender.getFailedCount());
+        }
+    }
+
+    private VirtualThreadSender sender(int maxInFlight) {
+        EmailClient client = new EmailClientBuilder()
+            .connectionString(server.connectionString())
+            .buildClient();
+        return new VirtualThreadSender(client, new SendRateLimiter(100_000, 1_000_000), "sender@example.com",
+            maxInFlight);
+    }
+
+    private static List<String> jobLines(int count) {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            lines.add("{\"to\":\"user" + i + "@example.com\",\"subject\":\"テスト #" + i + "\",\"plainText\":\"本文\"}");
+        }
+        return lines;
+    }
+
+    private Path write(List<String> lines) throws Exception {
+        Path jobFile = temporaryFolder.newFile("jobs.jsonl").toPath();
+        Files.write(jobFile, lines, StandardCharsets.UTF_8);
+        return jobFile;
+    }
+
+    private static MockAcsServer start(MockAcsServer.Settings settings) throws Exception {
+        MockAcsServer server = new MockAcsServer(0, settings);
+        server.start();
+        return server;
+    }
+}